@@ -0,0 +1,31 @@
+package test.adanielssr.simple.money.transfer.api;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+
+/**
+ * Main verticle deploying {@code http.instances} instances of {@link MoneyTransferVerticle}, by default one per
+ * core, with its own configuration. Vert.x gives each instance its own event loop and balances the connections of
+ * the shared HTTP port across them, while all the instances serve the same {@link ServiceGraph}.
+ */
+public class MoneyTransferLauncher extends AbstractVerticle {
+
+    @Override
+    public void start(Future<Void> fut) {
+        int instances = config().getInteger("http.instances", Runtime.getRuntime().availableProcessors());
+        if (instances <= 0) {
+            fut.fail(new IllegalArgumentException("http.instances must be greater than 0"));
+            return;
+        }
+
+        DeploymentOptions options = new DeploymentOptions().setConfig(config()).setInstances(instances);
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), options, result -> {
+            if (result.succeeded()) {
+                fut.complete();
+            } else {
+                fut.fail(result.cause());
+            }
+        });
+    }
+}
@@ -2,42 +2,149 @@ package test.adanielssr.simple.money.transfer.api;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 import test.adanielssr.simple.money.transfer.api.controller.AccountController;
-import test.adanielssr.simple.money.transfer.business.service.AccountService;
-import test.adanielssr.simple.money.transfer.business.service.TransferService;
+import test.adanielssr.simple.money.transfer.api.controller.MetricsController;
+import test.adanielssr.simple.money.transfer.business.service.metrics.LatencyHistogram;
+import test.adanielssr.simple.money.transfer.business.service.metrics.MetricsRegistry;
 
+/**
+ * Serves the HTTP API. Any number of instances can be deployed on one {@link io.vertx.core.Vertx}: they share the
+ * listening port and a single {@link ServiceGraph}, see {@link MoneyTransferLauncher}.
+ */
 public class MoneyTransferVerticle extends AbstractVerticle {
 
+    /**
+     * Period of the timer measuring how late the event loop runs it.
+     */
+    private static final long EVENT_LOOP_LAG_INTERVAL_MS = 100L;
+
+    private ServiceGraph serviceGraph;
+
+    private MetricsRegistry metricsRegistry;
+
+    private long eventLoopLagTimerId = -1L;
+
+    private volatile long eventLoopLagNanos;
+
     @Override
     public void start(Future<Void> fut) {
+        serviceGraph = ServiceGraph.acquire(vertx, config());
+        metricsRegistry = serviceGraph.getMetricsRegistry();
+
         // Create a router object.
         Router router = Router.router(vertx);
 
         createRouting(router);
 
-        vertx.createHttpServer().requestHandler(router::accept)
-                .listen(config().getInteger("http.port", 8080), result -> {
+        vertx.createHttpServer(createHttpServerOptions(config())).requestHandler(router::accept)
+                .listen(result -> {
                     if (result.succeeded()) {
                         fut.complete();
                     } else {
+                        // a verticle failing to start is not stopped, give the graph back here
+                        try {
+                            stop();
+                        } catch (Exception e) {
+                            result.cause().addSuppressed(e);
+                        }
                         fut.fail(result.cause());
                     }
                 });
     }
 
+    /**
+     * Reads the options of the HTTP server from the verticle config. Every instance listens on the same port: Vert.x
+     * binds it once and hands the accepted connections to the instances in turn, each connection then served by the
+     * event loop of its instance, with HTTP/1.1 keep-alive and pipelining.
+     */
+    static HttpServerOptions createHttpServerOptions(JsonObject config) {
+        return new HttpServerOptions().setPort(config.getInteger("http.port", 8080))
+                .setTcpNoDelay(config.getBoolean("http.tcp.nodelay", HttpServerOptions.DEFAULT_TCP_NO_DELAY))
+                .setTcpKeepAlive(config.getBoolean("http.tcp.keepalive", HttpServerOptions.DEFAULT_TCP_KEEP_ALIVE))
+                .setSendBufferSize(
+                        config.getInteger("http.send.buffer.size", HttpServerOptions.DEFAULT_SEND_BUFFER_SIZE))
+                .setReceiveBufferSize(
+                        config.getInteger("http.receive.buffer.size", HttpServerOptions.DEFAULT_RECEIVE_BUFFER_SIZE))
+                .setAcceptBacklog(config.getInteger("http.accept.backlog", HttpServerOptions.DEFAULT_ACCEPT_BACKLOG))
+                .setIdleTimeout(config.getInteger("http.idle.timeout.s", HttpServerOptions.DEFAULT_IDLE_TIMEOUT))
+                .setUsePooledBuffers(
+                        config.getBoolean("http.pooled.buffers", HttpServerOptions.DEFAULT_USE_POOLED_BUFFERS))
+                .setCompressionSupported(
+                        config.getBoolean("http.compression", HttpServerOptions.DEFAULT_COMPRESSION_SUPPORTED));
+    }
+
+    @Override
+    public void stop() throws Exception {
+        vertx.cancelTimer(eventLoopLagTimerId);
+        if (serviceGraph != null) {
+            serviceGraph.release();
+        }
+    }
+
     private void createRouting(Router router) {
-        AccountService accountService = new AccountService();
-        AccountController accountController = new AccountController(accountService,
-                new TransferService(accountService));
+        AccountController accountController = new AccountController(serviceGraph.getAccountService(),
+                serviceGraph.getTransferService(), serviceGraph.getServiceExecutor(),
+                serviceGraph.getAccountRepresentationCache());
+        MetricsController metricsController = new MetricsController(metricsRegistry);
+        registerEventLoopLagGauge();
 
-        router.get("/accounts").handler(accountController::getAllAccounts);
+        router.get("/accounts").handler(metered("GET /accounts", accountController::getAllAccounts));
         router.route("/accounts*").handler(BodyHandler.create());
-        router.post("/accounts").handler(accountController::createAccount);
-        router.get("/accounts/:accountNumber").handler(accountController::getAccountByNumber);
+        router.post("/accounts").handler(metered("POST /accounts", accountController::createAccount));
+        router.get("/accounts/:accountNumber")
+                .handler(metered("GET /accounts/:accountNumber", accountController::getAccountByNumber));
+
+        router.post("/accounts/:accountNumber/transfers")
+                .handler(metered("POST /accounts/:accountNumber/transfers", accountController::createTransfer));
+        router.get("/accounts/:accountNumber/transfers")
+                .handler(metered("GET /accounts/:accountNumber/transfers", accountController::getAccountTransfers));
+
+        router.route("/transfers*").handler(BodyHandler.create());
+        router.postWithRegex("/transfers:batch")
+                .handler(metered("POST /transfers:batch", accountController::createTransfers));
+        router.get("/transfers/:transferNumber")
+                .handler(metered("GET /transfers/:transferNumber", accountController::getTransferByNumber));
 
-        router.post("/accounts/:accountNumber/transfers").handler(accountController::createTransfer);
+        router.get("/metrics").handler(metricsController::getMetrics);
+    }
+
+    private void registerEventLoopLagGauge() {
+        // start runs on the event loop of this instance
+        metricsRegistry.gauge("event_loop_lag_seconds", "How late the event loop ran the last periodic check.",
+                "event_loop", Thread.currentThread().getName(), () -> eventLoopLagNanos / 1_000_000_000.0D);
+
+        // the timer runs at a fixed rate, each run is expected one period after the previous expected run
+        final long intervalNanos = EVENT_LOOP_LAG_INTERVAL_MS * 1_000_000L;
+        final long[] expectedNanos = { System.nanoTime() + intervalNanos };
+        eventLoopLagTimerId = vertx.setPeriodic(EVENT_LOOP_LAG_INTERVAL_MS, timerId -> {
+            eventLoopLagNanos = Math.max(0L, System.nanoTime() - expectedNanos[0]);
+            expectedNanos[0] += intervalNanos;
+        });
+    }
 
+    /**
+     * Wraps a route handler to record the time until its response is fully written. Handlers answering right away
+     * are recorded without allocating; handlers that end the response later, e.g. streaming it, are recorded once
+     * the response body ended.
+     */
+    private Handler<RoutingContext> metered(String route, Handler<RoutingContext> handler) {
+        LatencyHistogram latency = metricsRegistry
+                .histogram("http_request_latency_seconds", "Latency of the HTTP requests by route.", "route",
+                        route);
+        return routingContext -> {
+            long start = System.nanoTime();
+            handler.handle(routingContext);
+            if (routingContext.response().ended()) {
+                latency.recordSince(start);
+            } else {
+                routingContext.addBodyEndHandler(aVoid -> latency.recordSince(start));
+            }
+        };
     }
-}
\ No newline at end of file
+}
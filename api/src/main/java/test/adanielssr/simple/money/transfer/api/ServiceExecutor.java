@@ -0,0 +1,186 @@
+package test.adanielssr.simple.money.transfer.api;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * Runs the service calls of the HTTP handlers either in place, on the event loop, or on a dedicated executor of
+ * platform or virtual threads, handing their result back to the event loop.
+ * <p>
+ * The executor modes admit at most {@code maxInFlight} calls queued or running at once; further calls are refused
+ * right away, so the caller can shed the request instead of queueing it behind work it would time out waiting for.
+ */
+public class ServiceExecutor implements AutoCloseable {
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10L;
+
+    private final ExecutorService executor;
+
+    private final Semaphore inFlightPermits;
+
+    private final int maxInFlight;
+
+    private final LongAdder rejected;
+
+    private ServiceExecutor(ExecutorService executor, int maxInFlight, LongAdder rejected) {
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.inFlightPermits = executor == null ? null : new Semaphore(maxInFlight);
+        this.rejected = rejected;
+    }
+
+    /**
+     * Runs the service calls in place, on the event loop of the request.
+     */
+    public static ServiceExecutor eventLoop() {
+        return new ServiceExecutor(null, 0, null);
+    }
+
+    /**
+     * Runs the service calls on a fixed pool of platform threads.
+     *
+     * @param rejected incremented for every refused call
+     */
+    public static ServiceExecutor workers(int threads, int maxInFlight, LongAdder rejected) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0");
+        }
+        checkMaxInFlight(maxInFlight);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "service-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ServiceExecutor(Executors.newFixedThreadPool(threads, threadFactory), maxInFlight,
+                rejected);
+    }
+
+    /**
+     * Runs every service call on its own virtual thread. Needs a JDK with virtual threads, 21 or later; looked up
+     * reflectively so the application still builds and runs on Java 8 with the other modes.
+     *
+     * @param rejected incremented for every refused call
+     */
+    public static ServiceExecutor virtualThreads(int maxInFlight, LongAdder rejected) {
+        checkMaxInFlight(maxInFlight);
+        try {
+            return new ServiceExecutor(
+                    (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null),
+                    maxInFlight, rejected);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Virtual threads need Java 21 or later", e);
+        }
+    }
+
+    /**
+     * Creates the executor of the given mode: {@code event-loop}, {@code worker} or {@code virtual}.
+     *
+     * @param rejected incremented for every refused call
+     */
+    public static ServiceExecutor of(String mode, int threads, int maxInFlight, LongAdder rejected) {
+        switch (mode) {
+        case "event-loop":
+            return eventLoop();
+        case "worker":
+            return workers(threads, maxInFlight, rejected);
+        case "virtual":
+            return virtualThreads(maxInFlight, rejected);
+        default:
+            throw new IllegalArgumentException("Unknown executor.mode: " + mode);
+        }
+    }
+
+    /**
+     * Runs the work and then the completion with its result on the given context. On the event loop mode both run
+     * before this method returns.
+     *
+     * @return false, without running anything, if as many calls as allowed are already queued or running
+     */
+    public <T> boolean execute(Context context, Supplier<T> work, Handler<AsyncResult<T>> completion) {
+        if (executor == null) {
+            completion.handle(call(work));
+            return true;
+        }
+
+        if (!inFlightPermits.tryAcquire()) {
+            rejected.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                AsyncResult<T> result;
+                try {
+                    result = call(work);
+                } finally {
+                    inFlightPermits.release();
+                }
+                context.runOnContext(aVoid -> completion.handle(result));
+            });
+        } catch (RejectedExecutionException e) {
+            // closed while the request was being served
+            inFlightPermits.release();
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs an action on the given context: in place if called from it, otherwise on a later turn of its event loop,
+     * in the order the actions were given.
+     */
+    public static void runOnContext(Context context, Handler<Void> action) {
+        if (Vertx.currentContext() == context) {
+            action.handle(null);
+        } else {
+            context.runOnContext(action);
+        }
+    }
+
+    /**
+     * Number of service calls queued or running on the executor, always 0 on the event loop mode.
+     */
+    public int getInFlight() {
+        return executor == null ? 0 : maxInFlight - inFlightPermits.availablePermits();
+    }
+
+    /**
+     * Refuses later calls and waits for the calls already accepted to be done, so the services they use can be
+     * closed afterwards.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static <T> AsyncResult<T> call(Supplier<T> work) {
+        try {
+            return Future.succeededFuture(work.get());
+        } catch (RuntimeException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    private static void checkMaxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be greater than 0");
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package test.adanielssr.simple.money.transfer.api;
+
+import java.nio.file.Paths;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import test.adanielssr.simple.money.transfer.api.codec.AccountRepresentationCache;
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.AtomicBalanceAccountService;
+import test.adanielssr.simple.money.transfer.business.service.JournalRecovery;
+import test.adanielssr.simple.money.transfer.business.service.StripedLockAccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferService;
+import test.adanielssr.simple.money.transfer.business.service.filter.FilteredAccountService;
+import test.adanielssr.simple.money.transfer.business.service.history.HistoryRetention;
+import test.adanielssr.simple.money.transfer.business.service.history.TransferHistory;
+import test.adanielssr.simple.money.transfer.business.service.id.IdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.LeasingIdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.NumberedAccountService;
+import test.adanielssr.simple.money.transfer.business.service.id.SequenceIdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.SnowflakeIdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.index.IndexedAccountService;
+import test.adanielssr.simple.money.transfer.business.service.journal.FsyncPolicy;
+import test.adanielssr.simple.money.transfer.business.service.journal.Journal;
+import test.adanielssr.simple.money.transfer.business.service.journal.JournaledAccountService;
+import test.adanielssr.simple.money.transfer.business.service.metrics.MeteredAccountService;
+import test.adanielssr.simple.money.transfer.business.service.metrics.MetricsRegistry;
+import test.adanielssr.simple.money.transfer.business.service.sharded.ShardedAccountService;
+import test.adanielssr.simple.money.transfer.business.service.snapshot.SnapshotStore;
+import test.adanielssr.simple.money.transfer.business.service.snapshot.Snapshotter;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * The account store, journal, transfer service, service executor, account representation cache and metrics shared
+ * by every {@link MoneyTransferVerticle} instance deployed on one {@link Vertx}, so all the instances serve the same
+ * ledger.
+ * <p>
+ * The first instance to {@link #acquire(Vertx, JsonObject) acquire} the graph builds it from its configuration,
+ * recovering the journal if there is one; the others get the same graph whatever their configuration. The graph is
+ * closed when the last instance {@link #release() releases} it, and the next acquire builds a new one.
+ */
+public class ServiceGraph implements Shareable {
+
+    private static final String LOCAL_MAP_NAME = "simple-money-transfer";
+
+    private static final String SERVICE_GRAPH_KEY = "service-graph";
+
+    private static final int DEFAULT_ACCOUNT_CACHE_CAPACITY = 65536;
+
+    private static final int DEFAULT_ACCOUNT_FILTER_CAPACITY = 65536;
+
+    private final Vertx vertx;
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    private final AccountService accountService;
+
+    private final TransferService transferService;
+
+    private final TransferHistory transferHistory;
+
+    private final Snapshotter snapshotter;
+
+    private final ServiceExecutor serviceExecutor;
+
+    private final AccountRepresentationCache accountRepresentationCache;
+
+    private int references;
+
+    private ServiceGraph(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+
+        serviceExecutor = ServiceExecutor.of(executorMode(config),
+                config.getInteger("executor.threads", VertxOptions.DEFAULT_WORKER_POOL_SIZE),
+                config.getInteger("executor.queue.capacity", 1024),
+                metricsRegistry.counter("service_calls_rejected_total",
+                        "Service calls refused because the executor was saturated, answered with 503.", null, null));
+
+        accountRepresentationCache = new AccountRepresentationCache(
+                config.getInteger("account.cache.capacity", DEFAULT_ACCOUNT_CACHE_CAPACITY),
+                metricsRegistry.counter("account_representations_total",
+                        "Account representations served, from the cache or encoded.", "result", "hit"),
+                metricsRegistry.counter("account_representations_total",
+                        "Account representations served, from the cache or encoded.", "result", "miss"));
+
+        AccountService accountStore = createAccountService(config, metricsRegistry);
+        IdGenerator accountNumberGenerator = createIdGenerator(config);
+        Journal journal = createJournal(config);
+        if (journal != null || !(accountNumberGenerator instanceof SequenceIdGenerator)) {
+            // a plain sequence is what the stores number accounts with, but journaled accounts are numbered before
+            // the store sees them, from the generator the recovered accounts are restored in
+            accountStore = new NumberedAccountService(accountStore, accountNumberGenerator);
+        }
+        int accountFilterCapacity = config.getInteger("account.filter.capacity", DEFAULT_ACCOUNT_FILTER_CAPACITY);
+        if (accountFilterCapacity > 0) {
+            accountStore = new FilteredAccountService(accountStore, accountFilterCapacity,
+                    config.getDouble("account.filter.fpp", 0.01d), metricsRegistry);
+        }
+        transferHistory = createTransferHistory(config, accountStore.getCurrencyScale());
+        int idempotencyCapacity = config
+                .getInteger("idempotency.capacity", TransferService.DEFAULT_IDEMPOTENCY_CAPACITY);
+        long idempotencyTtlMillis = config
+                .getLong("idempotency.ttl.ms", TransferService.DEFAULT_IDEMPOTENCY_TTL_MILLIS);
+        if (journal == null) {
+            accountService = new MeteredAccountService(accountStore, metricsRegistry);
+            transferService = new TransferService(accountService, null, transferHistory, metricsRegistry,
+                    idempotencyCapacity, idempotencyTtlMillis, createIdGenerator(config));
+            snapshotter = null;
+        } else {
+            accountService = new MeteredAccountService(
+                    new JournaledAccountService(accountStore, journal, accountNumberGenerator), metricsRegistry);
+            transferService = new TransferService(accountService, journal, transferHistory, metricsRegistry,
+                    idempotencyCapacity, idempotencyTtlMillis, createIdGenerator(config));
+            SnapshotStore snapshotStore = new SnapshotStore(journal.getDirectory());
+            JournalRecovery journalRecovery = new JournalRecovery(accountStore, transferService);
+            journalRecovery.recover(snapshotStore, journal);
+            int rejectedAccounts = journalRecovery.getRejectedAccounts().size();
+            metricsRegistry.gauge("accounts_rejected_on_recovery",
+                    "Accounts whose creation was never journaled and whose changes left a negative balance.",
+                    () -> rejectedAccounts);
+            snapshotter = new Snapshotter(journal, snapshotStore, config.getLong("snapshot.interval.ms", 60000L));
+        }
+
+        metricsRegistry.gauge("service_calls_in_flight", "Service calls queued or running on the executor.",
+                serviceExecutor::getInFlight);
+        metricsRegistry.gauge("accounts", "Number of stored accounts.", accountService::getAccountCount);
+        metricsRegistry.gauge("transfers_stored", "Number of transfers stored, in memory and spilled to disk.",
+                transferHistory::size);
+        metricsRegistry.gauge("transfers_spill_dropped", "Number of spilled transfers that could not be written.",
+                transferHistory::getDroppedTransfers);
+    }
+
+    /**
+     * Returns the service graph of the given {@link Vertx}, building it from the given configuration if no
+     * instance holds it. Every acquire must be followed by a {@link #release()}.
+     */
+    public static ServiceGraph acquire(Vertx vertx, JsonObject config) {
+        // instances start concurrently on their own event loops, only one of them may build the graph
+        synchronized (ServiceGraph.class) {
+            LocalMap<String, ServiceGraph> localMap = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+            ServiceGraph serviceGraph = localMap.get(SERVICE_GRAPH_KEY);
+            if (serviceGraph == null) {
+                serviceGraph = new ServiceGraph(vertx, config);
+                localMap.put(SERVICE_GRAPH_KEY, serviceGraph);
+            }
+            serviceGraph.references++;
+            return serviceGraph;
+        }
+    }
+
+    /**
+     * Gives back a graph obtained from {@link #acquire(Vertx, JsonObject)}, closing it if no other instance holds it.
+     */
+    public void release() throws Exception {
+        synchronized (ServiceGraph.class) {
+            if (--references > 0) {
+                return;
+            }
+            vertx.sharedData().getLocalMap(LOCAL_MAP_NAME).remove(SERVICE_GRAPH_KEY);
+        }
+
+        try {
+            serviceExecutor.close();
+            if (snapshotter != null) {
+                snapshotter.close();
+            }
+        } finally {
+            transferHistory.close();
+            if (accountService instanceof AutoCloseable) {
+                ((AutoCloseable) accountService).close();
+            }
+        }
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    public AccountService getAccountService() {
+        return accountService;
+    }
+
+    public TransferService getTransferService() {
+        return transferService;
+    }
+
+    public ServiceExecutor getServiceExecutor() {
+        return serviceExecutor;
+    }
+
+    public AccountRepresentationCache getAccountRepresentationCache() {
+        return accountRepresentationCache;
+    }
+
+    /**
+     * The sharded account store blocks the calling thread until a shard has run the call, so its calls are never run
+     * on the event loop.
+     */
+    /**
+     * Service calls only run on the event loop if they never block, which calls of the sharded account store and
+     * calls waiting for the journal to be forced do.
+     */
+    private static String executorMode(JsonObject config) {
+        boolean blockingAccountStore = "sharded".equals(config.getString("account.store", "striped-lock"));
+        boolean journaled = config.getString("journal.dir") != null;
+        String executorMode = config
+                .getString("executor.mode", blockingAccountStore || journaled ? "worker" : "event-loop");
+        if (blockingAccountStore && "event-loop".equals(executorMode)) {
+            throw new IllegalArgumentException("The sharded account store needs executor.mode worker or virtual");
+        }
+        if (journaled && "event-loop".equals(executorMode)) {
+            throw new IllegalArgumentException("A journal needs executor.mode worker or virtual");
+        }
+        return executorMode;
+    }
+
+    private static IdGenerator createIdGenerator(JsonObject config) {
+        String generator = config.getString("id.generator", "sequence");
+        IdGenerator idGenerator;
+        switch (generator) {
+        case "sequence":
+            idGenerator = new SequenceIdGenerator();
+            break;
+        case "snowflake":
+            idGenerator = new SnowflakeIdGenerator(config.getInteger("id.node", 0));
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown id.generator: " + generator);
+        }
+
+        int leaseSize = config.getInteger("id.lease.size", 1);
+        return leaseSize == 1 ? idGenerator :
+                new LeasingIdGenerator(idGenerator, leaseSize, config.getLong("id.lease.ms", 10L));
+    }
+
+    private static AccountService createAccountService(JsonObject config, MetricsRegistry metricsRegistry) {
+        CurrencyScale currencyScale = CurrencyScale.of(config.getInteger("currency.scale", 2));
+        String accountStore = config.getString("account.store", "striped-lock");
+
+        switch (accountStore) {
+        case "striped-lock":
+            return new StripedLockAccountService(currencyScale);
+        case "atomic":
+            return new AtomicBalanceAccountService(currencyScale);
+        case "indexed":
+            return new IndexedAccountService(currencyScale,
+                    config.getInteger("account.index.capacity", IndexedAccountService.DEFAULT_EXPECTED_ACCOUNTS));
+        case "off-heap":
+            return new IndexedAccountService(currencyScale,
+                    config.getInteger("account.index.capacity", IndexedAccountService.DEFAULT_EXPECTED_ACCOUNTS),
+                    true);
+        case "mapped":
+            String tableDirectory = config.getString("account.table.dir");
+            if (tableDirectory == null) {
+                throw new IllegalArgumentException("account.table.dir is required by the mapped account store");
+            }
+            return new IndexedAccountService(currencyScale,
+                    config.getInteger("account.index.capacity", IndexedAccountService.DEFAULT_EXPECTED_ACCOUNTS),
+                    Paths.get(tableDirectory), config.getInteger("account.hot.capacity", 65536),
+                    metricsRegistry.counter("hot_account_reads_total",
+                            "Account reads of the mapped account store, from its hot account cache or its file.",
+                            "result", "hit"),
+                    metricsRegistry.counter("hot_account_reads_total",
+                            "Account reads of the mapped account store, from its hot account cache or its file.",
+                            "result", "miss"));
+        case "sharded":
+            return new ShardedAccountService(currencyScale,
+                    config.getInteger("account.shards", Runtime.getRuntime().availableProcessors()),
+                    config.getInteger("account.shard.queue.capacity", 65536));
+        default:
+            throw new IllegalArgumentException("Unknown account.store: " + accountStore);
+        }
+    }
+
+    private static Journal createJournal(JsonObject config) {
+        String journalDirectory = config.getString("journal.dir");
+        if (journalDirectory == null) {
+            return null;
+        }
+        return new Journal(Paths.get(journalDirectory),
+                FsyncPolicy.fromName(config.getString("journal.fsync", "per-batch")),
+                config.getLong("journal.fsync.interval.ms", 10L),
+                config.getLong("journal.segment.size", 64L * 1024 * 1024));
+    }
+
+    private static TransferHistory createTransferHistory(JsonObject config, CurrencyScale currencyScale) {
+        String historyDirectory = config.getString("transfer.history.dir");
+        return new TransferHistory(currencyScale,
+                config.getInteger("transfer.history.capacity", TransferService.DEFAULT_HISTORY_CAPACITY),
+                historyDirectory == null ? null : Paths.get(historyDirectory),
+                HistoryRetention.of(config.getLong("transfer.history.retention.count", Long.MAX_VALUE),
+                        config.getLong("transfer.history.retention.age.ms", Long.MAX_VALUE),
+                        config.getLong("transfer.history.retention.bytes", Long.MAX_VALUE)),
+                config.getInteger("transfer.history.account.capacity",
+                        TransferHistory.DEFAULT_MAX_ACCOUNT_TRANSFERS));
+    }
+}
@@ -0,0 +1,121 @@
+package test.adanielssr.simple.money.transfer.api.codec;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.buffer.Buffer;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+
+/**
+ * Bounded cache of the JSON representations of the accounts, keyed by account number and
+ * {@link Account#getVersion() version}, and the entity tags of the representations.
+ * <p>
+ * The cache is direct mapped: each account number hashes to a single slot holding the representation of one version
+ * of one account. A newer version of the account, or another account hashing to the same slot, replaces it, so the
+ * cache never holds more representations than its capacity and a lookup allocates nothing. Slots hold immutable
+ * entries and are written without locking; two threads encoding the same account at once only cost an extra
+ * encoding.
+ * <p>
+ * An entity tag is the version of the account prefixed with an epoch drawn when the cache is created: versions start
+ * over when the service restarts, and a tag handed out before then must not match again.
+ */
+public final class AccountRepresentationCache {
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private final Entry[] slots;
+
+    private final int mask;
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    /**
+     * @param capacity the number of representations kept, rounded up to a power of two
+     * @param hits     counter of the representations found in the cache
+     * @param misses   counter of the representations encoded
+     */
+    public AccountRepresentationCache(int capacity, LongAdder hits, LongAdder misses) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + (1 << 30));
+        }
+        int slotCount = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Entry[Math.max(slotCount, 1)];
+        this.mask = slots.length - 1;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * @param ifNoneMatch the value of an {@code If-None-Match} header, may be null
+     * @param entityTag   the entity tag of the current representation
+     * @return whether the header matches the entity tag, so the representation the client has is still current
+     */
+    public static boolean matches(String ifNoneMatch, String entityTag) {
+        return ifNoneMatch != null && ("*".equals(ifNoneMatch.trim()) || ifNoneMatch.contains(entityTag));
+    }
+
+    /**
+     * @param accountNumber the account number
+     * @param version       the version of the account, read before the account is encoded
+     * @param binary        whether the tag is the one of the binary representation
+     * @return the entity tag of the representation of the account at that version
+     */
+    public String getEntityTag(long accountNumber, long version, boolean binary) {
+        if (!binary) {
+            Entry entry = slots[slotIndex(accountNumber)];
+            if (entry != null && entry.accountNumber == accountNumber && entry.version == version) {
+                return entry.entityTag;
+            }
+        }
+        return "\"" + epoch + '-' + version + (binary ? "-b\"" : "\"");
+    }
+
+    /**
+     * Returns the cached JSON representation of the account at the given version, or encodes and caches it. An
+     * account changed after its version was read is encoded with the change, a representation newer than its version
+     * until the version catches up right after.
+     *
+     * @param account   the account
+     * @param version   the version of the account, read before the account is encoded
+     * @param entityTag the entity tag of the representation, from {@link #getEntityTag(long, long, boolean)}
+     * @return the JSON representation, to be written but not modified
+     */
+    public Buffer getJson(Account account, long version, String entityTag) {
+        long accountNumber = account.getAccountNumber();
+        int slotIndex = slotIndex(accountNumber);
+        Entry entry = slots[slotIndex];
+        if (entry != null && entry.accountNumber == accountNumber && entry.version == version) {
+            hits.increment();
+            return entry.json;
+        }
+        misses.increment();
+        Buffer json = JsonCodec.encodeAccount(account);
+        slots[slotIndex] = new Entry(accountNumber, version, entityTag, json);
+        return json;
+    }
+
+    private int slotIndex(long accountNumber) {
+        int hash = Long.hashCode(accountNumber * 0x9E3779B97F4A7C15L);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static final class Entry {
+
+        private final long accountNumber;
+
+        private final long version;
+
+        private final String entityTag;
+
+        private final Buffer json;
+
+        private Entry(long accountNumber, long version, String entityTag, Buffer json) {
+            this.accountNumber = accountNumber;
+            this.version = version;
+            this.entityTag = entityTag;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package test.adanielssr.simple.money.transfer.api.codec;
+
+import java.util.Date;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
+
+/**
+ * Fixed layout binary encoding of accounts and transfers, the {@value #CONTENT_TYPE} content type.
+ * <p>
+ * Every field is at a fixed offset, big endian, and amounts are longs of minor units of the currency scale of the
+ * service, so decoding reads primitives straight from the request body and encoding writes them into a buffer of
+ * the exact size. Encoded buffers are plain heap buffers: Vert.x 3.0 wraps any buffer it is given as unreleasable, so
+ * one taken from the Netty pool would never go back to it.
+ * <ul>
+ * <li>account request, {@value #ACCOUNT_REQUEST_LENGTH} bytes: flags (bit 0 set if an account number is given),
+ * account number, balance</li>
+ * <li>account, {@value #ACCOUNT_LENGTH} bytes: account number, balance, currency scale</li>
+ * <li>transfer request, {@value #TRANSFER_REQUEST_LENGTH} bytes: account number to, amount</li>
+ * <li>transfer, {@value #TRANSFER_LENGTH} bytes: transfer number, account number from, account number to, amount,
+ * timestamp in epoch milliseconds, status (0 registered, 1 performed)</li>
+ * </ul>
+ */
+public final class BinaryCodec {
+
+    public static final String CONTENT_TYPE = "application/x-money-transfer";
+
+    public static final int ACCOUNT_REQUEST_LENGTH = 17;
+
+    public static final int ACCOUNT_LENGTH = 17;
+
+    public static final int TRANSFER_REQUEST_LENGTH = 16;
+
+    public static final int TRANSFER_LENGTH = 41;
+
+    private static final byte HAS_ACCOUNT_NUMBER = 1;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * @param mediaTypes the value of a content type or accept header, may be null
+     * @return whether the header names the binary content type
+     */
+    public static boolean isBinary(String mediaTypes) {
+        return mediaTypes != null && mediaTypes.contains(CONTENT_TYPE);
+    }
+
+    public static Account decodeAccount(Buffer body, CurrencyScale currencyScale) {
+        checkLength(body, ACCOUNT_REQUEST_LENGTH, "account");
+        Account account = new Account();
+        account.setCurrencyScale(currencyScale);
+        if ((body.getByte(0) & HAS_ACCOUNT_NUMBER) != 0) {
+            account.setAccountNumber(body.getLong(1));
+        }
+        account.setBalanceInMinorUnits(body.getLong(9));
+        return account;
+    }
+
+    public static Buffer encodeAccount(Account account) {
+        return allocate(ACCOUNT_LENGTH).appendLong(account.getAccountNumber())
+                .appendLong(account.getBalanceInMinorUnits())
+                .appendByte((byte) account.getCurrencyScale().getScale());
+    }
+
+    /**
+     * Decodes a transfer request, its amount converted to the decimal amount of the transfer.
+     */
+    public static Transfer decodeTransfer(Buffer body, Long accountNumberFrom, CurrencyScale currencyScale) {
+        checkLength(body, TRANSFER_REQUEST_LENGTH, "transfer");
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(accountNumberFrom);
+        transfer.setAccountNumberTo(body.getLong(0));
+        transfer.setAmount(currencyScale.toMajorUnits(body.getLong(8)));
+        return transfer;
+    }
+
+    /**
+     * Encodes a created transfer, all its fields set.
+     */
+    public static Buffer encodeTransfer(Transfer transfer, CurrencyScale currencyScale) {
+        return allocate(TRANSFER_LENGTH).appendLong(transfer.getTransferNumber())
+                .appendLong(transfer.getAccountNumberFrom()).appendLong(transfer.getAccountNumberTo())
+                .appendLong(currencyScale.toMinorUnits(transfer.getAmount()))
+                .appendLong(transfer.getTransferTimestamp().getTime())
+                .appendByte((byte) (transfer.getStatus() == TransferStatus.PERFORMED ? 1 : 0));
+    }
+
+    /**
+     * Decodes an account encoded by {@link #encodeAccount(Account)}, e.g. by a client.
+     */
+    public static Account decodeAccountResponse(Buffer body) {
+        checkLength(body, ACCOUNT_LENGTH, "account");
+        Account account = new Account();
+        account.setCurrencyScale(CurrencyScale.of(body.getByte(16)));
+        account.setAccountNumber(body.getLong(0));
+        account.setBalanceInMinorUnits(body.getLong(8));
+        return account;
+    }
+
+    /**
+     * Decodes a transfer encoded by {@link #encodeTransfer(Transfer, CurrencyScale)}, e.g. by a client.
+     */
+    public static Transfer decodeTransferResponse(Buffer body, CurrencyScale currencyScale) {
+        checkLength(body, TRANSFER_LENGTH, "transfer");
+        Transfer transfer = new Transfer();
+        transfer.setTransferNumber(body.getLong(0));
+        transfer.setAccountNumberFrom(body.getLong(8));
+        transfer.setAccountNumberTo(body.getLong(16));
+        transfer.setAmount(currencyScale.toMajorUnits(body.getLong(24)));
+        transfer.setTransferTimestamp(new Date(body.getLong(32)));
+        transfer.setStatus(body.getByte(40) == 1 ? TransferStatus.PERFORMED : TransferStatus.REGISTERED);
+        return transfer;
+    }
+
+    private static Buffer allocate(int length) {
+        return Buffer.buffer(length);
+    }
+
+    private static void checkLength(Buffer body, int length, String type) {
+        if (body == null || body.length() != length) {
+            throw new DecodeException("Failed to decode: a binary " + type + " is " + length + " bytes long");
+        }
+    }
+}
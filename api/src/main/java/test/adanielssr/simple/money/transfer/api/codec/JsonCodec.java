@@ -0,0 +1,647 @@
+package test.adanielssr.simple.money.transfer.api.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+
+/**
+ * Streaming JSON codec of accounts and transfers, copying the request body bytes into a per thread array to read them
+ * there and writing the response into another, so neither goes through Strings, boxed numbers or reflection.
+ * <p>
+ * The documents read and written are the ones of the Jackson mapping of the domain model, except that:
+ * <ul>
+ * <li>the transfer number, timestamp and status of a transfer request are skipped, the service assigns them</li>
+ * <li>amounts are written with the decimal places of the currency scale, e.g. {@code 10.00} instead of
+ * {@code 10.0}, and responses are not pretty printed</li>
+ * </ul>
+ * Like the Jackson mapping, unknown fields are refused, numbers may be quoted and a missing or null field is left
+ * unset. Anything malformed throws a {@link DecodeException}.
+ */
+public final class JsonCodec {
+
+    private static final byte[] ACCOUNT_NUMBER = ascii("accountNumber");
+
+    private static final byte[] BALANCE = ascii("balance");
+
+    private static final byte[] TRANSFER_NUMBER = ascii("transferNumber");
+
+    private static final byte[] ACCOUNT_NUMBER_FROM = ascii("accountNumberFrom");
+
+    private static final byte[] ACCOUNT_NUMBER_TO = ascii("accountNumberTo");
+
+    private static final byte[] AMOUNT = ascii("amount");
+
+    private static final byte[] TRANSFER_TIMESTAMP = ascii("transferTimestamp");
+
+    private static final byte[] STATUS = ascii("status");
+
+    private static final byte[][] ACCOUNT_FIELDS = { ACCOUNT_NUMBER, BALANCE };
+
+    private static final byte[][] TRANSFER_FIELDS = { TRANSFER_NUMBER, ACCOUNT_NUMBER_FROM, ACCOUNT_NUMBER_TO, AMOUNT,
+            TRANSFER_TIMESTAMP, STATUS };
+
+    private static final byte[] NULL = ascii("null");
+
+    private static final byte[] TRUE = ascii("true");
+
+    private static final byte[] FALSE = ascii("false");
+
+    private static final byte[] LONG_MIN_VALUE = ascii(Long.toString(Long.MIN_VALUE));
+
+    /**
+     * Powers of ten exactly representable as doubles, for the correctly rounded fast path of number parsing.
+     */
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[23];
+
+    private static final long[] LONG_POWERS_OF_TEN = new long[19];
+
+    /**
+     * Largest integer every smaller integer of which is exactly representable as a double.
+     */
+    private static final long MAX_EXACT_DOUBLE_INTEGER = 1L << 53;
+
+    private static final ThreadLocal<Reader> READER = ThreadLocal.withInitial(Reader::new);
+
+    private static final ThreadLocal<Writer> WRITER = ThreadLocal.withInitial(Writer::new);
+
+    static {
+        DOUBLE_POWERS_OF_TEN[0] = 1.0D;
+        for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; i++) {
+            DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10.0D;
+        }
+        LONG_POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < LONG_POWERS_OF_TEN.length; i++) {
+            LONG_POWERS_OF_TEN[i] = LONG_POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Decodes an account, its balance converted to minor units of the given currency scale.
+     */
+    public static Account decodeAccount(Buffer body, CurrencyScale currencyScale) {
+        Account account = new Account();
+        account.setCurrencyScale(currencyScale);
+
+        Reader reader = READER.get().reset(body);
+        try {
+            reader.startObject();
+            for (int field = reader.nextField(ACCOUNT_FIELDS); field != Reader.END; field = reader.nextField(
+                    ACCOUNT_FIELDS)) {
+                if (reader.consumeNull()) {
+                    continue;
+                }
+                if (field == 0) {
+                    account.setAccountNumber(reader.readLong());
+                } else {
+                    account.setBalanceInMinorUnits(toMinorUnits(currencyScale, reader.readDouble()));
+                }
+            }
+        } finally {
+            reader.finish();
+        }
+        return account;
+    }
+
+    /**
+     * Decodes a transfer request: its account numbers and amount.
+     */
+    public static Transfer decodeTransfer(Buffer body) {
+        Transfer transfer = new Transfer();
+
+        Reader reader = READER.get().reset(body);
+        try {
+            reader.startObject();
+            for (int field = reader.nextField(TRANSFER_FIELDS); field != Reader.END; field = reader.nextField(
+                    TRANSFER_FIELDS)) {
+                if (reader.consumeNull()) {
+                    continue;
+                }
+                switch (field) {
+                case 1:
+                    transfer.setAccountNumberFrom(reader.readLong());
+                    break;
+                case 2:
+                    transfer.setAccountNumberTo(reader.readLong());
+                    break;
+                case 3:
+                    transfer.setAmount(reader.readDouble());
+                    break;
+                default:
+                    reader.skipValue();
+                }
+            }
+        } finally {
+            reader.finish();
+        }
+        return transfer;
+    }
+
+    /**
+     * Encodes an account into a buffer of the exact size.
+     */
+    public static Buffer encodeAccount(Account account) {
+        return WRITER.get().reset().account(account).toBuffer();
+    }
+
+    /**
+     * Appends an encoded account to a buffer, e.g. a chunk of a streamed account list.
+     */
+    public static Buffer appendAccount(Buffer buffer, Account account) {
+        return WRITER.get().reset().account(account).appendTo(buffer);
+    }
+
+    /**
+     * Encodes a transfer into a buffer of the exact size.
+     *
+     * @param currencyScale the currency scale the amount is written with
+     */
+    public static Buffer encodeTransfer(Transfer transfer, CurrencyScale currencyScale) {
+        return WRITER.get().reset().transfer(transfer, currencyScale).toBuffer();
+    }
+
+    private static long toMinorUnits(CurrencyScale currencyScale, double amount) {
+        try {
+            return currencyScale.toMinorUnits(amount);
+        } catch (ArithmeticException e) {
+            throw new DecodeException("Failed to decode: " + e.getMessage());
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Cursor over the bytes of one document, reused by the decodes of a thread.
+     */
+    private static final class Reader {
+
+        private static final int END = -1;
+
+        private static final int MAX_RETAINED_LENGTH = 4096;
+
+        private byte[] body = new byte[256];
+
+        private int position;
+
+        private int length;
+
+        private boolean firstField;
+
+        private Reader reset(Buffer document) {
+            if (document == null) {
+                throw new DecodeException("Failed to decode: no content");
+            }
+            position = 0;
+            length = document.length();
+            if (body.length < length) {
+                body = new byte[Integer.highestOneBit(length) << 1];
+            }
+            document.getByteBuf().getBytes(0, body, 0, length);
+            return this;
+        }
+
+        /**
+         * Lets go of a body array grown past the usual document size once the document is read.
+         */
+        private void finish() {
+            if (body.length > MAX_RETAINED_LENGTH) {
+                body = new byte[256];
+            }
+        }
+
+        private void startObject() {
+            skipWhitespace();
+            expect('{');
+            firstField = true;
+        }
+
+        /**
+         * Moves to the value of the next field of the object.
+         *
+         * @return the index of the field name in the known names, or {@link #END} at the end of the object
+         */
+        private int nextField(byte[][] names) {
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return END;
+            }
+            if (!firstField) {
+                expect(',');
+                skipWhitespace();
+                if (peek() == '}') {
+                    throw error("field expected after ','");
+                }
+            }
+            firstField = false;
+
+            expect('"');
+            int nameStart = position;
+            while (peek() != '"') {
+                if (body[position] == '\\') {
+                    throw error("escaped field names are not supported");
+                }
+                position++;
+            }
+            int field = matchName(names, nameStart, position - nameStart);
+            position++;
+            if (field == END) {
+                throw error("unrecognized field");
+            }
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            return field;
+        }
+
+        private int matchName(byte[][] names, int start, int nameLength) {
+            for (int i = 0; i < names.length; i++) {
+                byte[] name = names[i];
+                if (name.length != nameLength) {
+                    continue;
+                }
+                int j = 0;
+                while (j < nameLength && body[start + j] == name[j]) {
+                    j++;
+                }
+                if (j == nameLength) {
+                    return i;
+                }
+            }
+            return END;
+        }
+
+        private boolean consumeNull() {
+            if (matches(NULL)) {
+                position += NULL.length;
+                return true;
+            }
+            return false;
+        }
+
+        private long readLong() {
+            boolean quoted = consumeQuote();
+            boolean negative = peek() == '-';
+            if (negative) {
+                position++;
+            }
+            int digitsStart = position;
+            long value = 0L;
+            while (position < length && isDigit(body[position])) {
+                int digit = body[position++] - '0';
+                // accumulated negatively, so the most negative long can be read
+                if (value < (Long.MIN_VALUE + digit) / 10) {
+                    throw error("number does not fit in a long");
+                }
+                value = value * 10L - digit;
+            }
+            if (position == digitsStart) {
+                throw error("number expected");
+            }
+            if (!negative && value == Long.MIN_VALUE) {
+                throw error("number does not fit in a long");
+            }
+            closeQuote(quoted);
+            return negative ? value : -value;
+        }
+
+        /**
+         * Reads a number, correctly rounded while its digits fit in a long below 2^53 and its exponent is small,
+         * which covers amounts; other numbers are handed to {@link Double#parseDouble(String)}.
+         */
+        private double readDouble() {
+            boolean quoted = consumeQuote();
+            int start = position;
+            boolean negative = peek() == '-';
+            if (negative) {
+                position++;
+            }
+
+            long mantissa = 0L;
+            int exponent = 0;
+            boolean exact = true;
+            int integerStart = position;
+            while (position < length && isDigit(body[position])) {
+                if (mantissa < MAX_EXACT_DOUBLE_INTEGER / 10) {
+                    mantissa = mantissa * 10L + (body[position] - '0');
+                } else {
+                    exact = false;
+                }
+                position++;
+            }
+            if (position == integerStart) {
+                throw error("number expected");
+            }
+            if (position < length && body[position] == '.') {
+                position++;
+                int fractionStart = position;
+                while (position < length && isDigit(body[position])) {
+                    if (mantissa < MAX_EXACT_DOUBLE_INTEGER / 10) {
+                        mantissa = mantissa * 10L + (body[position] - '0');
+                        exponent--;
+                    } else if (body[position] != '0') {
+                        exact = false;
+                    }
+                    position++;
+                }
+                if (position == fractionStart) {
+                    throw error("digits expected after the decimal point");
+                }
+            }
+            if (position < length && (body[position] == 'e' || body[position] == 'E')) {
+                position++;
+                boolean negativeExponent = peek() == '-';
+                if (negativeExponent || peek() == '+') {
+                    position++;
+                }
+                int exponentStart = position;
+                int explicitExponent = 0;
+                while (position < length && isDigit(body[position])) {
+                    explicitExponent = Math.min(explicitExponent * 10 + (body[position++] - '0'), 10000);
+                }
+                if (position == exponentStart) {
+                    throw error("digits expected in the exponent");
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+            int end = position;
+            closeQuote(quoted);
+
+            double value;
+            if (exact && exponent >= -22 && exponent <= 22) {
+                value = exponent < 0 ? mantissa / DOUBLE_POWERS_OF_TEN[-exponent] :
+                        mantissa * DOUBLE_POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+            return Double.parseDouble(new String(body, start, end - start, StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * Skips a value of any type.
+         */
+        private void skipValue() {
+            byte next = peek();
+            if (next == '"') {
+                skipString();
+            } else if (next == '{' || next == '[') {
+                int depth = 0;
+                do {
+                    byte current = peek();
+                    if (current == '"') {
+                        skipString();
+                        continue;
+                    }
+                    if (current == '{' || current == '[') {
+                        depth++;
+                    } else if (current == '}' || current == ']') {
+                        depth--;
+                    }
+                    position++;
+                } while (depth > 0);
+            } else if (matches(TRUE)) {
+                position += TRUE.length;
+            } else if (matches(FALSE)) {
+                position += FALSE.length;
+            } else {
+                readDouble();
+            }
+        }
+
+        private void skipString() {
+            expect('"');
+            while (peek() != '"') {
+                if (body[position] == '\\') {
+                    position++;
+                }
+                position++;
+            }
+            position++;
+        }
+
+        private boolean consumeQuote() {
+            if (peek() == '"') {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void closeQuote(boolean quoted) {
+            if (quoted) {
+                expect('"');
+            }
+        }
+
+        private boolean matches(byte[] literal) {
+            if (position + literal.length > length) {
+                return false;
+            }
+            for (int i = 0; i < literal.length; i++) {
+                if (body[position + i] != literal[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skipWhitespace() {
+            while (position < length) {
+                byte current = body[position];
+                if (current != ' ' && current != '\n' && current != '\r' && current != '\t') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        private byte peek() {
+            if (position >= length) {
+                throw error("unexpected end of content");
+            }
+            return body[position];
+        }
+
+        private void expect(char expected) {
+            if (peek() != expected) {
+                throw error("'" + expected + "' expected");
+            }
+            position++;
+        }
+
+        private static boolean isDigit(byte current) {
+            return current >= '0' && current <= '9';
+        }
+
+        private DecodeException error(String reason) {
+            return new DecodeException("Failed to decode: " + reason + " at offset " + position);
+        }
+    }
+
+    /**
+     * Growable scratch array the documents of a thread are written into before being copied out.
+     */
+    private static final class Writer {
+
+        private byte[] bytes = new byte[256];
+
+        private int length;
+
+        private Writer reset() {
+            length = 0;
+            return this;
+        }
+
+        private Writer account(Account account) {
+            write('{');
+            name(ACCOUNT_NUMBER);
+            nullableLong(account.getAccountNumber());
+            write(',');
+            name(BALANCE);
+            decimal(account.getBalanceInMinorUnits(), account.getCurrencyScale().getScale());
+            write('}');
+            return this;
+        }
+
+        private Writer transfer(Transfer transfer, CurrencyScale currencyScale) {
+            write('{');
+            name(TRANSFER_NUMBER);
+            nullableLong(transfer.getTransferNumber());
+            write(',');
+            name(ACCOUNT_NUMBER_FROM);
+            nullableLong(transfer.getAccountNumberFrom());
+            write(',');
+            name(ACCOUNT_NUMBER_TO);
+            nullableLong(transfer.getAccountNumberTo());
+            write(',');
+            name(AMOUNT);
+            if (transfer.getAmount() == null) {
+                raw(NULL);
+            } else {
+                decimal(toMinorUnits(currencyScale, transfer.getAmount()), currencyScale.getScale());
+            }
+            write(',');
+            name(TRANSFER_TIMESTAMP);
+            if (transfer.getTransferTimestamp() == null) {
+                raw(NULL);
+            } else {
+                longValue(transfer.getTransferTimestamp().getTime());
+            }
+            write(',');
+            name(STATUS);
+            if (transfer.getStatus() == null) {
+                raw(NULL);
+            } else {
+                write('"');
+                // enum names are ASCII and interned, no copy is made
+                String status = transfer.getStatus().name();
+                ensureCapacity(status.length());
+                for (int i = 0; i < status.length(); i++) {
+                    bytes[length++] = (byte) status.charAt(i);
+                }
+                write('"');
+            }
+            write('}');
+            return this;
+        }
+
+        private Buffer toBuffer() {
+            // a Vert.x 3.0 buffer never releases the Netty buffer it wraps, so it cannot come from the pool
+            return Buffer.buffer(length).appendBytes(bytes, 0, length);
+        }
+
+        private Buffer appendTo(Buffer buffer) {
+            return buffer.appendBytes(bytes, 0, length);
+        }
+
+        private void name(byte[] name) {
+            write('"');
+            raw(name);
+            write('"');
+            write(':');
+        }
+
+        private void nullableLong(Long value) {
+            if (value == null) {
+                raw(NULL);
+            } else {
+                longValue(value);
+            }
+        }
+
+        private void longValue(long value) {
+            if (value == Long.MIN_VALUE) {
+                raw(LONG_MIN_VALUE);
+                return;
+            }
+            if (value < 0L) {
+                write('-');
+                value = -value;
+            }
+            digits(value, 1);
+        }
+
+        /**
+         * Writes an amount of minor units as a decimal number with the given number of decimal places.
+         */
+        private void decimal(long minorUnits, int scale) {
+            if (scale == 0) {
+                longValue(minorUnits);
+                return;
+            }
+            long factor = LONG_POWERS_OF_TEN[scale];
+            long integerPart = minorUnits / factor;
+            long fractionPart = minorUnits % factor;
+            if (minorUnits < 0L) {
+                write('-');
+                integerPart = -integerPart;
+                fractionPart = -fractionPart;
+            }
+            digits(integerPart, 1);
+            write('.');
+            digits(fractionPart, scale);
+        }
+
+        /**
+         * Writes a non negative number with at least the given number of digits, left padded with zeros.
+         */
+        private void digits(long value, int minDigits) {
+            int digitCount = 1;
+            while (digitCount < LONG_POWERS_OF_TEN.length && value >= LONG_POWERS_OF_TEN[digitCount]) {
+                digitCount++;
+            }
+            digitCount = Math.max(digitCount, minDigits);
+            ensureCapacity(digitCount);
+            for (int i = length + digitCount - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + value % 10L);
+                value /= 10L;
+            }
+            length += digitCount;
+        }
+
+        private void raw(byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+        }
+
+        private void write(char value) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+}
@@ -1,64 +1,203 @@
 package test.adanielssr.simple.money.transfer.api.controller;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.Json;
 import io.vertx.ext.web.RoutingContext;
+import test.adanielssr.simple.money.transfer.api.ServiceExecutor;
+import test.adanielssr.simple.money.transfer.api.codec.AccountRepresentationCache;
+import test.adanielssr.simple.money.transfer.api.codec.BinaryCodec;
+import test.adanielssr.simple.money.transfer.api.codec.JsonCodec;
 import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.business.service.TransferResult;
 import test.adanielssr.simple.money.transfer.business.service.TransferService;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountAlreadyExistsException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.NotEnoughBalanceException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.TransferNotFoundException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.TransferValidationException;
 import test.adanielssr.simple.money.transfer.domain.model.Account;
 import test.adanielssr.simple.money.transfer.domain.model.Transfer;
 
 /**
  * Created by arodrigues on 13/08/2017.
+ * <p>
+ * The service calls of every handler, and the encoding of their results, run on the {@link ServiceExecutor}; the
+ * response is written back on the event loop of the request.
+ * <p>
+ * Single accounts and transfers are read and written with the {@link JsonCodec}, or in the {@link BinaryCodec}
+ * format when the request has its content type and accepts it; errors are always JSON.
+ * <p>
+ * Single accounts are served with an {@code ETag} derived from their version and their JSON representation is kept
+ * in the {@link AccountRepresentationCache}; a request whose {@code If-None-Match} matches the current version is
+ * answered with a not modified status without encoding the account.
  */
 public class AccountController {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /**
+     * Header of a transfer creation request making its retries perform the transfer only once.
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    public static final int MAX_ACCOUNTS_PAGE_SIZE = 10000;
+
+    public static final int MAX_TRANSFERS_PER_BATCH = 10000;
+
+    /**
+     * Accounts encoded into one chunk of a streamed account list before yielding the event loop.
+     */
+    private static final int ACCOUNTS_PER_CHUNK = 256;
+
+    /**
+     * Transfers of a batch performed, and their results encoded, in one service call before yielding the event loop.
+     */
+    private static final int TRANSFERS_PER_CHUNK = 256;
+
+    private static final int DEFAULT_ACCOUNT_CACHE_CAPACITY = 4096;
+
+    private static final Comparator<Account> BY_ACCOUNT_NUMBER = Comparator.comparing(Account::getAccountNumber);
+
+    private static final TypeReference<List<Transfer>> TRANSFER_LIST_TYPE = new TypeReference<List<Transfer>>() {
+    };
+
     private final AccountService accountService;
 
     private final TransferService transferService;
 
+    private final ServiceExecutor serviceExecutor;
+
+    private final AccountRepresentationCache accountRepresentationCache;
+
     public AccountController(AccountService accountService, TransferService transferService) {
+        this(accountService, transferService, ServiceExecutor.eventLoop());
+    }
+
+    public AccountController(AccountService accountService, TransferService transferService,
+            ServiceExecutor serviceExecutor) {
+        this(accountService, transferService, serviceExecutor,
+                new AccountRepresentationCache(DEFAULT_ACCOUNT_CACHE_CAPACITY, new LongAdder(), new LongAdder()));
+    }
+
+    public AccountController(AccountService accountService, TransferService transferService,
+            ServiceExecutor serviceExecutor, AccountRepresentationCache accountRepresentationCache) {
         this.accountService = accountService;
         this.transferService = transferService;
+        this.serviceExecutor = serviceExecutor;
+        this.accountRepresentationCache = accountRepresentationCache;
     }
 
+    /**
+     * Streams the accounts as a compact JSON array, in chunks, pausing while the response write queue is full.
+     * <p>
+     * Without parameters every account is streamed, in no particular order. With a {@code limit} and/or an
+     * {@code after} account number, at most {@code limit} accounts numbered after {@code after} are streamed in
+     * account number order; the last account number of a page is the {@code after} of the next one.
+     */
     public void getAllAccounts(RoutingContext routingContext) {
-        createJsonHttpResponse(routingContext).end(Json.encodePrettily(accountService.getAllAccounts()));
+        HttpServerResponse jsonHttpResponse = createJsonHttpResponse(routingContext);
+
+        String afterParam = routingContext.request().getParam("after");
+        String limitParam = routingContext.request().getParam("limit");
+        Supplier<Iterator<Account>> accounts;
+        if (afterParam == null && limitParam == null) {
+            accounts = () -> accountService.getAllAccounts().iterator();
+        } else {
+            Long after = afterParam == null ? Long.valueOf(Long.MIN_VALUE) :
+                    retrieveAndValidateLongParam(routingContext, jsonHttpResponse, "after");
+            if (after == null) {
+                return;
+            }
+            Long limit = limitParam == null ? Long.valueOf(DEFAULT_PAGE_SIZE) :
+                    retrieveAndValidateLongParam(routingContext, jsonHttpResponse, "limit");
+            if (limit == null) {
+                return;
+            }
+            if (limit < 1 || limit > MAX_ACCOUNTS_PAGE_SIZE) {
+                jsonHttpResponse.setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                        .end(createJsonError("limit must be between 1 and " + MAX_ACCOUNTS_PAGE_SIZE));
+                return;
+            }
+            int pageSize = limit.intValue();
+            accounts = () -> selectAccountsPage(after, pageSize).iterator();
+        }
+
+        execute(routingContext, jsonHttpResponse, accounts, accountsIterator -> {
+            jsonHttpResponse.setChunked(true);
+            boolean[] closed = { false };
+            jsonHttpResponse.closeHandler(aVoid -> closed[0] = true);
+            streamAccounts(routingContext, jsonHttpResponse, accountsIterator, true, closed);
+        });
     }
 
     public void createAccount(RoutingContext routingContext) {
         HttpServerResponse jsonHttpResponse = createJsonHttpResponse(routingContext);
-        try {
-            jsonHttpResponse.setStatusCode(HttpResponseStatus.CREATED.code()).end(Json.encodePrettily(
-                    accountService.createAccount(Json.decodeValue(routingContext.getBodyAsString(), Account.class))));
-        } catch (AccountAlreadyExistsException e) {
-            jsonHttpResponse.setStatusCode(HttpResponseStatus.CONFLICT.code()).end(createJsonError(e.getMessage()));
-        } catch (SimpleMoneyTransferException e) {
-            jsonHttpResponse.setStatusCode(HttpResponseStatus.INTERNAL_SERVER_ERROR.code())
-                    .end(createJsonError(e.getMessage()));
-        }
+        Buffer body = routingContext.getBody();
+        boolean binaryRequest = BinaryCodec.isBinary(routingContext.request().getHeader("content-type"));
+        boolean binaryResponse = BinaryCodec.isBinary(routingContext.request().getHeader("accept"));
+        respond(routingContext, jsonHttpResponse, () -> {
+            try {
+                Account account = accountService.createAccount(binaryRequest ?
+                        BinaryCodec.decodeAccount(body, accountService.getCurrencyScale()) :
+                        JsonCodec.decodeAccount(body, accountService.getCurrencyScale()));
+                return encodeAccount(HttpResponseStatus.CREATED, account, binaryResponse);
+            } catch (AccountAlreadyExistsException e) {
+                return new Reply(HttpResponseStatus.CONFLICT, createJsonError(e.getMessage()));
+            } catch (SimpleMoneyTransferException e) {
+                return new Reply(HttpResponseStatus.INTERNAL_SERVER_ERROR, createJsonError(e.getMessage()));
+            }
+        });
     }
 
+    /**
+     * Returns an account with the {@code ETag} of its current version, or only a not modified status if the
+     * {@code If-None-Match} header of the request matches it.
+     */
     public void getAccountByNumber(RoutingContext routingContext) {
         HttpServerResponse jsonHttpResponse = createJsonHttpResponse(routingContext);
 
         Long accountNumber = retrieveAndValidateAccountNumber(routingContext, jsonHttpResponse);
         if (accountNumber != null) {
-            try {
-                jsonHttpResponse.end(Json.encodePrettily(accountService.getAccountByNumber(accountNumber)));
-            } catch (AccountNotFoundException e) {
-                jsonHttpResponse.setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                        .end(createJsonError(e.getMessage()));
-            } catch (SimpleMoneyTransferException e) {
-                jsonHttpResponse.setStatusCode(HttpResponseStatus.INTERNAL_SERVER_ERROR.code())
-                        .end(createJsonError(e.getMessage()));
-            }
+            boolean binaryResponse = BinaryCodec.isBinary(routingContext.request().getHeader("accept"));
+            String ifNoneMatch = routingContext.request().getHeader("if-none-match");
+            respond(routingContext, jsonHttpResponse, () -> {
+                try {
+                    Account account = accountService.getAccountByNumber(accountNumber);
+                    // read once, before the balance is encoded, so the tag is never newer than the representation
+                    long version = account.getVersion();
+                    String entityTag = accountRepresentationCache.getEntityTag(accountNumber, version, binaryResponse);
+                    if (AccountRepresentationCache.matches(ifNoneMatch, entityTag)) {
+                        return new Reply(HttpResponseStatus.NOT_MODIFIED, "").withEntityTag(entityTag);
+                    }
+                    Reply reply = binaryResponse ? encodeAccount(HttpResponseStatus.OK, account, true) :
+                            new Reply(HttpResponseStatus.OK,
+                                    accountRepresentationCache.getJson(account, version, entityTag), null);
+                    return reply.withEntityTag(entityTag);
+                } catch (AccountNotFoundException e) {
+                    return new Reply(HttpResponseStatus.NOT_FOUND, createJsonError(e.getMessage()));
+                } catch (SimpleMoneyTransferException e) {
+                    return new Reply(HttpResponseStatus.INTERNAL_SERVER_ERROR, createJsonError(e.getMessage()));
+                }
+            });
         }
     }
 
@@ -67,25 +206,414 @@ public class AccountController {
 
         Long accountNumber = retrieveAndValidateAccountNumber(routingContext, jsonHttpResponse);
         if (accountNumber != null) {
-            Transfer transfer = Json.decodeValue(routingContext.getBodyAsString(), Transfer.class);
-            transfer.setAccountNumberFrom(accountNumber);
+            Buffer body = routingContext.getBody();
+            boolean binaryRequest = BinaryCodec.isBinary(routingContext.request().getHeader("content-type"));
+            boolean binaryResponse = BinaryCodec.isBinary(routingContext.request().getHeader("accept"));
+            String idempotencyKey = routingContext.request().getHeader(IDEMPOTENCY_KEY);
+            respond(routingContext, jsonHttpResponse, () -> {
+                Transfer transfer;
+                if (binaryRequest) {
+                    transfer = BinaryCodec.decodeTransfer(body, accountNumber, accountService.getCurrencyScale());
+                } else {
+                    transfer = JsonCodec.decodeTransfer(body);
+                    transfer.setAccountNumberFrom(accountNumber);
+                }
+
+                try {
+                    TransferResult result = transferService.tryCreateAndPerformTransfer(idempotencyKey, transfer);
+                    if (result.isPerformed()) {
+                        return encodeTransfer(HttpResponseStatus.CREATED, result.getTransfer(), binaryResponse);
+                    } else {
+                        return new Reply(transferOutcomeStatus(result.getOutcome()),
+                                createJsonError(result.getError().getMessage()));
+                    }
+                } catch (SimpleMoneyTransferException e) {
+                    return new Reply(transferErrorStatus(e), createJsonError(e.getMessage()));
+                }
+            });
+        }
+    }
 
+    public void getTransferByNumber(RoutingContext routingContext) {
+        HttpServerResponse jsonHttpResponse = createJsonHttpResponse(routingContext);
+
+        Long transferNumber = retrieveAndValidateLongParam(routingContext, jsonHttpResponse, "transferNumber");
+        if (transferNumber != null) {
+            boolean binaryResponse = BinaryCodec.isBinary(routingContext.request().getHeader("accept"));
+            respond(routingContext, jsonHttpResponse, () -> {
+                try {
+                    return encodeTransfer(HttpResponseStatus.OK, transferService.getTransferByNumber(transferNumber),
+                            binaryResponse);
+                } catch (TransferNotFoundException e) {
+                    return new Reply(HttpResponseStatus.NOT_FOUND, createJsonError(e.getMessage()));
+                } catch (SimpleMoneyTransferException e) {
+                    return new Reply(HttpResponseStatus.INTERNAL_SERVER_ERROR, createJsonError(e.getMessage()));
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns a page of the transfers from or to an account, in the order they were created. Without a
+     * {@code since} parameter the latest transfers are returned; the {@code next} field of the page is the
+     * {@code since} to read the following page with.
+     */
+    public void getAccountTransfers(RoutingContext routingContext) {
+        HttpServerResponse jsonHttpResponse = createJsonHttpResponse(routingContext);
+
+        Long accountNumber = retrieveAndValidateAccountNumber(routingContext, jsonHttpResponse);
+        if (accountNumber == null) {
+            return;
+        }
+        String sinceParam = routingContext.request().getParam("since");
+        Long since = sinceParam == null ? null :
+                retrieveAndValidateLongParam(routingContext, jsonHttpResponse, "since");
+        if (sinceParam != null && since == null) {
+            return;
+        }
+        String limitParam = routingContext.request().getParam("limit");
+        Long limit = limitParam == null ? Long.valueOf(DEFAULT_PAGE_SIZE) :
+                retrieveAndValidateLongParam(routingContext, jsonHttpResponse, "limit");
+        if (limit == null) {
+            return;
+        }
+        if (limit < 1 || limit > TransferService.MAX_PAGE_SIZE) {
+            jsonHttpResponse.setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                    .end(createJsonError("limit must be between 1 and " + TransferService.MAX_PAGE_SIZE));
+            return;
+        }
+
+        int pageSize = limit.intValue();
+        respond(routingContext, jsonHttpResponse, () -> {
             try {
-                jsonHttpResponse.setStatusCode(HttpResponseStatus.CREATED.code())
-                        .end(Json.encodePrettily(transferService.createAndPerformTransfer(transfer)));
+                return new Reply(HttpResponseStatus.OK,
+                        Json.encodePrettily(transferService.getAccountTransfers(accountNumber, since, pageSize)));
             } catch (AccountNotFoundException e) {
-                jsonHttpResponse.setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                        .end(createJsonError(e.getMessage()));
-            } catch (NotEnoughBalanceException e) {
-                jsonHttpResponse.setStatusCode(HttpResponseStatus.CONFLICT.code()).end(createJsonError(e.getMessage()));
-            } catch (TransferValidationException e) {
-                jsonHttpResponse.setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
-                        .end(createJsonError(e.getMessage()));
+                return new Reply(HttpResponseStatus.NOT_FOUND, createJsonError(e.getMessage()));
             } catch (SimpleMoneyTransferException e) {
-                jsonHttpResponse.setStatusCode(HttpResponseStatus.INTERNAL_SERVER_ERROR.code())
-                        .end(createJsonError(e.getMessage()));
+                return new Reply(HttpResponseStatus.INTERNAL_SERVER_ERROR, createJsonError(e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Performs a batch of at most {@value #MAX_TRANSFERS_PER_BATCH} transfers given either as a JSON array or, with a
+     * {@value #APPLICATION_NDJSON} content type, as one JSON transfer per line. The results are written in the same
+     * format as the request, carrying the http status the single transfer request would have, a chunk at a time,
+     * pausing while the response write queue is full.
+     */
+    public void createTransfers(RoutingContext routingContext) {
+        String contentType = routingContext.request().getHeader("content-type");
+        boolean ndjson = contentType != null && contentType.startsWith(APPLICATION_NDJSON);
+
+        HttpServerResponse jsonHttpResponse = createJsonHttpResponse(routingContext);
+        Buffer body = routingContext.getBody();
+        execute(routingContext, jsonHttpResponse, () -> decodeTransfers(body, ndjson), transfers -> {
+            if (transfers == null) {
+                jsonHttpResponse.setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                        .end(createJsonError("Transfers could not be decoded"));
+                return;
+            }
+            if (transfers.size() > MAX_TRANSFERS_PER_BATCH) {
+                jsonHttpResponse.setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                        .end(createJsonError("A batch holds at most " + MAX_TRANSFERS_PER_BATCH + " transfers"));
+                return;
+            }
+            boolean[] closed = { false };
+            jsonHttpResponse.closeHandler(aVoid -> closed[0] = true);
+            streamTransferResults(routingContext, jsonHttpResponse, transfers, 0, ndjson, closed);
+        });
+    }
+
+    /**
+     * Runs the service call building the response on the {@link ServiceExecutor} and ends the response with it on
+     * the event loop. A call that throws fails the routing context, as it would have on the event loop.
+     */
+    private void respond(RoutingContext routingContext, HttpServerResponse jsonHttpResponse, Supplier<Reply> call) {
+        execute(routingContext, jsonHttpResponse, call, reply -> {
+            jsonHttpResponse.setStatusCode(reply.status.code());
+            if (reply.contentType != null) {
+                jsonHttpResponse.putHeader("content-type", reply.contentType);
+            }
+            if (reply.entityTag != null) {
+                jsonHttpResponse.putHeader("etag", reply.entityTag);
+            }
+            if (reply.bufferBody == null) {
+                jsonHttpResponse.end(reply.body);
+            } else {
+                jsonHttpResponse.end(reply.bufferBody);
+            }
+        });
+    }
+
+    /**
+     * Runs the service call on the {@link ServiceExecutor} and hands its result to the completion on the event loop,
+     * or answers with a service unavailable status right away if the executor is saturated.
+     */
+    private <T> void execute(RoutingContext routingContext, HttpServerResponse jsonHttpResponse, Supplier<T> call,
+            Consumer<T> completion) {
+        boolean accepted = serviceExecutor.execute(routingContext.vertx().getOrCreateContext(), call, result -> {
+            if (result.succeeded()) {
+                completion.accept(result.result());
+            } else {
+                routingContext.fail(result.cause());
+            }
+        });
+        if (!accepted) {
+            shed(jsonHttpResponse);
+        }
+    }
+
+    private void shed(HttpServerResponse jsonHttpResponse) {
+        jsonHttpResponse.setStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE.code())
+                .end(createJsonError("Too many requests in progress, try again later"));
+    }
+
+    /**
+     * Selects the {@code limit} lowest numbered accounts after the given account number, keeping only them in a
+     * bounded heap while scanning the accounts.
+     */
+    private List<Account> selectAccountsPage(long after, int limit) {
+        PriorityQueue<Account> highestFirst = new PriorityQueue<>(limit, BY_ACCOUNT_NUMBER.reversed());
+        for (Account account : accountService.getAllAccounts()) {
+            if (account.getAccountNumber() <= after) {
+                continue;
+            }
+            if (highestFirst.size() < limit) {
+                highestFirst.add(account);
+            } else if (account.getAccountNumber() < highestFirst.peek().getAccountNumber()) {
+                highestFirst.poll();
+                highestFirst.add(account);
+            }
+        }
+        List<Account> page = new ArrayList<>(highestFirst);
+        page.sort(BY_ACCOUNT_NUMBER);
+        return page;
+    }
+
+    /**
+     * Writes the next chunk of accounts, then continues on a later event loop turn, or once the response is
+     * drained if its write queue is full.
+     */
+    private void streamAccounts(RoutingContext routingContext, HttpServerResponse httpResponse,
+            Iterator<Account> accounts, boolean first, boolean[] closed) {
+        if (closed[0]) {
+            return;
+        }
+        Buffer chunk = Buffer.buffer(first ? "[" : "");
+        for (int i = 0; i < ACCOUNTS_PER_CHUNK && accounts.hasNext(); i++) {
+            if (!first || i > 0) {
+                chunk.appendString(",");
+            }
+            JsonCodec.appendAccount(chunk, accounts.next());
+        }
+
+        if (!accounts.hasNext()) {
+            httpResponse.end(chunk.appendString("]"));
+            return;
+        }
+        httpResponse.write(chunk);
+        if (httpResponse.writeQueueFull()) {
+            httpResponse.drainHandler(aVoid -> {
+                httpResponse.drainHandler(null);
+                streamAccounts(routingContext, httpResponse, accounts, false, closed);
+            });
+        } else {
+            routingContext.vertx()
+                    .runOnContext(aVoid -> streamAccounts(routingContext, httpResponse, accounts, false, closed));
+        }
+    }
+
+    /**
+     * Performs the next chunk of transfers of a batch on the {@link ServiceExecutor} and writes their results, then
+     * continues on a later event loop turn, or once the response is drained if its write queue is full. If the
+     * executor refuses a later chunk, its transfers and the following ones are answered with a service unavailable
+     * status without being performed.
+     */
+    private void streamTransferResults(RoutingContext routingContext, HttpServerResponse httpResponse,
+            List<Transfer> transfers, int from, boolean ndjson, boolean[] closed) {
+        if (closed[0]) {
+            return;
+        }
+        List<Transfer> chunkTransfers = transfers.subList(from, Math.min(transfers.size(), from + TRANSFERS_PER_CHUNK));
+        // the results are encoded where the transfers run and written in order on the event loop
+        boolean accepted = serviceExecutor.execute(routingContext.vertx().getOrCreateContext(), () -> {
+            TransferResultsChunk chunk = new TransferResultsChunk();
+            int[] index = { from };
+            try {
+                transferService.createAndPerformTransfers(chunkTransfers, result -> {
+                    appendTransferResult(chunk.results, encodeTransferResult(result), index[0]++, ndjson);
+                    chunk.count++;
+                });
+            } catch (RuntimeException e) {
+                chunk.failure = e;
+            }
+            return chunk;
+        }, result -> {
+            if (result.failed()) {
+                failTransferResults(routingContext, httpResponse, from, ndjson, null, result.cause());
+                return;
+            }
+            TransferResultsChunk chunk = result.result();
+            if (chunk.failure != null) {
+                failTransferResults(routingContext, httpResponse, from, ndjson, chunk, chunk.failure);
+                return;
+            }
+            writeTransferResults(routingContext, httpResponse, transfers, from + chunkTransfers.size(), ndjson,
+                    closed, chunk.results);
+        });
+        if (!accepted) {
+            if (from == 0) {
+                shed(httpResponse);
+                return;
+            }
+            Buffer chunk = Buffer.buffer();
+            String unavailable = "{\"status\": " + HttpResponseStatus.SERVICE_UNAVAILABLE.code()
+                    + ", \"error\": \"Too many requests in progress, try again later\"}";
+            for (int index = from; index < transfers.size(); index++) {
+                appendTransferResult(chunk, unavailable, index, ndjson);
+            }
+            httpResponse.end(ndjson ? chunk : chunk.appendString("]"));
+        }
+    }
+
+    /**
+     * Ends a batch whose chunk of transfers failed. The results of the transfers performed before the failure are
+     * written first, so the client learns which transfers were made, then the response is cut short, as its status
+     * is already sent. A batch failing before any result fails the routing context instead.
+     *
+     * @param chunk the results of the chunk made before the failure, or null if it was not run
+     */
+    private void failTransferResults(RoutingContext routingContext, HttpServerResponse httpResponse, int from,
+            boolean ndjson, TransferResultsChunk chunk, Throwable failure) {
+        boolean noResults = chunk == null || chunk.count == 0;
+        if (from == 0 && noResults) {
+            routingContext.fail(failure);
+            return;
+        }
+        if (!noResults) {
+            httpResponse.write(startTransferResults(httpResponse, ndjson, chunk.results));
+        }
+        httpResponse.close();
+    }
+
+    private void writeTransferResults(RoutingContext routingContext, HttpServerResponse httpResponse,
+            List<Transfer> transfers, int next, boolean ndjson, boolean[] closed, Buffer chunk) {
+        chunk = startTransferResults(httpResponse, ndjson, chunk);
+
+        if (next == transfers.size()) {
+            httpResponse.end(ndjson ? chunk : chunk.appendString("]"));
+            return;
+        }
+        httpResponse.write(chunk);
+        if (httpResponse.writeQueueFull()) {
+            httpResponse.drainHandler(aVoid -> {
+                httpResponse.drainHandler(null);
+                streamTransferResults(routingContext, httpResponse, transfers, next, ndjson, closed);
+            });
+        } else {
+            routingContext.vertx()
+                    .runOnContext(aVoid -> streamTransferResults(routingContext, httpResponse, transfers, next, ndjson,
+                            closed));
+        }
+    }
+
+    /**
+     * Sends the headers of a streamed batch before its first chunk of results.
+     *
+     * @return the chunk to write
+     */
+    private static Buffer startTransferResults(HttpServerResponse httpResponse, boolean ndjson, Buffer chunk) {
+        if (httpResponse.isChunked()) {
+            return chunk;
+        }
+        httpResponse.setChunked(true)
+                .putHeader("content-type", ndjson ? APPLICATION_NDJSON : "application/json; charset=utf-8");
+        return ndjson ? chunk : Buffer.buffer("[").appendBuffer(chunk);
+    }
+
+    private static void appendTransferResult(Buffer chunk, String encodedResult, int index, boolean ndjson) {
+        if (!ndjson && index > 0) {
+            chunk.appendString(",");
+        }
+        chunk.appendString(encodedResult);
+        if (ndjson) {
+            chunk.appendString("\n");
+        }
+    }
+
+    /**
+     * @return the transfers, or null if the body could not be decoded
+     */
+    private static List<Transfer> decodeTransfers(Buffer body, boolean ndjson) {
+        try {
+            return ndjson ? decodeNdjsonTransfers(body.toString()) :
+                    Json.mapper.readValue(body.toString(), TRANSFER_LIST_TYPE);
+        } catch (IOException | DecodeException e) {
+            return null;
+        }
+    }
+
+    private static List<Transfer> decodeNdjsonTransfers(String body) {
+        List<Transfer> transfers = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (!line.trim().isEmpty()) {
+                transfers.add(Json.decodeValue(line, Transfer.class));
             }
         }
+        return transfers;
+    }
+
+    private String encodeTransferResult(TransferResult result) {
+        if (result.isPerformed()) {
+            return "{\"status\": " + HttpResponseStatus.CREATED.code() + ", \"transfer\": " + Json
+                    .encode(result.getTransfer()) + "}";
+        } else {
+            HttpResponseStatus status = result.getOutcome() == null ? transferErrorStatus(result.getError()) :
+                    transferOutcomeStatus(result.getOutcome());
+            return "{\"status\": " + status.code() + ", \"error\": \"" + result.getError().getMessage() + "\"}";
+        }
+    }
+
+    private static Reply encodeAccount(HttpResponseStatus status, Account account, boolean binary) {
+        return binary ? new Reply(status, BinaryCodec.encodeAccount(account), BinaryCodec.CONTENT_TYPE) :
+                new Reply(status, JsonCodec.encodeAccount(account), null);
+    }
+
+    private Reply encodeTransfer(HttpResponseStatus status, Transfer transfer, boolean binary) {
+        return binary ? new Reply(status, BinaryCodec.encodeTransfer(transfer, accountService.getCurrencyScale()),
+                BinaryCodec.CONTENT_TYPE) :
+                new Reply(status, JsonCodec.encodeTransfer(transfer, accountService.getCurrencyScale()), null);
+    }
+
+    private static HttpResponseStatus transferOutcomeStatus(TransferOutcome outcome) {
+        switch (outcome) {
+        case PERFORMED:
+            return HttpResponseStatus.CREATED;
+        case ACCOUNT_FROM_NOT_FOUND:
+        case ACCOUNT_TO_NOT_FOUND:
+            return HttpResponseStatus.NOT_FOUND;
+        case NOT_ENOUGH_BALANCE:
+            return HttpResponseStatus.CONFLICT;
+        case IDEMPOTENCY_KEY_REUSED:
+            return HttpResponseStatus.UNPROCESSABLE_ENTITY;
+        case TRANSFER_NEEDED:
+            return HttpResponseStatus.INTERNAL_SERVER_ERROR;
+        default:
+            return HttpResponseStatus.BAD_REQUEST;
+        }
+    }
+
+    private static HttpResponseStatus transferErrorStatus(SimpleMoneyTransferException e) {
+        if (e instanceof AccountNotFoundException) {
+            return HttpResponseStatus.NOT_FOUND;
+        } else if (e instanceof NotEnoughBalanceException) {
+            return HttpResponseStatus.CONFLICT;
+        } else if (e instanceof TransferValidationException) {
+            return HttpResponseStatus.BAD_REQUEST;
+        } else {
+            return HttpResponseStatus.INTERNAL_SERVER_ERROR;
+        }
     }
 
     private HttpServerResponse createJsonHttpResponse(RoutingContext routingContext) {
@@ -98,19 +626,81 @@ public class AccountController {
 
     private Long retrieveAndValidateAccountNumber(RoutingContext routingContext,
             HttpServerResponse httpServerResponse) {
-        String accountNumberParam = routingContext.request().getParam("accountNumber");
-        if (accountNumberParam == null) {
+        return retrieveAndValidateLongParam(routingContext, httpServerResponse, "accountNumber");
+    }
+
+    /**
+     * Ends the response with a bad request status if the parameter is missing or not a long.
+     */
+    private Long retrieveAndValidateLongParam(RoutingContext routingContext, HttpServerResponse httpServerResponse,
+            String paramName) {
+        String param = routingContext.request().getParam(paramName);
+        if (param == null) {
             httpServerResponse.setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
-                    .end(createJsonError("accountNumber parameter is required"));
+                    .end(createJsonError(paramName + " parameter is required"));
             return null;
         } else {
             try {
-                return Long.parseLong(accountNumberParam);
+                return Long.parseLong(param);
             } catch (NumberFormatException e) {
                 httpServerResponse.setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
-                        .end(createJsonError("accountNumber format is not a long"));
+                        .end(createJsonError(paramName + " format is not a long"));
                 return null;
             }
         }
     }
+
+    /**
+     * Encoded results of a chunk of transfers of a batch, built off the event loop, with the failure that stopped
+     * the chunk, if any.
+     */
+    private static class TransferResultsChunk {
+
+        private final Buffer results = Buffer.buffer();
+
+        private int count;
+
+        private RuntimeException failure;
+    }
+
+    /**
+     * Status and body of a response, built off the event loop.
+     */
+    private static class Reply {
+
+        private final HttpResponseStatus status;
+
+        private final String body;
+
+        private final Buffer bufferBody;
+
+        /**
+         * Content type of the body, or null if it is JSON.
+         */
+        private final String contentType;
+
+        /**
+         * Entity tag of the body, or null if it has none.
+         */
+        private String entityTag;
+
+        private Reply(HttpResponseStatus status, String body) {
+            this.status = status;
+            this.body = body;
+            this.bufferBody = null;
+            this.contentType = null;
+        }
+
+        private Reply(HttpResponseStatus status, Buffer bufferBody, String contentType) {
+            this.status = status;
+            this.body = null;
+            this.bufferBody = bufferBody;
+            this.contentType = contentType;
+        }
+
+        private Reply withEntityTag(String entityTag) {
+            this.entityTag = entityTag;
+            return this;
+        }
+    }
 }
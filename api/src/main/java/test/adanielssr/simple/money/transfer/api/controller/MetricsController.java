@@ -0,0 +1,24 @@
+package test.adanielssr.simple.money.transfer.api.controller;
+
+import io.vertx.ext.web.RoutingContext;
+import test.adanielssr.simple.money.transfer.business.service.metrics.MetricsRegistry;
+
+/**
+ * Exposes the registered metrics in the Prometheus text exposition format.
+ */
+public class MetricsController {
+
+    public static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry metricsRegistry;
+
+    public MetricsController(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public void getMetrics(RoutingContext routingContext) {
+        StringBuilder metrics = new StringBuilder(4096);
+        metricsRegistry.writePrometheus(metrics);
+        routingContext.response().putHeader("content-type", PROMETHEUS_TEXT).end(metrics.toString());
+    }
+}
@@ -0,0 +1,147 @@
+package test.adanielssr.simple.money.transfer.api;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@RunWith(VertxUnitRunner.class)
+public class MoneyTransferLauncherTest {
+
+    public static final String LOCALHOST = "localhost";
+
+    public static final int TIMEOUT = 2;
+
+    public static final int INSTANCES = 4;
+
+    private static Vertx vertx;
+
+    private static int port;
+
+    private String deploymentId;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpVertx() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        port = socket.getLocalPort();
+        socket.close();
+
+        vertx = Vertx.vertx();
+    }
+
+    @AfterClass
+    public static void closeVertx() {
+        vertx.close();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        // undeploying the launcher undeploys the instances it deployed
+        if (deploymentId != null) {
+            vertx.undeploy(deploymentId, context.asyncAssertSuccess());
+        }
+    }
+
+    @Test
+    public void testInstancesShareTheAccounts(TestContext context) throws InterruptedException {
+        deployLauncher(new JsonObject().put("http.port", port).put("http.instances", INSTANCES));
+
+        assertAccountsCreatedOnAnyInstanceAreListed();
+    }
+
+    @Test
+    public void testInstancesShareTheAccountsOnWorkers(TestContext context) throws InterruptedException {
+        deployLauncher(new JsonObject().put("http.port", port).put("http.instances", INSTANCES)
+                .put("executor.mode", "worker").put("executor.threads", 2));
+
+        assertAccountsCreatedOnAnyInstanceAreListed();
+    }
+
+    @Test
+    public void testLauncherFailsWithoutInstances(TestContext context) {
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject().put("http.port", port).put("http.instances", 0));
+        vertx.deployVerticle(MoneyTransferLauncher.class.getName(), options, context.asyncAssertFailure());
+    }
+
+    @Test
+    public void testLauncherFailsWithShardedAccountStoreOnEventLoop(TestContext context) {
+        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject().put("http.port", port)
+                .put("account.store", "sharded").put("executor.mode", "event-loop"));
+        vertx.deployVerticle(MoneyTransferLauncher.class.getName(), options, context.asyncAssertFailure());
+    }
+
+    @Test
+    public void testLauncherFailsWithJournalOnEventLoop(TestContext context) {
+        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject().put("http.port", port)
+                .put("journal.dir", temporaryFolder.getRoot().getPath()).put("executor.mode", "event-loop"));
+        vertx.deployVerticle(MoneyTransferLauncher.class.getName(), options, context.asyncAssertFailure());
+    }
+
+    private static void assertAccountsCreatedOnAnyInstanceAreListed() throws InterruptedException {
+        // a new connection for every request, so the requests are spread across the instances
+        HttpClient httpClient = vertx.createHttpClient(new HttpClientOptions().setKeepAlive(false));
+        for (int i = 0; i < 2 * INSTANCES; i++) {
+            CountDownLatch createdLatch = new CountDownLatch(1);
+            AtomicInteger status = new AtomicInteger();
+            httpClient.post(port, LOCALHOST, "/accounts", response -> {
+                status.set(response.statusCode());
+                createdLatch.countDown();
+            }).end("{\"balance\": 100}");
+            createdLatch.await(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(HttpResponseStatus.CREATED.code(), status.get());
+        }
+
+        for (int i = 0; i < INSTANCES; i++) {
+            CountDownLatch listedLatch = new CountDownLatch(1);
+            AtomicInteger accounts = new AtomicInteger();
+            httpClient.getNow(port, LOCALHOST, "/accounts", response -> response.bodyHandler(body -> {
+                accounts.set(Json.decodeValue(body.toString(), List.class).size());
+                listedLatch.countDown();
+            }));
+            listedLatch.await(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(2 * INSTANCES, accounts.get());
+        }
+        httpClient.close();
+    }
+
+    private void deployLauncher(JsonObject config) throws InterruptedException {
+        CountDownLatch deployedLatch = new CountDownLatch(1);
+        AtomicReference<String> deployed = new AtomicReference<>();
+        vertx.deployVerticle(MoneyTransferLauncher.class.getName(), new DeploymentOptions().setConfig(config),
+                result -> {
+                    deployed.set(result.result());
+                    deployedLatch.countDown();
+                });
+        deployedLatch.await(TIMEOUT, TimeUnit.SECONDS);
+        deploymentId = deployed.get();
+        assertNotNull(deploymentId);
+    }
+}
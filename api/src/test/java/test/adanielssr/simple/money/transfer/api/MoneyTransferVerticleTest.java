@@ -2,10 +2,13 @@ package test.adanielssr.simple.money.transfer.api;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -17,19 +20,30 @@ import org.junit.runner.RunWith;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import test.adanielssr.simple.money.transfer.api.codec.BinaryCodec;
+import test.adanielssr.simple.money.transfer.api.controller.AccountController;
 import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
 import test.adanielssr.simple.money.transfer.domain.model.Transfer;
 import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
 
+import static io.vertx.core.http.HttpHeaders.ACCEPT;
 import static io.vertx.core.http.HttpHeaders.CONTENT_LENGTH;
 import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(VertxUnitRunner.class)
 public class MoneyTransferVerticleTest {
@@ -74,7 +88,7 @@ public class MoneyTransferVerticleTest {
             status.set(response.statusCode());
 
             if (HttpResponseStatus.OK.code() == response.statusCode()) {
-                response.handler(body -> {
+                response.bodyHandler(body -> {
                     List<Account> accounts = Json.decodeValue(body.toString(), List.class);
                     assertNotNull(accounts);
                     assertEquals(size, accounts.size());
@@ -269,6 +283,58 @@ public class MoneyTransferVerticleTest {
         assertEquals(TransferStatus.PERFORMED, createdTransfer.getStatus());
     }
 
+    @Test
+    public void testMakeTransferWithIdempotencyKey(TestContext context) throws InterruptedException {
+        Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        Account secondAccountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberTo(secondAccountCreated.getAccountNumber());
+        transfer.setAmount(4.0D);
+        String accountNumber = accountCreated.getAccountNumber().toString();
+
+        Transfer createdTransfer = postCreateTransfer(httpClient, HttpResponseStatus.CREATED.code(), accountNumber,
+                "transfer-1", Json.encode(transfer));
+        Transfer retriedTransfer = postCreateTransfer(httpClient, HttpResponseStatus.CREATED.code(), accountNumber,
+                "transfer-1", Json.encode(transfer));
+        assertEquals(createdTransfer, retriedTransfer);
+        assertEquals(6L, getAccountByAccountNumber(httpClient, HttpResponseStatus.OK.code(), accountNumber)
+                .getBalanceInMinorUnits() / 100L);
+
+        transfer.setAmount(5.0D);
+        postCreateTransfer(httpClient, HttpResponseStatus.UNPROCESSABLE_ENTITY.code(), accountNumber, "transfer-1",
+                Json.encode(transfer));
+        postCreateTransfer(httpClient, HttpResponseStatus.CREATED.code(), accountNumber, "transfer-2",
+                Json.encode(transfer));
+        assertEquals(1L, getAccountByAccountNumber(httpClient, HttpResponseStatus.OK.code(), accountNumber)
+                .getBalanceInMinorUnits() / 100L);
+    }
+
+    @Test
+    public void testGetAccountWithIfNoneMatch(TestContext context) throws InterruptedException {
+        Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        Account secondAccountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        String uri = "/accounts/" + accountCreated.getAccountNumber();
+
+        String entityTag = getEntityTag(httpClient, HttpResponseStatus.OK.code(), uri, null);
+        assertNotNull(entityTag);
+        assertEquals(entityTag, getEntityTag(httpClient, HttpResponseStatus.OK.code(), uri, null));
+        assertEquals(entityTag, getEntityTag(httpClient, HttpResponseStatus.NOT_MODIFIED.code(), uri, entityTag));
+        assertEquals(entityTag, getEntityTag(httpClient, HttpResponseStatus.NOT_MODIFIED.code(), uri, "*"));
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberTo(secondAccountCreated.getAccountNumber());
+        transfer.setAmount(4.0D);
+        postCreateTransfer(httpClient, HttpResponseStatus.CREATED.code(),
+                accountCreated.getAccountNumber().toString(), Json.encode(transfer));
+
+        String changedEntityTag = getEntityTag(httpClient, HttpResponseStatus.OK.code(), uri, entityTag);
+        assertNotNull(changedEntityTag);
+        assertFalse(entityTag.equals(changedEntityTag));
+        assertEquals(changedEntityTag,
+                getEntityTag(httpClient, HttpResponseStatus.NOT_MODIFIED.code(), uri, changedEntityTag));
+    }
+
     @Test
     public void testMakeTransferWithHalfUpRound(TestContext context) throws InterruptedException {
         Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
@@ -295,14 +361,390 @@ public class MoneyTransferVerticleTest {
         assertEquals((Double) 20.0D, secondAccountCreatedAfterTransfer.getBalance());
     }
 
+    @Test
+    public void testMakeTransfersBatch(TestContext context) throws InterruptedException {
+        Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        Account secondAccountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(accountCreated.getAccountNumber());
+        transfer.setAccountNumberTo(secondAccountCreated.getAccountNumber());
+        transfer.setAmount(6.0D);
+
+        String responseBody = postTransfers(httpClient, APPLICATION_JSON_CHARSET_UTF_8,
+                "[" + Json.encode(transfer) + "," + Json.encode(transfer) + "]");
+
+        JsonArray results = new JsonArray(responseBody);
+        assertEquals(2, results.size());
+        assertEquals(HttpResponseStatus.CREATED.code(), results.getJsonObject(0).getInteger("status").intValue());
+        assertEquals(TransferStatus.PERFORMED.name(),
+                results.getJsonObject(0).getJsonObject("transfer").getString("status"));
+        assertEquals(HttpResponseStatus.CONFLICT.code(), results.getJsonObject(1).getInteger("status").intValue());
+        assertNotNull(results.getJsonObject(1).getString("error"));
+
+        Account accountAfterTransfer = getAccountByAccountNumber(httpClient, HttpResponseStatus.OK.code(),
+                accountCreated.getAccountNumber().toString());
+        assertEquals((Double) 4.0D, accountAfterTransfer.getBalance());
+    }
+
+    @Test
+    public void testMakeTransfersBatchWithNdjson(TestContext context) throws InterruptedException {
+        Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        Account secondAccountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(accountCreated.getAccountNumber());
+        transfer.setAccountNumberTo(secondAccountCreated.getAccountNumber());
+        transfer.setAmount(1.0D);
+
+        Transfer invalidTransfer = new Transfer();
+        invalidTransfer.setAccountNumberFrom(accountCreated.getAccountNumber());
+
+        String responseBody = postTransfers(httpClient, "application/x-ndjson",
+                Json.encode(transfer) + "\n" + Json.encode(invalidTransfer) + "\n" + Json.encode(transfer) + "\n");
+
+        String[] results = responseBody.split("\n");
+        assertEquals(3, results.length);
+        assertEquals(HttpResponseStatus.CREATED.code(), new JsonObject(results[0]).getInteger("status").intValue());
+        assertEquals(HttpResponseStatus.BAD_REQUEST.code(),
+                new JsonObject(results[1]).getInteger("status").intValue());
+        assertEquals(HttpResponseStatus.CREATED.code(), new JsonObject(results[2]).getInteger("status").intValue());
+    }
+
+    @Test
+    public void testMakeTransfersBatchWithInvalidBody(TestContext context) throws InterruptedException {
+        postTransfers(httpClient, HttpResponseStatus.BAD_REQUEST.code(), APPLICATION_JSON_CHARSET_UTF_8, "{}");
+    }
+
+    @Test
+    public void testMakeTransfersBatchStreamsManyChunks(TestContext context) throws InterruptedException {
+        Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        Account secondAccountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(accountCreated.getAccountNumber());
+        transfer.setAccountNumberTo(secondAccountCreated.getAccountNumber());
+        transfer.setAmount(0.01D);
+        int transfers = 1000;
+        StringBuilder transfersBody = new StringBuilder("[");
+        for (int i = 0; i < transfers; i++) {
+            transfersBody.append(i == 0 ? "" : ",").append(Json.encode(transfer));
+        }
+
+        JsonArray results = new JsonArray(
+                postTransfers(httpClient, APPLICATION_JSON_CHARSET_UTF_8, transfersBody.append("]").toString()));
+
+        assertEquals(transfers, results.size());
+        for (int i = 0; i < transfers; i++) {
+            assertEquals(HttpResponseStatus.CREATED.code(), results.getJsonObject(i).getInteger("status").intValue());
+        }
+    }
+
+    @Test
+    public void testMakeTransfersBatchWithTooManyTransfers(TestContext context) throws InterruptedException {
+        StringBuilder transfersBody = new StringBuilder("[");
+        for (int i = 0; i <= AccountController.MAX_TRANSFERS_PER_BATCH; i++) {
+            transfersBody.append(i == 0 ? "{}" : ",{}");
+        }
+
+        postTransfers(httpClient, HttpResponseStatus.BAD_REQUEST.code(), APPLICATION_JSON_CHARSET_UTF_8,
+                transfersBody.append("]").toString());
+    }
+
+    @Test
+    public void testGetAccountsPages(TestContext context) throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        }
+
+        JsonArray firstPage = new JsonArray(get(httpClient, HttpResponseStatus.OK.code(), "/accounts?limit=2"));
+        assertEquals(2, firstPage.size());
+        assertEquals(1L, firstPage.getJsonObject(0).getLong("accountNumber").longValue());
+        assertEquals(2L, firstPage.getJsonObject(1).getLong("accountNumber").longValue());
+
+        JsonArray lastPage = new JsonArray(
+                get(httpClient, HttpResponseStatus.OK.code(), "/accounts?limit=10&after=2"));
+        assertEquals(3, lastPage.size());
+        assertEquals(3L, lastPage.getJsonObject(0).getLong("accountNumber").longValue());
+        assertEquals(5L, lastPage.getJsonObject(2).getLong("accountNumber").longValue());
+
+        assertEquals(0, new JsonArray(get(httpClient, HttpResponseStatus.OK.code(), "/accounts?after=5")).size());
+        get(httpClient, HttpResponseStatus.BAD_REQUEST.code(), "/accounts?limit=0");
+        get(httpClient, HttpResponseStatus.BAD_REQUEST.code(), "/accounts?after=a");
+    }
+
+    @Test
+    public void testGetAccountsStreamsManyChunks(TestContext context) throws InterruptedException {
+        int accounts = 1000;
+        for (int i = 0; i < accounts; i++) {
+            postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        }
+
+        assertAccountsSize(httpClient, accounts);
+    }
+
+    @Test
+    public void testGetTransferByNumber(TestContext context) throws InterruptedException {
+        Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        Account secondAccountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberTo(secondAccountCreated.getAccountNumber());
+        transfer.setAmount(2.5D);
+        Transfer createdTransfer = postCreateTransfer(httpClient, HttpResponseStatus.CREATED.code(),
+                accountCreated.getAccountNumber().toString(), Json.encode(transfer));
+
+        Transfer retrievedTransfer = Json.decodeValue(
+                get(httpClient, HttpResponseStatus.OK.code(), "/transfers/" + createdTransfer.getTransferNumber()),
+                Transfer.class);
+        assertEquals(createdTransfer, retrievedTransfer);
+
+        get(httpClient, HttpResponseStatus.NOT_FOUND.code(), "/transfers/999999");
+        get(httpClient, HttpResponseStatus.BAD_REQUEST.code(), "/transfers/a");
+    }
+
+    @Test
+    public void testPipelinedRequests(TestContext context) throws IOException, InterruptedException {
+        Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        String request = "GET /accounts/" + accountCreated.getAccountNumber() + " HTTP/1.1\r\nHost: " + LOCALHOST
+                + "\r\n\r\n";
+
+        try (Socket socket = new Socket(LOCALHOST, port)) {
+            socket.setSoTimeout(TIMEOUT * 1000);
+            socket.getOutputStream().write((request + request).getBytes(StandardCharsets.US_ASCII));
+
+            // both responses are the same account, the second one ends with the closing brace of its body
+            StringBuilder responses = new StringBuilder();
+            while (responses.indexOf("HTTP/1.1 200 OK") == responses.lastIndexOf("HTTP/1.1 200 OK") || responses
+                    .charAt(responses.length() - 1) != '}') {
+                int read = socket.getInputStream().read();
+                assertTrue(read >= 0);
+                responses.append((char) read);
+            }
+            assertEquals(2, responses.toString().split("HTTP/1.1 200 OK", -1).length - 1);
+        }
+    }
+
+    @Test
+    public void testHttpServerOptions() {
+        HttpServerOptions options = MoneyTransferVerticle.createHttpServerOptions(
+                new JsonObject().put("http.port", 9090).put("http.tcp.nodelay", false).put("http.idle.timeout.s", 30)
+                        .put("http.send.buffer.size", 65536).put("http.compression", true));
+
+        assertEquals(9090, options.getPort());
+        assertFalse(options.isTcpNoDelay());
+        assertEquals(30, options.getIdleTimeout());
+        assertEquals(65536, options.getSendBufferSize());
+        assertEquals(HttpServerOptions.DEFAULT_RECEIVE_BUFFER_SIZE, options.getReceiveBufferSize());
+        assertTrue(options.isCompressionSupported());
+        assertTrue(MoneyTransferVerticle.createHttpServerOptions(new JsonObject()).isTcpNoDelay());
+    }
+
+    @Test
+    public void testGetAccountTransfers(TestContext context) throws InterruptedException {
+        Account accountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        Account secondAccountCreated = postCreateAccount(httpClient, ACCOUNT_WITH_10);
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberTo(secondAccountCreated.getAccountNumber());
+        transfer.setAmount(1.0D);
+        String accountNumber = accountCreated.getAccountNumber().toString();
+        Transfer firstTransfer = postCreateTransfer(httpClient, HttpResponseStatus.CREATED.code(), accountNumber,
+                Json.encode(transfer));
+        Transfer secondTransfer = postCreateTransfer(httpClient, HttpResponseStatus.CREATED.code(), accountNumber,
+                Json.encode(transfer));
+
+        JsonObject page = new JsonObject(get(httpClient, HttpResponseStatus.OK.code(),
+                "/accounts/" + accountNumber + "/transfers?limit=1"));
+        assertEquals(1, page.getJsonArray("transfers").size());
+        assertEquals(secondTransfer.getTransferNumber(),
+                page.getJsonArray("transfers").getJsonObject(0).getLong("transferNumber"));
+
+        page = new JsonObject(get(httpClient, HttpResponseStatus.OK.code(),
+                "/accounts/" + secondAccountCreated.getAccountNumber() + "/transfers?since=0"));
+        assertEquals(2, page.getJsonArray("transfers").size());
+        assertEquals(firstTransfer.getTransferNumber(),
+                page.getJsonArray("transfers").getJsonObject(0).getLong("transferNumber"));
+        assertEquals(secondTransfer.getTransferNumber(), page.getLong("next"));
+
+        get(httpClient, HttpResponseStatus.NOT_FOUND.code(), "/accounts/999999/transfers");
+        get(httpClient, HttpResponseStatus.BAD_REQUEST.code(), "/accounts/" + accountNumber + "/transfers?limit=0");
+        get(httpClient, HttpResponseStatus.BAD_REQUEST.code(), "/accounts/" + accountNumber + "/transfers?since=a");
+    }
+
+    @Test
+    public void testGetMetrics(TestContext context) throws InterruptedException {
+        postCreateAccount(httpClient, ACCOUNT_WITH_100);
+        postCreateAccount(httpClient, ACCOUNT_WITH_10);
+        get(httpClient, HttpResponseStatus.NOT_FOUND.code(), "/accounts/999999");
+
+        String metrics = get(httpClient, HttpResponseStatus.OK.code(), "/metrics");
+        assertTrue(metrics.contains("# TYPE http_request_latency_seconds summary\n"));
+        assertTrue(metrics.contains("http_request_latency_seconds_count{route=\"POST /accounts\"} 2\n"));
+        assertTrue(metrics.contains("http_request_latency_seconds_count{route=\"GET /accounts/:accountNumber\"} 1\n"));
+        assertTrue(metrics.contains("account_service_latency_seconds_count{method=\"createAccount\"} 2\n"));
+        assertTrue(metrics.contains("transfers_performed_total 0\n"));
+        assertTrue(metrics.contains("\naccounts 2.0\n"));
+        assertTrue(metrics.contains("\ntransfers_stored 0.0\n"));
+        assertTrue(metrics.contains("\nevent_loop_lag_seconds{event_loop=\"vert.x-eventloop-thread-"));
+    }
+
+    @Test
+    public void testBinaryAccountsAndTransfers(TestContext context) throws InterruptedException {
+        Account accountFrom = BinaryCodec.decodeAccountResponse(sendBinary(httpClient, HttpMethod.POST, "/accounts",
+                Buffer.buffer().appendByte((byte) 0).appendLong(0L).appendLong(1000L),
+                HttpResponseStatus.CREATED.code()));
+        assertEquals(1000L, accountFrom.getBalanceInMinorUnits());
+        Account accountTo = BinaryCodec.decodeAccountResponse(sendBinary(httpClient, HttpMethod.POST, "/accounts",
+                Buffer.buffer().appendByte((byte) 1).appendLong(424242L).appendLong(0L),
+                HttpResponseStatus.CREATED.code()));
+        assertEquals(Long.valueOf(424242L), accountTo.getAccountNumber());
+
+        Transfer transfer = BinaryCodec.decodeTransferResponse(sendBinary(httpClient, HttpMethod.POST,
+                "/accounts/" + accountFrom.getAccountNumber() + "/transfers",
+                Buffer.buffer().appendLong(accountTo.getAccountNumber()).appendLong(250L),
+                HttpResponseStatus.CREATED.code()), CurrencyScale.DEFAULT);
+        assertEquals(accountFrom.getAccountNumber(), transfer.getAccountNumberFrom());
+        assertEquals(accountTo.getAccountNumber(), transfer.getAccountNumberTo());
+        assertEquals(Double.valueOf(2.5D), transfer.getAmount());
+        assertEquals(TransferStatus.PERFORMED, transfer.getStatus());
+
+        assertEquals(transfer, BinaryCodec.decodeTransferResponse(sendBinary(httpClient, HttpMethod.GET,
+                "/transfers/" + transfer.getTransferNumber(), null, HttpResponseStatus.OK.code()),
+                CurrencyScale.DEFAULT));
+        assertEquals(750L, BinaryCodec.decodeAccountResponse(sendBinary(httpClient, HttpMethod.GET,
+                "/accounts/" + accountFrom.getAccountNumber(), null, HttpResponseStatus.OK.code()))
+                .getBalanceInMinorUnits());
+
+        // rejections are answered in JSON
+        sendBinary(httpClient, HttpMethod.POST, "/accounts/" + accountFrom.getAccountNumber() + "/transfers",
+                Buffer.buffer().appendLong(accountTo.getAccountNumber()).appendLong(10000L),
+                HttpResponseStatus.CONFLICT.code());
+    }
+
+    private Buffer sendBinary(HttpClient httpClient, HttpMethod method, String uri, Buffer requestBody,
+            int expectedStatus) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger status = new AtomicInteger();
+        AtomicReference<String> contentType = new AtomicReference<>();
+        AtomicReference<Buffer> responseBody = new AtomicReference<>();
+
+        HttpClientRequest request = httpClient.request(method, port, LOCALHOST, uri, response -> {
+            status.set(response.statusCode());
+            contentType.set(response.getHeader("content-type"));
+            response.bodyHandler(body -> {
+                responseBody.set(body);
+                latch.countDown();
+            });
+        }).putHeader(ACCEPT, BinaryCodec.CONTENT_TYPE);
+        if (requestBody == null) {
+            request.end();
+        } else {
+            request.putHeader(CONTENT_TYPE, BinaryCodec.CONTENT_TYPE).end(requestBody);
+        }
+
+        waitForLatch(latch);
+
+        assertEquals(expectedStatus, status.get());
+        if (expectedStatus < HttpResponseStatus.BAD_REQUEST.code()) {
+            assertEquals(BinaryCodec.CONTENT_TYPE, contentType.get());
+        } else {
+            assertEquals(APPLICATION_JSON_CHARSET_UTF_8, contentType.get());
+        }
+        return responseBody.get();
+    }
+
+    private String getEntityTag(HttpClient httpClient, int expectedStatus, String uri, String ifNoneMatch)
+            throws InterruptedException {
+        final CountDownLatch getLatch = new CountDownLatch(1);
+        AtomicInteger status = new AtomicInteger();
+        AtomicReference<String> entityTag = new AtomicReference<>();
+
+        HttpClientRequest request = httpClient.get(port, LOCALHOST, uri, response -> {
+            status.set(response.statusCode());
+            entityTag.set(response.getHeader("etag"));
+            response.bodyHandler(body -> getLatch.countDown());
+        });
+        if (ifNoneMatch != null) {
+            request.putHeader("if-none-match", ifNoneMatch);
+        }
+        request.end();
+
+        waitForLatch(getLatch);
+
+        assertEquals(expectedStatus, status.get());
+
+        return entityTag.get();
+    }
+
+    private String get(HttpClient httpClient, int expectedStatus, String uri) throws InterruptedException {
+        final CountDownLatch getLatch = new CountDownLatch(1);
+
+        final String[] responseBody = { null };
+        AtomicInteger status = new AtomicInteger();
+
+        httpClient.getNow(port, LOCALHOST, uri, response -> {
+            status.set(response.statusCode());
+            response.bodyHandler(body -> {
+                responseBody[0] = body.toString();
+
+                getLatch.countDown();
+            });
+        });
+
+        waitForLatch(getLatch);
+
+        assertEquals(expectedStatus, status.get());
+
+        return responseBody[0];
+    }
+
+    private String postTransfers(HttpClient httpClient, String contentType, String transfersBody)
+            throws InterruptedException {
+        return postTransfers(httpClient, HttpResponseStatus.OK.code(), contentType, transfersBody);
+    }
+
+    private String postTransfers(HttpClient httpClient, int expectedStatus, String contentType, String transfersBody)
+            throws InterruptedException {
+        final CountDownLatch postLatch = new CountDownLatch(1);
+
+        final String[] responseBody = { null };
+        AtomicInteger status = new AtomicInteger();
+
+        httpClient.post(port, LOCALHOST, "/transfers:batch").handler(response -> {
+            status.set(response.statusCode());
+            response.bodyHandler(body -> {
+                responseBody[0] = body.toString();
+
+                postLatch.countDown();
+            });
+        }).putHeader(CONTENT_LENGTH, transfersBody.length() + "").putHeader(CONTENT_TYPE, contentType)
+                .write(transfersBody).end();
+
+        waitForLatch(postLatch);
+
+        assertEquals(expectedStatus, status.get());
+
+        return responseBody[0];
+    }
+
     private Transfer postCreateTransfer(HttpClient httpClient, int expectedStatus, String accountNumber,
             String transferBody) throws InterruptedException {
+        return postCreateTransfer(httpClient, expectedStatus, accountNumber, null, transferBody);
+    }
+
+    private Transfer postCreateTransfer(HttpClient httpClient, int expectedStatus, String accountNumber,
+            String idempotencyKey, String transferBody) throws InterruptedException {
         final CountDownLatch postLatch = new CountDownLatch(1);
 
         final Transfer[] retrievedAccount = { null };
         AtomicInteger status = new AtomicInteger();
 
-        httpClient.post(port, LOCALHOST, "/accounts/" + accountNumber + "/transfers").handler(response -> {
+        HttpClientRequest request = httpClient.post(port, LOCALHOST, "/accounts/" + accountNumber + "/transfers");
+        if (idempotencyKey != null) {
+            request.putHeader(AccountController.IDEMPOTENCY_KEY, idempotencyKey);
+        }
+        request.handler(response -> {
             status.set(response.statusCode());
 
             if (HttpResponseStatus.CREATED.code() == expectedStatus) {
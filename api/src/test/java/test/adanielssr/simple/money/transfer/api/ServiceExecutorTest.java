@@ -0,0 +1,115 @@
+package test.adanielssr.simple.money.transfer.api;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceExecutorTest {
+
+    public static final int TIMEOUT = 2;
+
+    private static Vertx vertx;
+
+    @BeforeClass
+    public static void setUpVertx() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterClass
+    public static void closeVertx() {
+        vertx.close();
+    }
+
+    @Test
+    public void testWorkersRunTheWorkOffTheEventLoopAndCompleteOnIt() throws Exception {
+        ServiceExecutor serviceExecutor = ServiceExecutor.workers(2, 8, new LongAdder());
+        Context context = vertx.getOrCreateContext();
+        AtomicReference<Thread> eventLoopThread = new AtomicReference<>();
+        AtomicReference<Thread> workThread = new AtomicReference<>();
+        AtomicReference<Thread> completionThread = new AtomicReference<>();
+        AtomicReference<String> completionResult = new AtomicReference<>();
+        CountDownLatch completedLatch = new CountDownLatch(1);
+
+        context.runOnContext(aVoid -> {
+            eventLoopThread.set(Thread.currentThread());
+            assertTrue(serviceExecutor.execute(context, () -> {
+                workThread.set(Thread.currentThread());
+                return "done";
+            }, result -> {
+                completionThread.set(Thread.currentThread());
+                completionResult.set(result.result());
+                completedLatch.countDown();
+            }));
+        });
+
+        assertTrue(completedLatch.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("done", completionResult.get());
+        assertNotEquals(eventLoopThread.get(), workThread.get());
+        assertEquals(eventLoopThread.get(), completionThread.get());
+        serviceExecutor.close();
+    }
+
+    @Test
+    public void testWorkersRefuseCallsWhenSaturated() throws Exception {
+        LongAdder rejected = new LongAdder();
+        ServiceExecutor serviceExecutor = ServiceExecutor.workers(1, 2, rejected);
+        Context context = vertx.getOrCreateContext();
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        CountDownLatch completedLatch = new CountDownLatch(2);
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(serviceExecutor.execute(context, () -> {
+                await(releaseLatch);
+                return null;
+            }, result -> completedLatch.countDown()));
+        }
+        assertEquals(2, serviceExecutor.getInFlight());
+        assertFalse(serviceExecutor.execute(context, () -> null, result -> {
+        }));
+        assertEquals(1L, rejected.sum());
+
+        releaseLatch.countDown();
+        assertTrue(completedLatch.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, serviceExecutor.getInFlight());
+        serviceExecutor.close();
+    }
+
+    @Test
+    public void testEventLoopRunsInPlaceAndReportsFailures() {
+        ServiceExecutor serviceExecutor = ServiceExecutor.eventLoop();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        IllegalStateException exception = new IllegalStateException();
+
+        assertTrue(serviceExecutor.execute(vertx.getOrCreateContext(), () -> {
+            throw exception;
+        }, result -> failure.set(result.cause())));
+
+        assertEquals(exception, failure.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownModeIsRefused() {
+        ServiceExecutor.of("fibers", 1, 1, new LongAdder());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
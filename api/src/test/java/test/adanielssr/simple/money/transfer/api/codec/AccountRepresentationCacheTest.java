@@ -0,0 +1,79 @@
+package test.adanielssr.simple.money.transfer.api.codec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+import io.vertx.core.buffer.Buffer;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AccountRepresentationCacheTest {
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    @Test
+    public void testRepresentationIsCachedPerVersion() {
+        AccountRepresentationCache cache = new AccountRepresentationCache(16, hits, misses);
+        Account account = createAccount(1L, 1000L);
+
+        String entityTag = cache.getEntityTag(1L, 0L, false);
+        Buffer json = cache.getJson(account, 0L, entityTag);
+        assertEquals(JsonCodec.encodeAccount(account).toString(), json.toString());
+        assertSame(json, cache.getJson(account, 0L, entityTag));
+        assertSame(entityTag, cache.getEntityTag(1L, 0L, false));
+
+        account.setBalanceInMinorUnits(500L);
+        account.incrementVersion();
+        String changedEntityTag = cache.getEntityTag(1L, 1L, false);
+        assertNotEquals(entityTag, changedEntityTag);
+        assertEquals(JsonCodec.encodeAccount(account).toString(),
+                cache.getJson(account, 1L, changedEntityTag).toString());
+
+        assertEquals(1L, hits.sum());
+        assertEquals(2L, misses.sum());
+    }
+
+    @Test
+    public void testCollidingAccountsReplaceEachOther() {
+        AccountRepresentationCache cache = new AccountRepresentationCache(1, hits, misses);
+        Account account = createAccount(1L, 1000L);
+        Account otherAccount = createAccount(2L, 2000L);
+
+        cache.getJson(account, 0L, cache.getEntityTag(1L, 0L, false));
+        assertEquals(JsonCodec.encodeAccount(otherAccount).toString(),
+                cache.getJson(otherAccount, 0L, cache.getEntityTag(2L, 0L, false)).toString());
+        cache.getJson(account, 0L, cache.getEntityTag(1L, 0L, false));
+
+        assertEquals(0L, hits.sum());
+        assertEquals(3L, misses.sum());
+    }
+
+    @Test
+    public void testEntityTags() {
+        AccountRepresentationCache cache = new AccountRepresentationCache(16, hits, misses);
+        String entityTag = cache.getEntityTag(1L, 3L, false);
+
+        assertNotEquals(entityTag, cache.getEntityTag(1L, 3L, true));
+        assertNotEquals(entityTag, new AccountRepresentationCache(16, hits, misses).getEntityTag(1L, 3L, false));
+        assertTrue(AccountRepresentationCache.matches(entityTag, entityTag));
+        assertTrue(AccountRepresentationCache.matches("\"other\", " + entityTag, entityTag));
+        assertTrue(AccountRepresentationCache.matches("*", entityTag));
+        assertFalse(AccountRepresentationCache.matches(null, entityTag));
+        assertFalse(AccountRepresentationCache.matches(cache.getEntityTag(1L, 4L, false), entityTag));
+    }
+
+    private static Account createAccount(long accountNumber, long balanceInMinorUnits) {
+        Account account = new Account();
+        account.setAccountNumber(accountNumber);
+        account.setBalanceInMinorUnits(balanceInMinorUnits);
+        return account;
+    }
+}
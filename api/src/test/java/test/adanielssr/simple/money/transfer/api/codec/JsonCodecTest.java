@@ -0,0 +1,115 @@
+package test.adanielssr.simple.money.transfer.api.codec;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JsonCodecTest {
+
+    @Test
+    public void testDecodeAccount() {
+        Account account = JsonCodec
+                .decodeAccount(Buffer.buffer(" {\n \"accountNumber\" : 42, \"balance\": 1234.567 }"),
+                        CurrencyScale.of(3));
+
+        assertEquals(Long.valueOf(42L), account.getAccountNumber());
+        assertEquals(1234567L, account.getBalanceInMinorUnits());
+        assertEquals(CurrencyScale.of(3).getScale(), account.getCurrencyScale().getScale());
+    }
+
+    @Test
+    public void testDecodeAccountLikeJackson() {
+        String[] bodies = { "{}", "{\"balance\": null}", "{\"balance\": \"12.5\"}", "{\"balance\": 1e3}",
+                "{\"balance\": 0.015}", "{\"balance\": -7.25}", "{\"balance\": 12345678901234567.89}",
+                "{\"accountNumber\": 9223372036854775807}", "{\"accountNumber\": -9223372036854775808}" };
+
+        for (String body : bodies) {
+            Account expected = Json.decodeValue(body, Account.class);
+            Account account = JsonCodec.decodeAccount(Buffer.buffer(body), CurrencyScale.DEFAULT);
+
+            assertEquals(body, expected.getAccountNumber(), account.getAccountNumber());
+            assertEquals(body, expected.getBalanceInMinorUnits(), account.getBalanceInMinorUnits());
+        }
+    }
+
+    @Test
+    public void testDecodeTransferSkipsServiceAssignedFields() {
+        Transfer transfer = JsonCodec.decodeTransfer(Buffer.buffer(
+                "{\"transferNumber\": 7, \"accountNumberFrom\": 1, \"accountNumberTo\": 2, \"amount\": 10.5,"
+                        + " \"transferTimestamp\": \"2017-08-13\", \"status\": \"PERFORMED\"}"));
+
+        assertNull(transfer.getTransferNumber());
+        assertEquals(Long.valueOf(1L), transfer.getAccountNumberFrom());
+        assertEquals(Long.valueOf(2L), transfer.getAccountNumberTo());
+        assertEquals(Double.valueOf(10.5D), transfer.getAmount());
+        assertNull(transfer.getTransferTimestamp());
+        assertNull(transfer.getStatus());
+    }
+
+    @Test
+    public void testDecodeRefusesMalformedDocuments() {
+        String[] bodies = { "", "[]", "{\"unknown\": 1}", "{\"accountNumber\": 1", "{\"accountNumber\": }",
+                "{\"accountNumber\": 9223372036854775808}", "{\"accountNumber\": 1 \"balance\": 2}",
+                "{\"balance\": 1.}", "{\"accountNumber\": 1,}", "{\"accountNumber\": 1, }" };
+
+        for (String body : bodies) {
+            try {
+                JsonCodec.decodeAccount(Buffer.buffer(body), CurrencyScale.DEFAULT);
+                throw new AssertionError("decoded " + body);
+            } catch (DecodeException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = DecodeException.class)
+    public void testDecodeTransferRefusesTrailingComma() {
+        JsonCodec.decodeTransfer(Buffer.buffer("{\"accountNumberTo\":1,}"));
+    }
+
+    @Test
+    public void testEncodedDocumentsDecodeLikeJackson() {
+        Account account = new Account();
+        account.setAccountNumber(123456L);
+        account.setBalanceInMinorUnits(-105L);
+
+        Transfer transfer = new Transfer();
+        transfer.setTransferNumber(987654L);
+        transfer.setAccountNumberFrom(123456L);
+        transfer.setAccountNumberTo(654321L);
+        transfer.setAmount(12.3D);
+        transfer.setTransferTimestamp(new Date(1502582400000L));
+        transfer.setStatus(TransferStatus.PERFORMED);
+
+        Buffer encodedAccount = JsonCodec.encodeAccount(account);
+        Buffer encodedTransfer = JsonCodec.encodeTransfer(transfer, CurrencyScale.DEFAULT);
+
+        assertEquals("{\"accountNumber\":123456,\"balance\":-1.05}", encodedAccount.toString());
+        assertEquals(account, Json.decodeValue(encodedAccount.toString(), Account.class));
+        assertEquals("{\"transferNumber\":987654,\"accountNumberFrom\":123456,\"accountNumberTo\":654321,"
+                + "\"amount\":12.30,\"transferTimestamp\":1502582400000,\"status\":\"PERFORMED\"}",
+                encodedTransfer.toString());
+        assertEquals(transfer, Json.decodeValue(encodedTransfer.toString(), Transfer.class));
+    }
+
+    @Test
+    public void testAppendAccountWithoutNumber() {
+        Account account = new Account();
+        account.setCurrencyScale(CurrencyScale.of(0));
+        account.setBalanceInMinorUnits(5L);
+
+        assertEquals("[{\"accountNumber\":null,\"balance\":5}",
+                JsonCodec.appendAccount(Buffer.buffer("["), account).toString());
+    }
+}
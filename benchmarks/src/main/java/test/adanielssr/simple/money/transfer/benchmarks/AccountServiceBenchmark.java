@@ -0,0 +1,106 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+
+/**
+ * Throughput of {@link AccountService#createAccount(Account)} and {@link AccountService#getAccountByNumber(Long)}
+ * for each account store, with 1, 8 and 64 threads. The store is created again for every iteration, so created
+ * accounts do not pile up across iterations; lookups are made on uniformly picked accounts created beforehand.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountServiceBenchmark {
+
+    private static final int ACCOUNTS = 65536;
+
+    @Param({ "striped-lock", "atomic", "indexed", "off-heap", "mapped", "sharded" })
+    private String accountStore;
+
+    private AccountService accountService;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        accountService = AccountServiceContentionBenchmark.createAccountService(accountStore);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = new Account();
+            account.setBalanceInMinorUnits(100L);
+            accountService.createAccount(account);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Account createAccount1Thread() {
+        return createAccount();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Account createAccount8Threads() {
+        return createAccount();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Account createAccount64Threads() {
+        return createAccount();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Account getAccountByNumber1Thread() {
+        return getAccountByNumber();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Account getAccountByNumber8Threads() {
+        return getAccountByNumber();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Account getAccountByNumber64Threads() {
+        return getAccountByNumber();
+    }
+
+    private Account createAccount() {
+        Account account = new Account();
+        account.setBalanceInMinorUnits(100L);
+        return accountService.createAccount(account);
+    }
+
+    private Account getAccountByNumber() {
+        return accountService.getAccountByNumber(1L + ThreadLocalRandom.current().nextInt(ACCOUNTS));
+    }
+}
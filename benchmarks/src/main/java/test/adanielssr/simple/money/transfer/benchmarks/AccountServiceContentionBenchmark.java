@@ -0,0 +1,116 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.AtomicBalanceAccountService;
+import test.adanielssr.simple.money.transfer.business.service.StripedLockAccountService;
+import test.adanielssr.simple.money.transfer.business.service.index.IndexedAccountService;
+import test.adanielssr.simple.money.transfer.business.service.sharded.ShardedAccountService;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * Throughput of {@link AccountService#transfer(Long, Long, long)} between two random distinct accounts for each
+ * account store, with 1, 8 and 64 threads. A small number of accounts makes threads collide on the same accounts and
+ * locks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountServiceContentionBenchmark {
+
+    @Param({ "striped-lock", "atomic", "indexed", "sharded" })
+    private String accountStore;
+
+    @Param({ "16", "65536" })
+    private int accounts;
+
+    private AccountService accountService;
+
+    @Setup
+    public void setup() {
+        accountService = createAccountService(accountStore);
+        for (long accountNumber = 1; accountNumber <= accounts; accountNumber++) {
+            Account account = new Account();
+            account.setAccountNumber(accountNumber);
+            account.setBalanceInMinorUnits(Long.MAX_VALUE / (2L * accounts));
+            accountService.createAccount(account);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
+    }
+
+    static AccountService createAccountService(String accountStore) {
+        switch (accountStore) {
+        case "striped-lock":
+            return new StripedLockAccountService();
+        case "atomic":
+            return new AtomicBalanceAccountService();
+        case "indexed":
+            return new IndexedAccountService();
+        case "off-heap":
+            return new IndexedAccountService(CurrencyScale.DEFAULT, IndexedAccountService.DEFAULT_EXPECTED_ACCOUNTS,
+                    true);
+        case "mapped":
+            return new IndexedAccountService(CurrencyScale.DEFAULT, IndexedAccountService.DEFAULT_EXPECTED_ACCOUNTS,
+                    Paths.get(System.getProperty("java.io.tmpdir")), 65536, new LongAdder(), new LongAdder());
+        case "sharded":
+            return new ShardedAccountService(CurrencyScale.DEFAULT, Runtime.getRuntime().availableProcessors(),
+                    65536);
+        default:
+            throw new IllegalArgumentException("Unknown account store: " + accountStore);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transfer1Thread() {
+        randomTransfer();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void transfer8Threads() {
+        randomTransfer();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void transfer64Threads() {
+        randomTransfer();
+    }
+
+    private void randomTransfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = 1 + random.nextInt(accounts);
+        // any account but the origin one
+        long to = 1 + (from + random.nextInt(accounts - 1)) % accounts;
+        accountService.transfer(from, to, 1L);
+    }
+}
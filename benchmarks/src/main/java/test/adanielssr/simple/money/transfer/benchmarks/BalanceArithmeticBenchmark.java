@@ -0,0 +1,84 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * Compares the debit/credit arithmetic of one transfer leg pair done through {@link BigDecimal} and boxed
+ * {@link Double} balances (the original {@code TransferService} path) against primitive minor units.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BalanceArithmeticBenchmark {
+
+    private static final int SCALE = 2;
+
+    private final CurrencyScale currencyScale = CurrencyScale.of(SCALE);
+
+    private Double fromBalance;
+
+    private Double toBalance;
+
+    private long fromBalanceInMinorUnits;
+
+    private long toBalanceInMinorUnits;
+
+    private double amount;
+
+    @Setup
+    public void setup() {
+        fromBalance = 1_000_000_000.0D;
+        toBalance = 0.0D;
+        fromBalanceInMinorUnits = currencyScale.toMinorUnits(fromBalance);
+        toBalanceInMinorUnits = 0L;
+        amount = 0.01D;
+    }
+
+    @Benchmark
+    public Double bigDecimalDebitCredit() {
+        BigDecimal transferAmount = new BigDecimal(amount);
+
+        BigDecimal fromResult = new BigDecimal(fromBalance).subtract(transferAmount)
+                .setScale(SCALE, RoundingMode.HALF_UP);
+        if (fromResult.doubleValue() < 0.0D) {
+            throw new IllegalStateException("not enough balance");
+        }
+        fromBalance = fromResult.doubleValue();
+
+        toBalance = new BigDecimal(toBalance).add(transferAmount).setScale(SCALE, RoundingMode.HALF_UP)
+                .doubleValue();
+        return toBalance;
+    }
+
+    @Benchmark
+    public long minorUnitsDebitCredit() {
+        long transferAmount = currencyScale.toMinorUnits(amount);
+
+        long fromResult = fromBalanceInMinorUnits - transferAmount;
+        if (fromResult < 0L) {
+            throw new IllegalStateException("not enough balance");
+        }
+        fromBalanceInMinorUnits = fromResult;
+
+        toBalanceInMinorUnits = Math.addExact(toBalanceInMinorUnits, transferAmount);
+        return toBalanceInMinorUnits;
+    }
+}
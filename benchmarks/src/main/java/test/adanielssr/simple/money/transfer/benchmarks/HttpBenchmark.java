@@ -0,0 +1,312 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.json.JsonObject;
+import test.adanielssr.simple.money.transfer.api.MoneyTransferLauncher;
+import test.adanielssr.simple.money.transfer.api.MoneyTransferVerticle;
+
+/**
+ * Throughput of the HTTP layer: {@link MoneyTransferVerticle} is deployed in-process on a free port, through the
+ * {@link MoneyTransferLauncher} with 1, 2, 4 and 8 instances sharing one account store, and every benchmark thread
+ * sends its requests one at a time, over its own keep-alive connection, waiting for each response before sending the
+ * next request. Measured with 1, 8 and 64 threads for each account store; with enough cores and threads the
+ * throughput grows with the number of instances.
+ * <p>
+ * The {@code Pipelined} benchmarks send {@value #PIPELINE_DEPTH} requests at once over a keep-alive connection of the
+ * thread, HTTP/1.1 pipelining, and then read all the responses. Both ends of every connection run with and
+ * without {@code TCP_NODELAY}: with Nagle's algorithm a small request or response can wait for the acknowledgement of
+ * the previous one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpBenchmark {
+
+    private static final String LOCALHOST = "localhost";
+
+    private static final int ACCOUNTS = 1024;
+
+    private static final long TIMEOUT_SECONDS = 10L;
+
+    private static final int PIPELINE_DEPTH = 16;
+
+    @Param({ "striped-lock", "atomic", "indexed", "sharded" })
+    private String accountStore;
+
+    @Param({ "1", "2", "4", "8" })
+    private int instances;
+
+    @Param({ "true", "false" })
+    private boolean tcpNoDelay;
+
+    private Vertx vertx;
+
+    private int port;
+
+    @Setup
+    public void setup() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        vertx = Vertx.vertx();
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject().put("http.port", port).put("account.store", accountStore)
+                        .put("http.instances", instances).put("http.tcp.nodelay", tcpNoDelay));
+        vertx.deployVerticle(MoneyTransferLauncher.class.getName(), options, result -> {
+            if (result.succeeded()) {
+                deployed.complete(result.result());
+            } else {
+                deployed.completeExceptionally(result.cause());
+            }
+        });
+        deployed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        HttpClient httpClient = vertx.createHttpClient();
+        try {
+            for (int i = 0; i < ACCOUNTS; i++) {
+                send(httpClient.post(port, LOCALHOST, "/accounts"), "{\"balance\": 1000000000}", 201);
+            }
+        } finally {
+            httpClient.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(result -> closed.complete(null));
+        closed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The connection of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+
+        private HttpClient httpClient;
+
+        @Setup
+        public void setup(HttpBenchmark benchmark) {
+            httpClient = benchmark.vertx.createHttpClient(
+                    new HttpClientOptions().setMaxPoolSize(1).setTcpNoDelay(benchmark.tcpNoDelay));
+        }
+
+        @TearDown
+        public void tearDown() {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * The pipelining connection of one benchmark thread, a plain socket: the pipelining of the Vert.x 3.0 client
+     * stalls.
+     */
+    @State(Scope.Thread)
+    public static class PipelinedConnection {
+
+        private Socket socket;
+
+        private OutputStream output;
+
+        private InputStream input;
+
+        @Setup
+        public void setup(HttpBenchmark benchmark) throws IOException {
+            socket = new Socket(LOCALHOST, benchmark.port);
+            socket.setTcpNoDelay(benchmark.tcpNoDelay);
+            socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            output = socket.getOutputStream();
+            input = new BufferedInputStream(socket.getInputStream());
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int createTransfer1Thread(Connection connection) throws Exception {
+        return createTransfer(connection);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int createTransfer8Threads(Connection connection) throws Exception {
+        return createTransfer(connection);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int createTransfer64Threads(Connection connection) throws Exception {
+        return createTransfer(connection);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int getAccountByNumber1Thread(Connection connection) throws Exception {
+        return getAccountByNumber(connection);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int getAccountByNumber8Threads(Connection connection) throws Exception {
+        return getAccountByNumber(connection);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int getAccountByNumber64Threads(Connection connection) throws Exception {
+        return getAccountByNumber(connection);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int getAccountByNumberPipelined1Thread(PipelinedConnection connection) throws IOException {
+        return getAccountsByNumberPipelined(connection);
+    }
+
+    @Benchmark
+    @Threads(8)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int getAccountByNumberPipelined8Threads(PipelinedConnection connection) throws IOException {
+        return getAccountsByNumberPipelined(connection);
+    }
+
+    @Benchmark
+    @Threads(64)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int getAccountByNumberPipelined64Threads(PipelinedConnection connection) throws IOException {
+        return getAccountsByNumberPipelined(connection);
+    }
+
+    private int createTransfer(Connection connection) throws Exception {
+        long from = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        long to = from % ACCOUNTS + 1;
+        return send(connection.httpClient.post(port, LOCALHOST, "/accounts/" + from + "/transfers"),
+                "{\"accountNumberTo\": " + to + ", \"amount\": 0.01}", 201);
+    }
+
+    private int getAccountByNumber(Connection connection) throws Exception {
+        long accountNumber = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return send(connection.httpClient.get(port, LOCALHOST, "/accounts/" + accountNumber), null, 200);
+    }
+
+    private int getAccountsByNumberPipelined(PipelinedConnection connection) throws IOException {
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            long accountNumber = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+            requests.append("GET /accounts/").append(accountNumber).append(" HTTP/1.1\r\nHost: ").append(LOCALHOST)
+                    .append("\r\n\r\n");
+        }
+        connection.output.write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+        connection.output.flush();
+
+        int length = 0;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            length += readResponse(connection.input, 200);
+        }
+        return length;
+    }
+
+    /**
+     * Reads one HTTP/1.1 response with a content length, failing if its status is not the expected one.
+     *
+     * @return the size of the response body
+     */
+    private static int readResponse(InputStream input, int expectedStatus) throws IOException {
+        String statusLine = readLine(input);
+        if (!statusLine.startsWith("HTTP/1.1 " + expectedStatus + " ")) {
+            throw new IOException("Unexpected response: " + statusLine);
+        }
+        int contentLength = 0;
+        for (String header = readLine(input); !header.isEmpty(); header = readLine(input)) {
+            if (header.regionMatches(true, 0, "content-length:", 0, 15)) {
+                contentLength = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+        for (int i = 0; i < contentLength; i++) {
+            if (input.read() < 0) {
+                throw new EOFException();
+            }
+        }
+        return contentLength;
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = input.read(); c != '\n'; c = input.read()) {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Sends the request and waits for the whole response body, failing if the response status is not the expected
+     * one.
+     *
+     * @return the size of the response body
+     */
+    private static int send(HttpClientRequest request, String body, int expectedStatus) throws Exception {
+        CompletableFuture<Buffer> responseBody = new CompletableFuture<>();
+        request.handler(response -> {
+            if (response.statusCode() != expectedStatus) {
+                responseBody.completeExceptionally(
+                        new IOException("Unexpected response status: " + response.statusCode()));
+            }
+            response.bodyHandler(responseBody::complete);
+        });
+        request.exceptionHandler(responseBody::completeExceptionally);
+        if (body == null) {
+            request.end();
+        } else {
+            request.putHeader("content-type", "application/json").end(body);
+        }
+        return responseBody.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).length();
+    }
+}
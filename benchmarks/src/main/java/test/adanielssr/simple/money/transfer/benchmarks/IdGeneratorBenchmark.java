@@ -0,0 +1,72 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.adanielssr.simple.money.transfer.business.service.id.IdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.LeasingIdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.SequenceIdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.SnowflakeIdGenerator;
+
+/**
+ * Throughput of {@link IdGenerator#nextId()} for each generator with 1 and 32 threads: the single {@code AtomicLong}
+ * every transfer number used to be taken from ({@code sequence}), the Snowflake layout, and both with blocks of 64
+ * numbers leased to each thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Param({ "sequence", "snowflake", "leasing-sequence", "leasing-snowflake" })
+    private String idGenerator;
+
+    private IdGenerator generator;
+
+    @Setup
+    public void setup() {
+        switch (idGenerator) {
+        case "sequence":
+            generator = new SequenceIdGenerator();
+            break;
+        case "snowflake":
+            generator = new SnowflakeIdGenerator(0);
+            break;
+        case "leasing-sequence":
+            generator = new LeasingIdGenerator(new SequenceIdGenerator(), 64, 10L);
+            break;
+        case "leasing-snowflake":
+            generator = new LeasingIdGenerator(new SnowflakeIdGenerator(0), 64, 10L);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown id generator: " + idGenerator);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nextId1Thread() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public long nextId32Threads() {
+        return generator.nextId();
+    }
+}
@@ -0,0 +1,102 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.StripedLockAccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferService;
+import test.adanielssr.simple.money.transfer.business.service.journal.FsyncPolicy;
+import test.adanielssr.simple.money.transfer.business.service.journal.Journal;
+import test.adanielssr.simple.money.transfer.business.service.journal.JournaledAccountService;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+
+/**
+ * Throughput of {@link TransferService#createAndPerformTransfer(Transfer)} with 16 threads, in memory and with a
+ * journal under each fsync policy. The journal is written to a temporary directory of the default file system.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class JournaledTransferBenchmark {
+
+    private static final int ACCOUNTS = 1024;
+
+    @Param({ "none", "per-operation", "per-batch", "interval" })
+    private String fsync;
+
+    private Path journalDirectory;
+
+    private AccountService accountService;
+
+    private TransferService transferService;
+
+    @Setup
+    public void setup() throws IOException {
+        AccountService accountStore = new StripedLockAccountService();
+        if ("none".equals(fsync)) {
+            accountService = accountStore;
+            transferService = new TransferService(accountService);
+        } else {
+            journalDirectory = Files.createTempDirectory("journal-benchmark");
+            Journal journal = new Journal(journalDirectory, FsyncPolicy.fromName(fsync), 10L, 64L * 1024 * 1024);
+            accountService = new JournaledAccountService(accountStore, journal);
+            transferService = new TransferService(accountService, journal);
+        }
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = new Account();
+            account.setBalance(1_000_000_000.0D);
+            accountService.createAccount(account);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
+        if (journalDirectory != null) {
+            try (Stream<Path> files = Files.walk(journalDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public Transfer transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = 1 + random.nextInt(ACCOUNTS);
+        long to = from % ACCOUNTS + 1;
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(from);
+        transfer.setAccountNumberTo(to);
+        transfer.setAmount(0.01D);
+        return transferService.createAndPerformTransfer(transfer);
+    }
+}
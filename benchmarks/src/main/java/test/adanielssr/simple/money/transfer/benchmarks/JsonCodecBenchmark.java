@@ -0,0 +1,146 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import test.adanielssr.simple.money.transfer.api.codec.BinaryCodec;
+import test.adanielssr.simple.money.transfer.api.codec.JsonCodec;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
+
+/**
+ * Average time of encoding and decoding an {@link Account} and a {@link Transfer} with the Vert.x {@link Json}
+ * utility, compact and pretty printed, against the streaming {@link JsonCodec} used by the HTTP layer and the fixed
+ * layout {@link BinaryCodec}. Run with {@code -prof gc} to compare the allocation rates as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private Account account;
+
+    private Transfer transfer;
+
+    private String accountJson;
+
+    private String transferJson;
+
+    private Buffer accountJsonBuffer;
+
+    private Buffer transferJsonBuffer;
+
+    private Buffer accountRequestBinary;
+
+    private Buffer transferRequestBinary;
+
+    @Setup
+    public void setup() {
+        account = new Account();
+        account.setAccountNumber(123456L);
+        account.setBalance(1234.56D);
+
+        transfer = new Transfer();
+        transfer.setTransferNumber(987654L);
+        transfer.setAccountNumberFrom(123456L);
+        transfer.setAccountNumberTo(654321L);
+        transfer.setAmount(12.34D);
+        transfer.setTransferTimestamp(new Date());
+        transfer.setStatus(TransferStatus.PERFORMED);
+
+        accountJson = Json.encode(account);
+        transferJson = Json.encode(transfer);
+        accountJsonBuffer = Buffer.buffer(accountJson);
+        transferJsonBuffer = Buffer.buffer(transferJson);
+        accountRequestBinary = Buffer.buffer().appendByte((byte) 1).appendLong(123456L).appendLong(123456L);
+        transferRequestBinary = Buffer.buffer().appendLong(654321L).appendLong(1234L);
+    }
+
+    @Benchmark
+    public String encodeAccount() {
+        return Json.encode(account);
+    }
+
+    @Benchmark
+    public String encodeAccountPrettily() {
+        return Json.encodePrettily(account);
+    }
+
+    @Benchmark
+    public Account decodeAccount() {
+        return Json.decodeValue(accountJson, Account.class);
+    }
+
+    @Benchmark
+    public String encodeTransfer() {
+        return Json.encode(transfer);
+    }
+
+    @Benchmark
+    public String encodeTransferPrettily() {
+        return Json.encodePrettily(transfer);
+    }
+
+    @Benchmark
+    public Transfer decodeTransfer() {
+        return Json.decodeValue(transferJson, Transfer.class);
+    }
+
+    @Benchmark
+    public int encodeAccountStreaming() {
+        return JsonCodec.encodeAccount(account).length();
+    }
+
+    @Benchmark
+    public Account decodeAccountStreaming() {
+        return JsonCodec.decodeAccount(accountJsonBuffer, CurrencyScale.DEFAULT);
+    }
+
+    @Benchmark
+    public int encodeTransferStreaming() {
+        return JsonCodec.encodeTransfer(transfer, CurrencyScale.DEFAULT).length();
+    }
+
+    @Benchmark
+    public Transfer decodeTransferStreaming() {
+        return JsonCodec.decodeTransfer(transferJsonBuffer);
+    }
+
+    @Benchmark
+    public int encodeAccountBinary() {
+        return BinaryCodec.encodeAccount(account).length();
+    }
+
+    @Benchmark
+    public Account decodeAccountBinary() {
+        return BinaryCodec.decodeAccount(accountRequestBinary, CurrencyScale.DEFAULT);
+    }
+
+    @Benchmark
+    public int encodeTransferBinary() {
+        return BinaryCodec.encodeTransfer(transfer, CurrencyScale.DEFAULT).length();
+    }
+
+    @Benchmark
+    public Transfer decodeTransferBinary() {
+        return BinaryCodec.decodeTransfer(transferRequestBinary, 123456L, CurrencyScale.DEFAULT);
+    }
+}
@@ -0,0 +1,87 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.StripedLockAccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.business.service.TransferService;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+
+/**
+ * Average time of a transfer when a given percentage of the transfers is rejected for not enough balance, through
+ * the throwing {@link TransferService#createAndPerformTransfer(Transfer)} and through the result code returned by
+ * {@link TransferService#tryCreateAndPerformTransfer(Transfer)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferRejectionBenchmark {
+
+    private static final int ACCOUNTS = 1024;
+
+    @Param({ "0", "30", "100" })
+    private int rejectedPercentage;
+
+    private TransferService transferService;
+
+    @Setup
+    public void setup() {
+        AccountService accountService = new StripedLockAccountService();
+        transferService = new TransferService(accountService);
+
+        // odd accounts are empty, so every transfer from them is rejected
+        for (long accountNumber = 1; accountNumber <= ACCOUNTS; accountNumber++) {
+            Account account = new Account();
+            account.setAccountNumber(accountNumber);
+            account.setBalanceInMinorUnits(accountNumber % 2 == 0 ? Long.MAX_VALUE / (2L * ACCOUNTS) : 0L);
+            accountService.createAccount(account);
+        }
+    }
+
+    @Benchmark
+    public Object exception() {
+        Transfer transfer = nextTransfer();
+        try {
+            return transferService.createAndPerformTransfer(transfer);
+        } catch (SimpleMoneyTransferException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public TransferOutcome outcome() {
+        return transferService.tryCreateAndPerformTransfer(nextTransfer());
+    }
+
+    private Transfer nextTransfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean rejected = random.nextInt(100) < rejectedPercentage;
+        long from = 2L * (1 + random.nextInt(ACCOUNTS / 2)) - (rejected ? 1L : 0L);
+        long to = from % ACCOUNTS + 1;
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(from);
+        transfer.setAccountNumberTo(to);
+        transfer.setAmount(0.01D);
+        return transfer;
+    }
+}
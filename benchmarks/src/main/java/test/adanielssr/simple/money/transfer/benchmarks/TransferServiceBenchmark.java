@@ -0,0 +1,126 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferService;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+
+/**
+ * Throughput of {@link TransferService#createAndPerformTransfer(Transfer)} for each account store and each way of
+ * picking the accounts of a transfer, with 1, 8 and 64 threads:
+ * <ul>
+ * <li>uniform: both accounts are picked uniformly,</li>
+ * <li>zipfian: both accounts follow a Zipfian distribution, a few hot accounts take most of the transfers,</li>
+ * <li>all-to-one: every transfer goes to the same account, from a uniformly picked one.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferServiceBenchmark {
+
+    private static final int ACCOUNTS = 65536;
+
+    private static final double ZIPFIAN_EXPONENT = 0.99D;
+
+    @Param({ "striped-lock", "atomic", "indexed", "sharded" })
+    private String accountStore;
+
+    @Param({ "uniform", "zipfian", "all-to-one" })
+    private String distribution;
+
+    private AccountService accountService;
+
+    private TransferService transferService;
+
+    private ZipfianGenerator zipfianGenerator;
+
+    @Setup
+    public void setup() {
+        accountService = AccountServiceContentionBenchmark.createAccountService(accountStore);
+        transferService = new TransferService(accountService);
+        zipfianGenerator = new ZipfianGenerator(ACCOUNTS, ZIPFIAN_EXPONENT);
+
+        for (long accountNumber = 1; accountNumber <= ACCOUNTS; accountNumber++) {
+            Account account = new Account();
+            account.setAccountNumber(accountNumber);
+            account.setBalanceInMinorUnits(Long.MAX_VALUE / (2L * ACCOUNTS));
+            accountService.createAccount(account);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Transfer transfer1Thread() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Transfer transfer8Threads() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Transfer transfer64Threads() {
+        return transfer();
+    }
+
+    private Transfer transfer() {
+        long from;
+        long to;
+        switch (distribution) {
+        case "uniform":
+            from = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+            to = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+            break;
+        case "zipfian":
+            from = zipfianGenerator.next();
+            to = zipfianGenerator.next();
+            break;
+        case "all-to-one":
+            from = 2 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1);
+            to = 1;
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+        if (from == to) {
+            to = from % ACCOUNTS + 1;
+        }
+
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(from);
+        transfer.setAccountNumberTo(to);
+        transfer.setAmount(0.01D);
+        return transferService.createAndPerformTransfer(transfer);
+    }
+}
@@ -0,0 +1,36 @@
+package test.adanielssr.simple.money.transfer.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws numbers between 1 and n following a Zipfian distribution: the probability of number k is proportional to
+ * 1 / k^exponent, so the lowest numbers are the hot ones. The cumulative distribution is computed once and each
+ * draw is a binary search over it, so the generator can be shared by any number of threads.
+ */
+final class ZipfianGenerator {
+
+    private final double[] cumulativeProbabilities;
+
+    ZipfianGenerator(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be greater than 0");
+        }
+        cumulativeProbabilities = new double[n];
+        double sum = 0.0D;
+        for (int k = 1; k <= n; k++) {
+            sum += 1.0D / Math.pow(k, exponent);
+            cumulativeProbabilities[k - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulativeProbabilities[i] /= sum;
+        }
+    }
+
+    long next() {
+        double probability = ThreadLocalRandom.current().nextDouble();
+        int index = Arrays.binarySearch(cumulativeProbabilities, probability);
+        int position = index >= 0 ? index : -index - 1;
+        return 1 + Math.min(position, cumulativeProbabilities.length - 1);
+    }
+}
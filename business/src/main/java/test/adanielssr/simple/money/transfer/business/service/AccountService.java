@@ -1,24 +1,24 @@
 package test.adanielssr.simple.money.transfer.business.service;
 
 import java.util.Collection;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 
 import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountAlreadyExistsException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.NotEnoughBalanceException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
 import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
 
 /**
  * Created by arodrigues on 13/08/2017.
  */
-public class AccountService {
+public interface AccountService {
 
-    private final ConcurrentMap<Long, Account> mapAccountNumberToAccount = new ConcurrentHashMap<>();
-
-    private final AtomicLong accountNumberIncrementer = new AtomicLong();
+    /**
+     * @return the currency scale every stored account balance is expressed in
+     */
+    CurrencyScale getCurrencyScale();
 
     /**
      * Creates a new Account and stores it.
@@ -30,32 +30,22 @@ public class AccountService {
      * @throws SimpleMoneyTransferException  if the account parameter is not valid
      * @throws AccountAlreadyExistsException if the account number given is already assigned to an existing account
      */
-    public Account createAccount(Account newAccount) {
-        if (newAccount == null) {
-            throw new SimpleMoneyTransferException("Account object needed!");
-        }
-
-        if (newAccount.getAccountNumber() == null) {
-            newAccount.setAccountNumber(accountNumberIncrementer.incrementAndGet());
-        }
-        if (newAccount.getBalance() == null) {
-            newAccount.setBalance(0.0D);
-        }
-
-        if (mapAccountNumberToAccount.putIfAbsent(newAccount.getAccountNumber(), newAccount) != null) {
-            throw new AccountAlreadyExistsException(newAccount.getAccountNumber());
-        } else {
-            return newAccount;
-        }
-    }
+    Account createAccount(Account newAccount);
 
     /**
      * Retrieve all stored accounts
      *
      * @return the collection of Accounts
      */
-    public Collection<Account> getAllAccounts() {
-        return mapAccountNumberToAccount.values();
+    Collection<Account> getAllAccounts();
+
+    /**
+     * Counts the stored accounts without building them.
+     *
+     * @return the number of stored accounts
+     */
+    default int getAccountCount() {
+        return getAllAccounts().size();
     }
 
     /**
@@ -66,32 +56,53 @@ public class AccountService {
      * @throws SimpleMoneyTransferException if the account number is invalid
      * @throws AccountNotFoundException     if no account with the given account number exists in the store
      */
-    public Account getAccountByNumber(Long accountNumber) {
-        if (accountNumber == null) {
-            throw new SimpleMoneyTransferException("Account number needed!");
-        }
-        Account foundAccount = mapAccountNumberToAccount.get(accountNumber);
-        if (foundAccount == null) {
-            throw new AccountNotFoundException(accountNumber);
-        } else {
-            return foundAccount;
-        }
-    }
+    Account getAccountByNumber(Long accountNumber);
 
     /**
      * Performs a operation over an account if it exists on the store.
-     * The operation is done if the acconu
+     * Implementations that retry on contention may apply the operation more than once, so it must not have side
+     * effects other than on the account it is given.
      *
      * @param accountNumber the account number
      * @param operation     function where the first argument is the account Number the second argument is the
+     *                      account, returning the updated account
      */
-    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
-        if (accountNumber == null) {
-            throw new SimpleMoneyTransferException("Account number needed!");
-        }
-        if (operation == null) {
-            throw new SimpleMoneyTransferException("Operation needed!");
+    void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation);
+
+    /**
+     * Moves an amount from one account to another.
+     * The balance of the origin account never goes below zero, and a transfer from an account to itself is rejected
+     * without touching it.
+     *
+     * @param accountNumberFrom  the account number to take the amount from
+     * @param accountNumberTo    the account number to put the amount in
+     * @param amountInMinorUnits the amount, in minor units of the {@link #getCurrencyScale() currency scale}
+     * @throws SimpleMoneyTransferException if some of the parameters is invalid or both accounts are the same
+     * @throws AccountNotFoundException     if some of the accounts does not exist in the store
+     * @throws NotEnoughBalanceException    if the origin account doesn't have enough balance
+     * @throws ArithmeticException          if the balance of the destination account would overflow
+     */
+    void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits);
+
+    /**
+     * Moves an amount from one account to another, returning why it was rejected instead of throwing.
+     * The balance of the origin account never goes below zero.
+     *
+     * @param accountNumberFrom  the account number to take the amount from
+     * @param accountNumberTo    the account number to put the amount in
+     * @param amountInMinorUnits the amount, in minor units of the {@link #getCurrencyScale() currency scale}
+     * @return {@link TransferOutcome#PERFORMED}, {@link TransferOutcome#SAME_ACCOUNT},
+     * {@link TransferOutcome#ACCOUNT_FROM_NOT_FOUND}, {@link TransferOutcome#ACCOUNT_TO_NOT_FOUND} or
+     * {@link TransferOutcome#NOT_ENOUGH_BALANCE}
+     * @throws SimpleMoneyTransferException if some of the parameters is invalid
+     * @throws ArithmeticException          if the balance of the destination account would overflow
+     */
+    default TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        try {
+            transfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+            return TransferOutcome.PERFORMED;
+        } catch (SimpleMoneyTransferException e) {
+            return TransferOutcome.ofAccountServiceException(e, accountNumberFrom);
         }
-        mapAccountNumberToAccount.computeIfPresent(accountNumber, operation);
     }
 }
@@ -0,0 +1,248 @@
+package test.adanielssr.simple.money.transfer.business.service;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.BiFunction;
+
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountAlreadyExistsException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * {@link AccountService} keeping the balance of each account in its own {@link AtomicLong} cell of minor units.
+ * <p>
+ * Debits are a compare-and-set loop that refuses to take a balance below zero and credits are a compare-and-set
+ * loop that refuses to overflow it, so transfers never take a lock and transfers touching different accounts never
+ * wait for each other. The two legs of a transfer are applied one after the other: while a transfer is in flight the
+ * debited amount is already gone from the origin account but not yet on the destination one, and a credit that
+ * would overflow gives the debited amount back.
+ * <p>
+ * Accounts returned by this service are snapshots of the balance at the time they were read. The version of an
+ * account is increased right after each change of its balance.
+ */
+public class AtomicBalanceAccountService implements AccountService {
+
+    private final ConcurrentMap<Long, BalanceCell> mapAccountNumberToBalance = new ConcurrentHashMap<>();
+
+    private final AtomicLong accountNumberIncrementer = new AtomicLong();
+
+    private final CurrencyScale currencyScale;
+
+    private final Collection<Account> allAccounts = new AccountsView();
+
+    public AtomicBalanceAccountService() {
+        this(CurrencyScale.DEFAULT);
+    }
+
+    public AtomicBalanceAccountService(CurrencyScale currencyScale) {
+        this.currencyScale = currencyScale;
+    }
+
+    @Override
+    public CurrencyScale getCurrencyScale() {
+        return currencyScale;
+    }
+
+    @Override
+    public Account createAccount(Account newAccount) {
+        if (newAccount == null) {
+            throw new SimpleMoneyTransferException("Account object needed!");
+        }
+
+        if (newAccount.getAccountNumber() == null) {
+            newAccount.setAccountNumber(accountNumberIncrementer.incrementAndGet());
+        } else {
+            // generated numbers must not collide with the given ones
+            accountNumberIncrementer.accumulateAndGet(newAccount.getAccountNumber(), Math::max);
+        }
+        newAccount.setCurrencyScale(currencyScale);
+
+        if (mapAccountNumberToBalance
+                .putIfAbsent(newAccount.getAccountNumber(), new BalanceCell(newAccount.getBalanceInMinorUnits()))
+                != null) {
+            throw new AccountAlreadyExistsException(newAccount.getAccountNumber());
+        } else {
+            return newAccount;
+        }
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        return allAccounts;
+    }
+
+    @Override
+    public Account getAccountByNumber(Long accountNumber) {
+        return toAccount(accountNumber, getBalanceCell(accountNumber));
+    }
+
+    @Override
+    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
+        if (accountNumber == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        if (operation == null) {
+            throw new SimpleMoneyTransferException("Operation needed!");
+        }
+        BalanceCell balanceCell = mapAccountNumberToBalance.get(accountNumber);
+        if (balanceCell == null) {
+            return;
+        }
+
+        while (true) {
+            long version = balanceCell.version;
+            long currentBalance = balanceCell.get();
+            Account updatedAccount = operation
+                    .apply(accountNumber, toAccount(accountNumber, currentBalance, version));
+            if (updatedAccount == null) {
+                mapAccountNumberToBalance.remove(accountNumber, balanceCell);
+                return;
+            }
+            long updatedBalance = currencyScale
+                    .convert(updatedAccount.getBalanceInMinorUnits(), updatedAccount.getCurrencyScale());
+            if (balanceCell.compareAndSet(currentBalance, updatedBalance)) {
+                balanceCell.incrementVersion();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        TransferOutcome outcome = tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+        if (!outcome.isPerformed()) {
+            throw outcome.toException(accountNumberFrom, accountNumberTo);
+        }
+    }
+
+    @Override
+    public TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        if (accountNumberFrom == null || accountNumberTo == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        if (amountInMinorUnits < 0L) {
+            throw new SimpleMoneyTransferException("Amount cannot be negative!");
+        }
+        if (accountNumberFrom.equals(accountNumberTo)) {
+            return TransferOutcome.SAME_ACCOUNT;
+        }
+        BalanceCell fromBalance = mapAccountNumberToBalance.get(accountNumberFrom);
+        if (fromBalance == null) {
+            return TransferOutcome.ACCOUNT_FROM_NOT_FOUND;
+        }
+        BalanceCell toBalance = mapAccountNumberToBalance.get(accountNumberTo);
+        if (toBalance == null) {
+            return TransferOutcome.ACCOUNT_TO_NOT_FOUND;
+        }
+
+        long currentFromBalance;
+        do {
+            currentFromBalance = fromBalance.get();
+            if (currentFromBalance < amountInMinorUnits) {
+                return TransferOutcome.NOT_ENOUGH_BALANCE;
+            }
+        } while (!fromBalance.compareAndSet(currentFromBalance, currentFromBalance - amountInMinorUnits));
+        fromBalance.incrementVersion();
+
+        long currentToBalance;
+        long updatedToBalance;
+        do {
+            currentToBalance = toBalance.get();
+            try {
+                updatedToBalance = Math.addExact(currentToBalance, amountInMinorUnits);
+            } catch (ArithmeticException e) {
+                fromBalance.getAndAdd(amountInMinorUnits);
+                fromBalance.incrementVersion();
+                throw e;
+            }
+        } while (!toBalance.compareAndSet(currentToBalance, updatedToBalance));
+        toBalance.incrementVersion();
+        return TransferOutcome.PERFORMED;
+    }
+
+    private BalanceCell getBalanceCell(Long accountNumber) {
+        if (accountNumber == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        BalanceCell balanceCell = mapAccountNumberToBalance.get(accountNumber);
+        if (balanceCell == null) {
+            throw new AccountNotFoundException(accountNumber);
+        }
+        return balanceCell;
+    }
+
+    /**
+     * Reads the version before the balance: a balance changed after the version was read is newer than it, never
+     * older.
+     */
+    private Account toAccount(Long accountNumber, BalanceCell balanceCell) {
+        long version = balanceCell.version;
+        return toAccount(accountNumber, balanceCell.get(), version);
+    }
+
+    private Account toAccount(Long accountNumber, long balanceInMinorUnits, long version) {
+        Account account = new Account();
+        account.setAccountNumber(accountNumber);
+        account.setCurrencyScale(currencyScale);
+        account.setBalanceInMinorUnits(balanceInMinorUnits);
+        account.setVersion(version);
+        return account;
+    }
+
+    /**
+     * Weakly consistent view over the stored balances, creating the account snapshots while iterating.
+     */
+    private class AccountsView extends AbstractCollection<Account> {
+
+        @Override
+        public Iterator<Account> iterator() {
+            Iterator<Map.Entry<Long, BalanceCell>> entries = mapAccountNumberToBalance.entrySet().iterator();
+            return new Iterator<Account>() {
+
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Account next() {
+                    Map.Entry<Long, BalanceCell> entry = entries.next();
+                    return toAccount(entry.getKey(), entry.getValue());
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return mapAccountNumberToBalance.size();
+        }
+    }
+
+    /**
+     * Balance of an account, with the {@link Account#getVersion() version} of the account increased after each
+     * change of the balance.
+     */
+    private static final class BalanceCell extends AtomicLong {
+
+        private static final AtomicLongFieldUpdater<BalanceCell> VERSION = AtomicLongFieldUpdater
+                .newUpdater(BalanceCell.class, "version");
+
+        private volatile long version;
+
+        private BalanceCell(long balanceInMinorUnits) {
+            super(balanceInMinorUnits);
+        }
+
+        private void incrementVersion() {
+            VERSION.incrementAndGet(this);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package test.adanielssr.simple.money.transfer.business.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import test.adanielssr.simple.money.transfer.business.service.journal.Journal;
+import test.adanielssr.simple.money.transfer.business.service.journal.JournalVisitor;
+import test.adanielssr.simple.money.transfer.business.service.snapshot.SnapshotStore;
+import test.adanielssr.simple.money.transfer.business.service.snapshot.SnapshotVisitor;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * Rebuilds the accounts and transfers from the latest snapshot, if any, and the records of a {@link Journal}
+ * appended after it. Transfers that are part of the snapshot are not restored, only their numbering.
+ * <p>
+ * Balance changes of accounts not created yet are kept aside and added to the account once its creation is
+ * replayed; balance changes are sums, so the order they are applied in does not matter. Account creations are
+ * journaled before the account can be used, but journals written while creations were journaled after the account
+ * was created may hold changes of an account whose creation was never journaled. Such an account is created with the
+ * sum of its changes, unless that sum is negative: its opening balance is lost, so it is rejected instead and
+ * reported by {@link #getRejectedAccounts()}.
+ * <p>
+ * Must be given the account service without any journaling decorator, so replaying does not journal again.
+ */
+public class JournalRecovery implements JournalVisitor, SnapshotVisitor {
+
+    private final AccountService accountService;
+
+    private final TransferService transferService;
+
+    private final CurrencyScale currencyScale;
+
+    private final Map<Long, Long> pendingDeltas = new HashMap<>();
+
+    private final Set<Long> removedAccounts = new HashSet<>();
+
+    private final Map<Long, Long> rejectedAccounts = new HashMap<>();
+
+    public JournalRecovery(AccountService accountService, TransferService transferService) {
+        this.accountService = accountService;
+        this.transferService = transferService;
+        this.currencyScale = accountService.getCurrencyScale();
+    }
+
+    /**
+     * Replays the whole journal into the account and transfer services.
+     *
+     * @param journal the journal, nothing must have been appended to it yet
+     */
+    public void recover(Journal journal) {
+        recover(null, journal);
+    }
+
+    /**
+     * Loads the latest snapshot and replays the journal appended after it into the account and transfer services.
+     *
+     * @param snapshotStore the snapshot store, may be null if snapshots are not taken
+     * @param journal       the journal, nothing must have been appended to it yet
+     */
+    public void recover(SnapshotStore snapshotStore, Journal journal) {
+        long firstSegmentIndex = snapshotStore == null ? 0L : snapshotStore.load(this);
+        journal.replay(this, firstSegmentIndex);
+
+        for (Map.Entry<Long, Long> pendingDelta : pendingDeltas.entrySet()) {
+            if (pendingDelta.getValue() < 0L) {
+                rejectedAccounts.put(pendingDelta.getKey(), pendingDelta.getValue());
+            } else {
+                createAccount(pendingDelta.getKey(), pendingDelta.getValue());
+            }
+        }
+        pendingDeltas.clear();
+        removedAccounts.clear();
+    }
+
+    /**
+     * @return the number and the negative sum of the balance changes of each account whose creation was never
+     * journaled and that was therefore not recovered
+     */
+    public Map<Long, Long> getRejectedAccounts() {
+        return Collections.unmodifiableMap(rejectedAccounts);
+    }
+
+    @Override
+    public void transferNumber(long transferNumber) {
+        transferService.restoreTransferNumber(transferNumber);
+    }
+
+    @Override
+    public void account(long accountNumber, long balance) {
+        createAccount(accountNumber, balance);
+    }
+
+    @Override
+    public void pendingDelta(long accountNumber, long delta) {
+        pendingDeltas.put(accountNumber, delta);
+    }
+
+    @Override
+    public void accountCreated(long accountNumber, long balance) {
+        Long pendingDelta = pendingDeltas.remove(accountNumber);
+        removedAccounts.remove(accountNumber);
+        createAccount(accountNumber, pendingDelta == null ? balance : balance + pendingDelta);
+    }
+
+    @Override
+    public void balanceChanged(long accountNumber, long delta) {
+        addToBalance(accountNumber, delta);
+    }
+
+    @Override
+    public void accountRemoved(long accountNumber) {
+        pendingDeltas.remove(accountNumber);
+        removedAccounts.add(accountNumber);
+        accountService.performAccountOperation(accountNumber, (aAccountNumber, account) -> null);
+    }
+
+    @Override
+    public void transferPerformed(long transferNumber, long transferTimestamp, long accountNumberFrom,
+            long accountNumberTo, long amount) {
+        addToBalance(accountNumberFrom, -amount);
+        addToBalance(accountNumberTo, amount);
+
+        transferService.restoreTransfer(transferNumber, transferTimestamp, accountNumberFrom, accountNumberTo, amount);
+    }
+
+    private void addToBalance(long accountNumber, long delta) {
+        if (removedAccounts.contains(accountNumber)) {
+            return;
+        }
+        final boolean[] applied = { false };
+        accountService.performAccountOperation(accountNumber, (aAccountNumber, account) -> {
+            account.setBalanceInMinorUnits(account.getBalanceInMinorUnits() + delta);
+            applied[0] = true;
+            return account;
+        });
+        if (!applied[0]) {
+            pendingDeltas.merge(accountNumber, delta, Long::sum);
+        }
+    }
+
+    private void createAccount(long accountNumber, long balance) {
+        Account account = new Account();
+        account.setAccountNumber(accountNumber);
+        account.setCurrencyScale(currencyScale);
+        account.setBalanceInMinorUnits(balance);
+        accountService.createAccount(account);
+    }
+}
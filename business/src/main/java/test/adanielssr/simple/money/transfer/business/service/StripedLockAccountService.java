@@ -0,0 +1,165 @@
+package test.adanielssr.simple.money.transfer.business.service;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountAlreadyExistsException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * Created by arodrigues on 13/08/2017.
+ * <p>
+ * {@link AccountService} keeping {@link Account} objects in a {@link ConcurrentHashMap}, with balance changes
+ * guarded by a striped lock array.
+ */
+public class StripedLockAccountService implements AccountService {
+
+    private static final int LOCK_STRIPES = 1024;
+
+    private final ConcurrentMap<Long, Account> mapAccountNumberToAccount = new ConcurrentHashMap<>();
+
+    private final AtomicLong accountNumberIncrementer = new AtomicLong();
+
+    private final CurrencyScale currencyScale;
+
+    /**
+     * Locks guarding balance changes. An account is always guarded by the same stripe, and two stripes are always
+     * acquired in index order, so balance changes never depend on the bin locks of the map.
+     */
+    private final Object[] lockStripes = new Object[LOCK_STRIPES];
+
+    public StripedLockAccountService() {
+        this(CurrencyScale.DEFAULT);
+    }
+
+    public StripedLockAccountService(CurrencyScale currencyScale) {
+        this.currencyScale = currencyScale;
+        for (int i = 0; i < lockStripes.length; i++) {
+            lockStripes[i] = new Object();
+        }
+    }
+
+    @Override
+    public CurrencyScale getCurrencyScale() {
+        return currencyScale;
+    }
+
+    @Override
+    public Account createAccount(Account newAccount) {
+        if (newAccount == null) {
+            throw new SimpleMoneyTransferException("Account object needed!");
+        }
+
+        if (newAccount.getAccountNumber() == null) {
+            newAccount.setAccountNumber(accountNumberIncrementer.incrementAndGet());
+        } else {
+            // generated numbers must not collide with the given ones
+            accountNumberIncrementer.accumulateAndGet(newAccount.getAccountNumber(), Math::max);
+        }
+        newAccount.setCurrencyScale(currencyScale);
+
+        if (mapAccountNumberToAccount.putIfAbsent(newAccount.getAccountNumber(), newAccount) != null) {
+            throw new AccountAlreadyExistsException(newAccount.getAccountNumber());
+        } else {
+            return newAccount;
+        }
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        return mapAccountNumberToAccount.values();
+    }
+
+    @Override
+    public Account getAccountByNumber(Long accountNumber) {
+        if (accountNumber == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        Account foundAccount = mapAccountNumberToAccount.get(accountNumber);
+        if (foundAccount == null) {
+            throw new AccountNotFoundException(accountNumber);
+        } else {
+            return foundAccount;
+        }
+    }
+
+    @Override
+    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
+        if (accountNumber == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        if (operation == null) {
+            throw new SimpleMoneyTransferException("Operation needed!");
+        }
+        synchronized (lockStripes[lockStripeIndex(accountNumber)]) {
+            mapAccountNumberToAccount.computeIfPresent(accountNumber, (aAccountNumber, account) -> {
+                long version = account.getVersion();
+                Account updatedAccount = operation.apply(aAccountNumber, account);
+                if (updatedAccount != null) {
+                    updatedAccount.setVersion(version + 1);
+                }
+                return updatedAccount;
+            });
+        }
+    }
+
+    @Override
+    public void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        TransferOutcome outcome = tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+        if (!outcome.isPerformed()) {
+            throw outcome.toException(accountNumberFrom, accountNumberTo);
+        }
+    }
+
+    @Override
+    public TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        if (accountNumberFrom == null || accountNumberTo == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        if (amountInMinorUnits < 0L) {
+            throw new SimpleMoneyTransferException("Amount cannot be negative!");
+        }
+        if (accountNumberFrom.equals(accountNumberTo)) {
+            return TransferOutcome.SAME_ACCOUNT;
+        }
+
+        int fromStripe = lockStripeIndex(accountNumberFrom);
+        int toStripe = lockStripeIndex(accountNumberTo);
+
+        synchronized (lockStripes[Math.min(fromStripe, toStripe)]) {
+            synchronized (lockStripes[Math.max(fromStripe, toStripe)]) {
+                Account transferFrom = mapAccountNumberToAccount.get(accountNumberFrom);
+                if (transferFrom == null) {
+                    return TransferOutcome.ACCOUNT_FROM_NOT_FOUND;
+                }
+                Account transferTo = mapAccountNumberToAccount.get(accountNumberTo);
+                if (transferTo == null) {
+                    return TransferOutcome.ACCOUNT_TO_NOT_FOUND;
+                }
+
+                long fromBalance = transferFrom.getBalanceInMinorUnits() - amountInMinorUnits;
+                if (fromBalance < 0L) {
+                    return TransferOutcome.NOT_ENOUGH_BALANCE;
+                }
+                long toBalance = Math.addExact(transferTo.getBalanceInMinorUnits(), amountInMinorUnits);
+
+                transferFrom.setBalanceInMinorUnits(fromBalance);
+                transferFrom.incrementVersion();
+                transferTo.setBalanceInMinorUnits(toBalance);
+                transferTo.incrementVersion();
+                return TransferOutcome.PERFORMED;
+            }
+        }
+    }
+
+    private static int lockStripeIndex(long accountNumber) {
+        int hash = Long.hashCode(accountNumber);
+        return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
+    }
+}
@@ -0,0 +1,97 @@
+package test.adanielssr.simple.money.transfer.business.service;
+
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.NotEnoughBalanceException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.TransferValidationException;
+
+/**
+ * Result code of a transfer, returned instead of throwing by
+ * {@link TransferService#tryCreateAndPerformTransfer(test.adanielssr.simple.money.transfer.domain.model.Transfer)}
+ * and {@link AccountService#tryTransfer(Long, Long, long)}.
+ * <p>
+ * Each rejection maps to the exception the throwing methods raise for it. Rejections with a fixed message map to a
+ * single exception instance created once.
+ */
+public enum TransferOutcome {
+
+    PERFORMED(null),
+
+    TRANSFER_NEEDED(new SimpleMoneyTransferException("Transfer object needed!")),
+
+    ACCOUNT_NUMBER_FROM_NEEDED(new TransferValidationException("accountNumberFrom needed!")),
+
+    ACCOUNT_NUMBER_TO_NEEDED(new TransferValidationException("accountNumberTo needed!")),
+
+    AMOUNT_NEEDED(new TransferValidationException("amount needed!")),
+
+    SAME_ACCOUNT(new TransferValidationException("Cannot perform transfer in the same account!")),
+
+    AMOUNT_NOT_POSITIVE(new TransferValidationException("amount must be greater than 0.0!")),
+
+    AMOUNT_TOO_BIG(new TransferValidationException("amount is too big!")),
+
+    IDEMPOTENCY_KEY_TOO_LONG(new TransferValidationException("idempotency key is too long!")),
+
+    IDEMPOTENCY_KEY_REUSED(new TransferValidationException("idempotency key already used for another transfer!")),
+
+    ACCOUNT_FROM_NOT_FOUND(null),
+
+    ACCOUNT_TO_NOT_FOUND(null),
+
+    NOT_ENOUGH_BALANCE(null);
+
+    private final SimpleMoneyTransferException exception;
+
+    TransferOutcome(SimpleMoneyTransferException exception) {
+        this.exception = exception;
+    }
+
+    public boolean isPerformed() {
+        return this == PERFORMED;
+    }
+
+    /**
+     * @return true if the transfer was rejected before touching any account because it is not valid
+     */
+    public boolean isInvalid() {
+        return exception != null;
+    }
+
+    /**
+     * @param accountNumberFrom the account number the transfer was from
+     * @param accountNumberTo   the account number the transfer was to
+     * @return the exception the throwing methods raise for this outcome, or null if the transfer was performed
+     */
+    public SimpleMoneyTransferException toException(Long accountNumberFrom, Long accountNumberTo) {
+        switch (this) {
+        case PERFORMED:
+            return null;
+        case ACCOUNT_FROM_NOT_FOUND:
+            return new AccountNotFoundException(accountNumberFrom);
+        case ACCOUNT_TO_NOT_FOUND:
+            return new AccountNotFoundException(accountNumberTo);
+        case NOT_ENOUGH_BALANCE:
+            return new NotEnoughBalanceException(accountNumberFrom);
+        default:
+            return exception;
+        }
+    }
+
+    /**
+     * Maps an exception raised by {@link AccountService#transfer(Long, Long, long)} to its outcome.
+     *
+     * @throws SimpleMoneyTransferException the given exception if it is not a transfer rejection
+     */
+    static TransferOutcome ofAccountServiceException(SimpleMoneyTransferException e, Long accountNumberFrom) {
+        if (e instanceof NotEnoughBalanceException) {
+            return NOT_ENOUGH_BALANCE;
+        } else if (e instanceof AccountNotFoundException) {
+            return accountNumberFrom.equals(((AccountNotFoundException) e).getAccountNumber()) ?
+                    ACCOUNT_FROM_NOT_FOUND :
+                    ACCOUNT_TO_NOT_FOUND;
+        } else {
+            throw e;
+        }
+    }
+}
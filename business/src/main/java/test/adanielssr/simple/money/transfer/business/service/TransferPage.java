@@ -0,0 +1,22 @@
+package test.adanielssr.simple.money.transfer.business.service;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+
+/**
+ * Page of the transfers of an account, with the cursor to read the following page.
+ */
+@Getter
+@AllArgsConstructor
+public class TransferPage {
+
+    private final List<Transfer> transfers;
+
+    /**
+     * Transfer number to read the next page since, or null if there is no transfer yet.
+     */
+    private final Long next;
+}
@@ -0,0 +1,41 @@
+package test.adanielssr.simple.money.transfer.business.service;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+
+/**
+ * Outcome of one transfer of a batch: either the performed transfer or the reason it was rejected.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class TransferResult {
+
+    private final Transfer transfer;
+
+    /**
+     * The outcome of the transfer, or null if it was rejected by an unexpected error.
+     */
+    private final TransferOutcome outcome;
+
+    private final SimpleMoneyTransferException error;
+
+    public static TransferResult performed(Transfer transfer) {
+        return new TransferResult(transfer, TransferOutcome.PERFORMED, null);
+    }
+
+    public static TransferResult rejected(Transfer transfer, TransferOutcome outcome) {
+        return new TransferResult(transfer, outcome, transfer == null ? outcome.toException(null, null) :
+                outcome.toException(transfer.getAccountNumberFrom(), transfer.getAccountNumberTo()));
+    }
+
+    public static TransferResult rejected(Transfer transfer, SimpleMoneyTransferException error) {
+        return new TransferResult(transfer, null, error);
+    }
+
+    public boolean isPerformed() {
+        return error == null;
+    }
+}
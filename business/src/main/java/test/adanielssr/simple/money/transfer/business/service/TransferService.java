@@ -1,17 +1,24 @@
 package test.adanielssr.simple.money.transfer.business.service;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.BiFunction;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import test.adanielssr.simple.money.transfer.business.service.exceptions.NotEnoughBalanceException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
-import test.adanielssr.simple.money.transfer.business.service.exceptions.TransferValidationException;
-import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.TransferNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.history.TransferHistory;
+import test.adanielssr.simple.money.transfer.business.service.id.IdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.SequenceIdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.idempotency.IdempotencyCache;
+import test.adanielssr.simple.money.transfer.business.service.journal.Journal;
+import test.adanielssr.simple.money.transfer.business.service.metrics.LatencyHistogram;
+import test.adanielssr.simple.money.transfer.business.service.metrics.MetricsRegistry;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
 import test.adanielssr.simple.money.transfer.domain.model.Transfer;
 import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
 
@@ -20,25 +27,213 @@ import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
  */
 public class TransferService {
 
-    private static final int DEFAULT_SCALE = 2;
+    /**
+     * Number of transfers kept in memory by the default transfer history.
+     */
+    public static final int DEFAULT_HISTORY_CAPACITY = 1 << 18;
 
-    private final ConcurrentMap<Long, Transfer> mapTransferNumberToTransfer = new ConcurrentHashMap<>();
+    /**
+     * Maximum number of transfers of a page of account transfers.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
 
-    private final AtomicLong transferNumberIncrementer = new AtomicLong();
+    /**
+     * Number of idempotency keys kept by default.
+     */
+    public static final int DEFAULT_IDEMPOTENCY_CAPACITY = 1 << 16;
+
+    /**
+     * How long idempotency keys are kept by default, a day.
+     */
+    public static final long DEFAULT_IDEMPOTENCY_TTL_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final IdGenerator transferNumberGenerator;
 
     private final AccountService accountService;
 
+    private final CurrencyScale currencyScale;
+
+    private final Journal journal;
+
+    private final TransferHistory transferHistory;
+
+    private final IdempotencyCache<TransferResult> idempotencyCache;
+
+    private final LatencyHistogram createAndPerformTransferLatency;
+
+    private final LatencyHistogram createAndPerformTransfersLatency;
+
+    private final LatencyHistogram getTransferByNumberLatency;
+
+    private final LatencyHistogram getAccountTransfersLatency;
+
+    private final LongAdder transfersPerformed;
+
+    private final LongAdder transfersRejectedNotEnoughBalance;
+
+    private final LongAdder transfersRejectedAccountNotFound;
+
+    private final LongAdder transfersRejectedValidation;
+
+    private final LongAdder transfersRejectedOther;
+
     public TransferService(AccountService accountService) {
+        this(accountService, null);
+    }
+
+    /**
+     * @param accountService the account service
+     * @param journal        the journal performed transfers are appended to, or null to keep them in memory only
+     */
+    public TransferService(AccountService accountService, Journal journal) {
+        this(accountService, journal,
+                new TransferHistory(accountService.getCurrencyScale(), DEFAULT_HISTORY_CAPACITY));
+    }
+
+    /**
+     * @param accountService  the account service
+     * @param journal         the journal performed transfers are appended to, or null to keep them in memory only
+     * @param transferHistory where transfers are stored, with the currency scale of the account service
+     */
+    public TransferService(AccountService accountService, Journal journal, TransferHistory transferHistory) {
+        this(accountService, journal, transferHistory, new MetricsRegistry());
+    }
+
+    /**
+     * @param accountService  the account service
+     * @param journal         the journal performed transfers are appended to, or null to keep them in memory only
+     * @param transferHistory where transfers are stored, with the currency scale of the account service
+     * @param metricsRegistry where the latency of the service methods and the transfer counts are registered
+     */
+    public TransferService(AccountService accountService, Journal journal, TransferHistory transferHistory,
+            MetricsRegistry metricsRegistry) {
+        this(accountService, journal, transferHistory, metricsRegistry, DEFAULT_IDEMPOTENCY_CAPACITY,
+                DEFAULT_IDEMPOTENCY_TTL_MILLIS);
+    }
+
+    /**
+     * @param accountService       the account service
+     * @param journal              the journal performed transfers are appended to, or null to keep them in memory only
+     * @param transferHistory      where transfers are stored, with the currency scale of the account service
+     * @param metricsRegistry      where the latency of the service methods and the transfer counts are registered
+     * @param idempotencyCapacity  the maximum number of idempotency keys kept
+     * @param idempotencyTtlMillis how long an idempotency key is kept
+     */
+    public TransferService(AccountService accountService, Journal journal, TransferHistory transferHistory,
+            MetricsRegistry metricsRegistry, int idempotencyCapacity, long idempotencyTtlMillis) {
+        this(accountService, journal, transferHistory, metricsRegistry, idempotencyCapacity, idempotencyTtlMillis,
+                new SequenceIdGenerator());
+    }
+
+    /**
+     * @param accountService          the account service
+     * @param journal                 the journal performed transfers are appended to, or null to keep them in memory
+     *                                only
+     * @param transferHistory         where transfers are stored, with the currency scale of the account service
+     * @param metricsRegistry         where the latency of the service methods and the transfer counts are registered
+     * @param idempotencyCapacity     the maximum number of idempotency keys kept
+     * @param idempotencyTtlMillis    how long an idempotency key is kept
+     * @param transferNumberGenerator where transfer numbers are taken from
+     */
+    public TransferService(AccountService accountService, Journal journal, TransferHistory transferHistory,
+            MetricsRegistry metricsRegistry, int idempotencyCapacity, long idempotencyTtlMillis,
+            IdGenerator transferNumberGenerator) {
+        if (!accountService.getCurrencyScale().equals(transferHistory.getCurrencyScale())) {
+            throw new IllegalArgumentException("transferHistory must have the currency scale of accountService");
+        }
         this.accountService = accountService;
+        this.currencyScale = accountService.getCurrencyScale();
+        this.journal = journal;
+        this.transferHistory = transferHistory;
+        this.transferNumberGenerator = transferNumberGenerator;
+
+        this.createAndPerformTransferLatency = methodLatency(metricsRegistry, "createAndPerformTransfer");
+        this.createAndPerformTransfersLatency = methodLatency(metricsRegistry, "createAndPerformTransfers");
+        this.getTransferByNumberLatency = methodLatency(metricsRegistry, "getTransferByNumber");
+        this.getAccountTransfersLatency = methodLatency(metricsRegistry, "getAccountTransfers");
+        this.transfersPerformed = metricsRegistry
+                .counter("transfers_performed_total", "Number of performed transfers.", null, null);
+        this.transfersRejectedNotEnoughBalance = rejectedTransfers(metricsRegistry, "NotEnoughBalanceException");
+        this.transfersRejectedAccountNotFound = rejectedTransfers(metricsRegistry, "AccountNotFoundException");
+        this.transfersRejectedValidation = rejectedTransfers(metricsRegistry, "TransferValidationException");
+        this.transfersRejectedOther = rejectedTransfers(metricsRegistry, "SimpleMoneyTransferException");
+        this.idempotencyCache = new IdempotencyCache<>(idempotencyCapacity, idempotencyTtlMillis, metricsRegistry
+                .counter("transfers_deduplicated_total",
+                        "Number of transfers answered with the transfer of an earlier use of their idempotency key.",
+                        null, null));
+        metricsRegistry.gauge("idempotency_keys", "Number of idempotency keys kept.", idempotencyCache::size);
+    }
+
+    private static LatencyHistogram methodLatency(MetricsRegistry metricsRegistry, String method) {
+        return metricsRegistry
+                .histogram("transfer_service_latency_seconds", "Latency of the transfer service methods.", "method",
+                        method);
+    }
+
+    private static LongAdder rejectedTransfers(MetricsRegistry metricsRegistry, String exception) {
+        return metricsRegistry
+                .counter("transfers_rejected_total", "Number of rejected transfers by exception.", "exception",
+                        exception);
     }
 
     /**
      * Access modifier to default for testing purposes
      *
-     * @return the map of Transfers
+     * @return the transfer history
      */
-    ConcurrentMap<Long, Transfer> getMapTransferNumberToTransfer() {
-        return mapTransferNumberToTransfer;
+    TransferHistory getTransferHistory() {
+        return transferHistory;
+    }
+
+    /**
+     * @param transferNumber the transfer number
+     * @return the transfer
+     * @throws SimpleMoneyTransferException if no transfer number is given
+     * @throws TransferNotFoundException    if the transfer does not exist or is no longer kept by the history
+     */
+    public Transfer getTransferByNumber(Long transferNumber) {
+        long start = System.nanoTime();
+        try {
+            if (transferNumber == null) {
+                throw new SimpleMoneyTransferException("Transfer number needed!");
+            }
+            Transfer transfer = transferHistory.get(transferNumber);
+            if (transfer == null) {
+                throw new TransferNotFoundException(transferNumber);
+            }
+            return transfer;
+        } finally {
+            getTransferByNumberLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Reads a page of the transfers from or to an account, in the order they were created.
+     *
+     * @param accountNumber       the account number
+     * @param sinceTransferNumber only transfers numbered after it are returned, or null for the latest transfers
+     * @param limit               the maximum number of transfers, between 1 and {@link #MAX_PAGE_SIZE}
+     * @return the page of transfers
+     * @throws SimpleMoneyTransferException                                                               if no account number or an invalid limit is given
+     * @throws test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException if the account does not exist
+     */
+    public TransferPage getAccountTransfers(Long accountNumber, Long sinceTransferNumber, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new SimpleMoneyTransferException("limit must be between 1 and " + MAX_PAGE_SIZE + "!");
+            }
+            // fails if the account does not exist
+            accountService.getAccountByNumber(accountNumber);
+
+            List<Transfer> transfers = transferHistory
+                    .getAccountTransfers(accountNumber, sinceTransferNumber, limit);
+            Long next = transfers.isEmpty() ? sinceTransferNumber :
+                    transfers.get(transfers.size() - 1).getTransferNumber();
+            return new TransferPage(transfers, next);
+        } finally {
+            getAccountTransfersLatency.recordSince(start);
+        }
     }
 
     /**
@@ -51,85 +246,282 @@ public class TransferService {
      * @throws test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException if some of the given accountNumber does not exist
      */
     public Transfer createAndPerformTransfer(Transfer transfer) {
-        validateTransfer(transfer);
+        TransferOutcome outcome = tryCreateAndPerformTransfer(transfer);
+        if (!outcome.isPerformed()) {
+            throw transfer == null ? outcome.toException(null, null) :
+                    outcome.toException(transfer.getAccountNumberFrom(), transfer.getAccountNumberTo());
+        }
+        return transfer;
+    }
 
-        // get accounts from account Service
-        Account transferFrom = accountService.getAccountByNumber(transfer.getAccountNumberFrom());
+    /**
+     * Create a Transfer and performs it in the correspondent accounts, returning why it was rejected instead of
+     * throwing, so a rejection costs no more than a performed transfer.
+     * A transfer rejected by the accounts keeps its number and stays stored in the registered state.
+     *
+     * @param transfer the transfer, updated with its number, timestamp and status once it is valid
+     * @return the outcome of the transfer
+     */
+    public TransferOutcome tryCreateAndPerformTransfer(Transfer transfer) {
+        long start = System.nanoTime();
+        try {
+            TransferOutcome outcome = validateTransfer(transfer);
+            if (outcome == null) {
+                long transferAmount = toMinorUnits(transfer.getAmount());
+                outcome = transferAmount < 0L ? TransferOutcome.AMOUNT_TOO_BIG :
+                        performTransfer(transfer, transferNumberGenerator.nextId(), new Date(),
+                                transferAmount);
+            }
+            countOutcome(outcome);
+            return outcome;
+        } finally {
+            createAndPerformTransferLatency.recordSince(start);
+        }
+    }
 
-        Account transferTo = accountService.getAccountByNumber(transfer.getAccountNumberTo());
+    /**
+     * Create a Transfer and performs it in the correspondent accounts once per idempotency key: a repeated key gets
+     * the result of the first transfer made with it, without moving money again, as long as the key is kept.
+     * Concurrent transfers with the same key wait for the first one. Transfers rejected as not valid do not keep
+     * their key.
+     *
+     * @param idempotencyKey the idempotency key, or null to always perform the transfer
+     * @param transfer       the transfer, updated with its number, timestamp and status once it is valid
+     * @return the result of the transfer, holding the transfer first made with the key on a repeat, or rejected with
+     * {@link TransferOutcome#IDEMPOTENCY_KEY_REUSED} if that transfer was a different one
+     */
+    public TransferResult tryCreateAndPerformTransfer(String idempotencyKey, Transfer transfer) {
+        if (idempotencyKey == null) {
+            return toResult(transfer, tryCreateAndPerformTransfer(transfer));
+        }
+        if (idempotencyKey.length() > IdempotencyCache.MAX_KEY_LENGTH) {
+            countOutcome(TransferOutcome.IDEMPOTENCY_KEY_TOO_LONG);
+            return TransferResult.rejected(transfer, TransferOutcome.IDEMPOTENCY_KEY_TOO_LONG);
+        }
 
-        //initialise transfer
-        transfer.setTransferNumber(transferNumberIncrementer.incrementAndGet());
-        transfer.setStatus(TransferStatus.REGISTERED);
-        transfer.setTransferTimestamp(new Date());
+        TransferResult result = idempotencyCache
+                .execute(idempotencyKey, () -> toResult(transfer, tryCreateAndPerformTransfer(transfer)),
+                        kept -> !kept.getOutcome().isInvalid());
+        if (result.getTransfer() != transfer && !isSameTransfer(result.getTransfer(), transfer)) {
+            countOutcome(TransferOutcome.IDEMPOTENCY_KEY_REUSED);
+            return TransferResult.rejected(transfer, TransferOutcome.IDEMPOTENCY_KEY_REUSED);
+        }
+        return result;
+    }
 
-        //stores transfer on a registered state
-        mapTransferNumberToTransfer.putIfAbsent(transfer.getTransferNumber(), transfer);
+    private static TransferResult toResult(Transfer transfer, TransferOutcome outcome) {
+        return outcome.isPerformed() ? TransferResult.performed(transfer) : TransferResult.rejected(transfer, outcome);
+    }
 
-        final BigDecimal transferAmount = new BigDecimal(transfer.getAmount());
+    private static boolean isSameTransfer(Transfer transfer, Transfer other) {
+        if (transfer == null || other == null) {
+            return transfer == other;
+        }
+        return Objects.equals(transfer.getAccountNumberFrom(), other.getAccountNumberFrom()) && Objects
+                .equals(transfer.getAccountNumberTo(), other.getAccountNumberTo()) && Objects
+                .equals(transfer.getAmount(), other.getAmount());
+    }
 
-        updateFromAccount(transferFrom, transferAmount);
+    /**
+     * Creates and performs a batch of transfers, in the given order.
+     * Transfer numbers are allocated for the whole batch at once, in runs of up to
+     * {@link IdGenerator#MAX_IDS_AT_ONCE}, and every transfer gets the same timestamp.
+     *
+     * @param transfers the transfers
+     * @return the result of each transfer, in the same order
+     * @throws SimpleMoneyTransferException if no list of transfers is given
+     */
+    public List<TransferResult> createAndPerformTransfers(List<Transfer> transfers) {
+        List<TransferResult> results = new ArrayList<>(transfers == null ? 0 : transfers.size());
+        createAndPerformTransfers(transfers, results::add);
+        return results;
+    }
 
-        updateToAccount(transferTo, transferAmount);
+    /**
+     * Creates and performs a batch of transfers, in the given order, handing the result of each transfer to the
+     * consumer as soon as it is known. A rejected transfer does not stop the following ones, nor does a transfer
+     * the journal failed to keep, which is reported as rejected.
+     *
+     * @param transfers      the transfers
+     * @param resultConsumer consumer of the result of each transfer
+     * @throws SimpleMoneyTransferException if no list of transfers is given
+     */
+    public void createAndPerformTransfers(List<Transfer> transfers, Consumer<TransferResult> resultConsumer) {
+        if (transfers == null) {
+            throw new SimpleMoneyTransferException("Transfers needed!");
+        }
 
-        //update transfer to a performed state
-        mapTransferNumberToTransfer.compute(transfer.getTransferNumber(), (transferNumber, foundTransfer) -> {
-            foundTransfer.setStatus(TransferStatus.PERFORMED);
-            return foundTransfer;
-        });
+        long start = System.nanoTime();
+        long transferNumber = 0L;
+        int transferNumbersLeft = 0;
+        int transfersLeft = transfers.size();
+        long transferTimestamp = System.currentTimeMillis();
 
-        return transfer;
+        for (Transfer transfer : transfers) {
+            if (transferNumbersLeft == 0) {
+                transferNumbersLeft = Math.min(transfersLeft, IdGenerator.MAX_IDS_AT_ONCE);
+                transferNumber = transferNumberGenerator.nextIds(transferNumbersLeft);
+            }
+            transferNumbersLeft--;
+            transfersLeft--;
+            TransferOutcome outcome = validateTransfer(transfer);
+            try {
+                if (outcome == null) {
+                    long transferAmount = toMinorUnits(transfer.getAmount());
+                    outcome = transferAmount < 0L ? TransferOutcome.AMOUNT_TOO_BIG :
+                            performTransfer(transfer, transferNumber, new Date(transferTimestamp), transferAmount);
+                }
+            } catch (SimpleMoneyTransferException e) {
+                transfersRejectedOther.increment();
+                resultConsumer.accept(TransferResult.rejected(transfer, e));
+                transferNumber++;
+                continue;
+            } catch (UncheckedIOException e) {
+                // the transfers before it are performed, so it is reported with them instead of failing the batch
+                transfersRejectedOther.increment();
+                resultConsumer.accept(TransferResult.rejected(transfer, new SimpleMoneyTransferException(
+                        "Transfer could not be stored, it is not performed")));
+                transferNumber++;
+                continue;
+            }
+            countOutcome(outcome);
+            resultConsumer.accept(outcome.isPerformed() ? TransferResult.performed(transfer) :
+                    TransferResult.rejected(transfer, outcome));
+            transferNumber++;
+        }
+        createAndPerformTransfersLatency.recordSince(start);
     }
 
-    private void updateToAccount(Account transferTo, BigDecimal transferAmount) {
-        BiFunction<Long, Account, Account> addOperation = (aAccountNumber, existing) -> {
-            BigDecimal currentFromBalance = new BigDecimal(existing.getBalance());
-            BigDecimal fromAccountResult = currentFromBalance.add(transferAmount)
-                    .setScale(DEFAULT_SCALE, RoundingMode.HALF_UP);
-            existing.setBalance(fromAccountResult.doubleValue());
+    private TransferOutcome performTransfer(Transfer transfer, long transferNumber, Date transferTimestamp,
+            long transferAmount) {
+        //initialise transfer
+        transfer.setTransferNumber(transferNumber);
+        transfer.setStatus(TransferStatus.REGISTERED);
+        transfer.setTransferTimestamp(transferTimestamp);
 
-            return existing;
-        };
+        //stores transfer on a registered state
+        transferHistory.record(transferNumber, transferTimestamp.getTime(), transfer.getAccountNumberFrom(),
+                transfer.getAccountNumberTo(), transferAmount, TransferStatus.REGISTERED);
 
-        accountService.performAccountOperation(transferTo.getAccountNumber(), addOperation);
-    }
+        if (journal != null) {
+            journal.checkNotFailed();
+        }
+        TransferOutcome outcome = accountService
+                .tryTransfer(transfer.getAccountNumberFrom(), transfer.getAccountNumberTo(), transferAmount);
+        if (!outcome.isPerformed()) {
+            return outcome;
+        }
+
+        if (journal != null) {
+            try {
+                journal.awaitDurable(journal.appendTransferPerformed(transferNumber, transferTimestamp.getTime(),
+                        transfer.getAccountNumberFrom(), transfer.getAccountNumberTo(), transferAmount));
+            } catch (UncheckedIOException e) {
+                undoTransfer(transfer, transferNumber, transferAmount, e);
+                throw e;
+            }
+        }
 
-    private void updateFromAccount(Account transferFrom, BigDecimal transferAmount) {
-        BiFunction<Long, Account, Account> subtractOperation = (aAccountNumber, existing) -> {
-            BigDecimal currentFromBalance = new BigDecimal(existing.getBalance());
-            BigDecimal fromAccountResult = currentFromBalance.subtract(transferAmount)
-                    .setScale(DEFAULT_SCALE, RoundingMode.HALF_UP);
+        //update transfer to a performed state
+        transfer.setStatus(TransferStatus.PERFORMED);
+        transferHistory.updateStatus(transferNumber, TransferStatus.PERFORMED);
+        return outcome;
+    }
 
-            if (fromAccountResult.doubleValue() < 0.0D) {
-                throw new NotEnoughBalanceException(aAccountNumber);
+    /**
+     * Moves the amount of a transfer the journal failed to keep back to its origin account, so the accounts do not
+     * hold a transfer that is lost on restart. The transfer stays {@link TransferStatus#REGISTERED}.
+     */
+    private void undoTransfer(Transfer transfer, long transferNumber, long transferAmount,
+            UncheckedIOException journalFailure) {
+        try {
+            TransferOutcome undone = accountService
+                    .tryTransfer(transfer.getAccountNumberTo(), transfer.getAccountNumberFrom(), transferAmount);
+            if (!undone.isPerformed()) {
+                journalFailure.addSuppressed(new IllegalStateException(
+                        "Transfer " + transferNumber + " could not be undone: " + undone));
             }
+        } catch (RuntimeException e) {
+            journalFailure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Stores an already performed transfer, e.g. while replaying a journal, without touching the accounts.
+     *
+     * @param amount the amount in minor units
+     */
+    void restoreTransfer(long transferNumber, long transferTimestamp, long accountNumberFrom, long accountNumberTo,
+            long amount) {
+        restoreTransferNumber(transferNumber);
+        transferHistory.record(transferNumber, transferTimestamp, accountNumberFrom, accountNumberTo, amount,
+                TransferStatus.PERFORMED);
+    }
+
+    /**
+     * Makes sure new transfers are numbered after the given one, e.g. the last transfer of a snapshot.
+     *
+     * @param transferNumber the highest transfer number already used
+     */
+    void restoreTransferNumber(long transferNumber) {
+        transferNumberGenerator.restore(transferNumber);
+    }
 
-            existing.setBalance(fromAccountResult.doubleValue());
+    private void countOutcome(TransferOutcome outcome) {
+        switch (outcome) {
+        case PERFORMED:
+            transfersPerformed.increment();
+            break;
+        case NOT_ENOUGH_BALANCE:
+            transfersRejectedNotEnoughBalance.increment();
+            break;
+        case ACCOUNT_FROM_NOT_FOUND:
+        case ACCOUNT_TO_NOT_FOUND:
+            transfersRejectedAccountNotFound.increment();
+            break;
+        case TRANSFER_NEEDED:
+            transfersRejectedOther.increment();
+            break;
+        default:
+            transfersRejectedValidation.increment();
+        }
+    }
 
-            return existing;
-        };
-        accountService.performAccountOperation(transferFrom.getAccountNumber(), subtractOperation);
+    /**
+     * @param amount an amount greater than 0
+     * @return the amount in minor units, or -1 if it does not fit in a long
+     */
+    private long toMinorUnits(Double amount) {
+        try {
+            return currencyScale.toMinorUnits(amount);
+        } catch (ArithmeticException e) {
+            return -1L;
+        }
     }
 
-    private void validateTransfer(Transfer transfer) {
+    /**
+     * @return the reason the transfer is not valid, or null if it is valid
+     */
+    private static TransferOutcome validateTransfer(Transfer transfer) {
         if (transfer == null) {
-            throw new SimpleMoneyTransferException("Transfer object needed!");
+            return TransferOutcome.TRANSFER_NEEDED;
         }
         if (transfer.getAccountNumberFrom() == null) {
-            throw new TransferValidationException("accountNumberFrom needed!");
+            return TransferOutcome.ACCOUNT_NUMBER_FROM_NEEDED;
         }
         if (transfer.getAccountNumberTo() == null) {
-            throw new TransferValidationException("accountNumberTo needed!");
+            return TransferOutcome.ACCOUNT_NUMBER_TO_NEEDED;
         }
         if (transfer.getAmount() == null) {
-            throw new TransferValidationException("amount needed!");
+            return TransferOutcome.AMOUNT_NEEDED;
         }
 
         if (transfer.getAccountNumberFrom().longValue() == transfer.getAccountNumberTo().longValue()) {
-            throw new TransferValidationException("Cannot perform transfer in the same account!");
+            return TransferOutcome.SAME_ACCOUNT;
         }
         if (transfer.getAmount() <= 0.0D) {
-            throw new TransferValidationException("amount must be greater than 0.0!");
+            return TransferOutcome.AMOUNT_NOT_POSITIVE;
         }
+        return null;
     }
 }
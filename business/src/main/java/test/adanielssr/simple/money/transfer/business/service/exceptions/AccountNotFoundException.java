@@ -5,7 +5,14 @@ package test.adanielssr.simple.money.transfer.business.service.exceptions;
  */
 public class AccountNotFoundException extends ResourceNotFoundException {
 
+    private final Long accountNumber;
+
     public AccountNotFoundException(Long accountNumber) {
         super("Account", "number", accountNumber);
+        this.accountNumber = accountNumber;
+    }
+
+    public Long getAccountNumber() {
+        return accountNumber;
     }
 }
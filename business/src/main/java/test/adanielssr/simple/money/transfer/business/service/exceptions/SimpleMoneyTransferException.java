@@ -5,7 +5,13 @@ package test.adanielssr.simple.money.transfer.business.service.exceptions;
  */
 public class SimpleMoneyTransferException extends RuntimeException {
 
+    /**
+     * Rejections such as a missing account or a low balance are routine outcomes, so these exceptions do not
+     * capture a stack trace. Instances whose message does not change may be created once and thrown many times.
+     *
+     * @param reason the reason of the rejection
+     */
     public SimpleMoneyTransferException(String reason) {
-        super(reason);
+        super(reason, null, false, false);
     }
 }
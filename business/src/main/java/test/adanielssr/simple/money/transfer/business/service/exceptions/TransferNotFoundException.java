@@ -0,0 +1,8 @@
+package test.adanielssr.simple.money.transfer.business.service.exceptions;
+
+public class TransferNotFoundException extends ResourceNotFoundException {
+
+    public TransferNotFoundException(Long transferNumber) {
+        super("Transfer", "number", transferNumber);
+    }
+}
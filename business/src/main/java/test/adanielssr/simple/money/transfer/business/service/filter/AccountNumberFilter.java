@@ -0,0 +1,118 @@
+package test.adanielssr.simple.money.transfer.business.service.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of account numbers: tells for sure that an account number was never added, or that it probably was.
+ * <p>
+ * The filter is blocked: the bits of an account number all fall in one block of 512 bits, the size of a cache line,
+ * so a lookup reads a single line of memory whatever the number of hash functions, for a slightly higher false
+ * positive rate than a filter spreading them over the whole bit array. Bits are set with compare and set and never
+ * cleared, so lookups take no lock and never miss a number added before them.
+ */
+final class AccountNumberFilter {
+
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private static final int BLOCK_LONGS = 8;
+
+    private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+
+    private static final int MAX_HASHES = 16;
+
+    private final AtomicLongArray bits;
+
+    private final int blockMask;
+
+    private final int hashes;
+
+    private final int capacity;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity          the number of account numbers the filter is sized for
+     * @param falsePositiveRate the rate of false positives once the filter holds its capacity, between 0 and 1
+     */
+    AccountNumberFilter(int capacity, double falsePositiveRate) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        if (!(falsePositiveRate > 0.0d && falsePositiveRate < 1.0d)) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        double bitsPerNumber = -Math.log(falsePositiveRate) / (Math.log(2.0d) * Math.log(2.0d));
+        long blocks = (long) Math.ceil(capacity * bitsPerNumber / BLOCK_BITS);
+        int blockCount = blocks <= 1L ? 1 : Integer.highestOneBit((int) (blocks - 1L)) << 1;
+        this.bits = new AtomicLongArray(blockCount * BLOCK_LONGS);
+        this.blockMask = blockCount - 1;
+        this.hashes = (int) Math.max(1L, Math.min(MAX_HASHES, Math.round(bitsPerNumber * Math.log(2.0d))));
+        this.capacity = capacity;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return true once more account numbers were added than the filter is sized for, after which its false
+     * positive rate grows
+     */
+    boolean isFull() {
+        return size.get() > capacity;
+    }
+
+    void add(long accountNumber) {
+        long hash = mix(accountNumber);
+        int block = blockOf(hash);
+        int bitHash = (int) hash;
+        int bitStep = stepOf(hash);
+        for (int i = 0; i < hashes; i++) {
+            int bit = (bitHash + i * bitStep) & (BLOCK_BITS - 1);
+            int index = block + (bit >>> 6);
+            long mask = 1L << bit;
+            long word;
+            while (((word = bits.get(index)) & mask) == 0L) {
+                if (bits.compareAndSet(index, word, word | mask)) {
+                    break;
+                }
+            }
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * @return false if the account number was never added, true if it probably was
+     */
+    boolean mightContain(long accountNumber) {
+        long hash = mix(accountNumber);
+        int block = blockOf(hash);
+        int bitHash = (int) hash;
+        int bitStep = stepOf(hash);
+        for (int i = 0; i < hashes; i++) {
+            int bit = (bitHash + i * bitStep) & (BLOCK_BITS - 1);
+            if ((bits.get(block + (bit >>> 6)) & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int blockOf(long hash) {
+        return ((int) (hash >>> 32) & blockMask) * BLOCK_LONGS;
+    }
+
+    /**
+     * Odd, so the bits of a number are distinct up to the size of a block.
+     */
+    private static int stepOf(long hash) {
+        return (int) ((hash * 0x9E3779B97F4A7C15L) >>> 32) | 1;
+    }
+
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+        key = (key ^ (key >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return key ^ (key >>> 33);
+    }
+}
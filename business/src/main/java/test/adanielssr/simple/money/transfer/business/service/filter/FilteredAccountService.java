@@ -0,0 +1,236 @@
+package test.adanielssr.simple.money.transfer.business.service.filter;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.metrics.MetricsRegistry;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * {@link AccountService} decorator answering for unknown account numbers without touching the decorated store: the
+ * numbers of the created accounts are added to an {@link AccountNumberFilter}, and a lookup, operation or transfer
+ * naming a number the filter never saw is rejected as not found right away.
+ * <p>
+ * The filter is first sized for the accounts already in the store, which are added to it. Removed accounts cannot be
+ * taken out of the filter and keep passing it, as false positives, until it is rebuilt. It is rebuilt from the
+ * accounts of the store once more accounts were created than it is sized for, twice as large if the store holds more
+ * than half of them, on a background thread: the full filter, which still holds every account number, keeps
+ * answering until the rebuilt one replaces it, and account creations racing with a rebuild add their number to both
+ * filters.
+ * <p>
+ * Every account number checked is counted, when the result is known, as rejected by the filter, found in the store, or
+ * not found in the store after passing the filter (a false positive).
+ */
+public class FilteredAccountService implements AccountService, AutoCloseable {
+
+    static final String CHECKS_METRIC = "account_filter_checks_total";
+
+    private static final String CHECKS_HELP = "Account numbers checked against the account number filter, by result.";
+
+    private final AccountService accountService;
+
+    private final double falsePositiveRate;
+
+    private volatile AccountNumberFilter accountNumberFilter;
+
+    /**
+     * The filter being rebuilt, if any.
+     */
+    private volatile AccountNumberFilter nextAccountNumberFilter;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final ExecutorService rebuilder;
+
+    private final LongAdder rejected;
+
+    private final LongAdder found;
+
+    private final LongAdder falsePositives;
+
+    /**
+     * @param accountService    the store, only written through this decorator from now on
+     * @param capacity          the number of accounts the filter is first sized for, at least twice the accounts
+     *                          already in the store
+     * @param falsePositiveRate the rate of unknown account numbers passing the filter once it holds its capacity
+     */
+    public FilteredAccountService(AccountService accountService, int capacity, double falsePositiveRate,
+            MetricsRegistry metricsRegistry) {
+        this.accountService = accountService;
+        this.falsePositiveRate = falsePositiveRate;
+        AccountNumberFilter filter = new AccountNumberFilter(
+                (int) Math.min(AccountNumberFilter.MAX_CAPACITY,
+                        Math.max(capacity, 2L * accountService.getAccountCount())), falsePositiveRate);
+        for (Account account : accountService.getAllAccounts()) {
+            filter.add(account.getAccountNumber());
+        }
+        this.accountNumberFilter = filter;
+        this.rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "account-filter-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rejected = metricsRegistry.counter(CHECKS_METRIC, CHECKS_HELP, "result", "rejected");
+        this.found = metricsRegistry.counter(CHECKS_METRIC, CHECKS_HELP, "result", "found");
+        this.falsePositives = metricsRegistry.counter(CHECKS_METRIC, CHECKS_HELP, "result", "false_positive");
+    }
+
+    @Override
+    public CurrencyScale getCurrencyScale() {
+        return accountService.getCurrencyScale();
+    }
+
+    @Override
+    public Account createAccount(Account newAccount) {
+        Account account = accountService.createAccount(newAccount);
+        long accountNumber = account.getAccountNumber();
+
+        AccountNumberFilter filter;
+        do {
+            filter = accountNumberFilter;
+            filter.add(accountNumber);
+            AccountNumberFilter nextFilter = nextAccountNumberFilter;
+            if (nextFilter != null) {
+                nextFilter.add(accountNumber);
+            }
+            // a rebuild that had not started when the account was stored finds it in the store
+        } while (filter != accountNumberFilter);
+
+        if (filter.isFull() && rebuilding.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuild);
+        }
+        return account;
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        return accountService.getAllAccounts();
+    }
+
+    @Override
+    public int getAccountCount() {
+        return accountService.getAccountCount();
+    }
+
+    @Override
+    public Account getAccountByNumber(Long accountNumber) {
+        if (accountNumber != null && !accountNumberFilter.mightContain(accountNumber)) {
+            rejected.increment();
+            throw new AccountNotFoundException(accountNumber);
+        }
+        try {
+            Account account = accountService.getAccountByNumber(accountNumber);
+            found.increment();
+            return account;
+        } catch (AccountNotFoundException e) {
+            falsePositives.increment();
+            throw e;
+        }
+    }
+
+    @Override
+    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
+        if (accountNumber != null && operation != null && !accountNumberFilter.mightContain(accountNumber)) {
+            rejected.increment();
+            return;
+        }
+        accountService.performAccountOperation(accountNumber, operation);
+    }
+
+    @Override
+    public void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        TransferOutcome outcome = tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+        if (!outcome.isPerformed()) {
+            throw outcome.toException(accountNumberFrom, accountNumberTo);
+        }
+    }
+
+    @Override
+    public TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        if (accountNumberFrom != null && accountNumberTo != null && amountInMinorUnits >= 0L) {
+            AccountNumberFilter filter = accountNumberFilter;
+            if (!filter.mightContain(accountNumberFrom)) {
+                rejected.increment();
+                return TransferOutcome.ACCOUNT_FROM_NOT_FOUND;
+            }
+            if (!filter.mightContain(accountNumberTo)) {
+                rejected.increment();
+                return TransferOutcome.ACCOUNT_TO_NOT_FOUND;
+            }
+        }
+
+        TransferOutcome outcome = accountService.tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+        switch (outcome) {
+        case ACCOUNT_FROM_NOT_FOUND:
+            falsePositives.increment();
+            break;
+        case ACCOUNT_TO_NOT_FOUND:
+            found.increment();
+            falsePositives.increment();
+            break;
+        default:
+            found.add(2L);
+            break;
+        }
+        return outcome;
+    }
+
+    /**
+     * Runs on the rebuild thread, again as long as the accounts created meanwhile filled the rebuilt filter.
+     */
+    private void rebuild() {
+        try {
+            AccountNumberFilter fullFilter;
+            do {
+                fullFilter = accountNumberFilter;
+                int capacity = (int) Math.min(AccountNumberFilter.MAX_CAPACITY,
+                        Math.max(fullFilter.capacity(), 2L * accountService.getAccountCount()));
+                AccountNumberFilter filter = new AccountNumberFilter(capacity, falsePositiveRate);
+                nextAccountNumberFilter = filter;
+                for (Account account : accountService.getAllAccounts()) {
+                    filter.add(account.getAccountNumber());
+                }
+                accountNumberFilter = filter;
+                nextAccountNumberFilter = null;
+            } while (accountNumberFilter.isFull() && accountNumberFilter.capacity() > fullFilter.capacity());
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * Waits until the rebuild started so far, if any, is done.
+     */
+    void awaitRebuild() {
+        try {
+            rebuilder.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops the rebuild thread and closes the decorated service, if it can be closed.
+     */
+    @Override
+    public void close() throws Exception {
+        rebuilder.shutdownNow();
+        rebuilder.awaitTermination(10, TimeUnit.SECONDS);
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
+    }
+}
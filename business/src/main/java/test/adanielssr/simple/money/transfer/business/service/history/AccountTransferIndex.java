@@ -0,0 +1,124 @@
+package test.adanielssr.simple.money.transfer.business.service.history;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongPredicate;
+
+/**
+ * Secondary index of the transfer numbers of each account, in a primitive long array per account kept sorted by
+ * transfer number, which is the order transfers were created in. Reading a page of an account's transfers is a
+ * binary search in its array, independent of the number of transfers of the other accounts.
+ * <p>
+ * Numbers of transfers dropped by the history are trimmed from the front of an array when it has to grow, and
+ * before it is read. An array never holds more than the given number of transfers per account: once full, its oldest
+ * quarter is dropped, so the index stays bounded even when the history keeps every transfer on disk.
+ */
+class AccountTransferIndex {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final ConcurrentMap<Long, TransferNumbers> mapAccountNumberToTransferNumbers = new ConcurrentHashMap<>();
+
+    private final LongPredicate mayBeStored;
+
+    private final int maxAccountTransfers;
+
+    /**
+     * @param mayBeStored         tells whether a transfer number may still be stored by the history, false only if
+     *                            it was dropped. Called under the lock of an account, it must not read the disk
+     * @param maxAccountTransfers the number of transfer numbers kept per account, at least 4
+     */
+    AccountTransferIndex(LongPredicate mayBeStored, int maxAccountTransfers) {
+        if (maxAccountTransfers < INITIAL_CAPACITY) {
+            throw new IllegalArgumentException("maxAccountTransfers must be at least " + INITIAL_CAPACITY);
+        }
+        this.mayBeStored = mayBeStored;
+        this.maxAccountTransfers = maxAccountTransfers;
+    }
+
+    void add(long accountNumber, long transferNumber) {
+        mapAccountNumberToTransferNumbers.computeIfAbsent(accountNumber, aAccountNumber -> new TransferNumbers())
+                .add(transferNumber, mayBeStored, maxAccountTransfers);
+    }
+
+    /**
+     * @param sinceTransferNumber only transfer numbers greater than it are returned, or null for the latest ones
+     * @param limit               the maximum number of transfer numbers returned
+     * @return the transfer numbers in ascending order
+     */
+    long[] find(long accountNumber, Long sinceTransferNumber, int limit) {
+        TransferNumbers transferNumbers = mapAccountNumberToTransferNumbers.get(accountNumber);
+        return transferNumbers == null ? new long[0]
+                : transferNumbers.find(sinceTransferNumber, limit, mayBeStored);
+    }
+
+    private static class TransferNumbers {
+
+        private long[] numbers = new long[INITIAL_CAPACITY];
+
+        private int size;
+
+        synchronized void add(long transferNumber, LongPredicate mayBeStored, int maxAccountTransfers) {
+            // transfers are recorded almost in number order, so the insertion point is almost always the end
+            int index = size;
+            while (index > 0 && numbers[index - 1] > transferNumber) {
+                index--;
+            }
+            if (index > 0 && numbers[index - 1] == transferNumber) {
+                return;
+            }
+
+            if (size == numbers.length) {
+                int dropped = trim(mayBeStored);
+                if (size == maxAccountTransfers) {
+                    // dropping a quarter at once keeps adding to a full array from moving it on every transfer
+                    int oldest = maxAccountTransfers >>> 2;
+                    drop(oldest);
+                    dropped += oldest;
+                }
+                index = Math.max(0, index - dropped);
+                if (size == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, Math.min(numbers.length << 1, maxAccountTransfers));
+                }
+            }
+
+            System.arraycopy(numbers, index, numbers, index + 1, size - index);
+            numbers[index] = transferNumber;
+            size++;
+        }
+
+        synchronized long[] find(Long sinceTransferNumber, int limit, LongPredicate mayBeStored) {
+            trim(mayBeStored);
+            int from;
+            if (sinceTransferNumber == null) {
+                from = Math.max(0, size - limit);
+            } else {
+                int index = Arrays.binarySearch(numbers, 0, size, sinceTransferNumber);
+                from = index >= 0 ? index + 1 : -index - 1;
+            }
+            return Arrays.copyOfRange(numbers, from, Math.min(size, from + limit));
+        }
+
+        /**
+         * Drops the numbers of the transfers dropped by the history from the front.
+         *
+         * @return the number of dropped numbers
+         */
+        private int trim(LongPredicate mayBeStored) {
+            int dropped = 0;
+            while (dropped < size && !mayBeStored.test(numbers[dropped])) {
+                dropped++;
+            }
+            drop(dropped);
+            return dropped;
+        }
+
+        private void drop(int oldest) {
+            if (oldest > 0) {
+                System.arraycopy(numbers, oldest, numbers, 0, size - oldest);
+                size -= oldest;
+            }
+        }
+    }
+}
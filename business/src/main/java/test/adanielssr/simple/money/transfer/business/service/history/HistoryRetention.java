@@ -0,0 +1,42 @@
+package test.adanielssr.simple.money.transfer.business.service.history;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Limits on the transfers a {@link TransferHistory} keeps on disk. Once any limit is exceeded the oldest spilled
+ * segment is deleted, so limits are enforced a whole segment at a time.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class HistoryRetention {
+
+    public static final HistoryRetention UNLIMITED = of(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long maxTransfers;
+
+    private final long maxAgeMillis;
+
+    private final long maxBytes;
+
+    private HistoryRetention(long maxTransfers, long maxAgeMillis, long maxBytes) {
+        this.maxTransfers = maxTransfers;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param maxTransfers the number of transfers kept on disk
+     * @param maxAgeMillis the age after which transfers are deleted
+     * @param maxBytes     the disk space used by the kept transfers
+     * @return the retention
+     */
+    public static HistoryRetention of(long maxTransfers, long maxAgeMillis, long maxBytes) {
+        if (maxTransfers < 0L || maxAgeMillis < 0L || maxBytes < 0L) {
+            throw new IllegalArgumentException("retention limits cannot be negative");
+        }
+        return new HistoryRetention(maxTransfers, maxAgeMillis, maxBytes);
+    }
+}
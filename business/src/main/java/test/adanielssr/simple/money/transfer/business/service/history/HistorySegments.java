@@ -0,0 +1,609 @@
+package test.adanielssr.simple.money.transfer.business.service.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+
+/**
+ * Transfers spilled out of the memory of a {@link TransferHistory}, kept in segment files sorted by transfer number.
+ * <p>
+ * Spilled transfers are first gathered in a buffer of primitive columns. Once it is full it is handed to a background
+ * writer, which sorts it by transfer number and writes it as a new segment, so recording a transfer never waits for
+ * the disk unless the writer falls {@value #MAX_UNWRITTEN_BUFFERS} buffers behind. Each segment stays mapped in
+ * memory: a transfer on disk is found by binary search of the segments whose number range holds it, themselves found
+ * by binary search of the segments sorted by their lowest transfer number, and its status is changed in place. Each
+ * record is the transfer number, timestamp, account numbers and amount as longs followed by the status byte.
+ * <p>
+ * Lookups take no global lock: they search the filling buffer, the buffers waiting for the writer and then the
+ * segments, so a transfer spilled more than once, e.g. recorded again after it was spilled, is found at its latest
+ * spill. Only the lookups of a buffer being written wait for it.
+ * <p>
+ * The spilled transfers are not durable, so a buffer whose segment could not be written is dropped and counted,
+ * and recording transfers goes on.
+ */
+class HistorySegments implements AutoCloseable {
+
+    static final int RECORD_SIZE = 5 * Long.BYTES + 1;
+
+    private static final int BUFFER_CAPACITY = 8192;
+
+    private static final int MAX_UNWRITTEN_BUFFERS = 4;
+
+    private static final int STATUS_OFFSET = 5 * Long.BYTES;
+
+    private static final String SEGMENT_PREFIX = "history-";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+
+    private final HistoryRetention retention;
+
+    private final Deque<Segment> segments = new ConcurrentLinkedDeque<>();
+
+    private final Deque<Buffer> unwrittenBuffers = new ConcurrentLinkedDeque<>();
+
+    private final Semaphore writePermits = new Semaphore(MAX_UNWRITTEN_BUFFERS);
+
+    private final ExecutorService writer;
+
+    private final Object addLock = new Object();
+
+    private final AtomicLong storedTransfers = new AtomicLong();
+
+    private final LongAdder droppedTransfers = new LongAdder();
+
+    private volatile Buffer buffer = new Buffer();
+
+    /**
+     * The segments sorted by their lowest transfer number, replaced as a whole under this monitor.
+     */
+    private volatile SegmentIndex segmentIndex = SegmentIndex.EMPTY;
+
+    /**
+     * The records of the segment being written, only used by the writer thread.
+     */
+    private final ByteBuffer recordsBuffer = ByteBuffer.allocate(BUFFER_CAPACITY * RECORD_SIZE);
+
+    private long nextSegmentIndex = 1L;
+
+    private long writtenTransfers;
+
+    private long storedBytes;
+
+    HistorySegments(Path directory, HistoryRetention retention) {
+        this.directory = directory;
+        this.retention = retention;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                Iterator<Path> iterator = files.iterator();
+                while (iterator.hasNext()) {
+                    Path file = iterator.next();
+                    String fileName = file.getFileName().toString();
+                    if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Transfer history could not be opened at " + directory, e);
+        }
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transfer-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void add(long transferNumber, long transferTimestamp, long accountNumberFrom, long accountNumberTo,
+            long amount, byte status) {
+        synchronized (addLock) {
+            Buffer current = buffer;
+            boolean full;
+            synchronized (current) {
+                full = current.add(transferNumber, transferTimestamp, accountNumberFrom, accountNumberTo, amount,
+                        status);
+            }
+            storedTransfers.incrementAndGet();
+            if (full) {
+                // listed as unwritten before it stops being the filling buffer, so lookups always see it
+                unwrittenBuffers.addFirst(current);
+                buffer = new Buffer();
+                // handed over under the add lock, so segments are written in spill order
+                writePermits.acquireUninterruptibly();
+                writer.execute(() -> write(current));
+            }
+        }
+    }
+
+    boolean updateStatus(long transferNumber, byte status) {
+        if (buffer.updateStatus(transferNumber, status)) {
+            return true;
+        }
+        for (Buffer unwritten : unwrittenBuffers) {
+            if (unwritten.updateStatus(transferNumber, status)) {
+                return true;
+            }
+        }
+
+        Segment segment = newestSegmentOf(transferNumber);
+        if (segment == null) {
+            return false;
+        }
+        segment.setStatus(segment.search(transferNumber), status);
+        return true;
+    }
+
+    Transfer get(long transferNumber, TransferHistory.TransferFactory transferFactory) {
+        Transfer transfer = buffer.get(transferNumber, transferFactory);
+        if (transfer != null) {
+            return transfer;
+        }
+        for (Buffer unwritten : unwrittenBuffers) {
+            transfer = unwritten.get(transferNumber, transferFactory);
+            if (transfer != null) {
+                return transfer;
+            }
+        }
+
+        Segment segment = newestSegmentOf(transferNumber);
+        return segment == null ? null : segment.get(segment.search(transferNumber), transferFactory);
+    }
+
+    /**
+     * Tells, without reading any record, whether a transfer may be stored: false only if no buffer or segment holds
+     * its number in its range.
+     */
+    boolean mayHold(long transferNumber) {
+        if (buffer.holds(transferNumber)) {
+            return true;
+        }
+        for (Buffer unwritten : unwrittenBuffers) {
+            if (unwritten.holds(transferNumber)) {
+                return true;
+            }
+        }
+        SegmentIndex index = segmentIndex;
+        for (int i = index.firstEndingAtOrAfter(transferNumber); i <= index.lastStartingAtOrBefore(transferNumber);
+             i++) {
+            if (index.segments[i].holds(transferNumber)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    long getStoredTransfers() {
+        return storedTransfers.get();
+    }
+
+    /**
+     * @return the number of spilled transfers dropped because their segment could not be written
+     */
+    long getDroppedTransfers() {
+        return droppedTransfers.sum();
+    }
+
+    /**
+     * Waits until the buffers handed to the writer so far are written.
+     */
+    void flush() {
+        try {
+            writer.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Deletes the oldest segments while any retention limit is exceeded.
+     *
+     * @param now the current time in milliseconds since the epoch
+     */
+    synchronized void applyRetention(long now) {
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            if (writtenTransfers <= retention.getMaxTransfers() && storedBytes <= retention.getMaxBytes()
+                    && now - oldest.maxTransferTimestamp <= retention.getMaxAgeMillis()) {
+                return;
+            }
+            // a lookup still searching it reads the mapping, which lives on until it is collected
+            segments.removeFirst();
+            segmentIndex = segmentIndex.without(oldest);
+            storedTransfers.addAndGet(-oldest.transfers);
+            writtenTransfers -= oldest.transfers;
+            storedBytes -= (long) oldest.transfers * RECORD_SIZE;
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Transfer history segment could not be deleted: " + oldest.path, e);
+            }
+        }
+    }
+
+    /**
+     * Stops the writer, dropping the buffers not written yet.
+     */
+    @Override
+    public void close() {
+        writer.shutdownNow();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Searches the segments whose number range holds the transfer.
+     *
+     * @return the latest written segment holding the transfer, or null if none does
+     */
+    private Segment newestSegmentOf(long transferNumber) {
+        SegmentIndex index = segmentIndex;
+        Segment newest = null;
+        // ranges overlap only where a transfer was spilled late, so few segments are searched
+        for (int i = index.firstEndingAtOrAfter(transferNumber); i <= index.lastStartingAtOrBefore(transferNumber);
+             i++) {
+            Segment segment = index.segments[i];
+            if (segment.holds(transferNumber) && (newest == null || segment.sequence > newest.sequence)
+                    && segment.search(transferNumber) >= 0) {
+                newest = segment;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Runs on the writer thread.
+     */
+    private void write(Buffer full) {
+        try {
+            Segment segment;
+            synchronized (full) {
+                try {
+                    segment = writeSegment(full);
+                } catch (UncheckedIOException e) {
+                    // released so lookups skip it, the transfers are lost as if the retention had deleted them
+                    full.released = true;
+                    unwrittenBuffers.remove(full);
+                    storedTransfers.addAndGet(-full.size);
+                    droppedTransfers.add(full.size);
+                    return;
+                }
+                // published before the buffer is released, so a status change finds one or the other
+                synchronized (this) {
+                    segments.addLast(segment);
+                    segmentIndex = segmentIndex.with(segment);
+                }
+                full.released = true;
+            }
+            unwrittenBuffers.remove(full);
+            synchronized (this) {
+                writtenTransfers += segment.transfers;
+                storedBytes += (long) segment.transfers * RECORD_SIZE;
+            }
+            applyRetention(System.currentTimeMillis());
+        } finally {
+            writePermits.release();
+        }
+    }
+
+    private Segment writeSegment(Buffer full) {
+        full.sort();
+        long sequence = nextSegmentIndex++;
+        Path segmentPath = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        recordsBuffer.clear();
+        long maxTransferTimestamp = Long.MIN_VALUE;
+        for (int i = 0; i < full.size; i++) {
+            recordsBuffer.putLong(full.transferNumbers[i]).putLong(full.transferTimestamps[i])
+                    .putLong(full.accountNumbersFrom[i]).putLong(full.accountNumbersTo[i])
+                    .putLong(full.amounts[i]).put(full.statuses[i]);
+            maxTransferTimestamp = Math.max(maxTransferTimestamp, full.transferTimestamps[i]);
+        }
+        recordsBuffer.flip();
+
+        boolean created = false;
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            created = true;
+            // written before it is mapped, so a full disk fails the write instead of a later access to the mapping
+            while (recordsBuffer.hasRemaining()) {
+                channel.write(recordsBuffer);
+            }
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_WRITE, 0L,
+                    (long) full.size * RECORD_SIZE);
+            return new Segment(segmentPath, sequence, records, full.transferNumbers[0],
+                    full.transferNumbers[full.size - 1], maxTransferTimestamp, full.size);
+        } catch (IOException e) {
+            if (created) {
+                try {
+                    Files.deleteIfExists(segmentPath);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new UncheckedIOException("Transfer history segment could not be written: " + segmentPath, e);
+        }
+    }
+
+    /**
+     * Spilled transfers not written to a segment yet, guarded by their own monitor.
+     */
+    private static class Buffer {
+
+        private final long[] transferNumbers = new long[BUFFER_CAPACITY];
+
+        private final long[] transferTimestamps = new long[BUFFER_CAPACITY];
+
+        private final long[] accountNumbersFrom = new long[BUFFER_CAPACITY];
+
+        private final long[] accountNumbersTo = new long[BUFFER_CAPACITY];
+
+        private final long[] amounts = new long[BUFFER_CAPACITY];
+
+        private final byte[] statuses = new byte[BUFFER_CAPACITY];
+
+        private int size;
+
+        /**
+         * Set once the buffer is written to a segment or dropped, after which lookups skip it.
+         */
+        private boolean released;
+
+        private long minTransferNumber = Long.MAX_VALUE;
+
+        private long maxTransferNumber = Long.MIN_VALUE;
+
+        /**
+         * @return true if the buffer is full
+         */
+        boolean add(long transferNumber, long transferTimestamp, long accountNumberFrom, long accountNumberTo,
+                long amount, byte status) {
+            transferNumbers[size] = transferNumber;
+            transferTimestamps[size] = transferTimestamp;
+            accountNumbersFrom[size] = accountNumberFrom;
+            accountNumbersTo[size] = accountNumberTo;
+            amounts[size] = amount;
+            statuses[size] = status;
+            minTransferNumber = Math.min(minTransferNumber, transferNumber);
+            maxTransferNumber = Math.max(maxTransferNumber, transferNumber);
+            return ++size == BUFFER_CAPACITY;
+        }
+
+        /**
+         * @return true if the transfer number is in the range of the numbers of the buffer, until it is released
+         */
+        synchronized boolean holds(long transferNumber) {
+            return !released && transferNumber >= minTransferNumber && transferNumber <= maxTransferNumber;
+        }
+
+        /**
+         * @return false if the transfer is not in the buffer, or the buffer was released
+         */
+        synchronized boolean updateStatus(long transferNumber, byte status) {
+            if (!released) {
+                for (int i = size - 1; i >= 0; i--) {
+                    if (transferNumbers[i] == transferNumber) {
+                        statuses[i] = status;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        synchronized Transfer get(long transferNumber, TransferHistory.TransferFactory transferFactory) {
+            if (!released) {
+                for (int i = size - 1; i >= 0; i--) {
+                    if (transferNumbers[i] == transferNumber) {
+                        return transferFactory.create(transferNumber, transferTimestamps[i], accountNumbersFrom[i],
+                                accountNumbersTo[i], amounts[i], statuses[i]);
+                    }
+                }
+            }
+            return null;
+        }
+
+        void sort() {
+            // spilled transfers come out of the ring almost in number order, which insertion sort handles in one pass
+            for (int i = 1; i < size; i++) {
+                for (int j = i; j > 0 && transferNumbers[j - 1] > transferNumbers[j]; j--) {
+                    swap(j - 1, j);
+                }
+            }
+        }
+
+        private void swap(int i, int j) {
+            long transferNumber = transferNumbers[i];
+            transferNumbers[i] = transferNumbers[j];
+            transferNumbers[j] = transferNumber;
+            long transferTimestamp = transferTimestamps[i];
+            transferTimestamps[i] = transferTimestamps[j];
+            transferTimestamps[j] = transferTimestamp;
+            long accountNumberFrom = accountNumbersFrom[i];
+            accountNumbersFrom[i] = accountNumbersFrom[j];
+            accountNumbersFrom[j] = accountNumberFrom;
+            long accountNumberTo = accountNumbersTo[i];
+            accountNumbersTo[i] = accountNumbersTo[j];
+            accountNumbersTo[j] = accountNumberTo;
+            long amount = amounts[i];
+            amounts[i] = amounts[j];
+            amounts[j] = amount;
+            byte status = statuses[i];
+            statuses[i] = statuses[j];
+            statuses[j] = status;
+        }
+    }
+
+    /**
+     * A written segment, mapped in memory. Records are only read with absolute gets, and its status bytes are read
+     * and changed under its monitor.
+     */
+    private static class Segment {
+
+        private final Path path;
+
+        /**
+         * The order the segment was written in.
+         */
+        private final long sequence;
+
+        private final MappedByteBuffer records;
+
+        private final long minTransferNumber;
+
+        private final long maxTransferNumber;
+
+        private final long maxTransferTimestamp;
+
+        private final int transfers;
+
+        Segment(Path path, long sequence, MappedByteBuffer records, long minTransferNumber, long maxTransferNumber,
+                long maxTransferTimestamp, int transfers) {
+            this.path = path;
+            this.sequence = sequence;
+            this.records = records;
+            this.minTransferNumber = minTransferNumber;
+            this.maxTransferNumber = maxTransferNumber;
+            this.maxTransferTimestamp = maxTransferTimestamp;
+            this.transfers = transfers;
+        }
+
+        boolean holds(long transferNumber) {
+            return transferNumber >= minTransferNumber && transferNumber <= maxTransferNumber;
+        }
+
+        /**
+         * @return the index of the record of the transfer, or -1 if it is not in the segment
+         */
+        int search(long transferNumber) {
+            int low = 0;
+            int high = transfers - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleNumber = records.getLong(middle * RECORD_SIZE);
+                if (middleNumber < transferNumber) {
+                    low = middle + 1;
+                } else if (middleNumber > transferNumber) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        synchronized void setStatus(int record, byte status) {
+            records.put(record * RECORD_SIZE + STATUS_OFFSET, status);
+        }
+
+        synchronized Transfer get(int record, TransferHistory.TransferFactory transferFactory) {
+            int position = record * RECORD_SIZE;
+            return transferFactory.create(records.getLong(position), records.getLong(position + Long.BYTES),
+                    records.getLong(position + 2 * Long.BYTES), records.getLong(position + 3 * Long.BYTES),
+                    records.getLong(position + 4 * Long.BYTES), records.get(position + STATUS_OFFSET));
+        }
+    }
+
+    /**
+     * The segments sorted by their lowest transfer number, with the highest transfer number of each segment and the
+     * ones before it, so both ends of the run of segments whose range may hold a number are found by binary search.
+     * Never changed once built.
+     */
+    private static class SegmentIndex {
+
+        static final SegmentIndex EMPTY = new SegmentIndex(new Segment[0]);
+
+        private final Segment[] segments;
+
+        private final long[] maxTransferNumbersUpTo;
+
+        SegmentIndex(Segment[] segments) {
+            this.segments = segments;
+            this.maxTransferNumbersUpTo = new long[segments.length];
+            long maxTransferNumber = Long.MIN_VALUE;
+            for (int i = 0; i < segments.length; i++) {
+                maxTransferNumber = Math.max(maxTransferNumber, segments[i].maxTransferNumber);
+                maxTransferNumbersUpTo[i] = maxTransferNumber;
+            }
+        }
+
+        SegmentIndex with(Segment segment) {
+            int position = lastStartingAtOrBefore(segment.minTransferNumber) + 1;
+            Segment[] added = new Segment[segments.length + 1];
+            System.arraycopy(segments, 0, added, 0, position);
+            added[position] = segment;
+            System.arraycopy(segments, position, added, position + 1, segments.length - position);
+            return new SegmentIndex(added);
+        }
+
+        SegmentIndex without(Segment segment) {
+            Segment[] removed = new Segment[segments.length - 1];
+            int position = 0;
+            for (Segment kept : segments) {
+                if (kept != segment) {
+                    removed[position++] = kept;
+                }
+            }
+            return new SegmentIndex(removed);
+        }
+
+        /**
+         * @return the index of the last segment whose lowest transfer number is at most the given one, or -1 if none
+         */
+        int lastStartingAtOrBefore(long transferNumber) {
+            int low = 0;
+            int high = segments.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (segments[middle].minTransferNumber <= transferNumber) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+
+        /**
+         * @return the index of the first segment whose highest transfer number, or that of a segment before it, is at
+         * least the given one, or the number of segments if none
+         */
+        int firstEndingAtOrAfter(long transferNumber) {
+            int low = 0;
+            int high = segments.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (maxTransferNumbersUpTo[middle] < transferNumber) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package test.adanielssr.simple.money.transfer.business.service.history;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import test.adanielssr.simple.money.transfer.business.service.id.SnowflakeIdGenerator;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
+
+/**
+ * Bounded store of the transfers, keeping the recent ones in memory and spilling the older ones to disk.
+ * <p>
+ * Recent transfers are kept in a ring of primitive columns indexed by transfer number, about 41 bytes per transfer
+ * instead of the few hundred a {@link Transfer} with its boxed fields and map entry takes. Recording a transfer
+ * takes its slot, spilling the transfer recorded in it before to the {@link HistorySegments} on disk, or dropping it
+ * if no spill directory is given. Numbers out of order, or sparse as those of a {@link SnowflakeIdGenerator}, may
+ * take a slot before the ring is full: the transfers recorded last, whose status is about to change, stay in memory
+ * and a status change reaches a transfer already spilled. Slots are guarded by a striped lock array, so transfers
+ * with different numbers are recorded in parallel.
+ * <p>
+ * The transfers of each account are found through an {@link AccountTransferIndex}, listing at most the latest
+ * {@value #DEFAULT_MAX_ACCOUNT_TRANSFERS} transfers of an account by default.
+ * <p>
+ * Closing the history stops the background writer of the spilled transfers.
+ * <p>
+ * Transfers returned by the history are copies of the stored ones.
+ */
+public class TransferHistory implements AutoCloseable {
+
+    /**
+     * Number of transfer numbers the account transfer index keeps per account by default.
+     */
+    public static final int DEFAULT_MAX_ACCOUNT_TRANSFERS = 4096;
+
+    private static final int LOCK_STRIPES = 1024;
+
+    private static final long EMPTY = 0L;
+
+    private static final TransferStatus[] STATUSES = TransferStatus.values();
+
+    private final CurrencyScale currencyScale;
+
+    private final int mask;
+
+    private final long[] transferNumbers;
+
+    private final long[] transferTimestamps;
+
+    private final long[] accountNumbersFrom;
+
+    private final long[] accountNumbersTo;
+
+    private final long[] amounts;
+
+    private final byte[] statuses;
+
+    private final Object[] lockStripes = new Object[LOCK_STRIPES];
+
+    private final AtomicInteger memoryTransfers = new AtomicInteger();
+
+    private final HistorySegments segments;
+
+    private final AccountTransferIndex accountTransferIndex;
+
+    /**
+     * History keeping only the transfers that fit in memory.
+     *
+     * @param currencyScale  the scale of the amounts
+     * @param memoryCapacity the number of transfers kept in memory, rounded up to a power of two
+     */
+    public TransferHistory(CurrencyScale currencyScale, int memoryCapacity) {
+        this(currencyScale, memoryCapacity, null, HistoryRetention.UNLIMITED);
+    }
+
+    /**
+     * @param currencyScale  the scale of the amounts
+     * @param memoryCapacity the number of transfers kept in memory, rounded up to a power of two
+     * @param spillDirectory the directory older transfers are spilled to, or null to drop them. Any transfer left
+     *                       in it by a previous run is deleted, the journal being the durable record of transfers
+     * @param retention      limits on the spilled transfers
+     */
+    public TransferHistory(CurrencyScale currencyScale, int memoryCapacity, Path spillDirectory,
+            HistoryRetention retention) {
+        this(currencyScale, memoryCapacity, spillDirectory, retention, DEFAULT_MAX_ACCOUNT_TRANSFERS);
+    }
+
+    /**
+     * @param currencyScale       the scale of the amounts
+     * @param memoryCapacity      the number of transfers kept in memory, rounded up to a power of two
+     * @param spillDirectory      the directory older transfers are spilled to, or null to drop them. Any transfer
+     *                            left in it by a previous run is deleted, the journal being the durable record of
+     *                            transfers
+     * @param retention           limits on the spilled transfers
+     * @param maxAccountTransfers the number of latest transfers of each account that can be listed, at least 4
+     */
+    public TransferHistory(CurrencyScale currencyScale, int memoryCapacity, Path spillDirectory,
+            HistoryRetention retention, int maxAccountTransfers) {
+        if (memoryCapacity <= 0 || memoryCapacity > 1 << 30) {
+            throw new IllegalArgumentException("memoryCapacity must be between 1 and 2^30");
+        }
+        int capacity = Integer.highestOneBit(memoryCapacity);
+        if (capacity < memoryCapacity) {
+            capacity <<= 1;
+        }
+        this.currencyScale = currencyScale;
+        this.mask = capacity - 1;
+        this.transferNumbers = new long[capacity];
+        this.transferTimestamps = new long[capacity];
+        this.accountNumbersFrom = new long[capacity];
+        this.accountNumbersTo = new long[capacity];
+        this.amounts = new long[capacity];
+        this.statuses = new byte[capacity];
+        for (int i = 0; i < lockStripes.length; i++) {
+            lockStripes[i] = new Object();
+        }
+        this.segments = spillDirectory == null ? null : new HistorySegments(spillDirectory, retention);
+        this.accountTransferIndex = new AccountTransferIndex(this::mayBeStored, maxAccountTransfers);
+    }
+
+    public CurrencyScale getCurrencyScale() {
+        return currencyScale;
+    }
+
+    /**
+     * @return the number of transfers stored, in memory and spilled to disk
+     */
+    public long size() {
+        return memoryTransfers.get() + (segments == null ? 0L : segments.getStoredTransfers());
+    }
+
+    /**
+     * @return the number of spilled transfers dropped because they could not be written to disk
+     */
+    public long getDroppedTransfers() {
+        return segments == null ? 0L : segments.getDroppedTransfers();
+    }
+
+    /**
+     * Stores a transfer, replacing any transfer stored with the same number.
+     *
+     * @param transferNumber    the transfer number, greater than 0
+     * @param transferTimestamp the transfer timestamp, in milliseconds since the epoch
+     * @param amount            the amount in minor units
+     */
+    public void record(long transferNumber, long transferTimestamp, long accountNumberFrom, long accountNumberTo,
+            long amount, TransferStatus status) {
+        int slot = slotOf(transferNumber);
+        synchronized (lockFor(slot)) {
+            long storedNumber = transferNumbers[slot];
+            if (storedNumber == EMPTY) {
+                memoryTransfers.incrementAndGet();
+            } else if (storedNumber != transferNumber) {
+                // spilled under the slot lock, so a status change never misses it in between
+                spill(storedNumber, transferTimestamps[slot], accountNumbersFrom[slot], accountNumbersTo[slot],
+                        amounts[slot], statuses[slot]);
+            }
+            transferNumbers[slot] = transferNumber;
+            transferTimestamps[slot] = transferTimestamp;
+            accountNumbersFrom[slot] = accountNumberFrom;
+            accountNumbersTo[slot] = accountNumberTo;
+            amounts[slot] = amount;
+            statuses[slot] = (byte) status.ordinal();
+        }
+
+        // outside of the slot lock, as trimming the index looks transfers up
+        accountTransferIndex.add(accountNumberFrom, transferNumber);
+        accountTransferIndex.add(accountNumberTo, transferNumber);
+    }
+
+    /**
+     * Changes the status of a transfer, in memory or spilled to disk.
+     *
+     * @return false if the transfer is not stored or was dropped by the retention
+     */
+    public boolean updateStatus(long transferNumber, TransferStatus status) {
+        int slot = slotOf(transferNumber);
+        synchronized (lockFor(slot)) {
+            if (transferNumbers[slot] == transferNumber) {
+                statuses[slot] = (byte) status.ordinal();
+                return true;
+            }
+        }
+        return segments != null && segments.updateStatus(transferNumber, (byte) status.ordinal());
+    }
+
+    /**
+     * @param transferNumber the transfer number
+     * @return a copy of the stored transfer, or null if it is not stored or was dropped by the retention
+     */
+    public Transfer get(long transferNumber) {
+        int slot = slotOf(transferNumber);
+        synchronized (lockFor(slot)) {
+            if (transferNumbers[slot] == transferNumber) {
+                return toTransfer(transferNumber, transferTimestamps[slot], accountNumbersFrom[slot],
+                        accountNumbersTo[slot], amounts[slot], statuses[slot]);
+            }
+        }
+        return segments == null ? null : segments.get(transferNumber, this::toTransfer);
+    }
+
+    /**
+     * Page of the transfers from or to an account, in ascending transfer number order.
+     *
+     * @param accountNumber       the account number
+     * @param sinceTransferNumber only transfers numbered after it are returned, or null for the latest transfers
+     * @param limit               the maximum number of transfers returned
+     * @return copies of the stored transfers
+     */
+    public List<Transfer> getAccountTransfers(long accountNumber, Long sinceTransferNumber, int limit) {
+        long[] transferNumbers = accountTransferIndex.find(accountNumber, sinceTransferNumber, limit);
+        List<Transfer> transfers = new ArrayList<>(transferNumbers.length);
+        for (long transferNumber : transferNumbers) {
+            Transfer transfer = get(transferNumber);
+            if (transfer != null) {
+                transfers.add(transfer);
+            }
+        }
+        return transfers;
+    }
+
+    @Override
+    public void close() {
+        if (segments != null) {
+            segments.close();
+        }
+    }
+
+    /**
+     * Waits until the spilled transfers handed to the background writer so far are written.
+     */
+    void flush() {
+        if (segments != null) {
+            segments.flush();
+        }
+    }
+
+    /**
+     * Tells whether a transfer may still be stored, looking at the memory slot and the number ranges of the spilled
+     * transfers, without reading any of them.
+     */
+    private boolean mayBeStored(long transferNumber) {
+        int slot = slotOf(transferNumber);
+        synchronized (lockFor(slot)) {
+            if (transferNumbers[slot] == transferNumber) {
+                return true;
+            }
+        }
+        return segments != null && segments.mayHold(transferNumber);
+    }
+
+    private void spill(long transferNumber, long transferTimestamp, long accountNumberFrom, long accountNumberTo,
+            long amount, byte status) {
+        if (segments != null) {
+            segments.add(transferNumber, transferTimestamp, accountNumberFrom, accountNumberTo, amount, status);
+        }
+    }
+
+    private Transfer toTransfer(long transferNumber, long transferTimestamp, long accountNumberFrom,
+            long accountNumberTo, long amount, byte status) {
+        Transfer transfer = new Transfer();
+        transfer.setTransferNumber(transferNumber);
+        transfer.setTransferTimestamp(new Date(transferTimestamp));
+        transfer.setAccountNumberFrom(accountNumberFrom);
+        transfer.setAccountNumberTo(accountNumberTo);
+        transfer.setAmount(currencyScale.toMajorUnits(amount));
+        transfer.setStatus(STATUSES[status]);
+        return transfer;
+    }
+
+    /**
+     * The low bits of the number, with the bits above the node and sequence of a {@link SnowflakeIdGenerator} number
+     * folded in, so transfers numbered in different milliseconds do not all take the slots of the first sequence
+     * numbers. Numbers counted from 1 keep their low bits up to the 4194304th.
+     */
+    private int slotOf(long transferNumber) {
+        return (int) (transferNumber ^ (transferNumber >>> SnowflakeIdGenerator.TIMESTAMP_SHIFT)) & mask;
+    }
+
+    private Object lockFor(int slot) {
+        return lockStripes[slot & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Builds a transfer out of its stored columns.
+     */
+    interface TransferFactory {
+
+        Transfer create(long transferNumber, long transferTimestamp, long accountNumberFrom, long accountNumberTo,
+                long amount, byte status);
+    }
+}
@@ -0,0 +1,37 @@
+package test.adanielssr.simple.money.transfer.business.service.id;
+
+/**
+ * Source of unique, positive and increasing numbers, e.g. transfer or account numbers.
+ * <p>
+ * Numbers taken by one thread always increase. Numbers taken by different threads are only as ordered as the
+ * implementation says.
+ */
+public interface IdGenerator {
+
+    /**
+     * The maximum count of {@link #nextIds(int)}.
+     */
+    int MAX_IDS_AT_ONCE = 4096;
+
+    /**
+     * @return a new number
+     */
+    default long nextId() {
+        return nextIds(1);
+    }
+
+    /**
+     * Takes consecutive numbers at once.
+     *
+     * @param count the count of numbers, between 1 and {@link #MAX_IDS_AT_ONCE}
+     * @return the first of the numbers, the others following it
+     */
+    long nextIds(int count);
+
+    /**
+     * Makes sure new numbers are greater than the given one, e.g. one restored from a journal or given by a client.
+     *
+     * @param id a number already used
+     */
+    void restore(long id);
+}
@@ -0,0 +1,86 @@
+package test.adanielssr.simple.money.transfer.business.service.id;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IdGenerator} decorator leasing numbers to each thread in blocks, so the decorated generator, and the memory
+ * it writes, is reached once per block instead of once per number.
+ * <p>
+ * Numbers taken by different threads are no longer in the order they were taken: a thread takes the numbers of its
+ * block while others take greater numbers from later blocks. A lease expires after a given time, its unused numbers
+ * being skipped, so a number is never taken more than that time after a greater one, e.g. for clients paging through
+ * transfers by number to miss only the transfers of that last moment. A number {@link #restore(long) restored} also
+ * expires the leases holding it and smaller ones.
+ * <p>
+ * Reading the clock to expire the leases is the main cost of a number taken from a lease, as much as an uncontended
+ * increment of a shared counter would be, but it does not grow with the number of threads.
+ */
+public final class LeasingIdGenerator implements IdGenerator {
+
+    private final IdGenerator idGenerator;
+
+    private final int leaseSize;
+
+    private final long leaseNanos;
+
+    private final ThreadLocal<Lease> leases = ThreadLocal.withInitial(Lease::new);
+
+    /**
+     * Leases hold no number at or below it.
+     */
+    private volatile long restoredId;
+
+    /**
+     * @param idGenerator the generator the blocks are taken from
+     * @param leaseSize   the number of numbers of a block, between 1 and {@link #MAX_IDS_AT_ONCE}
+     * @param leaseMillis how long a thread may take the numbers of a block, or 0 for as long as it takes, which saves
+     *                    reading the clock for every number
+     */
+    public LeasingIdGenerator(IdGenerator idGenerator, int leaseSize, long leaseMillis) {
+        if (leaseSize < 1 || leaseSize > MAX_IDS_AT_ONCE) {
+            throw new IllegalArgumentException("leaseSize must be between 1 and " + MAX_IDS_AT_ONCE);
+        }
+        this.idGenerator = idGenerator;
+        this.leaseSize = leaseSize;
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+    }
+
+    @Override
+    public long nextIds(int count) {
+        SequenceIdGenerator.checkCount(count);
+        Lease lease = leases.get();
+        long now = leaseNanos > 0L ? System.nanoTime() : 0L;
+        if (lease.remaining < count || now - lease.leasedAt > leaseNanos || lease.nextId <= restoredId) {
+            if (count > leaseSize / 2) {
+                // a larger block would mostly be skipped
+                return idGenerator.nextIds(count);
+            }
+            lease.nextId = idGenerator.nextIds(leaseSize);
+            lease.remaining = leaseSize;
+            lease.leasedAt = now;
+        }
+        long id = lease.nextId;
+        lease.nextId += count;
+        lease.remaining -= count;
+        return id;
+    }
+
+    @Override
+    public void restore(long id) {
+        idGenerator.restore(id);
+        synchronized (this) {
+            if (id > restoredId) {
+                restoredId = id;
+            }
+        }
+    }
+
+    private static class Lease {
+
+        private long nextId;
+
+        private int remaining;
+
+        private long leasedAt;
+    }
+}
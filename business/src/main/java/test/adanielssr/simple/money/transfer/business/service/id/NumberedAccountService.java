@@ -0,0 +1,83 @@
+package test.adanielssr.simple.money.transfer.business.service.id;
+
+import java.util.Collection;
+import java.util.function.BiFunction;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * {@link AccountService} decorator numbering the accounts created without an account number from an
+ * {@link IdGenerator} instead of the counter of the decorated store. Account numbers given are restored in the
+ * generator, so generated numbers do not collide with them.
+ */
+public class NumberedAccountService implements AccountService, AutoCloseable {
+
+    private final AccountService accountService;
+
+    private final IdGenerator accountNumberGenerator;
+
+    public NumberedAccountService(AccountService accountService, IdGenerator accountNumberGenerator) {
+        this.accountService = accountService;
+        this.accountNumberGenerator = accountNumberGenerator;
+    }
+
+    @Override
+    public CurrencyScale getCurrencyScale() {
+        return accountService.getCurrencyScale();
+    }
+
+    @Override
+    public Account createAccount(Account newAccount) {
+        if (newAccount != null) {
+            if (newAccount.getAccountNumber() == null) {
+                newAccount.setAccountNumber(accountNumberGenerator.nextId());
+            } else {
+                accountNumberGenerator.restore(newAccount.getAccountNumber());
+            }
+        }
+        return accountService.createAccount(newAccount);
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        return accountService.getAllAccounts();
+    }
+
+    @Override
+    public int getAccountCount() {
+        return accountService.getAccountCount();
+    }
+
+    @Override
+    public Account getAccountByNumber(Long accountNumber) {
+        return accountService.getAccountByNumber(accountNumber);
+    }
+
+    @Override
+    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
+        accountService.performAccountOperation(accountNumber, operation);
+    }
+
+    @Override
+    public void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        accountService.transfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+    }
+
+    @Override
+    public TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        return accountService.tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+    }
+
+    /**
+     * Closes the decorated service, if it can be closed.
+     */
+    @Override
+    public void close() throws Exception {
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package test.adanielssr.simple.money.transfer.business.service.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdGenerator} counting from 1 with a single {@link AtomicLong}: numbers are dense and ordered across threads,
+ * and every number taken by any thread writes the same counter.
+ */
+public final class SequenceIdGenerator implements IdGenerator {
+
+    private final AtomicLong lastId = new AtomicLong();
+
+    @Override
+    public long nextId() {
+        return lastId.incrementAndGet();
+    }
+
+    @Override
+    public long nextIds(int count) {
+        checkCount(count);
+        return lastId.getAndAdd(count) + 1;
+    }
+
+    @Override
+    public void restore(long id) {
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    static void checkCount(int count) {
+        if (count < 1 || count > MAX_IDS_AT_ONCE) {
+            throw new IllegalArgumentException("count must be between 1 and " + MAX_IDS_AT_ONCE);
+        }
+    }
+}
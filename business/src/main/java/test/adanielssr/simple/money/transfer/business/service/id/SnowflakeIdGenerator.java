@@ -0,0 +1,96 @@
+package test.adanielssr.simple.money.transfer.business.service.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link IdGenerator} laying numbers out as in Snowflake: the milliseconds since {@link #EPOCH} in the high 41 bits,
+ * then a node number of 10 bits and a sequence of 12 bits, so nodes with different node numbers take numbers
+ * independently and numbers sort by creation time, to the millisecond, across nodes.
+ * <p>
+ * Up to 4096 numbers are taken per millisecond. Beyond that, or if the clock goes back, numbers are taken from the
+ * following milliseconds, ahead of the clock, rather than waiting for it.
+ */
+public final class SnowflakeIdGenerator implements IdGenerator {
+
+    /**
+     * 2017-08-13T00:00:00Z.
+     */
+    public static final long EPOCH = 1502582400000L;
+
+    public static final int MAX_NODE = 1023;
+
+    /**
+     * The bits of the node number and sequence, below the timestamp.
+     */
+    public static final int TIMESTAMP_SHIFT = 22;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final long NODE_MASK = (long) MAX_NODE << SEQUENCE_BITS;
+
+    private final long nodeBits;
+
+    private final LongSupplier clock;
+
+    /**
+     * The timestamp and sequence of the last number taken, without the node number, so a number restored from
+     * another node is compared on them only.
+     */
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+
+    /**
+     * @param node the node number, between 0 and {@value #MAX_NODE}, unique among the nodes taking numbers
+     */
+    public SnowflakeIdGenerator(int node) {
+        this(node, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(int node, LongSupplier clock) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE);
+        }
+        this.nodeBits = (long) node << SEQUENCE_BITS;
+        this.clock = clock;
+    }
+
+    @Override
+    public long nextIds(int count) {
+        SequenceIdGenerator.checkCount(count);
+        while (true) {
+            long last = lastTimestampAndSequence.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long timestamp = Math.max(clock.getAsLong() - EPOCH, lastTimestamp);
+            long sequence = timestamp == lastTimestamp ? (last & SEQUENCE_MASK) + 1 : 0L;
+            if (sequence + count > SEQUENCE_MASK + 1) {
+                timestamp++;
+                sequence = 0L;
+            }
+            if (lastTimestampAndSequence.compareAndSet(last, timestamp << SEQUENCE_BITS | sequence + count - 1)) {
+                return timestamp << TIMESTAMP_SHIFT | nodeBits | sequence;
+            }
+        }
+    }
+
+    /**
+     * Numbers restored from a node with a higher node number are only followed in the next millisecond, as the
+     * numbers of this node in the same millisecond are lower whatever their sequence.
+     */
+    @Override
+    public void restore(long id) {
+        long timestampAndSequence = (id >>> TIMESTAMP_SHIFT) << SEQUENCE_BITS | id & SEQUENCE_MASK;
+        if ((id & NODE_MASK) > nodeBits) {
+            timestampAndSequence |= SEQUENCE_MASK;
+        }
+        lastTimestampAndSequence.accumulateAndGet(timestampAndSequence, Math::max);
+    }
+
+    /**
+     * @return the milliseconds since the Unix epoch a number was taken at, or ahead of
+     */
+    public static long timestampOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+}
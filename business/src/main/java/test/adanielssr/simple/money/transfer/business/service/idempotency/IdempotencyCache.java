@@ -0,0 +1,183 @@
+package test.adanielssr.simple.money.transfer.business.service.idempotency;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, expiring cache of the results of the operations run under an idempotency key, so a repeated key gets the
+ * result of the first run instead of running the operation again.
+ * <p>
+ * Concurrent runs of the same key are coalesced: the first one runs the operation while the others wait for its
+ * result. Every key is kept for the same time to live, so keys expire in the order they were added, which is the
+ * order of a queue: each new key evicts the expired keys at the head of the queue, and the oldest key if the cache
+ * is full, so memory stays bounded by the capacity whatever the load. A key evicted while its operation still runs
+ * is no longer coalesced with.
+ *
+ * @param <V> the type of the results
+ */
+public class IdempotencyCache<V> {
+
+    /**
+     * Maximum length of a key.
+     */
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final int capacity;
+
+    private final long timeToLiveNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final LongAdder hits;
+
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final Queue<Entry<V>> expiryQueue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * @param capacity        the maximum number of keys kept
+     * @param timeToLiveMillis how long a key is kept after its operation started
+     * @param hits            counter of the runs answered with the result of an earlier run
+     */
+    public IdempotencyCache(int capacity, long timeToLiveMillis, LongAdder hits) {
+        this(capacity, timeToLiveMillis, hits, System::nanoTime);
+    }
+
+    /**
+     * Access modifier to default for testing purposes
+     */
+    IdempotencyCache(int capacity, long timeToLiveMillis, LongAdder hits, LongSupplier nanoClock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        if (timeToLiveMillis <= 0L) {
+            throw new IllegalArgumentException("timeToLiveMillis must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.hits = hits;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Runs the operation unless the key was already run, in which case the result of the earlier run is returned,
+     * waiting for it if it is still running. An operation that throws leaves no trace of its key, and the waiting
+     * runs throw the same exception.
+     *
+     * @param key       the idempotency key, at most {@link #MAX_KEY_LENGTH} characters long
+     * @param operation the operation
+     * @param keep      whether a result is kept for the later runs of the key, e.g. not if it had no effect
+     * @return the result of the operation or of the earlier run of the key
+     */
+    public V execute(String key, Supplier<V> operation, Predicate<V> keep) {
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("key must be at most " + MAX_KEY_LENGTH + " characters long");
+        }
+        long now = nanoClock.getAsLong();
+        Entry<V> entry = new Entry<>(key, now + timeToLiveNanos);
+        Entry<V> existing;
+        while ((existing = entries.putIfAbsent(key, entry)) != null) {
+            if (!existing.isExpired(now)) {
+                hits.increment();
+                return existing.await();
+            }
+            entries.remove(key, existing);
+        }
+        evict(now);
+        expiryQueue.offer(entry);
+        queued.incrementAndGet();
+
+        V result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.fail(e);
+            throw e;
+        }
+        if (!keep.test(result)) {
+            entries.remove(key, entry);
+        }
+        entry.complete(result);
+        return result;
+    }
+
+    /**
+     * @return the number of keys kept, including the ones still running and the expired ones not evicted yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        Entry<V> head;
+        while ((head = expiryQueue.peek()) != null && (queued.get() >= capacity || head.isExpired(now))) {
+            if (expiryQueue.remove(head)) {
+                queued.decrementAndGet();
+                entries.remove(head.key, head);
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final String key;
+
+        private final long expiresAtNanos;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private V result;
+
+        private Throwable failure;
+
+        private Entry(String key, long expiresAtNanos) {
+            this.key = key;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0L;
+        }
+
+        private void complete(V result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        private void fail(Throwable failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private V await() {
+            boolean interrupted = false;
+            while (done.getCount() != 0L) {
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return result;
+        }
+    }
+}
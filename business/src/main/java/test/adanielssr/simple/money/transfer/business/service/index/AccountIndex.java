@@ -0,0 +1,590 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+
+/**
+ * Concurrent open addressing hash table of account balances keyed by primitive account numbers.
+ * <p>
+ * The account number, balance and state of an account take three longs in a slot of a {@link Table}, on the heap
+ * in three parallel arrays or off the heap in fixed width records, instead of a map node, boxed keys and an account
+ * object, and an account is found by probing consecutive slots from the hash of its number. Account number {@code 0}, which marks the empty slots, has a slot of its own
+ * after the probed ones.
+ * <p>
+ * The state of a slot is the version of its account plus one while the account exists, minus that when it was
+ * removed, or one of the {@link #LOCKED} and {@link #MOVED} markers. Writes lock the slot by setting its state to
+ * {@link #LOCKED} and release it with the next version, so reads take no lock: they read the state, the balance and
+ * the state again, and retry if a write happened in between. The number of a removed account stays in its slot, so
+ * the slots of a table are only ever claimed and probe sequences never break.
+ * <p>
+ * Once three quarters of the slots are claimed, the table is copied into one twice as large. Each slot is locked
+ * while it is copied, then marked {@link #MOVED}, and reads and writes reaching a moved slot go on in the new table;
+ * only the creations of accounts wait for the copy to end.
+ * <p>
+ * Every operation {@link Table#pin() pins} the table it starts from until it is done, which keeps it and the tables
+ * it was copied into reachable, as a table off the heap is freed with it.
+ */
+final class AccountIndex {
+
+    static final int UPDATED = 0;
+
+    static final int NOT_FOUND = 1;
+
+    static final int NOT_ENOUGH_BALANCE = 2;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private static final long EMPTY_KEY = 0L;
+
+    private static final long MOVED = Long.MIN_VALUE;
+
+    private static final long LOCKED = Long.MIN_VALUE + 1L;
+
+    private static final Reader<Boolean> EXISTS = (key, balance, version) -> Boolean.TRUE;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Object resizeLock = new Object();
+
+    private final IntFunction<Table> tableFactory;
+
+    private volatile Table table;
+
+    /**
+     * @param expectedSize the number of accounts the index holds without resizing
+     */
+    AccountIndex(int expectedSize) {
+        this(expectedSize, HeapTable::new);
+    }
+
+    /**
+     * @param expectedSize the number of accounts the index holds without resizing
+     * @param tableFactory creates the tables of a given capacity, e.g. {@link OffHeapTable off the heap}
+     */
+    AccountIndex(int expectedSize, IntFunction<Table> tableFactory) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize cannot be negative");
+        }
+        this.tableFactory = tableFactory;
+        long minimumCapacity = Math.max(16L, expectedSize * 4L / 3L + 1L);
+        table = newTable((int) Math.min(MAX_CAPACITY, Long.highestOneBit(minimumCapacity - 1L) << 1));
+    }
+
+    /**
+     * @return the number of accounts
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * @return the number of slots of the table, for testing purposes
+     */
+    int capacity() {
+        return table.capacity;
+    }
+
+    /**
+     * Adds an account, unless an account with the same number exists.
+     *
+     * @return whether the account was added
+     */
+    boolean insert(long key, long balance) {
+        Table pinned = pin();
+        try {
+            while (true) {
+                Table t = table;
+                int i = find(t, key);
+                if (i >= 0) {
+                    long state = t.state(i);
+                    if (state == MOVED) {
+                        awaitResize();
+                    } else if (state == LOCKED || state >= 0L) {
+                        // existing, being changed or being added by another thread
+                        return false;
+                    } else if (t.compareAndSetState(i, state, LOCKED)) {
+                        // the account was removed, it comes back with the next version
+                        t.setBalance(i, balance);
+                        t.setState(i, 1L - state);
+                        size.incrementAndGet();
+                        return true;
+                    }
+                    continue;
+                }
+
+                i = -1 - i;
+                if (t.state(i) == MOVED) {
+                    awaitResize();
+                    continue;
+                }
+                if (t.claimed.incrementAndGet() > t.threshold) {
+                    t.claimed.decrementAndGet();
+                    resize(t);
+                    continue;
+                }
+                if (!t.compareAndSetKey(i, EMPTY_KEY, key)) {
+                    t.claimed.decrementAndGet();
+                    continue;
+                }
+                t.setBalance(i, balance);
+                if (t.compareAndSetState(i, 0L, 1L)) {
+                    size.incrementAndGet();
+                    return true;
+                }
+                // the slot was moved before the account was added to it, it is added to the new table
+                awaitResize();
+            }
+        } finally {
+            pinned.unpin();
+        }
+    }
+
+    /**
+     * @return whether an account with the number exists
+     */
+    boolean contains(long key) {
+        return get(key, EXISTS) != null;
+    }
+
+    /**
+     * Reads an account.
+     *
+     * @return what the reader made of the account, or null if there is no account with the number
+     */
+    <T> T get(long key, Reader<T> reader) {
+        Table pinned = pin();
+        try {
+            return get(pinned, key, reader);
+        } finally {
+            pinned.unpin();
+        }
+    }
+
+    /**
+     * Takes an amount from the balance of an account, unless the balance is lower than it.
+     *
+     * @return {@link #UPDATED}, {@link #NOT_FOUND} or {@link #NOT_ENOUGH_BALANCE}
+     */
+    int debit(long key, long amount) {
+        Table pinned = pin();
+        try {
+            return add(pinned, key, amount, true);
+        } finally {
+            pinned.unpin();
+        }
+    }
+
+    /**
+     * Adds an amount to the balance of an account.
+     *
+     * @return {@link #UPDATED} or {@link #NOT_FOUND}
+     * @throws ArithmeticException if the balance would overflow, leaving it unchanged
+     */
+    int credit(long key, long amount) {
+        Table pinned = pin();
+        try {
+            return add(pinned, key, amount, false);
+        } finally {
+            pinned.unpin();
+        }
+    }
+
+    /**
+     * Sets the balance of an account if it is still at the given version.
+     *
+     * @return whether the balance was set
+     */
+    boolean compareAndSet(long key, long expectedVersion, long balance) {
+        Table pinned = pin();
+        try {
+            return compareAndUpdate(pinned, key, expectedVersion, balance, false);
+        } finally {
+            pinned.unpin();
+        }
+    }
+
+    /**
+     * Removes an account if it is still at the given version.
+     *
+     * @return whether the account was removed
+     */
+    boolean compareAndRemove(long key, long expectedVersion) {
+        Table pinned = pin();
+        try {
+            return compareAndUpdate(pinned, key, expectedVersion, 0L, true);
+        } finally {
+            pinned.unpin();
+        }
+    }
+
+    /**
+     * Iterates over the accounts of the current table, weakly consistent: accounts added after the iteration started
+     * may or may not be seen.
+     */
+    <T> Iterator<T> iterator(Reader<T> reader) {
+        Table t = table;
+        return new Iterator<T>() {
+
+            private int index;
+
+            private T next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T current = next;
+                next = advance();
+                return current;
+            }
+
+            private T advance() {
+                t.pin();
+                try {
+                    while (index <= t.capacity) {
+                        int i = index++;
+                        long key = t.key(i);
+                        if (key != EMPTY_KEY || i == t.capacity) {
+                            T value = get(t, key, reader);
+                            if (value != null) {
+                                return value;
+                            }
+                        }
+                    }
+                    return null;
+                } finally {
+                    t.unpin();
+                }
+            }
+        };
+    }
+
+    private <T> T get(Table t, long key, Reader<T> reader) {
+        while (true) {
+            int i = find(t, key);
+            if (i < 0) {
+                if (t.state(-1 - i) != MOVED) {
+                    return null;
+                }
+                t = t.next;
+                continue;
+            }
+            long state = t.state(i);
+            if (state == MOVED) {
+                t = t.next;
+            } else if (state != LOCKED) {
+                if (state <= 0L) {
+                    return null;
+                }
+                long balance = t.balance(i);
+                if (t.state(i) == state) {
+                    return reader.read(key, balance, state - 1L);
+                }
+            }
+        }
+    }
+
+    private int add(Table t, long key, long amount, boolean debit) {
+        while (true) {
+            int i = find(t, key);
+            if (i < 0) {
+                if (t.state(-1 - i) != MOVED) {
+                    return NOT_FOUND;
+                }
+                t = t.next;
+                continue;
+            }
+            long state = lock(t, i);
+            if (state == MOVED) {
+                t = t.next;
+                continue;
+            }
+            if (state <= 0L) {
+                return NOT_FOUND;
+            }
+            long balance = t.balance(i);
+            if (debit && balance < amount) {
+                t.setState(i, state);
+                return NOT_ENOUGH_BALANCE;
+            }
+            if (!debit && balance > Long.MAX_VALUE - amount) {
+                t.setState(i, state);
+                throw new ArithmeticException("long overflow");
+            }
+            t.setBalance(i, debit ? balance - amount : balance + amount);
+            t.setState(i, state + 1L);
+            return UPDATED;
+        }
+    }
+
+    private boolean compareAndUpdate(Table t, long key, long expectedVersion, long balance, boolean remove) {
+        while (true) {
+            int i = find(t, key);
+            if (i < 0) {
+                if (t.state(-1 - i) != MOVED) {
+                    return false;
+                }
+                t = t.next;
+                continue;
+            }
+            long state = lock(t, i);
+            if (state == MOVED) {
+                t = t.next;
+                continue;
+            }
+            if (state <= 0L) {
+                return false;
+            }
+            if (state - 1L != expectedVersion) {
+                t.setState(i, state);
+                return false;
+            }
+            if (remove) {
+                t.setState(i, -state - 1L);
+                size.decrementAndGet();
+            } else {
+                t.setBalance(i, balance);
+                t.setState(i, state + 1L);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Locks the slot of an existing account.
+     *
+     * @return the state of the slot before it was locked, or a state it cannot be locked in: {@link #MOVED}, or
+     * zero or less if there is no account in it
+     */
+    private static long lock(Table t, int i) {
+        while (true) {
+            long state = t.state(i);
+            if (state == MOVED || (state <= 0L && state != LOCKED)) {
+                return state;
+            }
+            if (state != LOCKED && t.compareAndSetState(i, state, LOCKED)) {
+                return state;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the slot of the key, or minus one minus the index of the empty slot ending its probe
+     * sequence if it is not in the table
+     */
+    private static int find(Table t, long key) {
+        if (key == EMPTY_KEY) {
+            return t.capacity;
+        }
+        for (int i = hash(key) & t.mask; ; i = (i + 1) & t.mask) {
+            long slotKey = t.key(i);
+            if (slotKey == key) {
+                return i;
+            } else if (slotKey == EMPTY_KEY) {
+                return -1 - i;
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Pins the current table, to be unpinned once the operation is done.
+     */
+    private Table pin() {
+        Table t = table;
+        t.pin();
+        return t;
+    }
+
+    private void awaitResize() {
+        synchronized (resizeLock) {
+            // the resize holds the lock until the new table is published
+        }
+    }
+
+    private void resize(Table t) {
+        synchronized (resizeLock) {
+            if (table != t) {
+                return;
+            }
+            if (t.capacity == MAX_CAPACITY) {
+                throw new SimpleMoneyTransferException("Account index is full!");
+            }
+            Table next = newTable(t.capacity << 1);
+            t.next = next;
+            for (int i = 0; i <= t.capacity; i++) {
+                move(t, i, next);
+            }
+            table = next;
+        }
+    }
+
+    private Table newTable(int capacity) {
+        Table t = tableFactory.apply(capacity);
+        // account number 0 starts as removed, so adding it goes the same way as adding back a removed account
+        t.setState(capacity, -1L);
+        return t;
+    }
+
+    private static void move(Table t, int i, Table next) {
+        while (true) {
+            long state = t.state(i);
+            if (state == LOCKED) {
+                continue;
+            }
+            if (state == 0L) {
+                // empty, or an account being added that will be added to the new table
+                if (t.compareAndSetState(i, 0L, MOVED)) {
+                    return;
+                }
+            } else if (t.compareAndSetState(i, state, LOCKED)) {
+                long key = t.key(i);
+                int j = key == EMPTY_KEY ? next.capacity : -1 - find(next, key);
+                if (key != EMPTY_KEY) {
+                    next.setKey(j, key);
+                    next.claimed.incrementAndGet();
+                }
+                next.setBalance(j, t.balance(i));
+                next.setState(j, state);
+                t.setState(i, MOVED);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Makes something of an account read from the index, without keeping a reference to the index.
+     */
+    @FunctionalInterface
+    interface Reader<T> {
+
+        T read(long key, long balance, long version);
+    }
+
+    /**
+     * Slots of the accounts: their numbers, balances and states, each read and written atomically.
+     */
+    abstract static class Table {
+
+        final int capacity;
+
+        private final int mask;
+
+        private final int threshold;
+
+        private final AtomicInteger claimed = new AtomicInteger();
+
+        private volatile Table next;
+
+        /**
+         * @param capacity the number of probed slots; the table has one more, for account number 0
+         */
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.threshold = (int) (capacity * 3L / 4L);
+        }
+
+        /**
+         * Marks the start of an operation reading the table and the tables it was copied into.
+         */
+        void pin() {
+        }
+
+        /**
+         * Marks the end of an operation that {@link #pin() pinned} the table.
+         */
+        void unpin() {
+        }
+
+        abstract long key(int i);
+
+        abstract void setKey(int i, long key);
+
+        abstract boolean compareAndSetKey(int i, long expectedKey, long key);
+
+        abstract long balance(int i);
+
+        abstract void setBalance(int i, long balance);
+
+        abstract long state(int i);
+
+        abstract void setState(int i, long state);
+
+        abstract boolean compareAndSetState(int i, long expectedState, long state);
+    }
+
+    /**
+     * Table of three parallel arrays on the heap.
+     */
+    static final class HeapTable extends Table {
+
+        private final AtomicLongArray keys;
+
+        private final AtomicLongArray balances;
+
+        private final AtomicLongArray states;
+
+        HeapTable(int capacity) {
+            super(capacity);
+            this.keys = new AtomicLongArray(capacity + 1);
+            this.balances = new AtomicLongArray(capacity + 1);
+            this.states = new AtomicLongArray(capacity + 1);
+        }
+
+        @Override
+        long key(int i) {
+            return keys.get(i);
+        }
+
+        @Override
+        void setKey(int i, long key) {
+            keys.set(i, key);
+        }
+
+        @Override
+        boolean compareAndSetKey(int i, long expectedKey, long key) {
+            return keys.compareAndSet(i, expectedKey, key);
+        }
+
+        @Override
+        long balance(int i) {
+            return balances.get(i);
+        }
+
+        @Override
+        void setBalance(int i, long balance) {
+            balances.set(i, balance);
+        }
+
+        @Override
+        long state(int i) {
+            return states.get(i);
+        }
+
+        @Override
+        void setState(int i, long state) {
+            states.set(i, state);
+        }
+
+        @Override
+        boolean compareAndSetState(int i, long expectedState, long state) {
+            return states.compareAndSet(i, expectedState, state);
+        }
+    }
+}
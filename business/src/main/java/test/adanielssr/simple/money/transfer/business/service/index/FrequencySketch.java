@@ -0,0 +1,109 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate count of how often each account number was used recently: a count-min sketch of four rows of 4-bit
+ * counters, packed sixteen to a long, halved every ten times as many uses as the capacity it was sized for so older
+ * uses weigh less.
+ * <p>
+ * Counters are incremented with a compare and set of their long, and only while below {@value #MAX_COUNT}, so a
+ * saturated counter never carries into its neighbour and concurrent increments are not lost. Halving the counters
+ * races with increments, which only makes the counts more approximate, as they are anyway.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL,
+            0xCBF29CE484222325L };
+
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private static final int MAX_COUNT = 15;
+
+    private final AtomicLongArray table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * @param capacity the number of account numbers whose counts matter, e.g. the capacity of a cache
+     */
+    FrequencySketch(int capacity) {
+        int size = Math.max(16, Integer.highestOneBit(Math.max(capacity, 1) - 1) << 1);
+        this.table = new AtomicLongArray(size);
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * Math.max(capacity, 1);
+    }
+
+    /**
+     * @return the estimated number of recent uses of the key, at most {@value #MAX_COUNT}
+     */
+    int frequency(long key) {
+        int hash = spread(key);
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long counters = table.get(indexOf(hash, row));
+            frequency = Math.min(frequency, (int) ((counters >>> offsetOf(hash, row)) & MAX_COUNT));
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts a use of the key.
+     */
+    void increment(long key) {
+        int hash = spread(key);
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            added |= incrementAt(indexOf(hash, row), offsetOf(hash, row));
+        }
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            int count = additions.get();
+            // only the thread resetting the count halves the counters
+            if (count >= sampleSize && additions.compareAndSet(count, sampleSize / 2)) {
+                halve();
+            }
+        }
+    }
+
+    /**
+     * @return false if the counter is saturated
+     */
+    private boolean incrementAt(int index, int offset) {
+        long counters;
+        do {
+            counters = table.get(index);
+            if (((counters >>> offset) & MAX_COUNT) == MAX_COUNT) {
+                return false;
+            }
+        } while (!table.compareAndSet(index, counters, counters + (1L << offset)));
+        return true;
+    }
+
+    private void halve() {
+        for (int i = 0; i < table.length(); i++) {
+            table.getAndUpdate(i, counters -> (counters >>> 1) & HALF_MASK);
+        }
+    }
+
+    private int indexOf(int hash, int row) {
+        long index = (hash + SEEDS[row]) * SEEDS[row];
+        return (int) (index + (index >>> 32)) & tableMask;
+    }
+
+    /**
+     * Each row has its own four of the sixteen counters of a long.
+     */
+    private static int offsetOf(int hash, int row) {
+        return ((((hash >>> (row << 3)) & 3) << 2) + row) << 2;
+    }
+
+    private static int spread(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,160 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the balances and versions of the most used accounts of an {@link AccountIndex}, so reading them
+ * does not touch the index, e.g. when its table is mapped from a file and most of its accounts are not in memory.
+ * <p>
+ * The cache is set associative: an account number hashes to a set of {@link #WAYS} entries, scanned without locking.
+ * A read missing the cache offers the account it read from the index to its set, which takes it in a free entry or
+ * in place of its least used entry if the account was used more often, as counted by a {@link FrequencySketch}, so
+ * a scan over dormant accounts does not flush the hot ones (TinyLFU admission).
+ * <p>
+ * The entries are immutable and the index stays the reference: each write to the index is followed by a
+ * {@link #refresh(long) refresh} of the cached entry of the account, and an account taken in by a read is read again
+ * from the index afterwards, and dropped if a write got in between.
+ */
+final class HotAccountCache {
+
+    static final int WAYS = 8;
+
+    private static final AccountIndex.Reader<Entry> ENTRY = Entry::new;
+
+    private final AccountIndex accountIndex;
+
+    private final AtomicReferenceArray<Entry> entries;
+
+    private final int setMask;
+
+    private final FrequencySketch frequencySketch;
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    /**
+     * @param accountIndex the index the accounts are read from
+     * @param capacity     the number of accounts kept, rounded up to a power of two of at least {@link #WAYS}
+     * @param hits         counter of the reads answered from the cache
+     * @param misses       counter of the reads answered from the index
+     */
+    HotAccountCache(AccountIndex accountIndex, int capacity, LongAdder hits, LongAdder misses) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + (1 << 30));
+        }
+        int sets = Math.max(1, Integer.highestOneBit((capacity - 1) / WAYS) << 1);
+        this.accountIndex = accountIndex;
+        this.entries = new AtomicReferenceArray<>(sets * WAYS);
+        this.setMask = sets - 1;
+        this.frequencySketch = new FrequencySketch(sets * WAYS);
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * Reads an account from the cache, or from the index if it is not cached.
+     *
+     * @return the account, or null if there is no account with the number
+     */
+    Entry get(long key) {
+        frequencySketch.increment(key);
+        int first = setOf(key) * WAYS;
+        for (int i = first; i < first + WAYS; i++) {
+            Entry entry = entries.get(i);
+            if (entry != null && entry.key == key) {
+                hits.increment();
+                return entry;
+            }
+        }
+
+        misses.increment();
+        Entry entry = accountIndex.get(key, ENTRY);
+        if (entry != null && admit(first, entry)) {
+            Entry current = accountIndex.get(key, ENTRY);
+            if (current == null || current.version != entry.version) {
+                // written since it was read, and the write found nothing to refresh
+                remove(first, entry);
+                return current;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Replaces the cached entry of an account, if there is one, by the account as the index has it now. To be called
+     * after every write to the index.
+     */
+    void refresh(long key) {
+        int first = setOf(key) * WAYS;
+        for (int i = first; i < first + WAYS; i++) {
+            Entry entry = entries.get(i);
+            while (entry != null && entry.key == key) {
+                if (entries.compareAndSet(i, entry, accountIndex.get(key, ENTRY))) {
+                    break;
+                }
+                entry = entries.get(i);
+            }
+        }
+    }
+
+    private boolean admit(int first, Entry entry) {
+        int victim = -1;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int i = first; i < first + WAYS; i++) {
+            Entry cached = entries.get(i);
+            if (cached == null) {
+                if (entries.compareAndSet(i, null, entry)) {
+                    return true;
+                }
+                cached = entries.get(i);
+                if (cached == null) {
+                    continue;
+                }
+            }
+            if (cached.key == entry.key) {
+                return false;
+            }
+            int frequency = frequencySketch.frequency(cached.key);
+            if (frequency < victimFrequency) {
+                victim = i;
+                victimFrequency = frequency;
+            }
+        }
+        if (victim < 0 || frequencySketch.frequency(entry.key) <= victimFrequency) {
+            return false;
+        }
+        Entry evicted = entries.get(victim);
+        return evicted != null && evicted.key != entry.key && entries.compareAndSet(victim, evicted, entry);
+    }
+
+    private void remove(int first, Entry entry) {
+        for (int i = first; i < first + WAYS; i++) {
+            entries.compareAndSet(i, entry, null);
+        }
+    }
+
+    private int setOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & setMask;
+    }
+
+    /**
+     * Account as read from the index.
+     */
+    static final class Entry {
+
+        final long key;
+
+        final long balance;
+
+        final long version;
+
+        private Entry(long key, long balance, long version) {
+            this.key = key;
+            this.balance = balance;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.nio.file.Path;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountAlreadyExistsException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * {@link AccountService} keeping the balances in an {@link AccountIndex}, an open addressing table of primitive
+ * account numbers and balances, instead of a map of account objects. The table is either on the heap or off it, where
+ * the number of accounts makes no difference to the garbage collector, or mapped from a scratch file, where only the
+ * accounts in use take memory. The file is only an off-heap spill, deleted once mapped: nothing of it is restored on
+ * restart, the journal is what persists the accounts. The most used accounts of a mapped table are read from a
+ * {@link HotAccountCache}.
+ * <p>
+ * Lookups take no lock and a transfer locks the slot of each account only while its balance is changed. As with the
+ * {@link test.adanielssr.simple.money.transfer.business.service.AtomicBalanceAccountService}, the two legs of a
+ * transfer are applied one after the other, and the accounts returned by this service are snapshots of the balance
+ * at the time they were read, built on each read.
+ */
+public class IndexedAccountService implements AccountService {
+
+    public static final int DEFAULT_EXPECTED_ACCOUNTS = 1 << 16;
+
+    private final AccountIndex accountIndex;
+
+    /**
+     * Null unless the table is mapped from a file.
+     */
+    private final HotAccountCache hotAccountCache;
+
+    private final AtomicLong accountNumberIncrementer = new AtomicLong();
+
+    private final CurrencyScale currencyScale;
+
+    private final AccountIndex.Reader<Account> toAccount = this::toAccount;
+
+    private final Collection<Account> allAccounts = new AccountsView();
+
+    public IndexedAccountService() {
+        this(CurrencyScale.DEFAULT);
+    }
+
+    public IndexedAccountService(CurrencyScale currencyScale) {
+        this(currencyScale, DEFAULT_EXPECTED_ACCOUNTS);
+    }
+
+    /**
+     * @param expectedAccounts the number of accounts stored before the index has to grow
+     */
+    public IndexedAccountService(CurrencyScale currencyScale, int expectedAccounts) {
+        this(currencyScale, expectedAccounts, false);
+    }
+
+    /**
+     * @param expectedAccounts the number of accounts stored before the index has to grow
+     * @param offHeap          whether the accounts are kept off the heap, which then holds no per account object
+     */
+    public IndexedAccountService(CurrencyScale currencyScale, int expectedAccounts, boolean offHeap) {
+        this.currencyScale = currencyScale;
+        this.accountIndex = new AccountIndex(expectedAccounts,
+                offHeap ? OffHeapTable::new : AccountIndex.HeapTable::new);
+        this.hotAccountCache = null;
+    }
+
+    /**
+     * Creates a service whose table is mapped from a scratch file, which does not outlive the service.
+     *
+     * @param expectedAccounts the number of accounts stored before the index has to grow
+     * @param directory        the directory of the file
+     * @param hotAccounts      the number of accounts kept in the {@link HotAccountCache}
+     * @param hits             counter of the account reads answered from the cache
+     * @param misses           counter of the account reads answered from the file
+     */
+    public IndexedAccountService(CurrencyScale currencyScale, int expectedAccounts, Path directory, int hotAccounts,
+            LongAdder hits, LongAdder misses) {
+        this.currencyScale = currencyScale;
+        this.accountIndex = new AccountIndex(expectedAccounts, capacity -> new OffHeapTable(capacity, directory));
+        this.hotAccountCache = new HotAccountCache(accountIndex, hotAccounts, hits, misses);
+    }
+
+    @Override
+    public CurrencyScale getCurrencyScale() {
+        return currencyScale;
+    }
+
+    @Override
+    public Account createAccount(Account newAccount) {
+        if (newAccount == null) {
+            throw new SimpleMoneyTransferException("Account object needed!");
+        }
+
+        if (newAccount.getAccountNumber() == null) {
+            newAccount.setAccountNumber(accountNumberIncrementer.incrementAndGet());
+        } else {
+            // generated numbers must not collide with the given ones
+            accountNumberIncrementer.accumulateAndGet(newAccount.getAccountNumber(), Math::max);
+        }
+        newAccount.setCurrencyScale(currencyScale);
+
+        if (!accountIndex.insert(newAccount.getAccountNumber(), newAccount.getBalanceInMinorUnits())) {
+            throw new AccountAlreadyExistsException(newAccount.getAccountNumber());
+        } else {
+            written(newAccount.getAccountNumber());
+            return newAccount;
+        }
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        return allAccounts;
+    }
+
+    @Override
+    public int getAccountCount() {
+        return accountIndex.size();
+    }
+
+    @Override
+    public Account getAccountByNumber(Long accountNumber) {
+        if (accountNumber == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        Account account;
+        if (hotAccountCache == null) {
+            account = accountIndex.get(accountNumber, toAccount);
+        } else {
+            HotAccountCache.Entry entry = hotAccountCache.get(accountNumber);
+            account = entry == null ? null : toAccount(entry.key, entry.balance, entry.version);
+        }
+        if (account == null) {
+            throw new AccountNotFoundException(accountNumber);
+        }
+        return account;
+    }
+
+    @Override
+    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
+        if (accountNumber == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        if (operation == null) {
+            throw new SimpleMoneyTransferException("Operation needed!");
+        }
+
+        Account account;
+        while ((account = accountIndex.get(accountNumber, toAccount)) != null) {
+            long version = account.getVersion();
+            Account updatedAccount = operation.apply(accountNumber, account);
+            if (updatedAccount == null ? accountIndex.compareAndRemove(accountNumber, version) :
+                    accountIndex.compareAndSet(accountNumber, version, currencyScale
+                            .convert(updatedAccount.getBalanceInMinorUnits(), updatedAccount.getCurrencyScale()))) {
+                written(accountNumber);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        TransferOutcome outcome = tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+        if (!outcome.isPerformed()) {
+            throw outcome.toException(accountNumberFrom, accountNumberTo);
+        }
+    }
+
+    @Override
+    public TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        if (accountNumberFrom == null || accountNumberTo == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        if (amountInMinorUnits < 0L) {
+            throw new SimpleMoneyTransferException("Amount cannot be negative!");
+        }
+        if (accountNumberFrom.equals(accountNumberTo)) {
+            return TransferOutcome.SAME_ACCOUNT;
+        }
+        if (!accountIndex.contains(accountNumberTo)) {
+            return accountIndex.contains(accountNumberFrom) ? TransferOutcome.ACCOUNT_TO_NOT_FOUND :
+                    TransferOutcome.ACCOUNT_FROM_NOT_FOUND;
+        }
+
+        switch (accountIndex.debit(accountNumberFrom, amountInMinorUnits)) {
+        case AccountIndex.NOT_FOUND:
+            return TransferOutcome.ACCOUNT_FROM_NOT_FOUND;
+        case AccountIndex.NOT_ENOUGH_BALANCE:
+            return TransferOutcome.NOT_ENOUGH_BALANCE;
+        default:
+            written(accountNumberFrom);
+            break;
+        }
+        int credited;
+        try {
+            credited = accountIndex.credit(accountNumberTo, amountInMinorUnits);
+        } catch (ArithmeticException e) {
+            accountIndex.credit(accountNumberFrom, amountInMinorUnits);
+            written(accountNumberFrom);
+            throw e;
+        }
+        if (credited == AccountIndex.NOT_FOUND) {
+            // removed since it was looked up
+            accountIndex.credit(accountNumberFrom, amountInMinorUnits);
+            written(accountNumberFrom);
+            return TransferOutcome.ACCOUNT_TO_NOT_FOUND;
+        }
+        written(accountNumberTo);
+        return TransferOutcome.PERFORMED;
+    }
+
+    private void written(long accountNumber) {
+        if (hotAccountCache != null) {
+            hotAccountCache.refresh(accountNumber);
+        }
+    }
+
+    private Account toAccount(long accountNumber, long balanceInMinorUnits, long version) {
+        Account account = new Account();
+        account.setAccountNumber(accountNumber);
+        account.setCurrencyScale(currencyScale);
+        account.setBalanceInMinorUnits(balanceInMinorUnits);
+        account.setVersion(version);
+        return account;
+    }
+
+    /**
+     * Weakly consistent view over the index, creating the account snapshots while iterating.
+     */
+    private class AccountsView extends AbstractCollection<Account> {
+
+        @Override
+        public Iterator<Account> iterator() {
+            return accountIndex.iterator(toAccount);
+        }
+
+        @Override
+        public int size() {
+            return accountIndex.size();
+        }
+    }
+}
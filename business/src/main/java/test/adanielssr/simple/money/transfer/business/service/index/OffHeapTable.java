@@ -0,0 +1,242 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link AccountIndex.Table} keeping its slots off the heap, so the heap holds a handful of objects per table whatever
+ * the number of accounts, and the garbage collector has no account to trace or copy.
+ * <p>
+ * A slot is a fixed width record of 24 bytes: the account number, the balance and the state, each read and written
+ * atomically at the address of the slot through {@code sun.misc.Unsafe}, the only way to a volatile read or a compare
+ * and set off the heap on Java 8. It is looked up reflectively and called through constant method handles, which the
+ * compiler inlines, so nothing else depends on it. The slots are split across direct buffers of {@link #CHUNK_SLOTS}
+ * slots, as a buffer holds at most 2GB.
+ * <p>
+ * The buffers belong to the table and are freed by the garbage collector with it, once the index has grown past it.
+ * As the slots are read at raw addresses, the table must stay reachable while they are: every operation of the
+ * {@link AccountIndex} {@link #pin() pins} the table it starts from, which reaches the tables it moved to, until it is
+ * done.
+ * <p>
+ * The buffers are either allocated memory or mapped from a file, which lets a table grow larger than the memory: the
+ * operating system keeps the pages of the accounts in use in memory and writes the others back to the file. The file
+ * is scratch space, deleted as soon as it is mapped, so its disk space is given back when the table is freed and
+ * nothing of it is left after a restart.
+ */
+final class OffHeapTable extends AccountIndex.Table {
+
+    static final int CHUNK_SLOTS = 1 << 20;
+
+    private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SLOTS);
+
+    private static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+
+    private static final int SLOT_SIZE = 24;
+
+    private static final long BALANCE_OFFSET = 8L;
+
+    private static final long STATE_OFFSET = 16L;
+
+    private static final MethodHandle GET_LONG;
+
+    private static final MethodHandle GET_LONG_VOLATILE;
+
+    private static final MethodHandle PUT_LONG_VOLATILE;
+
+    private static final MethodHandle COMPARE_AND_SWAP_LONG;
+
+    private static final long BUFFER_ADDRESS_OFFSET;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            Object unsafe = unsafeField.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            GET_LONG = lookup.findVirtual(unsafeClass, "getLong",
+                    MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            GET_LONG_VOLATILE = lookup.findVirtual(unsafeClass, "getLongVolatile",
+                    MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            PUT_LONG_VOLATILE = lookup.findVirtual(unsafeClass, "putLongVolatile",
+                    MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+            COMPARE_AND_SWAP_LONG = lookup.findVirtual(unsafeClass, "compareAndSwapLong",
+                    MethodType.methodType(boolean.class, Object.class, long.class, long.class, long.class))
+                    .bindTo(unsafe);
+            BUFFER_ADDRESS_OFFSET = (long) lookup.findVirtual(unsafeClass, "objectFieldOffset",
+                    MethodType.methodType(long.class, Field.class)).bindTo(unsafe)
+                    .invoke(Buffer.class.getDeclaredField("address"));
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Keeps the memory at {@link #addresses} allocated as long as the table is reachable.
+     */
+    private final ByteBuffer[] chunks;
+
+    private final long[] addresses;
+
+    /**
+     * Operations reading the table. Only updated, never read: updating it once done is what keeps the table
+     * reachable until then, as Java 8 has no {@code Reference.reachabilityFence}.
+     */
+    private final LongAdder readers = new LongAdder();
+
+    /**
+     * Creates a table in allocated memory.
+     */
+    OffHeapTable(int capacity) {
+        this(capacity, (FileChannel) null);
+    }
+
+    /**
+     * Creates a table mapped from a new file in the given directory.
+     *
+     * @throws UncheckedIOException if the file cannot be created or mapped
+     */
+    OffHeapTable(int capacity, Path directory) {
+        this(capacity, createTableFile(directory));
+    }
+
+    private OffHeapTable(int capacity, FileChannel fileChannel) {
+        super(capacity);
+        long slots = capacity + 1L;
+        int chunkCount = (int) ((slots + CHUNK_MASK) >>> CHUNK_SHIFT);
+        chunks = new ByteBuffer[chunkCount];
+        addresses = new long[chunkCount];
+        try {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                long position = ((long) chunk << CHUNK_SHIFT) * SLOT_SIZE;
+                int size = (int) (Math.min(CHUNK_SLOTS, slots - ((long) chunk << CHUNK_SHIFT)) * SLOT_SIZE);
+                // zeroed, i.e. every slot empty
+                chunks[chunk] = fileChannel == null ? ByteBuffer.allocateDirect(size) :
+                        fileChannel.map(FileChannel.MapMode.READ_WRITE, position, size);
+                addresses[chunk] = getLong(chunks[chunk], BUFFER_ADDRESS_OFFSET);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Account table could not be mapped", e);
+        } finally {
+            closeQuietly(fileChannel);
+        }
+    }
+
+    @Override
+    void pin() {
+        readers.increment();
+    }
+
+    @Override
+    void unpin() {
+        readers.decrement();
+    }
+
+    @Override
+    long key(int i) {
+        return getLongVolatile(address(i));
+    }
+
+    @Override
+    void setKey(int i, long key) {
+        putLongVolatile(address(i), key);
+    }
+
+    @Override
+    boolean compareAndSetKey(int i, long expectedKey, long key) {
+        return compareAndSwapLong(address(i), expectedKey, key);
+    }
+
+    @Override
+    long balance(int i) {
+        return getLongVolatile(address(i) + BALANCE_OFFSET);
+    }
+
+    @Override
+    void setBalance(int i, long balance) {
+        putLongVolatile(address(i) + BALANCE_OFFSET, balance);
+    }
+
+    @Override
+    long state(int i) {
+        return getLongVolatile(address(i) + STATE_OFFSET);
+    }
+
+    @Override
+    void setState(int i, long state) {
+        putLongVolatile(address(i) + STATE_OFFSET, state);
+    }
+
+    @Override
+    boolean compareAndSetState(int i, long expectedState, long state) {
+        return compareAndSwapLong(address(i) + STATE_OFFSET, expectedState, state);
+    }
+
+    private static long getLong(Object object, long offset) {
+        try {
+            return (long) GET_LONG.invokeExact(object, offset);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long getLongVolatile(long address) {
+        try {
+            return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void putLongVolatile(long address, long value) {
+        try {
+            PUT_LONG_VOLATILE.invokeExact((Object) null, address, value);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean compareAndSwapLong(long address, long expectedValue, long value) {
+        try {
+            return (boolean) COMPARE_AND_SWAP_LONG.invokeExact((Object) null, address, expectedValue, value);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static FileChannel createTableFile(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            // mapping grows the file; the mappings stay valid once it is closed, and deleted
+            return FileChannel.open(Files.createTempFile(directory, "accounts-", ".table"), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Account table file could not be created in " + directory, e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel fileChannel) {
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                // the mappings do not depend on the channel
+            }
+        }
+    }
+
+    private long address(int i) {
+        return addresses[i >>> CHUNK_SHIFT] + (long) (i & CHUNK_MASK) * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,32 @@
+package test.adanielssr.simple.money.transfer.business.service.journal;
+
+/**
+ * When the {@link Journal} forces appended records to disk.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Every record is forced to disk before the operation that appended it returns.
+     */
+    PER_OPERATION,
+
+    /**
+     * Operations wait until their record is on disk, but one force covers every record appended while the
+     * previous force was running (group commit).
+     */
+    PER_BATCH,
+
+    /**
+     * Records are forced to disk periodically and operations never wait for it, so a crash loses the records of
+     * the last interval.
+     */
+    INTERVAL;
+
+    /**
+     * @param name the policy name, e.g. {@code per-batch}
+     * @return the policy
+     */
+    public static FsyncPolicy fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
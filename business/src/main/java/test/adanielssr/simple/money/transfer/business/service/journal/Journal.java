@@ -0,0 +1,527 @@
+package test.adanielssr.simple.money.transfer.business.service.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of account and transfer records, kept as a sequence of segment files in a directory.
+ * <p>
+ * Each record is a type byte, a fixed number of longs depending on the type and a CRC32 of both, so a record torn
+ * by a crash is detected and dropped when the journal is opened again. Records are appended to an in-memory
+ * buffer and written to the current segment when the buffer is full or the records must be forced to disk, as
+ * decided by the {@link FsyncPolicy}. Segments are rolled once they reach the configured size.
+ * <p>
+ * Every append method returns the position of the record in the journal, which is to be given to
+ * {@link #awaitDurable(long)} before acknowledging the operation the record belongs to.
+ * <p>
+ * A failed write or force fails the journal for good: the records not written yet stay in the buffer, and every
+ * later append, and every wait for a record that was not forced yet, throws instead of reporting it durable.
+ */
+public class Journal implements AutoCloseable {
+
+    static final byte ACCOUNT_CREATED = 1;
+
+    static final byte BALANCE_CHANGED = 2;
+
+    static final byte ACCOUNT_REMOVED = 3;
+
+    static final byte TRANSFER_PERFORMED = 4;
+
+    private static final int CHECKSUM_SIZE = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    private final long segmentSize;
+
+    private final Object appendLock = new Object();
+
+    private final Object forceLock = new Object();
+
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final CRC32 checksum = new CRC32();
+
+    private final ScheduledExecutorService forceScheduler;
+
+    private FileChannel segment;
+
+    private long segmentIndex;
+
+    private long segmentWrittenBytes;
+
+    private long appendedPosition;
+
+    private volatile long durablePosition;
+
+    private volatile UncheckedIOException failure;
+
+    /**
+     * Opens the journal kept in the given directory, creating it if needed.
+     * A torn record at the end of the last segment, left by a crash, is truncated away.
+     *
+     * @param directory           the journal directory
+     * @param fsyncPolicy         when records are forced to disk
+     * @param fsyncIntervalMillis the interval between forces, for the {@link FsyncPolicy#INTERVAL} policy
+     * @param segmentSize         the size after which a new segment is started
+     * @throws UncheckedIOException if the journal cannot be opened
+     */
+    public Journal(Path directory, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, long segmentSize) {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments = listSegments(0L, Long.MAX_VALUE);
+            if (segments.isEmpty()) {
+                openSegment(1L);
+            } else {
+                Path lastSegment = segments.get(segments.size() - 1);
+                long validLength = readSegment(lastSegment, null);
+
+                segmentIndex = segmentIndex(lastSegment);
+                segment = FileChannel.open(lastSegment, StandardOpenOption.WRITE);
+                segment.truncate(validLength);
+                segment.position(validLength);
+                segmentWrittenBytes = validLength;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal could not be opened at " + directory, e);
+        }
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            forceScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            forceScheduler.scheduleWithFixedDelay(this::forceQuietly, fsyncIntervalMillis, fsyncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            forceScheduler = null;
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long appendAccountCreated(long accountNumber, long balance) {
+        synchronized (appendLock) {
+            int start = startRecord(ACCOUNT_CREATED);
+            writeBuffer.putLong(accountNumber).putLong(balance);
+            return endRecord(start);
+        }
+    }
+
+    public long appendBalanceChanged(long accountNumber, long delta) {
+        synchronized (appendLock) {
+            int start = startRecord(BALANCE_CHANGED);
+            writeBuffer.putLong(accountNumber).putLong(delta);
+            return endRecord(start);
+        }
+    }
+
+    public long appendAccountRemoved(long accountNumber) {
+        synchronized (appendLock) {
+            int start = startRecord(ACCOUNT_REMOVED);
+            writeBuffer.putLong(accountNumber);
+            return endRecord(start);
+        }
+    }
+
+    public long appendTransferPerformed(long transferNumber, long transferTimestamp, long accountNumberFrom,
+            long accountNumberTo, long amount) {
+        synchronized (appendLock) {
+            int start = startRecord(TRANSFER_PERFORMED);
+            writeBuffer.putLong(transferNumber).putLong(transferTimestamp).putLong(accountNumberFrom)
+                    .putLong(accountNumberTo).putLong(amount);
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Waits until the record at the given position is on disk, if the fsync policy requires it.
+     * With {@link FsyncPolicy#PER_BATCH} the first waiting thread forces every record appended so far while the
+     * others wait for it, and then find their record already forced.
+     *
+     * @param position the position returned when the record was appended
+     * @throws UncheckedIOException if the records cannot be written, or the journal failed before forcing it
+     */
+    public void awaitDurable(long position) {
+        if (durablePosition >= position) {
+            return;
+        }
+        checkNotFailed();
+        if (fsyncPolicy != FsyncPolicy.PER_BATCH) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (durablePosition < position) {
+                force();
+            }
+        }
+    }
+
+    /**
+     * Lets a caller give up on an operation before applying it when its record could not be appended anyway.
+     *
+     * @throws UncheckedIOException if a write or force of the journal failed
+     */
+    public void checkNotFailed() {
+        UncheckedIOException failed = failure;
+        if (failed != null) {
+            throw new UncheckedIOException("Journal failed, it accepts no more records", failed.getCause());
+        }
+    }
+
+    /**
+     * Feeds every record of the journal to the visitor, in the order they were appended.
+     * Must be called before anything is appended to the journal.
+     *
+     * @param visitor the visitor
+     * @throws UncheckedIOException if the journal cannot be read or a segment other than the last is corrupted
+     */
+    public void replay(JournalVisitor visitor) {
+        replay(visitor, 0L);
+    }
+
+    /**
+     * Feeds the records of the journal to the visitor, in the order they were appended, starting at the given
+     * segment. Must be called before anything is appended to the journal.
+     *
+     * @param visitor           the visitor
+     * @param firstSegmentIndex the index of the first segment to replay, as returned by {@link #rollSegment()}
+     * @throws UncheckedIOException if the journal cannot be read or a segment other than the last is corrupted
+     */
+    public void replay(JournalVisitor visitor, long firstSegmentIndex) {
+        synchronized (appendLock) {
+            if (appendedPosition > 0L) {
+                throw new IllegalStateException("Journal can only be replayed before appending to it");
+            }
+            try {
+                List<Path> segments = listSegments(firstSegmentIndex, Long.MAX_VALUE);
+                for (int i = 0; i < segments.size(); i++) {
+                    Path segmentPath = segments.get(i);
+                    long validLength = readSegment(segmentPath, visitor);
+                    if (i < segments.size() - 1 && validLength != Files.size(segmentPath)) {
+                        throw new IOException("Journal segment " + segmentPath + " is corrupted at " + validLength);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Journal could not be replayed from " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * Forces the current segment to disk and starts a new one, unless nothing was written to the current segment
+     * yet. Every record appended before the call is then in a segment that does not change anymore.
+     *
+     * @return the index of the segment records are now appended to
+     * @throws UncheckedIOException if the segment cannot be rolled
+     */
+    public long rollSegment() {
+        synchronized (forceLock) {
+            synchronized (appendLock) {
+                if (segmentWrittenBytes == 0L && writeBuffer.position() == 0) {
+                    return segmentIndex;
+                }
+                writeBufferToSegment();
+                try {
+                    segment.force(false);
+                    segment.close();
+                    openSegment(segmentIndex + 1);
+                } catch (IOException e) {
+                    throw fail("Journal segment could not be rolled", e);
+                }
+                durablePosition = appendedPosition;
+                return segmentIndex;
+            }
+        }
+    }
+
+    /**
+     * Feeds the records of segments that were already rolled to the visitor. Can be called while records are
+     * appended to the journal.
+     *
+     * @param visitor           the visitor
+     * @param firstSegmentIndex the index of the first segment to read
+     * @param endSegmentIndex   the index of the segment to stop at, at most the one returned by the last
+     *                          {@link #rollSegment()}
+     * @throws UncheckedIOException if the segments cannot be read or are corrupted
+     */
+    public void replaySegments(JournalVisitor visitor, long firstSegmentIndex, long endSegmentIndex) {
+        try {
+            for (Path segmentPath : listSegments(firstSegmentIndex, endSegmentIndex)) {
+                long validLength = readSegment(segmentPath, visitor);
+                if (validLength != Files.size(segmentPath)) {
+                    throw new IOException("Journal segment " + segmentPath + " is corrupted at " + validLength);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal could not be replayed from " + directory, e);
+        }
+    }
+
+    /**
+     * Deletes the segments that were rolled before the given one, once their records are kept elsewhere.
+     *
+     * @param endSegmentIndex the index of the first segment to keep
+     * @throws UncheckedIOException if a segment cannot be deleted
+     */
+    public void deleteSegmentsBefore(long endSegmentIndex) {
+        long currentSegmentIndex;
+        synchronized (appendLock) {
+            currentSegmentIndex = segmentIndex;
+        }
+        try {
+            for (Path segmentPath : listSegments(0L, Math.min(endSegmentIndex, currentSegmentIndex))) {
+                Files.delete(segmentPath);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal segments could not be deleted from " + directory, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (forceScheduler != null) {
+            forceScheduler.shutdownNow();
+        }
+        synchronized (forceLock) {
+            if (failure == null) {
+                force();
+            }
+            synchronized (appendLock) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private int startRecord(byte type) {
+        checkNotFailed();
+        if (writeBuffer.remaining() < recordSize(type)) {
+            writeBufferToSegment();
+        }
+        int start = writeBuffer.position();
+        writeBuffer.put(type);
+        return start;
+    }
+
+    private long endRecord(int start) {
+        int end = writeBuffer.position();
+        checksum.reset();
+        writeBuffer.limit(end).position(start);
+        checksum.update(writeBuffer);
+        writeBuffer.limit(writeBuffer.capacity());
+        writeBuffer.putInt((int) checksum.getValue());
+
+        appendedPosition += writeBuffer.position() - start;
+
+        if (fsyncPolicy == FsyncPolicy.PER_OPERATION) {
+            writeBufferToSegment();
+            try {
+                segment.force(false);
+            } catch (IOException e) {
+                throw fail("Journal could not be forced to disk", e);
+            }
+            durablePosition = appendedPosition;
+        }
+        return appendedPosition;
+    }
+
+    /**
+     * Must be called holding the force lock.
+     */
+    private void force() {
+        FileChannel channel;
+        long position;
+        synchronized (appendLock) {
+            writeBufferToSegment();
+            channel = segment;
+            position = appendedPosition;
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // the segment was rolled meanwhile, which forces it before closing it
+        } catch (IOException e) {
+            throw fail("Journal could not be forced to disk", e);
+        }
+        durablePosition = position;
+    }
+
+    private void forceQuietly() {
+        try {
+            synchronized (forceLock) {
+                force();
+            }
+        } catch (RuntimeException e) {
+            // retried on the next interval
+        }
+    }
+
+    /**
+     * Must be called holding the append lock. On failure the bytes not written stay in the buffer.
+     */
+    private void writeBufferToSegment() {
+        checkNotFailed();
+        writeBuffer.flip();
+        try {
+            if (segmentWrittenBytes > 0L && segmentWrittenBytes + writeBuffer.remaining() > segmentSize) {
+                segment.force(false);
+                segment.close();
+                openSegment(segmentIndex + 1);
+            }
+            while (writeBuffer.hasRemaining()) {
+                segmentWrittenBytes += segment.write(writeBuffer);
+            }
+        } catch (IOException e) {
+            writeBuffer.compact();
+            throw fail("Journal could not be written", e);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Fails the journal, keeping the first failure as the cause of the later ones.
+     */
+    private UncheckedIOException fail(String message, IOException e) {
+        UncheckedIOException failed = new UncheckedIOException(message, e);
+        if (failure == null) {
+            failure = failed;
+        }
+        return failed;
+    }
+
+    private void openSegment(long index) throws IOException {
+        segmentIndex = index;
+        segment = FileChannel.open(directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index,
+                SEGMENT_SUFFIX)), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentWrittenBytes = 0L;
+    }
+
+    private List<Path> listSegments(long firstSegmentIndex, long endSegmentIndex) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String fileName = file.getFileName().toString();
+                if (!fileName.startsWith(SEGMENT_PREFIX) || !fileName.endsWith(SEGMENT_SUFFIX)) {
+                    return false;
+                }
+                long index = segmentIndex(file);
+                return index >= firstSegmentIndex && index < endSegmentIndex;
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static long segmentIndex(Path segmentPath) {
+        String fileName = segmentPath.getFileName().toString();
+        return Long.parseLong(
+                fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int recordSize(byte type) {
+        switch (type) {
+        case ACCOUNT_CREATED:
+        case BALANCE_CHANGED:
+            return 1 + 2 * Long.BYTES + CHECKSUM_SIZE;
+        case ACCOUNT_REMOVED:
+            return 1 + Long.BYTES + CHECKSUM_SIZE;
+        case TRANSFER_PERFORMED:
+            return 1 + 5 * Long.BYTES + CHECKSUM_SIZE;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the records of a segment up to the first one that is incomplete or corrupted.
+     *
+     * @param segmentPath the segment
+     * @param visitor     receives the records, may be null to only validate the segment
+     * @return the length of the valid part of the segment
+     */
+    private static long readSegment(Path segmentPath, JournalVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32 recordChecksum = new CRC32();
+        long validLength = 0L;
+
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+            int read;
+            do {
+                read = channel.read(buffer);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    int start = buffer.position();
+                    int size = recordSize(buffer.get(start));
+                    if (size < 0) {
+                        return validLength;
+                    }
+                    if (buffer.remaining() < size) {
+                        break;
+                    }
+                    recordChecksum.reset();
+                    recordChecksum.update(buffer.array(), start, size - CHECKSUM_SIZE);
+                    if ((int) recordChecksum.getValue() != buffer.getInt(start + size - CHECKSUM_SIZE)) {
+                        return validLength;
+                    }
+                    if (visitor != null) {
+                        visitRecord(buffer, start, visitor);
+                    }
+                    buffer.position(start + size);
+                    validLength += size;
+                }
+                buffer.compact();
+            } while (read >= 0);
+        }
+        return validLength;
+    }
+
+    private static void visitRecord(ByteBuffer buffer, int start, JournalVisitor visitor) {
+        int fields = start + 1;
+        switch (buffer.get(start)) {
+        case ACCOUNT_CREATED:
+            visitor.accountCreated(buffer.getLong(fields), buffer.getLong(fields + Long.BYTES));
+            break;
+        case BALANCE_CHANGED:
+            visitor.balanceChanged(buffer.getLong(fields), buffer.getLong(fields + Long.BYTES));
+            break;
+        case ACCOUNT_REMOVED:
+            visitor.accountRemoved(buffer.getLong(fields));
+            break;
+        default:
+            visitor.transferPerformed(buffer.getLong(fields), buffer.getLong(fields + Long.BYTES),
+                    buffer.getLong(fields + 2 * Long.BYTES), buffer.getLong(fields + 3 * Long.BYTES),
+                    buffer.getLong(fields + 4 * Long.BYTES));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package test.adanielssr.simple.money.transfer.business.service.journal;
+
+/**
+ * Receives the records of a {@link Journal} while it is replayed, in the order they were appended.
+ * Amounts and balances are in minor units.
+ */
+public interface JournalVisitor {
+
+    void accountCreated(long accountNumber, long balance);
+
+    void balanceChanged(long accountNumber, long delta);
+
+    void accountRemoved(long accountNumber);
+
+    void transferPerformed(long transferNumber, long transferTimestamp, long accountNumberFrom, long accountNumberTo,
+            long amount);
+}
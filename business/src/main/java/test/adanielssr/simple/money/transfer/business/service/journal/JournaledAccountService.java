@@ -0,0 +1,196 @@
+package test.adanielssr.simple.money.transfer.business.service.journal;
+
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.function.BiFunction;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountAlreadyExistsException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.id.IdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.SequenceIdGenerator;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * {@link AccountService} decorator appending every account creation and account operation of the decorated
+ * service to a {@link Journal}, and waiting for the record to be durable before returning.
+ * <p>
+ * An account creation is journaled before the account is created in the decorated service, so no record of a
+ * transfer or operation on the account can come before its creation. Accounts are therefore numbered here, from an
+ * {@link IdGenerator}, and created one at a time. Account operations are journaled once they succeeded.
+ * <p>
+ * Account operations are journaled as the balance change they made, so replaying them does not depend on the
+ * order concurrent operations were journaled in. Transfers are not journaled here but by the
+ * {@link test.adanielssr.simple.money.transfer.business.service.TransferService TransferService}, in one record
+ * that also holds the transfer number and timestamp.
+ */
+public class JournaledAccountService implements AccountService, AutoCloseable {
+
+    private final AccountService accountService;
+
+    private final Journal journal;
+
+    private final IdGenerator accountNumberGenerator;
+
+    private final Object creationLock = new Object();
+
+    /**
+     * Numbers the accounts after the highest account number of the decorated service.
+     */
+    public JournaledAccountService(AccountService accountService, Journal journal) {
+        this(accountService, journal, new SequenceIdGenerator());
+        for (Account account : accountService.getAllAccounts()) {
+            accountNumberGenerator.restore(account.getAccountNumber());
+        }
+    }
+
+    /**
+     * @param accountNumberGenerator the generator numbering the accounts created without a number. It must be
+     *                               restored with the numbers of the accounts added to the decorated service in any
+     *                               other way, e.g. by the {@code NumberedAccountService} a journal is recovered
+     *                               through
+     */
+    public JournaledAccountService(AccountService accountService, Journal journal,
+            IdGenerator accountNumberGenerator) {
+        this.accountService = accountService;
+        this.journal = journal;
+        this.accountNumberGenerator = accountNumberGenerator;
+    }
+
+    @Override
+    public CurrencyScale getCurrencyScale() {
+        return accountService.getCurrencyScale();
+    }
+
+    @Override
+    public Account createAccount(Account newAccount) {
+        if (newAccount == null) {
+            return accountService.createAccount(null);
+        }
+
+        long position;
+        Account createdAccount;
+        synchronized (creationLock) {
+            journal.checkNotFailed();
+            Long accountNumber = newAccount.getAccountNumber();
+            if (accountNumber == null) {
+                accountNumber = accountNumberGenerator.nextId();
+                newAccount.setAccountNumber(accountNumber);
+            } else {
+                accountNumberGenerator.restore(accountNumber);
+                // a second creation record would fail the recovery
+                if (exists(accountNumber)) {
+                    throw new AccountAlreadyExistsException(accountNumber);
+                }
+            }
+            newAccount.setCurrencyScale(getCurrencyScale());
+
+            position = journal.appendAccountCreated(accountNumber, newAccount.getBalanceInMinorUnits());
+            try {
+                createdAccount = accountService.createAccount(newAccount);
+            } catch (RuntimeException e) {
+                // no other account has the number, so the removal only cancels the creation record
+                try {
+                    journal.appendAccountRemoved(accountNumber);
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+
+        try {
+            journal.awaitDurable(position);
+        } catch (UncheckedIOException e) {
+            // the account would be lost on restart, as would anything done with it
+            try {
+                accountService.performAccountOperation(createdAccount.getAccountNumber(),
+                        (aAccountNumber, account) -> null);
+            } catch (RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return createdAccount;
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        return accountService.getAllAccounts();
+    }
+
+    @Override
+    public int getAccountCount() {
+        return accountService.getAccountCount();
+    }
+
+    @Override
+    public Account getAccountByNumber(Long accountNumber) {
+        return accountService.getAccountByNumber(accountNumber);
+    }
+
+    @Override
+    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
+        if (operation == null) {
+            accountService.performAccountOperation(accountNumber, null);
+            return;
+        }
+
+        // the last applied operation is the one that took effect on stores that retry on contention
+        final boolean[] applied = { false };
+        final boolean[] removed = { false };
+        final long[] delta = { 0L };
+        accountService.performAccountOperation(accountNumber, (aAccountNumber, existing) -> {
+            long previousBalance = existing.getBalanceInMinorUnits();
+            Account result = operation.apply(aAccountNumber, existing);
+
+            applied[0] = true;
+            removed[0] = result == null;
+            delta[0] = removed[0] ? 0L :
+                    getCurrencyScale().convert(result.getBalanceInMinorUnits(), result.getCurrencyScale())
+                            - previousBalance;
+            return result;
+        });
+
+        if (applied[0] && removed[0]) {
+            journal.awaitDurable(journal.appendAccountRemoved(accountNumber));
+        } else if (applied[0] && delta[0] != 0L) {
+            journal.awaitDurable(journal.appendBalanceChanged(accountNumber, delta[0]));
+        }
+    }
+
+    @Override
+    public void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        accountService.transfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+    }
+
+    @Override
+    public TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        return accountService.tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+    }
+
+    private boolean exists(long accountNumber) {
+        try {
+            accountService.getAccountByNumber(accountNumber);
+            return true;
+        } catch (AccountNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes the decorated service, if it can be closed, and the journal.
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            if (accountService instanceof AutoCloseable) {
+                ((AutoCloseable) accountService).close();
+            }
+        } finally {
+            journal.close();
+        }
+    }
+}
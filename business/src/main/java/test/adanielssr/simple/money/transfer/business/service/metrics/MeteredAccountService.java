@@ -0,0 +1,128 @@
+package test.adanielssr.simple.money.transfer.business.service.metrics;
+
+import java.util.Collection;
+import java.util.function.BiFunction;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * {@link AccountService} decorator recording the latency of every call to the decorated service, failed calls
+ * included, in a histogram per method.
+ */
+public class MeteredAccountService implements AccountService, AutoCloseable {
+
+    static final String LATENCY_METRIC = "account_service_latency_seconds";
+
+    private static final String LATENCY_HELP = "Latency of the account service methods.";
+
+    private final AccountService accountService;
+
+    private final LatencyHistogram createAccountLatency;
+
+    private final LatencyHistogram getAllAccountsLatency;
+
+    private final LatencyHistogram getAccountByNumberLatency;
+
+    private final LatencyHistogram performAccountOperationLatency;
+
+    private final LatencyHistogram transferLatency;
+
+    private final LatencyHistogram tryTransferLatency;
+
+    public MeteredAccountService(AccountService accountService, MetricsRegistry metricsRegistry) {
+        this.accountService = accountService;
+        this.createAccountLatency = methodLatency(metricsRegistry, "createAccount");
+        this.getAllAccountsLatency = methodLatency(metricsRegistry, "getAllAccounts");
+        this.getAccountByNumberLatency = methodLatency(metricsRegistry, "getAccountByNumber");
+        this.performAccountOperationLatency = methodLatency(metricsRegistry, "performAccountOperation");
+        this.transferLatency = methodLatency(metricsRegistry, "transfer");
+        this.tryTransferLatency = methodLatency(metricsRegistry, "tryTransfer");
+    }
+
+    private static LatencyHistogram methodLatency(MetricsRegistry metricsRegistry, String method) {
+        return metricsRegistry.histogram(LATENCY_METRIC, LATENCY_HELP, "method", method);
+    }
+
+    @Override
+    public CurrencyScale getCurrencyScale() {
+        return accountService.getCurrencyScale();
+    }
+
+    @Override
+    public Account createAccount(Account newAccount) {
+        long start = System.nanoTime();
+        try {
+            return accountService.createAccount(newAccount);
+        } finally {
+            createAccountLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        long start = System.nanoTime();
+        try {
+            return accountService.getAllAccounts();
+        } finally {
+            getAllAccountsLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public int getAccountCount() {
+        return accountService.getAccountCount();
+    }
+
+    @Override
+    public Account getAccountByNumber(Long accountNumber) {
+        long start = System.nanoTime();
+        try {
+            return accountService.getAccountByNumber(accountNumber);
+        } finally {
+            getAccountByNumberLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
+        long start = System.nanoTime();
+        try {
+            accountService.performAccountOperation(accountNumber, operation);
+        } finally {
+            performAccountOperationLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        long start = System.nanoTime();
+        try {
+            accountService.transfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+        } finally {
+            transferLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        long start = System.nanoTime();
+        try {
+            return accountService.tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+        } finally {
+            tryTransferLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Closes the decorated service, if it can be closed.
+     */
+    @Override
+    public void close() throws Exception {
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package test.adanielssr.simple.money.transfer.business.service.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named latency histograms, counters and gauges, written out in the Prometheus text exposition format.
+ * <p>
+ * Metrics are registered once, when the services are wired, and the returned instances are kept by whoever records
+ * into them, so recording never looks a metric up. Each metric has at most one label; registering the same name and
+ * label value again returns the already registered metric.
+ */
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = { 0.5D, 0.9D, 0.99D, 0.999D };
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0D;
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Registers a latency histogram, exposed as a summary in seconds.
+     *
+     * @param labelName  the label name, or null if the metric has no label
+     * @param labelValue the label value, ignored if there is no label name
+     */
+    public LatencyHistogram histogram(String name, String help, String labelName, String labelValue) {
+        return (LatencyHistogram) register(name, help, MetricType.SUMMARY, labelName, labelValue,
+                new LatencyHistogram());
+    }
+
+    /**
+     * Registers a counter.
+     *
+     * @param labelName  the label name, or null if the metric has no label
+     * @param labelValue the label value, ignored if there is no label name
+     */
+    public LongAdder counter(String name, String help, String labelName, String labelValue) {
+        return (LongAdder) register(name, help, MetricType.COUNTER, labelName, labelValue, new LongAdder());
+    }
+
+    /**
+     * Registers a gauge, read every time the metrics are written out.
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        gauge(name, help, null, null, value);
+    }
+
+    /**
+     * Registers a gauge, read every time the metrics are written out.
+     *
+     * @param labelName  the label name, or null if the metric has no label
+     * @param labelValue the label value, ignored if there is no label name
+     */
+    public void gauge(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+        register(name, help, MetricType.GAUGE, labelName, labelValue, value);
+    }
+
+    /**
+     * Writes every registered metric in the Prometheus text exposition format.
+     */
+    public synchronized void writePrometheus(StringBuilder out) {
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.name).append('\n');
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                String labels = metric.getKey();
+                switch (family.type) {
+                case SUMMARY:
+                    writeSummary(out, family.name, labels, ((LatencyHistogram) metric.getValue()).snapshot());
+                    break;
+                case COUNTER:
+                    writeSample(out, family.name, labels, ((LongAdder) metric.getValue()).sum());
+                    break;
+                case GAUGE:
+                    writeSample(out, family.name, labels, ((DoubleSupplier) metric.getValue()).getAsDouble());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown metric type: " + family.type);
+                }
+            }
+        }
+    }
+
+    private synchronized Object register(String name, String help, MetricType type, String labelName,
+            String labelValue, Object metric) {
+        Family family = families.computeIfAbsent(name, aName -> new Family(aName, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type.name);
+        }
+        String labels = labelName == null ? "" : labelName + "=\"" + labelValue + "\"";
+        return family.metrics.computeIfAbsent(labels, aLabels -> metric);
+    }
+
+    private static void writeSummary(StringBuilder out, String name, String labels,
+            LatencyHistogram.Snapshot snapshot) {
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{').append(labels);
+            if (!labels.isEmpty()) {
+                out.append(',');
+            }
+            out.append("quantile=\"").append(quantile).append("\"} ")
+                    .append(snapshot.getValueAtQuantile(quantile) / NANOS_PER_SECOND).append('\n');
+        }
+        writeSample(out, name + "_sum", labels, snapshot.getSum() / NANOS_PER_SECOND);
+        writeSample(out, name + "_count", labels, snapshot.getCount());
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private enum MetricType {
+        SUMMARY("summary"), COUNTER("counter"), GAUGE("gauge");
+
+        private final String name;
+
+        MetricType(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Family {
+
+        private final String name;
+
+        private final String help;
+
+        private final MetricType type;
+
+        private final Map<String, Object> metrics = new LinkedHashMap<>();
+
+        private Family(String name, String help, MetricType type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package test.adanielssr.simple.money.transfer.business.service.sharded;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+
+/**
+ * A slice of the accounts owned by a single thread.
+ * <p>
+ * Only the shard thread ever touches {@link #getAccounts() the accounts}, so they need no synchronization.
+ * Work reaches the shard either as a command submitted by a client, through a bounded queue that rejects work
+ * when full, or as a message sent by another shard. Messages between shards are never rejected: each one is the
+ * continuation of a command that was already admitted by a bounded queue, so they are bounded by them as well,
+ * and a shard waiting for room in the queue of another shard could deadlock with it.
+ */
+final class AccountShard implements Runnable {
+
+    private final Map<Long, Account> accounts = new HashMap<>();
+
+    private final BlockingQueue<Runnable> commands;
+
+    private final Queue<Runnable> messages = new ConcurrentLinkedQueue<>();
+
+    private final Thread thread;
+
+    /**
+     * Calls submitted to this shard and not completed yet, tracked per shard so callers of different shards do not
+     * contend on them.
+     */
+    private final Set<CompletableFuture<?>> pendingCalls = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running = true;
+
+    private volatile int accountCount;
+
+    AccountShard(int index, int queueCapacity) {
+        this.commands = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this, "account-shard-" + index);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Only to be used from the shard thread.
+     *
+     * @return the accounts owned by this shard
+     */
+    Map<Long, Account> getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * Publishes the number of accounts, to be called by the shard thread once accounts were added or removed.
+     */
+    void publishAccountCount() {
+        accountCount = accounts.size();
+    }
+
+    /**
+     * Can be read from any thread without waiting for the shard.
+     *
+     * @return the number of accounts as of the last time it was published
+     */
+    int getAccountCount() {
+        return accountCount;
+    }
+
+    Set<CompletableFuture<?>> getPendingCalls() {
+        return pendingCalls;
+    }
+
+    /**
+     * Submits a client command to be executed by the shard thread.
+     *
+     * @param command the command
+     * @return false if the shard queue is full and the command was rejected
+     */
+    boolean submit(Runnable command) {
+        if (commands.offer(command)) {
+            LockSupport.unpark(thread);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Sends a message from another shard to be executed by the shard thread.
+     *
+     * @param message the message
+     */
+    void send(Runnable message) {
+        messages.offer(message);
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            Runnable work = messages.poll();
+            if (work == null) {
+                work = commands.poll();
+            }
+            if (work != null) {
+                work.run();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+}
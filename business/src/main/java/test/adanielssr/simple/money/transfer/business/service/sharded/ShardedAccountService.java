@@ -0,0 +1,336 @@
+package test.adanielssr.simple.money.transfer.business.service.sharded;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountAlreadyExistsException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+/**
+ * {@link AccountService} partitioning the accounts by account number across single threaded {@link AccountShard}s.
+ * <p>
+ * Each shard is the only writer of its accounts, so no operation takes a lock or retries a compare-and-set.
+ * A transfer between accounts of the same shard is executed in place by that shard. A transfer between shards
+ * reserves the amount on the shard of the origin account and sends the credit to the shard of the destination
+ * account; if the destination account cannot be credited the reservation is given back to the origin account.
+ * <p>
+ * Calls block until the owning shard has executed them, so they must not be made from an operation running on a
+ * shard nor from an event loop: HTTP handlers have to run them on a worker or virtual thread executor. Only
+ * {@link #getAccountCount()} does not block, summing the counts the shards publish. Accounts returned by this
+ * service are snapshots of the account at the time they were read.
+ */
+public class ShardedAccountService implements AccountService, AutoCloseable {
+
+    private final AccountShard[] shards;
+
+    private final AtomicLong accountNumberIncrementer = new AtomicLong();
+
+    private final CurrencyScale currencyScale;
+
+    private volatile boolean closed;
+
+    public ShardedAccountService(CurrencyScale currencyScale, int shardCount, int shardQueueCapacity) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be greater than 0");
+        }
+        this.currencyScale = currencyScale;
+        this.shards = new AccountShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new AccountShard(i, shardQueueCapacity);
+            shards[i].start();
+        }
+    }
+
+    @Override
+    public CurrencyScale getCurrencyScale() {
+        return currencyScale;
+    }
+
+    @Override
+    public Account createAccount(Account newAccount) {
+        if (newAccount == null) {
+            throw new SimpleMoneyTransferException("Account object needed!");
+        }
+
+        if (newAccount.getAccountNumber() == null) {
+            newAccount.setAccountNumber(accountNumberIncrementer.incrementAndGet());
+        } else {
+            // generated numbers must not collide with the given ones
+            accountNumberIncrementer.accumulateAndGet(newAccount.getAccountNumber(), Math::max);
+        }
+        newAccount.setCurrencyScale(currencyScale);
+
+        final Account storedAccount = copy(newAccount);
+        return call(shardFor(newAccount.getAccountNumber()), shard -> {
+            if (shard.getAccounts().putIfAbsent(storedAccount.getAccountNumber(), storedAccount) != null) {
+                throw new AccountAlreadyExistsException(storedAccount.getAccountNumber());
+            }
+            shard.publishAccountCount();
+            return newAccount;
+        });
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        List<CompletableFuture<List<Account>>> shardAccounts = new ArrayList<>(shards.length);
+        for (AccountShard shard : shards) {
+            shardAccounts.add(submit(shard, aShard -> {
+                List<Account> accounts = new ArrayList<>(aShard.getAccounts().size());
+                for (Account account : aShard.getAccounts().values()) {
+                    accounts.add(copy(account));
+                }
+                return accounts;
+            }));
+        }
+
+        List<Account> allAccounts = new ArrayList<>();
+        for (CompletableFuture<List<Account>> accounts : shardAccounts) {
+            allAccounts.addAll(join(accounts));
+        }
+        return allAccounts;
+    }
+
+    /**
+     * Sums the account counts published by the shards, without waiting for them, e.g. from an event loop.
+     */
+    @Override
+    public int getAccountCount() {
+        int accountCount = 0;
+        for (AccountShard shard : shards) {
+            accountCount += shard.getAccountCount();
+        }
+        return accountCount;
+    }
+
+    @Override
+    public Account getAccountByNumber(Long accountNumber) {
+        if (accountNumber == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        return call(shardFor(accountNumber), shard -> copy(getAccount(shard, accountNumber)));
+    }
+
+    @Override
+    public void performAccountOperation(Long accountNumber, BiFunction<Long, Account, Account> operation) {
+        if (accountNumber == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        if (operation == null) {
+            throw new SimpleMoneyTransferException("Operation needed!");
+        }
+        call(shardFor(accountNumber), shard -> {
+            Account updatedAccount = shard.getAccounts().computeIfPresent(accountNumber,
+                    (aAccountNumber, account) -> {
+                        long version = account.getVersion();
+                        Account result = operation.apply(aAccountNumber, account);
+                        if (result != null) {
+                            result.setVersion(version + 1);
+                        }
+                        return result;
+                    });
+            if (updatedAccount == null) {
+                shard.publishAccountCount();
+            }
+            return updatedAccount;
+        });
+    }
+
+    @Override
+    public void transfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        TransferOutcome outcome = tryTransfer(accountNumberFrom, accountNumberTo, amountInMinorUnits);
+        if (!outcome.isPerformed()) {
+            throw outcome.toException(accountNumberFrom, accountNumberTo);
+        }
+    }
+
+    @Override
+    public TransferOutcome tryTransfer(Long accountNumberFrom, Long accountNumberTo, long amountInMinorUnits) {
+        if (accountNumberFrom == null || accountNumberTo == null) {
+            throw new SimpleMoneyTransferException("Account number needed!");
+        }
+        if (amountInMinorUnits < 0L) {
+            throw new SimpleMoneyTransferException("Amount cannot be negative!");
+        }
+        if (accountNumberFrom.equals(accountNumberTo)) {
+            return TransferOutcome.SAME_ACCOUNT;
+        }
+
+        AccountShard fromShard = shardFor(accountNumberFrom);
+        AccountShard toShard = shardFor(accountNumberTo);
+        CompletableFuture<TransferOutcome> transferred = new CompletableFuture<>();
+
+        submit(fromShard, transferred, () -> {
+            Account transferFrom = fromShard.getAccounts().get(accountNumberFrom);
+            if (transferFrom == null) {
+                transferred.complete(TransferOutcome.ACCOUNT_FROM_NOT_FOUND);
+                return;
+            }
+            long fromBalance = transferFrom.getBalanceInMinorUnits() - amountInMinorUnits;
+            if (fromBalance < 0L) {
+                transferred.complete(TransferOutcome.NOT_ENOUGH_BALANCE);
+                return;
+            }
+
+            if (fromShard == toShard) {
+                Account transferTo = fromShard.getAccounts().get(accountNumberTo);
+                if (transferTo == null) {
+                    transferred.complete(TransferOutcome.ACCOUNT_TO_NOT_FOUND);
+                    return;
+                }
+                long toBalance = Math.addExact(transferTo.getBalanceInMinorUnits(), amountInMinorUnits);
+
+                transferFrom.setBalanceInMinorUnits(fromBalance);
+                transferFrom.incrementVersion();
+                transferTo.setBalanceInMinorUnits(toBalance);
+                transferTo.incrementVersion();
+                transferred.complete(TransferOutcome.PERFORMED);
+            } else {
+                // reserve the amount, the transfer completes once the destination shard credits it
+                transferFrom.setBalanceInMinorUnits(fromBalance);
+                transferFrom.incrementVersion();
+                toShard.send(() -> credit(toShard, accountNumberTo, fromShard, accountNumberFrom,
+                        amountInMinorUnits, transferred));
+            }
+        });
+
+        return join(transferred);
+    }
+
+    /**
+     * Stops the shard threads. Calls still waiting for a shard and calls made after closing the service fail with
+     * a {@link SimpleMoneyTransferException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (AccountShard shard : shards) {
+            shard.stop();
+        }
+        for (AccountShard shard : shards) {
+            for (CompletableFuture<?> pendingCall : shard.getPendingCalls()) {
+                pendingCall.completeExceptionally(closedException());
+            }
+        }
+    }
+
+    private void credit(AccountShard toShard, Long accountNumberTo, AccountShard fromShard, Long accountNumberFrom,
+            long amountInMinorUnits, CompletableFuture<TransferOutcome> transferred) {
+        try {
+            Account transferTo = toShard.getAccounts().get(accountNumberTo);
+            if (transferTo == null) {
+                refund(fromShard, accountNumberFrom, amountInMinorUnits,
+                        () -> transferred.complete(TransferOutcome.ACCOUNT_TO_NOT_FOUND));
+                return;
+            }
+            transferTo.setBalanceInMinorUnits(
+                    Math.addExact(transferTo.getBalanceInMinorUnits(), amountInMinorUnits));
+            transferTo.incrementVersion();
+            transferred.complete(TransferOutcome.PERFORMED);
+        } catch (RuntimeException e) {
+            refund(fromShard, accountNumberFrom, amountInMinorUnits, () -> transferred.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Gives a reserved amount back to the origin account and then completes the transfer.
+     */
+    private static void refund(AccountShard fromShard, Long accountNumberFrom, long amountInMinorUnits,
+            Runnable completion) {
+        fromShard.send(() -> {
+            Account transferFrom = fromShard.getAccounts().get(accountNumberFrom);
+            if (transferFrom != null) {
+                transferFrom.setBalanceInMinorUnits(transferFrom.getBalanceInMinorUnits() + amountInMinorUnits);
+                transferFrom.incrementVersion();
+            }
+            completion.run();
+        });
+    }
+
+    private AccountShard shardFor(long accountNumber) {
+        int hash = Long.hashCode(accountNumber);
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    private static Account getAccount(AccountShard shard, Long accountNumber) {
+        Account account = shard.getAccounts().get(accountNumber);
+        if (account == null) {
+            throw new AccountNotFoundException(accountNumber);
+        }
+        return account;
+    }
+
+    private static Account copy(Account account) {
+        Account copy = new Account();
+        copy.setAccountNumber(account.getAccountNumber());
+        copy.setCurrencyScale(account.getCurrencyScale());
+        copy.setBalanceInMinorUnits(account.getBalanceInMinorUnits());
+        copy.setVersion(account.getVersion());
+        return copy;
+    }
+
+    private <T> T call(AccountShard shard, Function<AccountShard, T> work) {
+        return join(submit(shard, work));
+    }
+
+    private <T> CompletableFuture<T> submit(AccountShard shard, Function<AccountShard, T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(shard, result, () -> result.complete(work.apply(shard)));
+        return result;
+    }
+
+    /**
+     * Submits a command that is expected to complete the given future, failing the future if the command throws.
+     */
+    private void submit(AccountShard shard, CompletableFuture<?> result, Runnable command) {
+        Set<CompletableFuture<?>> pendingCalls = shard.getPendingCalls();
+        // registered before closed is read, so a concurrent close either is seen here or fails the call
+        pendingCalls.add(result);
+        if (closed) {
+            pendingCalls.remove(result);
+            throw closedException();
+        }
+        result.whenComplete((value, e) -> pendingCalls.remove(result));
+        boolean accepted = shard.submit(() -> {
+            try {
+                command.run();
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        if (!accepted) {
+            pendingCalls.remove(result);
+            throw new SimpleMoneyTransferException("Account shard is overloaded, try again later!");
+        }
+    }
+
+    private static SimpleMoneyTransferException closedException() {
+        return new SimpleMoneyTransferException("Account service is closed!");
+    }
+
+    private static <T> T join(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package test.adanielssr.simple.money.transfer.business.service.snapshot;
+
+/**
+ * Open addressing hash map from long to long, with linear probing, keeping keys and values in two primitive arrays
+ * so millions of entries cost no object per entry. Not thread safe.
+ */
+class LongLongHashMap {
+
+    private static final long FREE_KEY = 0L;
+
+    private static final double MAX_LOAD_FACTOR = 0.5D;
+
+    private long[] keys;
+
+    private long[] values;
+
+    private int mask;
+
+    private int size;
+
+    private boolean hasFreeKey;
+
+    private long freeKeyValue;
+
+    LongLongHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize / MAX_LOAD_FACTOR && capacity < 1 << 30) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        return keys[indexOf(key)] == key;
+    }
+
+    long get(long key, long defaultValue) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : defaultValue;
+        }
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : defaultValue;
+    }
+
+    void put(long key, long value) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return;
+        }
+        int index = indexOf(key);
+        if (keys[index] != key) {
+            keys[index] = key;
+            if (++size > keys.length * MAX_LOAD_FACTOR) {
+                values[index] = value;
+                rehash(keys.length << 1);
+                return;
+            }
+        }
+        values[index] = value;
+    }
+
+    /**
+     * @return false if the key is not in the map, in which case nothing is added
+     */
+    boolean addTo(long key, long delta) {
+        if (key == FREE_KEY) {
+            if (hasFreeKey) {
+                freeKeyValue += delta;
+            }
+            return hasFreeKey;
+        }
+        int index = indexOf(key);
+        if (keys[index] != key) {
+            return false;
+        }
+        values[index] += delta;
+        return true;
+    }
+
+    /**
+     * @return the value of the removed key, or the default value if it was not in the map
+     */
+    long remove(long key, long defaultValue) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                return defaultValue;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+        int index = indexOf(key);
+        if (keys[index] != key) {
+            return defaultValue;
+        }
+        long removedValue = values[index];
+        size--;
+
+        // shift back the following entries of the probe sequence, so no tombstone is needed
+        int free = index;
+        int next = (free + 1) & mask;
+        while (keys[next] != FREE_KEY) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = FREE_KEY;
+        return removedValue;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        if (hasFreeKey) {
+            consumer.accept(FREE_KEY, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Index of the key, or of the free slot where it would be inserted.
+     */
+    private int indexOf(long key) {
+        int index = slot(key);
+        while (keys[index] != key && keys[index] != FREE_KEY) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    interface EntryConsumer {
+
+        void accept(long key, long value);
+    }
+}
@@ -0,0 +1,82 @@
+package test.adanielssr.simple.money.transfer.business.service.snapshot;
+
+import test.adanielssr.simple.money.transfer.business.service.journal.JournalVisitor;
+
+/**
+ * Account table and transfer number high-water mark a snapshot is made of, built by loading the previous snapshot
+ * and replaying the journal segments written after it. Applies journal records the same way as
+ * {@link test.adanielssr.simple.money.transfer.business.service.JournalRecovery JournalRecovery}.
+ */
+class SnapshotState implements JournalVisitor, SnapshotVisitor {
+
+    private final LongLongHashMap balances;
+
+    private final LongLongHashMap pendingDeltas = new LongLongHashMap(16);
+
+    private final LongLongHashMap removedAccounts = new LongLongHashMap(16);
+
+    private long transferNumber;
+
+    SnapshotState(int expectedAccounts) {
+        this.balances = new LongLongHashMap(expectedAccounts);
+    }
+
+    long getTransferNumber() {
+        return transferNumber;
+    }
+
+    LongLongHashMap getBalances() {
+        return balances;
+    }
+
+    LongLongHashMap getPendingDeltas() {
+        return pendingDeltas;
+    }
+
+    @Override
+    public void transferNumber(long transferNumber) {
+        this.transferNumber = Math.max(this.transferNumber, transferNumber);
+    }
+
+    @Override
+    public void account(long accountNumber, long balance) {
+        balances.put(accountNumber, balance);
+    }
+
+    @Override
+    public void pendingDelta(long accountNumber, long delta) {
+        pendingDeltas.put(accountNumber, delta);
+    }
+
+    @Override
+    public void accountCreated(long accountNumber, long balance) {
+        removedAccounts.remove(accountNumber, 0L);
+        balances.put(accountNumber, balance + pendingDeltas.remove(accountNumber, 0L));
+    }
+
+    @Override
+    public void balanceChanged(long accountNumber, long delta) {
+        addToBalance(accountNumber, delta);
+    }
+
+    @Override
+    public void accountRemoved(long accountNumber) {
+        balances.remove(accountNumber, 0L);
+        pendingDeltas.remove(accountNumber, 0L);
+        removedAccounts.put(accountNumber, 0L);
+    }
+
+    @Override
+    public void transferPerformed(long transferNumber, long transferTimestamp, long accountNumberFrom,
+            long accountNumberTo, long amount) {
+        transferNumber(transferNumber);
+        addToBalance(accountNumberFrom, -amount);
+        addToBalance(accountNumberTo, amount);
+    }
+
+    private void addToBalance(long accountNumber, long delta) {
+        if (!balances.addTo(accountNumber, delta) && !removedAccounts.containsKey(accountNumber)) {
+            pendingDeltas.put(accountNumber, pendingDeltas.get(accountNumber, 0L) + delta);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package test.adanielssr.simple.money.transfer.business.service.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot files of the account table, kept in a directory next to the journal they summarize.
+ * <p>
+ * A snapshot file is named after the first journal segment that is not part of it. It holds a header with the
+ * transfer number high-water mark and the entry counts, followed by one pair of longs per account and per pending
+ * balance change, and a CRC32 of the entries. Files are written and read through memory mappings, so loading a
+ * snapshot scans the page cache in place instead of copying it through heap buffers.
+ * <p>
+ * A snapshot is written to a temporary file that is renamed once it is on disk, so a crash while writing leaves the
+ * previous snapshot in place.
+ */
+public class SnapshotStore {
+
+    private static final long MAGIC = 0x534E415053484F54L;
+
+    private static final int HEADER_SIZE = 6 * Long.BYTES;
+
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+
+    private static final long WINDOW_ENTRIES = 1L << 26;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private final Path directory;
+
+    /**
+     * @param directory the snapshot directory, created if needed
+     * @throws UncheckedIOException if the directory cannot be created
+     */
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot directory could not be created at " + directory, e);
+        }
+    }
+
+    /**
+     * Feeds the latest snapshot to the visitor.
+     *
+     * @param visitor the visitor
+     * @return the index of the first journal segment to replay after the snapshot, 0 if there is no snapshot
+     * @throws UncheckedIOException if the snapshot cannot be read or is corrupted
+     */
+    public long load(SnapshotVisitor visitor) {
+        Path snapshot;
+        try {
+            List<Path> snapshots = listSnapshots();
+            if (snapshots.isEmpty()) {
+                return 0L;
+            }
+            snapshot = snapshots.get(snapshots.size() - 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshots could not be listed in " + directory, e);
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Snapshot " + snapshot + " is truncated");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0L, HEADER_SIZE);
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Snapshot " + snapshot + " is not a snapshot file");
+            }
+            long journalSegmentIndex = header.getLong();
+            long transferNumber = header.getLong();
+            long accountCount = header.getLong();
+            long pendingCount = header.getLong();
+            int checksum = (int) header.getLong();
+
+            long entryCount = accountCount + pendingCount;
+            if (channel.size() != HEADER_SIZE + entryCount * ENTRY_SIZE) {
+                throw new IOException("Snapshot " + snapshot + " is truncated");
+            }
+            CRC32 entriesChecksum = new CRC32();
+            for (long first = 0L; first < entryCount; first += WINDOW_ENTRIES) {
+                entriesChecksum.update(mapEntries(channel, FileChannel.MapMode.READ_ONLY, first,
+                        Math.min(WINDOW_ENTRIES, entryCount - first)));
+            }
+            if ((int) entriesChecksum.getValue() != checksum) {
+                throw new IOException("Snapshot " + snapshot + " is corrupted");
+            }
+
+            visitor.transferNumber(transferNumber);
+            for (long first = 0L; first < entryCount; first += WINDOW_ENTRIES) {
+                ByteBuffer entries = mapEntries(channel, FileChannel.MapMode.READ_ONLY, first,
+                        Math.min(WINDOW_ENTRIES, entryCount - first));
+                for (long entry = first; entries.hasRemaining(); entry++) {
+                    if (entry < accountCount) {
+                        visitor.account(entries.getLong(), entries.getLong());
+                    } else {
+                        visitor.pendingDelta(entries.getLong(), entries.getLong());
+                    }
+                }
+            }
+            return journalSegmentIndex;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot could not be loaded from " + snapshot, e);
+        }
+    }
+
+    /**
+     * Writes a new snapshot and deletes the older ones.
+     *
+     * @param state               the snapshot content
+     * @param journalSegmentIndex the index of the first journal segment that is not part of the snapshot
+     * @throws UncheckedIOException if the snapshot cannot be written
+     */
+    void write(SnapshotState state, long journalSegmentIndex) {
+        Path snapshot = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, journalSegmentIndex,
+                SNAPSHOT_SUFFIX));
+        Path temporarySnapshot = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        long accountCount = state.getBalances().size();
+        long pendingCount = state.getPendingDeltas().size();
+        try (FileChannel channel = FileChannel.open(temporarySnapshot, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            EntryWriter entryWriter = new EntryWriter(channel, accountCount + pendingCount);
+            state.getBalances().forEach(entryWriter::write);
+            state.getPendingDeltas().forEach(entryWriter::write);
+            int checksum = entryWriter.finish();
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE);
+            header.putLong(MAGIC).putLong(journalSegmentIndex).putLong(state.getTransferNumber())
+                    .putLong(accountCount).putLong(pendingCount).putLong(checksum & 0xFFFFFFFFL);
+            header.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot could not be written to " + temporarySnapshot, e);
+        }
+
+        try {
+            Files.move(temporarySnapshot, snapshot, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            for (Path olderSnapshot : listSnapshots()) {
+                if (!olderSnapshot.equals(snapshot)) {
+                    Files.delete(olderSnapshot);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot could not be stored at " + snapshot, e);
+        }
+    }
+
+    private static MappedByteBuffer mapEntries(FileChannel channel, FileChannel.MapMode mapMode, long firstEntry,
+            long entryCount) throws IOException {
+        return channel.map(mapMode, HEADER_SIZE + firstEntry * ENTRY_SIZE, entryCount * ENTRY_SIZE);
+    }
+
+    private List<Path> listSnapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String fileName = file.getFileName().toString();
+                return fileName.startsWith(SNAPSHOT_PREFIX) && fileName.endsWith(SNAPSHOT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Writes the entries through mappings of at most {@link #WINDOW_ENTRIES} entries, computing their checksum.
+     */
+    private static class EntryWriter {
+
+        private final FileChannel channel;
+
+        private final long entryCount;
+
+        private final CRC32 checksum = new CRC32();
+
+        private MappedByteBuffer window;
+
+        private long writtenEntries;
+
+        EntryWriter(FileChannel channel, long entryCount) {
+            this.channel = channel;
+            this.entryCount = entryCount;
+        }
+
+        void write(long key, long value) {
+            try {
+                if (window == null || !window.hasRemaining()) {
+                    flushWindow();
+                    window = mapEntries(channel, FileChannel.MapMode.READ_WRITE, writtenEntries,
+                            Math.min(WINDOW_ENTRIES, entryCount - writtenEntries));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            window.putLong(key).putLong(value);
+            writtenEntries++;
+        }
+
+        int finish() throws IOException {
+            if (writtenEntries != entryCount) {
+                throw new IOException("Expected " + entryCount + " snapshot entries but got " + writtenEntries);
+            }
+            flushWindow();
+            return (int) checksum.getValue();
+        }
+
+        private void flushWindow() {
+            if (window != null) {
+                window.force();
+                window.flip();
+                checksum.update(window);
+                window = null;
+            }
+        }
+    }
+}
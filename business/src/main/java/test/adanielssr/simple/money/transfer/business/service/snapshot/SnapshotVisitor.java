@@ -0,0 +1,19 @@
+package test.adanielssr.simple.money.transfer.business.service.snapshot;
+
+/**
+ * Receives the content of a snapshot while it is loaded. Amounts and balances are in minor units.
+ */
+public interface SnapshotVisitor {
+
+    /**
+     * @param transferNumber the highest transfer number journaled before the snapshot
+     */
+    void transferNumber(long transferNumber);
+
+    void account(long accountNumber, long balance);
+
+    /**
+     * Balance change journaled before the snapshot for an account whose creation was journaled after it.
+     */
+    void pendingDelta(long accountNumber, long delta);
+}
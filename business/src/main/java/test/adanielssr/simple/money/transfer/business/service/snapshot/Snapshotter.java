@@ -0,0 +1,91 @@
+package test.adanielssr.simple.money.transfer.business.service.snapshot;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import test.adanielssr.simple.money.transfer.business.service.journal.Journal;
+
+/**
+ * Periodically compacts the {@link Journal} into a snapshot, so starting up only replays the journal written since
+ * the last snapshot.
+ * <p>
+ * A snapshot is built on a background thread from the previous snapshot and the journal segments rolled since,
+ * without reading the live accounts, so transfers are never paused while it is taken. Once the snapshot is stored
+ * the segments it covers are deleted.
+ */
+public class Snapshotter implements AutoCloseable {
+
+    private final Journal journal;
+
+    private final SnapshotStore snapshotStore;
+
+    private final ScheduledExecutorService snapshotScheduler;
+
+    private int lastAccountCount;
+
+    /**
+     * @param journal        the journal
+     * @param snapshotStore  where snapshots are stored
+     * @param intervalMillis the interval between snapshots, or 0 to only take them when asked
+     */
+    public Snapshotter(Journal journal, SnapshotStore snapshotStore, long intervalMillis) {
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
+        if (intervalMillis > 0L) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::takeSnapshotQuietly, intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            snapshotScheduler = null;
+        }
+    }
+
+    /**
+     * Rolls the journal and writes a snapshot covering every record appended so far, unless nothing was appended
+     * since the last snapshot.
+     *
+     * @throws java.io.UncheckedIOException if the snapshot cannot be written, the journal is then left untouched
+     */
+    public synchronized void takeSnapshot() {
+        long endSegmentIndex = journal.rollSegment();
+
+        SnapshotState state = new SnapshotState(lastAccountCount);
+        long firstSegmentIndex = snapshotStore.load(state);
+        if (firstSegmentIndex >= endSegmentIndex) {
+            return;
+        }
+        journal.replaySegments(state, firstSegmentIndex, endSegmentIndex);
+
+        snapshotStore.write(state, endSegmentIndex);
+        journal.deleteSegmentsBefore(endSegmentIndex);
+        lastAccountCount = state.getBalances().size();
+    }
+
+    /**
+     * Stops taking snapshots, interrupting the one being taken, if any.
+     */
+    @Override
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            try {
+                snapshotScheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void takeSnapshotQuietly() {
+        try {
+            takeSnapshot();
+        } catch (RuntimeException e) {
+            // retried on the next interval
+        }
+    }
+}
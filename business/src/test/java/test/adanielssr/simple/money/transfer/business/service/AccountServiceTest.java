@@ -1,27 +1,45 @@
 package test.adanielssr.simple.money.transfer.business.service;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountAlreadyExistsException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.NotEnoughBalanceException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.TransferValidationException;
 import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
 
 import static org.junit.Assert.*;
 
 /**
  * Created by arodrigues on 13/08/2017.
  */
-public class AccountServiceTest {
+public abstract class AccountServiceTest {
 
     private AccountService accountService;
 
+    protected abstract AccountService createAccountService(CurrencyScale currencyScale);
+
     @Before
     public void setup() {
-        accountService = new AccountService();
+        accountService = createAccountService(CurrencyScale.DEFAULT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (accountService instanceof AutoCloseable) {
+            ((AutoCloseable) accountService).close();
+        }
     }
 
     @Test(expected = SimpleMoneyTransferException.class)
@@ -49,6 +67,25 @@ public class AccountServiceTest {
         assertEquals((Double) 100.0D, newAccount.getBalance());
     }
 
+    @Test
+    public void testCreateAccountWithCurrencyScale() throws Exception {
+        tearDown();
+        accountService = createAccountService(CurrencyScale.of(3));
+
+        Account givenAccount = new Account();
+        givenAccount.setBalance(100.0049D);
+        assertEquals(10000L, givenAccount.getBalanceInMinorUnits());
+
+        givenAccount.setCurrencyScale(CurrencyScale.of(3));
+        givenAccount.setBalance(100.0049D);
+
+        Account newAccount = accountService.createAccount(givenAccount);
+
+        assertEquals(CurrencyScale.of(3), newAccount.getCurrencyScale());
+        assertEquals(100005L, newAccount.getBalanceInMinorUnits());
+        assertEquals((Double) 100.005D, newAccount.getBalance());
+    }
+
     @Test(expected = AccountAlreadyExistsException.class)
     public void testCreateAccountWithExistingAccount() {
         Account newAccount = new Account();
@@ -126,4 +163,188 @@ public class AccountServiceTest {
         });
         assertEquals(1, atomicInteger.get());
     }
+
+    @Test
+    public void testPerformOperationUpdatesBalance() {
+        accountService.createAccount(createAccount(1L, 10.0D));
+
+        accountService.performAccountOperation(1L, (aNumber, aAccount) -> {
+            aAccount.setBalanceInMinorUnits(aAccount.getBalanceInMinorUnits() + 1L);
+            return aAccount;
+        });
+
+        assertEquals(1001L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+    }
+
+    @Test
+    public void testBalanceChangesIncrementTheVersion() {
+        accountService.createAccount(createAccount(1L, 10.0D));
+        accountService.createAccount(createAccount(2L, 0.0D));
+        long version = accountService.getAccountByNumber(1L).getVersion();
+
+        accountService.performAccountOperation(1L, (aNumber, aAccount) -> {
+            aAccount.setBalanceInMinorUnits(aAccount.getBalanceInMinorUnits() + 1L);
+            return aAccount;
+        });
+        assertEquals(version + 1L, accountService.getAccountByNumber(1L).getVersion());
+
+        long otherVersion = accountService.getAccountByNumber(2L).getVersion();
+        accountService.transfer(1L, 2L, 1L);
+        assertEquals(version + 2L, accountService.getAccountByNumber(1L).getVersion());
+        assertEquals(otherVersion + 1L, accountService.getAccountByNumber(2L).getVersion());
+
+        assertEquals(TransferOutcome.NOT_ENOUGH_BALANCE, accountService.tryTransfer(1L, 2L, 10000L));
+        assertEquals(version + 2L, accountService.getAccountByNumber(1L).getVersion());
+    }
+
+    @Test(expected = SimpleMoneyTransferException.class)
+    public void testTransferWithNullAccountNumber() {
+        accountService.transfer(null, 2L, 1L);
+    }
+
+    @Test(expected = SimpleMoneyTransferException.class)
+    public void testTransferWithNegativeAmount() {
+        accountService.transfer(1L, 2L, -1L);
+    }
+
+    @Test(expected = AccountNotFoundException.class)
+    public void testTransferWithNonexistentAccountFrom() {
+        accountService.createAccount(createAccount(2L, 0.0D));
+
+        accountService.transfer(1L, 2L, 1L);
+    }
+
+    @Test
+    public void testTransferWithNonexistentAccountTo() {
+        accountService.createAccount(createAccount(1L, 10.0D));
+
+        try {
+            accountService.transfer(1L, 2L, 1L);
+            fail("transfer to a nonexistent account must fail");
+        } catch (AccountNotFoundException e) {
+            assertEquals(1000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+        }
+    }
+
+    @Test
+    public void testTransferWithNotEnoughBalance() {
+        accountService.createAccount(createAccount(1L, 10.0D));
+        accountService.createAccount(createAccount(2L, 0.0D));
+
+        try {
+            accountService.transfer(1L, 2L, 1001L);
+            fail("transfer bigger than the balance must fail");
+        } catch (NotEnoughBalanceException e) {
+            assertEquals(1000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            assertEquals(0L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+        }
+    }
+
+    @Test
+    public void testTransferToSameAccountIsRejected() {
+        accountService.createAccount(createAccount(1L, 10.0D));
+        long version = accountService.getAccountByNumber(1L).getVersion();
+
+        assertEquals(TransferOutcome.SAME_ACCOUNT, accountService.tryTransfer(1L, 1L, 500L));
+        try {
+            accountService.transfer(1L, 1L, 500L);
+            fail("transfer to the same account must fail");
+        } catch (TransferValidationException e) {
+            assertEquals(1000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            assertEquals(version, accountService.getAccountByNumber(1L).getVersion());
+        }
+    }
+
+    @Test
+    public void testTransferOverflowingBalanceLeavesBothAccounts() {
+        accountService.createAccount(createAccount(1L, 10.0D));
+        Account fullAccount = new Account();
+        fullAccount.setAccountNumber(2L);
+        fullAccount.setBalanceInMinorUnits(Long.MAX_VALUE);
+        accountService.createAccount(fullAccount);
+
+        try {
+            accountService.transfer(1L, 2L, 1L);
+            fail("transfer overflowing the destination balance must fail");
+        } catch (ArithmeticException e) {
+            assertEquals(1000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            assertEquals(Long.MAX_VALUE, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+        }
+    }
+
+    @Test
+    public void testTryTransferReturnsOutcomes() {
+        accountService.createAccount(createAccount(1L, 10.0D));
+        accountService.createAccount(createAccount(2L, 0.0D));
+
+        assertEquals(TransferOutcome.ACCOUNT_FROM_NOT_FOUND, accountService.tryTransfer(3L, 2L, 1L));
+        assertEquals(TransferOutcome.ACCOUNT_TO_NOT_FOUND, accountService.tryTransfer(1L, 3L, 1L));
+        assertEquals(TransferOutcome.NOT_ENOUGH_BALANCE, accountService.tryTransfer(1L, 2L, 1001L));
+        assertEquals(1000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+
+        assertEquals(TransferOutcome.PERFORMED, accountService.tryTransfer(1L, 2L, 400L));
+        assertEquals(600L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+        assertEquals(400L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+    }
+
+    @Test
+    public void testTransferSuccess() {
+        accountService.createAccount(createAccount(1L, 10.0D));
+        accountService.createAccount(createAccount(2L, 0.0D));
+
+        accountService.transfer(1L, 2L, 1000L);
+
+        assertEquals((Double) 0.0D, accountService.getAccountByNumber(1L).getBalance());
+        assertEquals((Double) 10.0D, accountService.getAccountByNumber(2L).getBalance());
+    }
+
+    @Test
+    public void testConcurrentTransfersKeepTotalBalance() throws InterruptedException {
+        final int accounts = 8;
+        final int transfersPerThread = 10_000;
+        final int threads = 8;
+
+        for (long accountNumber = 1; accountNumber <= accounts; accountNumber++) {
+            accountService.createAccount(createAccount(accountNumber, 100.0D));
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CountDownLatch doneLatch = new CountDownLatch(threads);
+        AtomicInteger unexpectedOutcomes = new AtomicInteger();
+        for (int thread = 0; thread < threads; thread++) {
+            final int seed = thread;
+            executorService.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    // self-transfers included, they must not create money
+                    long from = 1 + random.nextInt(accounts);
+                    long to = 1 + random.nextInt(accounts);
+                    TransferOutcome outcome = accountService.tryTransfer(from, to, 1 + random.nextInt(500));
+                    boolean expected = from == to ? outcome == TransferOutcome.SAME_ACCOUNT :
+                            outcome.isPerformed() || outcome == TransferOutcome.NOT_ENOUGH_BALANCE;
+                    if (!expected) {
+                        unexpectedOutcomes.incrementAndGet();
+                    }
+                }
+                doneLatch.countDown();
+            });
+        }
+        assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+        executorService.shutdown();
+        assertEquals(0, unexpectedOutcomes.get());
+
+        long totalBalance = 0L;
+        for (Account account : accountService.getAllAccounts()) {
+            assertTrue(account.getBalanceInMinorUnits() >= 0L);
+            totalBalance += account.getBalanceInMinorUnits();
+        }
+        assertEquals(accounts * 10000L, totalBalance);
+    }
+
+    private Account createAccount(Long accountNumber, Double balance) {
+        Account account = new Account();
+        account.setAccountNumber(accountNumber);
+        account.setBalance(balance);
+        return account;
+    }
 }
@@ -0,0 +1,197 @@
+package test.adanielssr.simple.money.transfer.business.service;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import test.adanielssr.simple.money.transfer.business.service.journal.FsyncPolicy;
+import test.adanielssr.simple.money.transfer.business.service.journal.Journal;
+import test.adanielssr.simple.money.transfer.business.service.journal.JournaledAccountService;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JournalRecoveryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAccountsAndTransfersAreRecovered() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+
+        try (Journal journal = open(directory)) {
+            AccountService accountService = new JournaledAccountService(new StripedLockAccountService(), journal);
+            TransferService transferService = new TransferService(accountService, journal);
+
+            accountService.createAccount(newAccount(100.0D));
+            accountService.createAccount(newAccount(50.0D));
+            accountService.createAccount(newAccount(1.0D));
+            transferService.createAndPerformTransfer(newTransfer(1L, 2L, 25.5D));
+            accountService.performAccountOperation(2L, (aAccountNumber, account) -> {
+                account.setBalance(account.getBalance() + 4.5D);
+                return account;
+            });
+            accountService.performAccountOperation(3L, (aAccountNumber, account) -> null);
+        }
+
+        try (Journal journal = open(directory)) {
+            AccountService accountService = new StripedLockAccountService();
+            TransferService transferService = new TransferService(accountService, journal);
+            new JournalRecovery(accountService, transferService).recover(journal);
+
+            assertEquals(2, accountService.getAllAccounts().size());
+            assertEquals(7450L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            assertEquals(8000L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+
+            Transfer recoveredTransfer = transferService.getTransferHistory().get(1L);
+            assertEquals(TransferStatus.PERFORMED, recoveredTransfer.getStatus());
+            assertEquals(25.5D, recoveredTransfer.getAmount(), 0.0D);
+
+            // numbering goes on after the recovered accounts and transfers
+            assertEquals(Long.valueOf(4L), accountService.createAccount(newAccount(0.0D)).getAccountNumber());
+            assertEquals(Long.valueOf(2L),
+                    transferService.createAndPerformTransfer(newTransfer(2L, 1L, 1.0D)).getTransferNumber());
+        }
+    }
+
+    @Test
+    public void testTransferJournaledBeforeAccountCreationIsApplied() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = open(directory)) {
+            journal.appendAccountCreated(1L, 1000L);
+            journal.appendTransferPerformed(1L, 0L, 1L, 2L, 300L);
+            journal.appendAccountCreated(2L, 0L);
+        }
+
+        try (Journal journal = open(directory)) {
+            AccountService accountService = new AtomicBalanceAccountService();
+            new JournalRecovery(accountService, new TransferService(accountService)).recover(journal);
+
+            assertEquals(700L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            assertEquals(300L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+        }
+    }
+
+    @Test
+    public void testAccountWithoutCreationIsRejectedIfNegative() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = open(directory)) {
+            journal.appendTransferPerformed(1L, 0L, 1L, 2L, 300L);
+        }
+
+        try (Journal journal = open(directory)) {
+            AccountService accountService = new AtomicBalanceAccountService();
+            JournalRecovery journalRecovery = new JournalRecovery(accountService, new TransferService(accountService));
+            journalRecovery.recover(journal);
+
+            assertEquals(Collections.singletonMap(1L, -300L), journalRecovery.getRejectedAccounts());
+            assertEquals(1, accountService.getAccountCount());
+            assertEquals(300L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+        }
+    }
+
+    @Test
+    public void testAccountIsNotCreatedWhenJournalFails() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_BATCH, 10L, 64L)) {
+            AccountService accountService = new JournaledAccountService(new StripedLockAccountService(), journal);
+            accountService.createAccount(newAccount(100.0D));
+            accountService.createAccount(newAccount(50.0D));
+            accountService.createAccount(newAccount(10.0D));
+            // the segment the journal rolls to for the fourth creation record cannot be created
+            Files.createFile(directory.resolve(String.format("journal-%020d.log", 2L)));
+
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try {
+                    accountService.createAccount(newAccount(1.0D));
+                    fail("an account the journal failed to keep must not be created");
+                } catch (UncheckedIOException e) {
+                    assertEquals(3, accountService.getAccountCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTransferIsUndoneWhenJournalFails() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_BATCH, 10L, 64L)) {
+            AccountService accountService = new JournaledAccountService(new StripedLockAccountService(), journal);
+            TransferService transferService = new TransferService(accountService, journal);
+            accountService.createAccount(newAccount(100.0D));
+            accountService.createAccount(newAccount(50.0D));
+            // the segment the journal rolls to for the transfer record cannot be created
+            Files.createFile(directory.resolve(String.format("journal-%020d.log", 2L)));
+
+            try {
+                transferService.createAndPerformTransfer(newTransfer(1L, 2L, 25.5D));
+                fail("a transfer the journal failed to keep must fail");
+            } catch (UncheckedIOException e) {
+                assertEquals(10000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+                assertEquals(5000L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+                assertEquals(TransferStatus.REGISTERED, transferService.getTransferHistory().get(1L).getStatus());
+            }
+
+            try {
+                transferService.createAndPerformTransfer(newTransfer(1L, 2L, 1.0D));
+                fail("no transfer is performed once the journal failed");
+            } catch (UncheckedIOException e) {
+                assertEquals(10000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            }
+        }
+    }
+
+    @Test
+    public void testBatchReportsTransfersTheJournalFailedToKeep() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_BATCH, 10L, 64L)) {
+            AccountService accountService = new JournaledAccountService(new StripedLockAccountService(), journal);
+            TransferService transferService = new TransferService(accountService, journal);
+            accountService.createAccount(newAccount(100.0D));
+            accountService.createAccount(newAccount(50.0D));
+            // the first transfer record rolls to the second segment, the next one to the third, which cannot be created
+            Files.createFile(directory.resolve(String.format("journal-%020d.log", 3L)));
+
+            List<TransferResult> results = transferService.createAndPerformTransfers(
+                    Arrays.asList(newTransfer(1L, 2L, 10.0D), newTransfer(1L, 2L, 20.0D), newTransfer(2L, 1L, 5.0D)));
+
+            assertEquals(3, results.size());
+            assertTrue(results.get(0).isPerformed());
+            assertFalse(results.get(1).isPerformed());
+            assertFalse(results.get(2).isPerformed());
+            assertEquals(9000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            assertEquals(6000L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+        }
+    }
+
+    private static Journal open(Path directory) {
+        return new Journal(directory, FsyncPolicy.PER_BATCH, 10L, 1024L * 1024);
+    }
+
+    private static Account newAccount(double balance) {
+        Account account = new Account();
+        account.setBalance(balance);
+        return account;
+    }
+
+    private static Transfer newTransfer(Long from, Long to, double amount) {
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(from);
+        transfer.setAccountNumberTo(to);
+        transfer.setAmount(amount);
+        return transfer;
+    }
+}
@@ -0,0 +1,11 @@
+package test.adanielssr.simple.money.transfer.business.service;
+
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+public class StripedLockAccountServiceTest extends AccountServiceTest {
+
+    @Override
+    protected AccountService createAccountService(CurrencyScale currencyScale) {
+        return new StripedLockAccountService(currencyScale);
+    }
+}
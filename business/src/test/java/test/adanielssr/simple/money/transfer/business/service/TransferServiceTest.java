@@ -1,21 +1,41 @@
 package test.adanielssr.simple.money.transfer.business.service;
 
-import java.util.function.BiFunction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
-import org.mockito.ArgumentCaptor;
+import org.junit.rules.TemporaryFolder;
 
 import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.NotEnoughBalanceException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.TransferNotFoundException;
 import test.adanielssr.simple.money.transfer.business.service.exceptions.TransferValidationException;
+import test.adanielssr.simple.money.transfer.business.service.history.HistoryRetention;
+import test.adanielssr.simple.money.transfer.business.service.history.TransferHistory;
+import test.adanielssr.simple.money.transfer.business.service.id.IdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.LeasingIdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.id.SnowflakeIdGenerator;
+import test.adanielssr.simple.money.transfer.business.service.metrics.MetricsRegistry;
 import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
 import test.adanielssr.simple.money.transfer.domain.model.Transfer;
 import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -25,6 +45,9 @@ import static org.mockito.Mockito.*;
  */
 public class TransferServiceTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private AccountService accountService;
 
     private TransferService transferService;
@@ -32,6 +55,8 @@ public class TransferServiceTest {
     @Before
     public void setup() {
         accountService = mock(AccountService.class);
+        when(accountService.getCurrencyScale()).thenReturn(CurrencyScale.DEFAULT);
+        when(accountService.tryTransfer(any(), any(), anyLong())).thenReturn(TransferOutcome.PERFORMED);
         transferService = new TransferService(accountService);
     }
 
@@ -86,7 +111,7 @@ public class TransferServiceTest {
     public void createAndPerformTransferWithFromNonexistentAccount() {
         Transfer transfer = createValidTransfer();
 
-        when(accountService.getAccountByNumber(eq(1L))).thenThrow(AccountNotFoundException.class);
+        when(accountService.tryTransfer(eq(1L), eq(2L), anyLong())).thenReturn(TransferOutcome.ACCOUNT_FROM_NOT_FOUND);
 
         transferService.createAndPerformTransfer(transfer);
     }
@@ -95,7 +120,7 @@ public class TransferServiceTest {
     public void createAndPerformTransferWithToNonexistentAccount() {
         Transfer transfer = createValidTransfer();
 
-        when(accountService.getAccountByNumber(eq(2L))).thenThrow(AccountNotFoundException.class);
+        when(accountService.tryTransfer(eq(1L), eq(2L), anyLong())).thenReturn(TransferOutcome.ACCOUNT_TO_NOT_FOUND);
 
         transferService.createAndPerformTransfer(transfer);
     }
@@ -109,16 +134,12 @@ public class TransferServiceTest {
 
         Account accountTo = createAccountTo();
 
-        when(accountService.getAccountByNumber(anyLong())).thenReturn(accountFrom, accountTo);
-
-        doThrow(ArrayStoreException.class).when(accountService).performAccountOperation(any(), any());
+        doThrow(ArrayStoreException.class).when(accountService).tryTransfer(any(), any(), anyLong());
 
         try {
             transferService.createAndPerformTransfer(transfer);
         } catch (ArrayStoreException e) {
-            assertEquals(1, transferService.getMapTransferNumberToTransfer().size());
-            Transfer createdTransfer = transferService.getMapTransferNumberToTransfer().entrySet().iterator().next()
-                    .getValue();
+            Transfer createdTransfer = transferService.getTransferHistory().get(transfer.getTransferNumber());
             assertNotNull(createdTransfer);
             assertNotNull(createdTransfer.getTransferNumber());
             assertNotNull(createdTransfer.getTransferTimestamp());
@@ -130,36 +151,17 @@ public class TransferServiceTest {
 
     @Test(expected = NotEnoughBalanceException.class)
     public void createAndPerformTransferWithNotEnoughBalance() {
-        ArgumentCaptor<BiFunction> operationCaptor = ArgumentCaptor.forClass(BiFunction.class);
-        ArgumentCaptor<Long> accountNumberCaptor = ArgumentCaptor.forClass(Long.class);
-
         Transfer transfer = createValidTransfer();
         transfer.setAmount(10.005D);
 
-        Account accountFrom = createAccountFrom();
-
-        Account accountTo = createAccountTo();
-
-        when(accountService.getAccountByNumber(anyLong())).thenReturn(accountFrom, accountTo);
-
-        doNothing().when(accountService)
-                .performAccountOperation(accountNumberCaptor.capture(), operationCaptor.capture());
+        // 10.005 is rounded half up to 1001 minor units
+        when(accountService.tryTransfer(1L, 2L, 1001L)).thenReturn(TransferOutcome.NOT_ENOUGH_BALANCE);
 
         transferService.createAndPerformTransfer(transfer);
-
-        assertEquals(2, accountNumberCaptor.getAllValues().size());
-        assertEquals(2, operationCaptor.getAllValues().size());
-
-        BiFunction firstAccountOperation = operationCaptor.getAllValues().get(0);
-
-        firstAccountOperation.apply(accountFrom.getAccountNumber(), accountFrom);
     }
 
     @Test
     public void createAndPerformTransfer() {
-        ArgumentCaptor<BiFunction> operationCaptor = ArgumentCaptor.forClass(BiFunction.class);
-        ArgumentCaptor<Long> accountNumberCaptor = ArgumentCaptor.forClass(Long.class);
-
         Transfer transfer = createValidTransfer();
         transfer.setAmount(10.0D);
 
@@ -167,37 +169,293 @@ public class TransferServiceTest {
 
         Account accountTo = createAccountTo();
 
-        when(accountService.getAccountByNumber(anyLong())).thenReturn(accountFrom, accountTo);
-
-        doNothing().when(accountService)
-                .performAccountOperation(accountNumberCaptor.capture(), operationCaptor.capture());
-
         Transfer createdTransfer = transferService.createAndPerformTransfer(transfer);
         assertNotNull(createdTransfer);
         assertNotNull(createdTransfer.getTransferNumber());
         assertNotNull(createdTransfer.getTransferTimestamp());
         assertEquals(accountFrom.getAccountNumber(), createdTransfer.getAccountNumberFrom());
         assertEquals(accountTo.getAccountNumber(), createdTransfer.getAccountNumberTo());
+        assertEquals(TransferStatus.PERFORMED, createdTransfer.getStatus());
+
+        //both legs are applied by a single call to the account service
+        verify(accountService, times(1)).tryTransfer(1L, 2L, 1000L);
+        verify(accountService, never()).performAccountOperation(any(), any());
+    }
+
+    @Test
+    public void createAndPerformTransferCountsPerformedAndRejectedTransfers() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        transferService = new TransferService(accountService, null,
+                new TransferHistory(CurrencyScale.DEFAULT, TransferService.DEFAULT_HISTORY_CAPACITY), metricsRegistry);
+        when(accountService.tryTransfer(1L, 2L, 2000L)).thenReturn(TransferOutcome.NOT_ENOUGH_BALANCE);
+
+        transferService.createAndPerformTransfer(createValidTransfer());
+        Transfer tooBigTransfer = createValidTransfer();
+        tooBigTransfer.setAmount(20.0D);
+        List<TransferResult> results = transferService
+                .createAndPerformTransfers(Arrays.asList(createValidTransfer(), tooBigTransfer, null));
+        assertEquals(3, results.size());
+
+        StringBuilder metrics = new StringBuilder();
+        metricsRegistry.writePrometheus(metrics);
+        String exposition = metrics.toString();
+        assertTrue(exposition.contains("transfers_performed_total 2\n"));
+        assertTrue(exposition.contains("transfers_rejected_total{exception=\"NotEnoughBalanceException\"} 1\n"));
+        assertTrue(exposition.contains("transfers_rejected_total{exception=\"SimpleMoneyTransferException\"} 1\n"));
+        assertTrue(exposition.contains("transfers_rejected_total{exception=\"AccountNotFoundException\"} 0\n"));
+        assertTrue(exposition
+                .contains("transfer_service_latency_seconds_count{method=\"createAndPerformTransfer\"} 1\n"));
+        assertTrue(exposition
+                .contains("transfer_service_latency_seconds_count{method=\"createAndPerformTransfers\"} 1\n"));
+    }
+
+    @Test
+    public void tryCreateAndPerformTransferReturnsOutcomes() {
+        when(accountService.tryTransfer(1L, 2L, 1001L)).thenReturn(TransferOutcome.NOT_ENOUGH_BALANCE);
+
+        Transfer rejectedTransfer = createValidTransfer();
+        rejectedTransfer.setAmount(10.01D);
+        assertEquals(TransferOutcome.NOT_ENOUGH_BALANCE, transferService.tryCreateAndPerformTransfer(rejectedTransfer));
+        assertEquals(TransferStatus.REGISTERED, rejectedTransfer.getStatus());
+
+        Transfer sameAccountTransfer = createValidTransfer();
+        sameAccountTransfer.setAccountNumberTo(1L);
+        assertEquals(TransferOutcome.SAME_ACCOUNT, transferService.tryCreateAndPerformTransfer(sameAccountTransfer));
+        assertNull(sameAccountTransfer.getTransferNumber());
+
+        Transfer tooBigTransfer = createValidTransfer();
+        tooBigTransfer.setAmount(1e300D);
+        assertEquals(TransferOutcome.AMOUNT_TOO_BIG, transferService.tryCreateAndPerformTransfer(tooBigTransfer));
+
+        Transfer performedTransfer = createValidTransfer();
+        assertEquals(TransferOutcome.PERFORMED, transferService.tryCreateAndPerformTransfer(performedTransfer));
+        assertEquals(TransferStatus.PERFORMED, performedTransfer.getStatus());
+    }
+
+    @Test
+    public void createAndPerformTransferThrowsStacklessExceptions() {
+        when(accountService.tryTransfer(1L, 2L, 100L)).thenReturn(TransferOutcome.ACCOUNT_TO_NOT_FOUND);
+
+        try {
+            transferService.createAndPerformTransfer(createValidTransfer());
+            fail("transfer to a nonexistent account must fail");
+        } catch (AccountNotFoundException e) {
+            assertEquals(Long.valueOf(2L), e.getAccountNumber());
+            assertEquals(0, e.getStackTrace().length);
+        }
+
+        Transfer invalidTransfer = createValidTransfer();
+        invalidTransfer.setAmount(null);
+        try {
+            transferService.createAndPerformTransfer(invalidTransfer);
+            fail("transfer without amount must fail");
+        } catch (TransferValidationException e) {
+            // rejections with a fixed message throw the same instance every time
+            assertSame(TransferOutcome.AMOUNT_NEEDED.toException(1L, 2L), e);
+            assertEquals("amount needed!", e.getMessage());
+        }
+    }
+
+    @Test
+    public void getTransferByNumber() {
+        Transfer transfer = transferService.createAndPerformTransfer(createValidTransfer());
+
+        Transfer storedTransfer = transferService.getTransferByNumber(transfer.getTransferNumber());
+        assertEquals(transfer, storedTransfer);
+    }
+
+    @Test(expected = TransferNotFoundException.class)
+    public void getTransferByNumberWithNonexistentTransfer() {
+        transferService.getTransferByNumber(1L);
+    }
+
+    @Test
+    public void getAccountTransfers() {
+        Transfer firstTransfer = transferService.createAndPerformTransfer(createValidTransfer());
+        Transfer secondTransfer = transferService.createAndPerformTransfer(createValidTransfer());
+
+        TransferPage page = transferService.getAccountTransfers(1L, null, 1);
+        assertEquals(1, page.getTransfers().size());
+        assertEquals(secondTransfer.getTransferNumber(), page.getNext());
+
+        page = transferService.getAccountTransfers(2L, 0L, 10);
+        assertEquals(Arrays.asList(firstTransfer, secondTransfer), page.getTransfers());
+
+        page = transferService.getAccountTransfers(2L, secondTransfer.getTransferNumber(), 10);
+        assertTrue(page.getTransfers().isEmpty());
+        assertEquals(secondTransfer.getTransferNumber(), page.getNext());
+    }
+
+    @Test(expected = AccountNotFoundException.class)
+    public void getAccountTransfersWithNonexistentAccount() {
+        when(accountService.getAccountByNumber(3L)).thenThrow(new AccountNotFoundException(3L));
 
-        //method call twice the perform operation so it shall have
-        assertEquals(2, accountNumberCaptor.getAllValues().size());
-        assertEquals(2, operationCaptor.getAllValues().size());
+        transferService.getAccountTransfers(3L, null, 10);
+    }
+
+    @Test(expected = SimpleMoneyTransferException.class)
+    public void getAccountTransfersWithInvalidLimit() {
+        transferService.getAccountTransfers(1L, null, TransferService.MAX_PAGE_SIZE + 1);
+    }
+
+    @Test(expected = SimpleMoneyTransferException.class)
+    public void createAndPerformTransfersWithNullTransfers() {
+        transferService.createAndPerformTransfers(null);
+    }
+
+    @Test
+    public void createAndPerformTransfers() {
+        Transfer performedTransfer = createValidTransfer();
+
+        Transfer invalidTransfer = createValidTransfer();
+        invalidTransfer.setAccountNumberTo(1L);
+
+        Transfer notFoundTransfer = createValidTransfer();
+        notFoundTransfer.setAccountNumberTo(3L);
+        when(accountService.tryTransfer(eq(1L), eq(3L), anyLong())).thenReturn(TransferOutcome.ACCOUNT_TO_NOT_FOUND);
+
+        Transfer secondPerformedTransfer = createValidTransfer();
 
-        assertEquals((Long) 1L, accountNumberCaptor.getAllValues().get(0));
-        assertEquals((Long) 2L, accountNumberCaptor.getAllValues().get(1));
+        List<TransferResult> results = transferService.createAndPerformTransfers(
+                Arrays.asList(performedTransfer, invalidTransfer, notFoundTransfer, secondPerformedTransfer));
 
-        BiFunction firstAccountOperation = operationCaptor.getAllValues().get(0);
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isPerformed());
+        assertEquals(TransferStatus.PERFORMED, results.get(0).getTransfer().getStatus());
+        assertTrue(results.get(1).getError() instanceof TransferValidationException);
+        assertTrue(results.get(2).getError() instanceof AccountNotFoundException);
+        assertEquals(TransferStatus.REGISTERED, results.get(2).getTransfer().getStatus());
+        assertTrue(results.get(3).isPerformed());
 
-        Account resultAccountOne = (Account) firstAccountOperation
-                .apply(accountFrom.getAccountNumber(), createAccountFrom());
+        // numbers are allocated for the whole batch, in order, and the batch shares one timestamp
+        assertEquals(performedTransfer.getTransferNumber() + 2, notFoundTransfer.getTransferNumber().longValue());
+        assertEquals(performedTransfer.getTransferNumber() + 3,
+                secondPerformedTransfer.getTransferNumber().longValue());
+        assertEquals(performedTransfer.getTransferTimestamp(), secondPerformedTransfer.getTransferTimestamp());
 
-        assertEquals((Double) 0.0D, resultAccountOne.getBalance());
+        verify(accountService, times(2)).tryTransfer(1L, 2L, 100L);
+    }
+
+    @Test
+    public void tryCreateAndPerformTransferWithRepeatedIdempotencyKey() {
+        Transfer transfer = createValidTransfer();
+        Transfer retriedTransfer = createValidTransfer();
+
+        TransferResult result = transferService.tryCreateAndPerformTransfer("key-1", transfer);
+        TransferResult retriedResult = transferService.tryCreateAndPerformTransfer("key-1", retriedTransfer);
+
+        assertTrue(result.isPerformed());
+        assertTrue(retriedResult.isPerformed());
+        assertSame(transfer, retriedResult.getTransfer());
+        assertNull(retriedTransfer.getTransferNumber());
+        verify(accountService, times(1)).tryTransfer(1L, 2L, 100L);
+
+        assertTrue(transferService.tryCreateAndPerformTransfer("key-2", createValidTransfer()).isPerformed());
+        assertTrue(transferService.tryCreateAndPerformTransfer(null, createValidTransfer()).isPerformed());
+        verify(accountService, times(3)).tryTransfer(1L, 2L, 100L);
+    }
+
+    @Test
+    public void tryCreateAndPerformTransferWithRepeatedIdempotencyKeyOfRejectedTransfer() {
+        when(accountService.tryTransfer(any(), any(), anyLong())).thenReturn(TransferOutcome.NOT_ENOUGH_BALANCE);
+        Transfer transfer = createValidTransfer();
 
-        BiFunction secondAccountOperation = operationCaptor.getAllValues().get(1);
+        transferService.tryCreateAndPerformTransfer("key", transfer);
+        TransferResult retriedResult = transferService.tryCreateAndPerformTransfer("key", createValidTransfer());
 
-        Account resultAccountTwo = (Account) secondAccountOperation
-                .apply(accountTo.getAccountNumber(), createAccountTo());
-        assertEquals((Double) 10.0D, resultAccountTwo.getBalance());
+        assertEquals(TransferOutcome.NOT_ENOUGH_BALANCE, retriedResult.getOutcome());
+        assertSame(transfer, retriedResult.getTransfer());
+        verify(accountService, times(1)).tryTransfer(1L, 2L, 100L);
+    }
+
+    @Test
+    public void tryCreateAndPerformTransferWithIdempotencyKeyOfAnotherTransfer() {
+        transferService.tryCreateAndPerformTransfer("key", createValidTransfer());
+        Transfer otherTransfer = createValidTransfer();
+        otherTransfer.setAmount(2.0D);
+
+        TransferResult result = transferService.tryCreateAndPerformTransfer("key", otherTransfer);
+
+        assertEquals(TransferOutcome.IDEMPOTENCY_KEY_REUSED, result.getOutcome());
+        assertTrue(result.getError() instanceof TransferValidationException);
+        verify(accountService, never()).tryTransfer(1L, 2L, 200L);
+    }
+
+    @Test
+    public void tryCreateAndPerformTransferWithIdempotencyKeyOfInvalidTransfer() {
+        Transfer invalidTransfer = createValidTransfer();
+        invalidTransfer.setAmount(-1.0D);
+
+        assertEquals(TransferOutcome.AMOUNT_NOT_POSITIVE,
+                transferService.tryCreateAndPerformTransfer("key", invalidTransfer).getOutcome());
+        assertTrue(transferService.tryCreateAndPerformTransfer("key", createValidTransfer()).isPerformed());
+
+        char[] tooLongKey = new char[256];
+        Arrays.fill(tooLongKey, 'k');
+        assertEquals(TransferOutcome.IDEMPOTENCY_KEY_TOO_LONG,
+                transferService.tryCreateAndPerformTransfer(new String(tooLongKey), createValidTransfer())
+                        .getOutcome());
+    }
+
+    @Test
+    public void performedTransfersWithSnowflakeNumbersAreFoundPerformed() throws Exception {
+        assertTransfersArePerformed(new SnowflakeIdGenerator(1));
+    }
+
+    @Test
+    public void performedTransfersWithLeasedNumbersAreFoundPerformed() throws Exception {
+        assertTransfersArePerformed(new LeasingIdGenerator(new SnowflakeIdGenerator(1), 256, 1000L));
+    }
+
+    /**
+     * Performs transfers from several threads with sparse or out of order numbers, through a history small enough to
+     * spill most of them to disk, and checks no transfer stays {@link TransferStatus#REGISTERED}.
+     */
+    private void assertTransfersArePerformed(IdGenerator transferNumberGenerator) throws Exception {
+        int accounts = 8;
+        int threads = 4;
+        int transfersPerThread = 10_000;
+        AccountService accountService = new StripedLockAccountService();
+        for (long accountNumber = 1; accountNumber <= accounts; accountNumber++) {
+            Account account = new Account();
+            account.setAccountNumber(accountNumber);
+            account.setBalance(1_000_000.0D);
+            accountService.createAccount(account);
+        }
+        TransferHistory transferHistory = new TransferHistory(CurrencyScale.DEFAULT, 64,
+                temporaryFolder.getRoot().toPath(), HistoryRetention.UNLIMITED);
+        TransferService realTransferService = new TransferService(accountService, null, transferHistory,
+                new MetricsRegistry(), 1024, 60_000L, transferNumberGenerator);
+
+        List<Long> transferNumbers = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        long from = 1 + random.nextInt(accounts);
+                        Transfer transfer = new Transfer();
+                        transfer.setAccountNumberFrom(from);
+                        transfer.setAccountNumberTo(1 + from % accounts);
+                        transfer.setAmount(0.01D);
+                        transferNumbers.add(realTransferService.createAndPerformTransfer(transfer)
+                                .getTransferNumber());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threads * transfersPerThread, transferNumbers.size());
+        for (Long transferNumber : transferNumbers) {
+            assertEquals(TransferStatus.PERFORMED, realTransferService.getTransferByNumber(transferNumber).getStatus());
+        }
     }
 
     private Account createAccountFrom() {
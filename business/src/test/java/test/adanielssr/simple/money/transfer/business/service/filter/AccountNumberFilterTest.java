@@ -0,0 +1,33 @@
+package test.adanielssr.simple.money.transfer.business.service.filter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AccountNumberFilterTest {
+
+    @Test
+    public void testAddedNumbersAreAlwaysFound() {
+        AccountNumberFilter accountNumberFilter = new AccountNumberFilter(10_000, 0.01d);
+        for (long accountNumber = 0L; accountNumber < 10_000L; accountNumber++) {
+            accountNumberFilter.add(accountNumber * 7919L);
+        }
+        assertFalse(accountNumberFilter.isFull());
+        for (long accountNumber = 0L; accountNumber < 10_000L; accountNumber++) {
+            assertTrue(accountNumberFilter.mightContain(accountNumber * 7919L));
+        }
+
+        int falsePositives = 0;
+        for (long accountNumber = -1L; accountNumber > -100_000L; accountNumber--) {
+            if (accountNumberFilter.mightContain(accountNumber)) {
+                falsePositives++;
+            }
+        }
+        assertEquals(0.01d, falsePositives / 100_000d, 0.01d);
+
+        accountNumberFilter.add(-1L);
+        assertTrue(accountNumberFilter.isFull());
+    }
+}
@@ -0,0 +1,91 @@
+package test.adanielssr.simple.money.transfer.business.service.filter;
+
+import org.junit.Test;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.AccountServiceTest;
+import test.adanielssr.simple.money.transfer.business.service.StripedLockAccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferOutcome;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.AccountNotFoundException;
+import test.adanielssr.simple.money.transfer.business.service.metrics.MetricsRegistry;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FilteredAccountServiceTest extends AccountServiceTest {
+
+    @Override
+    protected AccountService createAccountService(CurrencyScale currencyScale) {
+        // small enough for the tests to rebuild the filter
+        return new FilteredAccountService(new StripedLockAccountService(currencyScale), 2, 0.01d,
+                new MetricsRegistry());
+    }
+
+    @Test
+    public void testUnknownAccountNumbersAreRejectedWithoutTouchingTheStore() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        int[] storeLookups = { 0 };
+        AccountService accountStore = new StripedLockAccountService(CurrencyScale.DEFAULT) {
+
+            @Override
+            public Account getAccountByNumber(Long accountNumber) {
+                storeLookups[0]++;
+                return super.getAccountByNumber(accountNumber);
+            }
+        };
+        FilteredAccountService accountService = new FilteredAccountService(accountStore, 1024, 0.001d,
+                metricsRegistry);
+        for (long accountNumber = 1L; accountNumber <= 3000L; accountNumber++) {
+            Account account = new Account();
+            account.setAccountNumber(accountNumber);
+            accountService.createAccount(account);
+        }
+        accountService.awaitRebuild();
+
+        for (long accountNumber = 1L; accountNumber <= 3000L; accountNumber++) {
+            assertEquals(accountNumber, (long) accountService.getAccountByNumber(accountNumber).getAccountNumber());
+        }
+        int unknownLookups = 0;
+        for (long accountNumber = 1_000_000L; accountNumber < 1_010_000L; accountNumber++) {
+            try {
+                accountService.getAccountByNumber(accountNumber);
+                fail("Expected AccountNotFoundException");
+            } catch (AccountNotFoundException e) {
+                unknownLookups++;
+            }
+        }
+        assertEquals(TransferOutcome.ACCOUNT_FROM_NOT_FOUND, accountService.tryTransfer(2_000_000L, 1L, 1L));
+
+        long rejected = count(metricsRegistry, "rejected");
+        long falsePositives = count(metricsRegistry, "false_positive");
+        assertEquals(3000L, count(metricsRegistry, "found"));
+        assertEquals(unknownLookups + 1L, rejected + falsePositives);
+        // the store is only looked up for the known accounts and the false positives
+        assertEquals(3000L + falsePositives, storeLookups[0]);
+        // grown past its first capacity, the filter keeps about its false positive rate
+        assertEquals(0.0d, (double) falsePositives / unknownLookups, 0.01d);
+    }
+
+    @Test
+    public void testAccountsAlreadyInTheStoreAreKnown() {
+        AccountService accountStore = new StripedLockAccountService(CurrencyScale.DEFAULT);
+        for (long accountNumber = 1L; accountNumber <= 100L; accountNumber++) {
+            Account account = new Account();
+            account.setAccountNumber(accountNumber);
+            accountStore.createAccount(account);
+        }
+
+        FilteredAccountService accountService = new FilteredAccountService(accountStore, 2, 0.01d,
+                new MetricsRegistry());
+
+        for (long accountNumber = 1L; accountNumber <= 100L; accountNumber++) {
+            assertEquals(accountNumber, (long) accountService.getAccountByNumber(accountNumber).getAccountNumber());
+        }
+    }
+
+    private static long count(MetricsRegistry metricsRegistry, String result) {
+        return metricsRegistry.counter(FilteredAccountService.CHECKS_METRIC, null, "result", result).sum();
+    }
+}
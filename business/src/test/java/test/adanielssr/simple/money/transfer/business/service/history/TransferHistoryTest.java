@@ -0,0 +1,242 @@
+package test.adanielssr.simple.money.transfer.business.service.history;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+import test.adanielssr.simple.money.transfer.domain.model.TransferStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransferHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRecordAndUpdateStatus() {
+        TransferHistory transferHistory = new TransferHistory(CurrencyScale.DEFAULT, 16);
+        transferHistory.record(1L, 1000L, 10L, 20L, 1050L, TransferStatus.REGISTERED);
+
+        assertTrue(transferHistory.updateStatus(1L, TransferStatus.PERFORMED));
+        assertFalse(transferHistory.updateStatus(2L, TransferStatus.PERFORMED));
+
+        Transfer transfer = transferHistory.get(1L);
+        assertEquals(Long.valueOf(1L), transfer.getTransferNumber());
+        assertEquals(1000L, transfer.getTransferTimestamp().getTime());
+        assertEquals(Long.valueOf(10L), transfer.getAccountNumberFrom());
+        assertEquals(Long.valueOf(20L), transfer.getAccountNumberTo());
+        assertEquals(10.5D, transfer.getAmount(), 0.0D);
+        assertEquals(TransferStatus.PERFORMED, transfer.getStatus());
+        assertNull(transferHistory.get(2L));
+    }
+
+    @Test
+    public void testOlderTransfersAreDroppedWithoutSpillDirectory() {
+        TransferHistory transferHistory = new TransferHistory(CurrencyScale.DEFAULT, 16);
+        for (long transferNumber = 1; transferNumber <= 20; transferNumber++) {
+            transferHistory.record(transferNumber, transferNumber, 1L, 2L, 1L, TransferStatus.PERFORMED);
+        }
+
+        assertNull(transferHistory.get(4L));
+        assertEquals(Long.valueOf(5L), transferHistory.get(5L).getTransferNumber());
+        assertEquals(Long.valueOf(20L), transferHistory.get(20L).getTransferNumber());
+    }
+
+    @Test
+    public void testOlderTransfersAreSpilledAndReadBack() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        TransferHistory transferHistory = new TransferHistory(CurrencyScale.DEFAULT, 1024, directory,
+                HistoryRetention.UNLIMITED);
+        int transfers = 50_000;
+        for (long transferNumber = 1; transferNumber <= transfers; transferNumber++) {
+            transferHistory.record(transferNumber, transferNumber, transferNumber, transferNumber + 1,
+                    transferNumber * 10, TransferStatus.PERFORMED);
+        }
+        // recorded after a whole ring of newer transfers
+        transferHistory.record(3L, 3L, 3L, 4L, 30L, TransferStatus.REGISTERED);
+        transferHistory.flush();
+
+        assertTrue(countSegments(directory) > 1);
+        for (long transferNumber = 1; transferNumber <= transfers; transferNumber += 997) {
+            Transfer transfer = transferHistory.get(transferNumber);
+            assertEquals(Long.valueOf(transferNumber), transfer.getTransferNumber());
+            assertEquals(Long.valueOf(transferNumber + 1), transfer.getAccountNumberTo());
+            assertEquals(transferNumber / 10.0D, transfer.getAmount(), 0.0D);
+        }
+        assertEquals(TransferStatus.REGISTERED, transferHistory.get(3L).getStatus());
+        assertNull(transferHistory.get(transfers + 1L));
+    }
+
+    @Test
+    public void testRetentionDeletesOldestSegments() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        TransferHistory transferHistory = new TransferHistory(CurrencyScale.DEFAULT, 1024, directory,
+                HistoryRetention.of(10_000L, Long.MAX_VALUE, Long.MAX_VALUE));
+        for (long transferNumber = 1; transferNumber <= 50_000; transferNumber++) {
+            transferHistory.record(transferNumber, transferNumber, 1L, 2L, 1L, TransferStatus.PERFORMED);
+        }
+        transferHistory.flush();
+
+        assertEquals(1, countSegments(directory));
+        assertNull(transferHistory.get(1L));
+        assertEquals(Long.valueOf(49_000L), transferHistory.get(49_000L).getTransferNumber());
+    }
+
+    @Test
+    public void testRetentionByAge() {
+        HistorySegments segments = new HistorySegments(temporaryFolder.getRoot().toPath(),
+                HistoryRetention.of(Long.MAX_VALUE, 1000L, Long.MAX_VALUE));
+        long transferTimestamp = System.currentTimeMillis();
+        for (long transferNumber = 1; transferNumber <= 8192; transferNumber++) {
+            segments.add(transferNumber, transferTimestamp, 1L, 2L, 1L, (byte) 0);
+        }
+        segments.flush();
+        assertEquals(8192L, segments.getStoredTransfers());
+
+        segments.applyRetention(transferTimestamp + 1000L);
+        assertEquals(8192L, segments.getStoredTransfers());
+
+        segments.applyRetention(transferTimestamp + 1001L);
+        assertEquals(0L, segments.getStoredTransfers());
+    }
+
+    @Test
+    public void testSegmentThatCannotBeWrittenIsDropped() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        HistorySegments segments = new HistorySegments(directory, HistoryRetention.UNLIMITED);
+        // the first segment cannot be created
+        Files.createFile(directory.resolve(String.format("history-%020d.seg", 1L)));
+        for (long transferNumber = 1; transferNumber <= 2 * 8192; transferNumber++) {
+            segments.add(transferNumber, transferNumber, 1L, 2L, 1L, (byte) 0);
+        }
+        segments.flush();
+
+        assertEquals(8192L, segments.getDroppedTransfers());
+        assertEquals(8192L, segments.getStoredTransfers());
+        assertNull(segments.get(1L, TransferHistoryTest::newTransfer));
+        assertFalse(segments.mayHold(8192L));
+        assertFalse(segments.updateStatus(8192L, (byte) 1));
+        assertEquals(Long.valueOf(8193L), segments.get(8193L, TransferHistoryTest::newTransfer).getTransferNumber());
+        assertTrue(segments.updateStatus(2 * 8192L, (byte) 1));
+        segments.close();
+    }
+
+    @Test
+    public void testSpilledTransfersAreFoundInOverlappingSegments() {
+        HistorySegments segments = new HistorySegments(temporaryFolder.getRoot().toPath(),
+                HistoryRetention.UNLIMITED);
+        // each segment is told apart by the timestamp of its transfers, the second one holds transfers spilled late,
+        // in the number range of the first and third ones, and the fourth one spills transfer 2 again
+        for (long transferNumber = 1; transferNumber <= 8192; transferNumber++) {
+            segments.add(transferNumber * 2, 1L, 1L, 2L, 1L, (byte) 0);
+        }
+        for (long transferNumber = 1; transferNumber <= 8192; transferNumber++) {
+            segments.add(transferNumber * 4 - 1, 2L, 1L, 2L, 1L, (byte) 0);
+        }
+        for (long transferNumber = 1; transferNumber <= 8192; transferNumber++) {
+            segments.add(3 * 8192 + transferNumber * 2, 3L, 1L, 2L, 1L, (byte) 0);
+        }
+        for (long transferNumber = 1; transferNumber <= 8192; transferNumber++) {
+            segments.add(transferNumber == 1 ? 2L : 10 * 8192 + transferNumber, 4L, 1L, 2L, 1L, (byte) 0);
+        }
+        segments.flush();
+
+        assertEquals(4L, timestampOf(segments, 2L));
+        assertEquals(1L, timestampOf(segments, 8192L));
+        assertEquals(2L, timestampOf(segments, 4L * 8192 - 1));
+        assertEquals(3L, timestampOf(segments, 3L * 8192 + 2));
+        assertNull(segments.get(4L * 8192 + 1, TransferHistoryTest::newTransfer));
+        assertTrue(segments.mayHold(4L * 8192 + 1));
+        assertFalse(segments.mayHold(12L * 8192));
+        segments.close();
+    }
+
+    @Test
+    public void testAccountTransfersArePagedBySinceCursor() {
+        TransferHistory transferHistory = new TransferHistory(CurrencyScale.DEFAULT, 1024);
+        for (long transferNumber = 1; transferNumber <= 100; transferNumber++) {
+            long accountNumberTo = transferNumber % 2 == 0 ? 2L : 3L;
+            transferHistory.record(transferNumber, transferNumber, 1L, accountNumberTo, 1L,
+                    TransferStatus.PERFORMED);
+        }
+        // recorded out of order
+        transferHistory.record(200L, 200L, 2L, 4L, 1L, TransferStatus.PERFORMED);
+        transferHistory.record(150L, 150L, 2L, 4L, 1L, TransferStatus.PERFORMED);
+
+        List<Transfer> latest = transferHistory.getAccountTransfers(1L, null, 10);
+        assertEquals(10, latest.size());
+        assertEquals(Long.valueOf(91L), latest.get(0).getTransferNumber());
+        assertEquals(Long.valueOf(100L), latest.get(9).getTransferNumber());
+
+        List<Transfer> page = transferHistory.getAccountTransfers(2L, 10L, 3);
+        assertEquals(3, page.size());
+        assertEquals(Long.valueOf(12L), page.get(0).getTransferNumber());
+        assertEquals(Long.valueOf(16L), page.get(2).getTransferNumber());
+
+        List<Transfer> lastPage = transferHistory.getAccountTransfers(2L, 98L, 10);
+        assertEquals(3, lastPage.size());
+        assertEquals(Long.valueOf(100L), lastPage.get(0).getTransferNumber());
+        assertEquals(Long.valueOf(150L), lastPage.get(1).getTransferNumber());
+        assertEquals(Long.valueOf(200L), lastPage.get(2).getTransferNumber());
+
+        assertTrue(transferHistory.getAccountTransfers(5L, null, 10).isEmpty());
+    }
+
+    @Test
+    public void testDroppedTransfersAreNotListed() {
+        TransferHistory transferHistory = new TransferHistory(CurrencyScale.DEFAULT, 16);
+        for (long transferNumber = 1; transferNumber <= 100; transferNumber++) {
+            transferHistory.record(transferNumber, transferNumber, 1L, 2L, 1L, TransferStatus.PERFORMED);
+        }
+
+        List<Transfer> transfers = transferHistory.getAccountTransfers(1L, 0L, 1000);
+        assertEquals(16, transfers.size());
+        assertEquals(Long.valueOf(85L), transfers.get(0).getTransferNumber());
+    }
+
+    @Test
+    public void testAccountTransfersAreBoundedPerAccount() throws IOException {
+        TransferHistory transferHistory = new TransferHistory(CurrencyScale.DEFAULT, 1024,
+                temporaryFolder.getRoot().toPath(), HistoryRetention.UNLIMITED, 16);
+        for (long transferNumber = 1; transferNumber <= 100; transferNumber++) {
+            transferHistory.record(transferNumber, transferNumber, 1L, 2L, 1L, TransferStatus.PERFORMED);
+        }
+
+        List<Transfer> transfers = transferHistory.getAccountTransfers(1L, 0L, 1000);
+        assertTrue(transfers.size() <= 16);
+        assertEquals(Long.valueOf(100L), transfers.get(transfers.size() - 1).getTransferNumber());
+        // still stored, only no longer listed
+        assertEquals(Long.valueOf(1L), transferHistory.get(1L).getTransferNumber());
+    }
+
+    private static long timestampOf(HistorySegments segments, long transferNumber) {
+        return segments.get(transferNumber, TransferHistoryTest::newTransfer).getTransferTimestamp().getTime();
+    }
+
+    private static Transfer newTransfer(long transferNumber, long transferTimestamp, long accountNumberFrom,
+            long accountNumberTo, long amount, byte status) {
+        Transfer transfer = new Transfer();
+        transfer.setTransferNumber(transferNumber);
+        transfer.setTransferTimestamp(new Date(transferTimestamp));
+        return transfer;
+    }
+
+    private static long countSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package test.adanielssr.simple.money.transfer.business.service.id;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LeasingIdGeneratorTest {
+
+    @Test
+    public void testThreadsTakeUniqueIncreasingNumbersFromTheirBlocks() throws Exception {
+        LeasingIdGenerator idGenerator = new LeasingIdGenerator(new SequenceIdGenerator(), 64, 60_000L);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executorService.submit(() -> {
+                    long last = 0L;
+                    for (int j = 0; j < 10_000; j++) {
+                        long id = j % 10 == 0 ? idGenerator.nextIds(3) : idGenerator.nextId();
+                        assertTrue(id > last);
+                        assertTrue(ids.add(id));
+                        last = id;
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(40_000, ids.size());
+    }
+
+    @Test
+    public void testRestoredNumbersAreSkipped() {
+        LeasingIdGenerator idGenerator = new LeasingIdGenerator(new SequenceIdGenerator(), 64, 60_000L);
+        assertEquals(1L, idGenerator.nextId());
+        assertEquals(2L, idGenerator.nextId());
+
+        idGenerator.restore(10L);
+        assertEquals(65L, idGenerator.nextId());
+        assertEquals(66L, idGenerator.nextIds(40));
+        // not left in the block, and more than half a block: taken straight from the sequence
+        assertEquals(129L, idGenerator.nextIds(40));
+        assertEquals(106L, idGenerator.nextId());
+    }
+
+    @Test
+    public void testExpiredLeasesAreSkipped() throws Exception {
+        LeasingIdGenerator idGenerator = new LeasingIdGenerator(new SequenceIdGenerator(), 64, 1L);
+        assertEquals(1L, idGenerator.nextId());
+
+        Thread.sleep(5L);
+        assertEquals(65L, idGenerator.nextId());
+    }
+}
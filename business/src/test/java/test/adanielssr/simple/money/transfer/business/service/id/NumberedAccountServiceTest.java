@@ -0,0 +1,15 @@
+package test.adanielssr.simple.money.transfer.business.service.id;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.AccountServiceTest;
+import test.adanielssr.simple.money.transfer.business.service.StripedLockAccountService;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+public class NumberedAccountServiceTest extends AccountServiceTest {
+
+    @Override
+    protected AccountService createAccountService(CurrencyScale currencyScale) {
+        return new NumberedAccountService(new StripedLockAccountService(currencyScale),
+                new LeasingIdGenerator(new SnowflakeIdGenerator(1), 16, 10L));
+    }
+}
@@ -0,0 +1,69 @@
+package test.adanielssr.simple.money.transfer.business.service.id;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = SnowflakeIdGenerator.EPOCH + 1000L;
+
+    @Test
+    public void testNumbersHoldTheTimestampNodeAndSequence() {
+        long[] now = { NOW };
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(5, () -> now[0]);
+
+        long first = idGenerator.nextId();
+        assertEquals((1000L << 22) | (5L << 12), first);
+        assertEquals(NOW, SnowflakeIdGenerator.timestampOf(first));
+        assertEquals(first + 1L, idGenerator.nextIds(10));
+        assertEquals(first + 11L, idGenerator.nextId());
+
+        now[0]++;
+        assertEquals((1001L << 22) | (5L << 12), idGenerator.nextId());
+    }
+
+    @Test
+    public void testNumbersKeepIncreasingAheadOfTheClock() {
+        long[] now = { NOW };
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(0, () -> now[0]);
+
+        long last = idGenerator.nextIds(4000);
+        // not enough sequence numbers left in the millisecond
+        long next = idGenerator.nextIds(100);
+        assertTrue(next > last + 3999L);
+        assertEquals(NOW + 1L, SnowflakeIdGenerator.timestampOf(next));
+
+        now[0] -= 5000L;
+        assertEquals(next + 100L, idGenerator.nextId());
+
+        idGenerator.restore(((NOW + 10L - SnowflakeIdGenerator.EPOCH) << 22) | 7L);
+        assertEquals(((NOW + 10L - SnowflakeIdGenerator.EPOCH) << 22) | 8L, idGenerator.nextId());
+    }
+
+    @Test
+    public void testNumbersFollowNumbersRestoredFromOtherNodes() {
+        long[] now = { NOW };
+        SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(5, () -> now[0]);
+
+        long higherNode = (1000L << 22) | (9L << 12) | 3L;
+        idGenerator.restore(higherNode);
+        long next = idGenerator.nextId();
+        assertTrue(next > higherNode);
+        assertEquals((1001L << 22) | (5L << 12), next);
+
+        long lowerNode = (1001L << 22) | (2L << 12) | 7L;
+        idGenerator.restore(lowerNode);
+        assertEquals((1001L << 22) | (5L << 12) | 8L, idGenerator.nextId());
+
+        // an older number of a higher node does not move the numbers back
+        idGenerator.restore(higherNode);
+        assertEquals((1001L << 22) | (5L << 12) | 9L, idGenerator.nextId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNodeOutOfRange() {
+        new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE + 1);
+    }
+}
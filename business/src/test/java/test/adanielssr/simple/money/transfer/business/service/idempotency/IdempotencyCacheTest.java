@@ -0,0 +1,136 @@
+package test.adanielssr.simple.money.transfer.business.service.idempotency;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IdempotencyCacheTest {
+
+    private final AtomicLong nanoClock = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    public void testRepeatedKeyGetsTheFirstResult() {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(16, 1000L, hits, nanoClock::get);
+
+        assertEquals("first", cache.execute("key", () -> run("first"), result -> true));
+        assertEquals("first", cache.execute("key", () -> run("second"), result -> true));
+        assertEquals("other", cache.execute("other key", () -> run("other"), result -> true));
+
+        assertEquals(2, runs.get());
+        assertEquals(1L, hits.sum());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testKeysExpire() {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(16, 1000L, hits, nanoClock::get);
+        cache.execute("key", () -> run("first"), result -> true);
+
+        nanoClock.set(TimeUnit.MILLISECONDS.toNanos(999L));
+        assertEquals("first", cache.execute("key", () -> run("second"), result -> true));
+        nanoClock.set(TimeUnit.MILLISECONDS.toNanos(1000L));
+        assertEquals("second", cache.execute("key", () -> run("second"), result -> true));
+
+        nanoClock.set(TimeUnit.MILLISECONDS.toNanos(5000L));
+        cache.execute("other key", () -> run("other"), result -> true);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCapacityEvictsTheOldestKeys() {
+        IdempotencyCache<Integer> cache = new IdempotencyCache<>(4, 1000L, hits, nanoClock::get);
+
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            cache.execute("key-" + i, () -> value, result -> true);
+            assertTrue(cache.size() <= 4);
+        }
+
+        assertEquals(Integer.valueOf(99), cache.execute("key-99", () -> -1, result -> true));
+        assertEquals(Integer.valueOf(-1), cache.execute("key-0", () -> -1, result -> true));
+    }
+
+    @Test
+    public void testResultsNotKeptAndFailuresLeaveNoKey() {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(16, 1000L, hits, nanoClock::get);
+        IllegalStateException exception = new IllegalStateException();
+
+        cache.execute("key", () -> run("rejected"), result -> false);
+        try {
+            cache.execute("key", () -> {
+                throw exception;
+            }, result -> true);
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(exception, e);
+        }
+        assertEquals("kept", cache.execute("key", () -> run("kept"), result -> true));
+
+        assertEquals(0L, hits.sum());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testConcurrentRunsOfAKeyAreCoalesced() throws Exception {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(16, 1000L, hits);
+        CountDownLatch runningLatch = new CountDownLatch(1);
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executorService.submit(() -> cache.execute("key", () -> {
+                runningLatch.countDown();
+                await(releaseLatch);
+                return run("first");
+            }, result -> true));
+            assertTrue(runningLatch.await(2, TimeUnit.SECONDS));
+
+            Future<String> second = executorService.submit(() -> cache.execute("key", () -> run("second"),
+                    result -> true));
+            Future<String> third = executorService.submit(() -> cache.execute("key", () -> run("third"),
+                    result -> true));
+            releaseLatch.countDown();
+
+            assertEquals("first", first.get(2, TimeUnit.SECONDS));
+            assertEquals("first", second.get(2, TimeUnit.SECONDS));
+            assertEquals("first", third.get(2, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+            assertEquals(2L, hits.sum());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLongKeyIsRefused() {
+        new IdempotencyCache<String>(16, 1000L, hits).execute(new String(new char[256]), () -> "", result -> true);
+    }
+
+    private String run(String result) {
+        runs.incrementAndGet();
+        return result;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AccountIndexTest {
+
+    private static final AccountIndex.Reader<Long> BALANCE = (key, balance, version) -> balance;
+
+    private static final AccountIndex.Reader<Long> VERSION = (key, balance, version) -> version;
+
+    private static final AccountIndex.Reader<Long> KEY = (key, balance, version) -> key;
+
+    @Test
+    public void testGrowsKeepingBalancesAndVersions() {
+        AccountIndex accountIndex = createAccountIndex(0);
+        int initialCapacity = accountIndex.capacity();
+
+        for (long key = -1000L; key <= 1000L; key++) {
+            assertTrue(accountIndex.insert(key, key * 10L));
+        }
+        assertEquals(AccountIndex.UPDATED, accountIndex.credit(0L, 5L));
+        assertEquals(AccountIndex.UPDATED, accountIndex.debit(1000L, 0L));
+
+        assertTrue(accountIndex.capacity() > initialCapacity);
+        assertEquals(2001, accountIndex.size());
+        assertFalse(accountIndex.insert(500L, 0L));
+        assertFalse(accountIndex.insert(0L, 0L));
+        assertEquals(Long.valueOf(5L), accountIndex.get(0L, BALANCE));
+        assertEquals(Long.valueOf(-5000L), accountIndex.get(-500L, BALANCE));
+        assertEquals(Long.valueOf(1L), accountIndex.get(1000L, VERSION));
+        assertNull(accountIndex.get(1001L, BALANCE));
+
+        Set<Long> keys = new HashSet<>();
+        for (Iterator<Long> iterator = accountIndex.iterator(KEY); iterator.hasNext(); ) {
+            assertTrue(keys.add(iterator.next()));
+        }
+        assertEquals(2001, keys.size());
+    }
+
+    @Test
+    public void testDebitsAndConditionalUpdates() {
+        AccountIndex accountIndex = createAccountIndex(16);
+        assertTrue(accountIndex.insert(1L, 100L));
+
+        assertEquals(AccountIndex.NOT_ENOUGH_BALANCE, accountIndex.debit(1L, 101L));
+        assertEquals(AccountIndex.NOT_FOUND, accountIndex.debit(2L, 1L));
+        assertEquals(AccountIndex.NOT_FOUND, accountIndex.credit(2L, 1L));
+        assertEquals(AccountIndex.UPDATED, accountIndex.debit(1L, 100L));
+        assertEquals(Long.valueOf(1L), accountIndex.get(1L, VERSION));
+
+        assertFalse(accountIndex.compareAndSet(1L, 0L, 50L));
+        assertTrue(accountIndex.compareAndSet(1L, 1L, 50L));
+        assertEquals(Long.valueOf(50L), accountIndex.get(1L, BALANCE));
+
+        assertFalse(accountIndex.compareAndRemove(1L, 1L));
+        assertTrue(accountIndex.compareAndRemove(1L, 2L));
+        assertFalse(accountIndex.contains(1L));
+        assertEquals(0, accountIndex.size());
+        assertFalse(accountIndex.iterator(KEY).hasNext());
+    }
+
+    @Test
+    public void testConcurrentTransfersWhileGrowing() throws Exception {
+        AccountIndex accountIndex = createAccountIndex(0);
+        int accounts = 64;
+        for (long key = 1L; key <= accounts; key++) {
+            accountIndex.insert(key, 1000L);
+        }
+        int threads = 4;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        AtomicBoolean inserting = new AtomicBoolean(true);
+        try {
+            Future<?> inserter = executorService.submit(() -> {
+                await(startLatch);
+                for (long key = accounts + 1L; key <= 100000L; key++) {
+                    accountIndex.insert(key, 0L);
+                }
+                inserting.set(false);
+            });
+            Future<?>[] transferrers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                transferrers[t] = executorService.submit(() -> {
+                    await(startLatch);
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (inserting.get()) {
+                        long from = 1L + random.nextInt(accounts);
+                        long to = 1L + random.nextInt(accounts);
+                        if (accountIndex.debit(from, 1L) == AccountIndex.UPDATED) {
+                            assertEquals(AccountIndex.UPDATED, accountIndex.credit(to, 1L));
+                        }
+                        assertTrue(accountIndex.get(from, BALANCE) >= 0L);
+                    }
+                });
+            }
+            startLatch.countDown();
+
+            inserter.get(30, TimeUnit.SECONDS);
+            for (Future<?> transferrer : transferrers) {
+                transferrer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        long total = 0L;
+        for (long key = 1L; key <= accounts; key++) {
+            total += accountIndex.get(key, BALANCE);
+        }
+        assertEquals(accounts * 1000L, total);
+        assertEquals(100000, accountIndex.size());
+        assertEquals(Long.valueOf(0L), accountIndex.get(100000L, BALANCE));
+    }
+
+    protected AccountIndex createAccountIndex(int expectedSize) {
+        return new AccountIndex(expectedSize);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testCountsAreCappedAndAge() {
+        FrequencySketch frequencySketch = new FrequencySketch(64);
+        for (int i = 0; i < 20; i++) {
+            frequencySketch.increment(42L);
+        }
+        assertEquals(15, frequencySketch.frequency(42L));
+        assertTrue(frequencySketch.frequency(43L) <= 1);
+
+        for (long key = 1000L; key < 1000L + 640L; key++) {
+            frequencySketch.increment(key);
+        }
+        assertTrue(frequencySketch.frequency(42L) < 15);
+    }
+
+    @Test
+    public void testConcurrentIncrementsSaturateWithoutCarrying() throws Exception {
+        FrequencySketch frequencySketch = new FrequencySketch(1 << 16);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        frequencySketch.increment(42L);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(15, frequencySketch.frequency(42L));
+        for (long key = 1000L; key < 2000L; key++) {
+            assertEquals(0, frequencySketch.frequency(key));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HotAccountCacheTest {
+
+    private final AccountIndex accountIndex = new AccountIndex(1024);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    @Test
+    public void testFrequentAccountsAreNotEvictedByAScan() {
+        HotAccountCache hotAccountCache = new HotAccountCache(accountIndex, HotAccountCache.WAYS, hits, misses);
+        for (long key = 1L; key <= 1000L; key++) {
+            accountIndex.insert(key, key);
+        }
+        for (int i = 0; i < 5; i++) {
+            readHotAccounts(hotAccountCache);
+        }
+
+        // dormant accounts read once each, while the hot ones keep being read
+        for (long key = HotAccountCache.WAYS + 1L; key <= 1000L; key++) {
+            hotAccountCache.get(key);
+            if (key % 16L == 0L) {
+                readHotAccounts(hotAccountCache);
+            }
+        }
+        long hitsBefore = hits.sum();
+        readHotAccounts(hotAccountCache);
+        assertEquals(hitsBefore + HotAccountCache.WAYS, hits.sum());
+    }
+
+    @Test
+    public void testRefreshKeepsEntriesCurrent() {
+        HotAccountCache hotAccountCache = new HotAccountCache(accountIndex, 64, hits, misses);
+        accountIndex.insert(1L, 100L);
+        assertEquals(100L, hotAccountCache.get(1L).balance);
+
+        accountIndex.credit(1L, 5L);
+        hotAccountCache.refresh(1L);
+        assertEquals(105L, hotAccountCache.get(1L).balance);
+        assertEquals(1L, hotAccountCache.get(1L).version);
+
+        accountIndex.compareAndRemove(1L, 1L);
+        hotAccountCache.refresh(1L);
+        assertNull(hotAccountCache.get(1L));
+        assertEquals(2L, hits.sum());
+    }
+
+    private static void readHotAccounts(HotAccountCache hotAccountCache) {
+        for (long key = 1L; key <= HotAccountCache.WAYS; key++) {
+            assertEquals(key, hotAccountCache.get(key).balance);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import org.junit.Test;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.AccountServiceTest;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexedAccountServiceTest extends AccountServiceTest {
+
+    @Override
+    protected AccountService createAccountService(CurrencyScale currencyScale) {
+        // small enough for the tests to resize the index
+        return new IndexedAccountService(currencyScale, 4);
+    }
+
+    @Test
+    public void testRemovedAccountCanBeCreatedAgain() {
+        IndexedAccountService accountService = new IndexedAccountService(CurrencyScale.DEFAULT, 4);
+        Account account = new Account();
+        account.setAccountNumber(7L);
+        account.setBalanceInMinorUnits(100L);
+        accountService.createAccount(account);
+        long version = accountService.getAccountByNumber(7L).getVersion();
+
+        accountService.performAccountOperation(7L, (aNumber, aAccount) -> null);
+        assertEquals(0, accountService.getAccountCount());
+
+        account.setBalanceInMinorUnits(50L);
+        accountService.createAccount(account);
+        assertEquals(50L, accountService.getAccountByNumber(7L).getBalanceInMinorUnits());
+        assertEquals(version + 2L, accountService.getAccountByNumber(7L).getVersion());
+        assertEquals(1, accountService.getAccountCount());
+    }
+}
@@ -0,0 +1,69 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.AccountServiceTest;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedIndexedAccountServiceTest extends AccountServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    @Override
+    protected AccountService createAccountService(CurrencyScale currencyScale) {
+        try {
+            return new IndexedAccountService(currencyScale, 4, temporaryFolder.newFolder().toPath(), 16, hits,
+                    misses);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testHotAccountsAreReadFromTheCacheAndKeptCurrent() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        IndexedAccountService accountService = new IndexedAccountService(CurrencyScale.DEFAULT, 4, directory, 16,
+                hits, misses);
+        for (long accountNumber = 1L; accountNumber <= 100L; accountNumber++) {
+            Account account = new Account();
+            account.setAccountNumber(accountNumber);
+            account.setBalanceInMinorUnits(1000L);
+            accountService.createAccount(account);
+        }
+        assertFalse("the scratch file is deleted once mapped", Files.list(directory).findAny().isPresent());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1000L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+        }
+        assertEquals(1L, misses.sum());
+        assertEquals(9L, hits.sum());
+
+        accountService.transfer(1L, 2L, 400L);
+        assertEquals(600L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+        accountService.performAccountOperation(1L, (aNumber, aAccount) -> {
+            aAccount.setBalanceInMinorUnits(aAccount.getBalanceInMinorUnits() + 1L);
+            return aAccount;
+        });
+        assertEquals(601L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+        assertEquals(1400L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+        assertTrue(hits.sum() >= 11L);
+    }
+}
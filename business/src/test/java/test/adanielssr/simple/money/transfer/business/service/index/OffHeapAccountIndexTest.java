@@ -0,0 +1,27 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapAccountIndexTest extends AccountIndexTest {
+
+    @Override
+    protected AccountIndex createAccountIndex(int expectedSize) {
+        return new AccountIndex(expectedSize, OffHeapTable::new);
+    }
+
+    @Test
+    public void testSlotsSpanSeveralChunks() {
+        AccountIndex accountIndex = createAccountIndex(OffHeapTable.CHUNK_SLOTS);
+        assertTrue(accountIndex.capacity() > OffHeapTable.CHUNK_SLOTS);
+
+        for (long key = 0L; key < OffHeapTable.CHUNK_SLOTS; key++) {
+            assertTrue(accountIndex.insert(key, key));
+        }
+        for (long key = 0L; key < OffHeapTable.CHUNK_SLOTS; key += 997L) {
+            assertEquals(Long.valueOf(key), accountIndex.get(key, (aKey, balance, version) -> balance));
+        }
+    }
+}
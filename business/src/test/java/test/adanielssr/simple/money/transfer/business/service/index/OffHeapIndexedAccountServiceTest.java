@@ -0,0 +1,13 @@
+package test.adanielssr.simple.money.transfer.business.service.index;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.AccountServiceTest;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+public class OffHeapIndexedAccountServiceTest extends AccountServiceTest {
+
+    @Override
+    protected AccountService createAccountService(CurrencyScale currencyScale) {
+        return new IndexedAccountService(currencyScale, 4, true);
+    }
+}
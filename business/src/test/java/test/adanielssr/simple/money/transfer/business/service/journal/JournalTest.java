@@ -0,0 +1,191 @@
+package test.adanielssr.simple.money.transfer.business.service.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReplayAfterReopen() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_OPERATION, 10L, 1024L * 1024)) {
+            journal.awaitDurable(journal.appendAccountCreated(1L, 1000L));
+            journal.awaitDurable(journal.appendBalanceChanged(1L, -10L));
+            journal.awaitDurable(journal.appendTransferPerformed(7L, 123456L, 1L, 2L, 50L));
+            journal.awaitDurable(journal.appendAccountRemoved(2L));
+        }
+
+        List<String> records = replay(directory);
+
+        assertEquals(4, records.size());
+        assertEquals("created 1 1000", records.get(0));
+        assertEquals("changed 1 -10", records.get(1));
+        assertEquals("transfer 7 123456 1 2 50", records.get(2));
+        assertEquals("removed 2", records.get(3));
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_OPERATION, 10L, 1024L * 1024)) {
+            journal.awaitDurable(journal.appendAccountCreated(1L, 1000L));
+            journal.awaitDurable(journal.appendAccountCreated(2L, 2000L));
+        }
+        Path segment = listSegments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_OPERATION, 10L, 1024L * 1024)) {
+            List<String> records = new ArrayList<>();
+            journal.replay(new RecordingVisitor(records));
+            assertEquals(1, records.size());
+
+            journal.awaitDurable(journal.appendAccountCreated(3L, 3000L));
+        }
+
+        List<String> records = replay(directory);
+        assertEquals(2, records.size());
+        assertEquals("created 1 1000", records.get(0));
+        assertEquals("created 3 3000", records.get(1));
+    }
+
+    @Test
+    public void testSegmentsAreRolled() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_OPERATION, 10L, 256L)) {
+            for (long accountNumber = 1; accountNumber <= 100; accountNumber++) {
+                journal.appendAccountCreated(accountNumber, accountNumber * 10);
+            }
+        }
+
+        assertTrue(listSegments(directory).size() > 1);
+        List<String> records = replay(directory);
+        assertEquals(100, records.size());
+        assertEquals("created 100 1000", records.get(99));
+    }
+
+    @Test
+    public void testGroupCommitFromManyThreads() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        int threads = 8;
+        int recordsPerThread = 200;
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_BATCH, 10L, 1024L * 1024)) {
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++) {
+                executorService.submit(() -> {
+                    for (int j = 0; j < recordsPerThread; j++) {
+                        journal.awaitDurable(journal.appendBalanceChanged(1L, 1L));
+                    }
+                });
+            }
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+        }
+
+        assertEquals(threads * recordsPerThread, replay(directory).size());
+    }
+
+    @Test
+    public void testFailedWriteFailsTheJournal() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_BATCH, 10L, 40L)) {
+            journal.awaitDurable(journal.appendAccountCreated(1L, 1000L));
+            // the segment the journal rolls to next cannot be created
+            Files.createFile(directory.resolve(String.format("journal-%020d.log", 2L)));
+
+            long position = journal.appendAccountCreated(2L, 2000L);
+            assertFails(() -> journal.awaitDurable(position));
+            assertFails(() -> journal.awaitDurable(position));
+            assertFails(() -> journal.appendAccountCreated(3L, 3000L));
+        }
+
+        List<String> records = replay(directory);
+        assertEquals(1, records.size());
+        assertEquals("created 1 1000", records.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReplayAfterAppendIsRejected() {
+        try (Journal journal = new Journal(temporaryFolder.getRoot().toPath(), FsyncPolicy.PER_BATCH, 10L, 1024L)) {
+            journal.appendAccountRemoved(1L);
+            journal.replay(new RecordingVisitor(new ArrayList<>()));
+        }
+    }
+
+    private static void assertFails(Runnable journalCall) {
+        try {
+            journalCall.run();
+            fail("a failed journal must not accept nor acknowledge records");
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+    }
+
+    private static List<String> replay(Path directory) {
+        List<String> records = new ArrayList<>();
+        try (Journal journal = new Journal(directory, FsyncPolicy.PER_BATCH, 10L, 1024L * 1024)) {
+            journal.replay(new RecordingVisitor(records));
+        }
+        return records;
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static class RecordingVisitor implements JournalVisitor {
+
+        private final List<String> records;
+
+        RecordingVisitor(List<String> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void accountCreated(long accountNumber, long balance) {
+            records.add("created " + accountNumber + " " + balance);
+        }
+
+        @Override
+        public void balanceChanged(long accountNumber, long delta) {
+            records.add("changed " + accountNumber + " " + delta);
+        }
+
+        @Override
+        public void accountRemoved(long accountNumber) {
+            records.add("removed " + accountNumber);
+        }
+
+        @Override
+        public void transferPerformed(long transferNumber, long transferTimestamp, long accountNumberFrom,
+                long accountNumberTo, long amount) {
+            records.add("transfer " + transferNumber + " " + transferTimestamp + " " + accountNumberFrom + " "
+                    + accountNumberTo + " " + amount);
+        }
+    }
+}
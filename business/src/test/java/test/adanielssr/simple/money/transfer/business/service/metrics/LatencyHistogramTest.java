@@ -0,0 +1,51 @@
+package test.adanielssr.simple.money.transfer.business.service.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValueWithinOneSixteenth() {
+        long[] values = { 0L, 1L, 15L, 16L, 17L, 31L, 32L, 1000L, 123_456_789L, 1L << 40, Long.MAX_VALUE };
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= 0 && index < LatencyHistogram.BUCKETS);
+
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound - value <= value / 16);
+            assertEquals(index, LatencyHistogram.bucketIndex(upperBound));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+
+        // consecutive buckets, without gaps between them
+        for (int index = 1; index < LatencyHistogram.BUCKETS; index++) {
+            assertEquals(index, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(index - 1) + 1));
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000L);
+        }
+        histogram.record(-5L);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1001L, snapshot.getCount());
+        assertEquals(500_500_000L, snapshot.getSum());
+        assertEquals(0L, new LatencyHistogram().snapshot().getValueAtQuantile(0.5D));
+
+        assertWithinOneSixteenth(500_000L, snapshot.getValueAtQuantile(0.5D));
+        assertWithinOneSixteenth(990_000L, snapshot.getValueAtQuantile(0.99D));
+        assertWithinOneSixteenth(1_000_000L, snapshot.getValueAtQuantile(1.0D));
+    }
+
+    private static void assertWithinOneSixteenth(long expected, long actual) {
+        assertTrue(actual + " is not close to " + expected, Math.abs(actual - expected) <= expected / 16);
+    }
+}
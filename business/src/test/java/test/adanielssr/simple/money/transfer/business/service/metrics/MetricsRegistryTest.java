@@ -0,0 +1,49 @@
+package test.adanielssr.simple.money.transfer.business.service.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testWritePrometheus() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        LongAdder created = metricsRegistry.counter("created_total", "Created things.", "kind", "a");
+        metricsRegistry.counter("created_total", "Created things.", "kind", "b").add(2L);
+        metricsRegistry.gauge("things", "Stored things.", () -> 3);
+        LatencyHistogram latency = metricsRegistry.histogram("latency_seconds", "Latency.", null, null);
+
+        created.increment();
+        assertSame(created, metricsRegistry.counter("created_total", "Created things.", "kind", "a"));
+        latency.record(2_000_000_000L);
+
+        StringBuilder out = new StringBuilder();
+        metricsRegistry.writePrometheus(out);
+        assertEquals("# HELP created_total Created things.\n"
+                + "# TYPE created_total counter\n"
+                + "created_total{kind=\"a\"} 1\n"
+                + "created_total{kind=\"b\"} 2\n"
+                + "# HELP things Stored things.\n"
+                + "# TYPE things gauge\n"
+                + "things 3.0\n"
+                + "# HELP latency_seconds Latency.\n"
+                + "# TYPE latency_seconds summary\n"
+                + "latency_seconds{quantile=\"0.5\"} 2.013265919\n"
+                + "latency_seconds{quantile=\"0.9\"} 2.013265919\n"
+                + "latency_seconds{quantile=\"0.99\"} 2.013265919\n"
+                + "latency_seconds{quantile=\"0.999\"} 2.013265919\n"
+                + "latency_seconds_sum 2.0\n"
+                + "latency_seconds_count 1\n", out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterSameNameWithAnotherType() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        metricsRegistry.counter("things", "Things.", null, null);
+        metricsRegistry.gauge("things", "Things.", () -> 1);
+    }
+}
@@ -0,0 +1,118 @@
+package test.adanielssr.simple.money.transfer.business.service.sharded;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.AccountServiceTest;
+import test.adanielssr.simple.money.transfer.business.service.exceptions.SimpleMoneyTransferException;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.CurrencyScale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardedAccountServiceTest extends AccountServiceTest {
+
+    @Override
+    protected AccountService createAccountService(CurrencyScale currencyScale) {
+        return new ShardedAccountService(currencyScale, 4, 1024);
+    }
+
+    @Test
+    public void testOperationErrorIsRethrownToCaller() {
+        ShardedAccountService accountService = new ShardedAccountService(CurrencyScale.DEFAULT, 2, 16);
+        try {
+            accountService.createAccount(new Account());
+
+            accountService.performAccountOperation(1L, (aNumber, aAccount) -> {
+                throw new SimpleMoneyTransferException("failed on shard");
+            });
+            fail("error on the shard must reach the caller");
+        } catch (SimpleMoneyTransferException e) {
+            assertEquals("failed on shard", e.getMessage());
+        } finally {
+            accountService.close();
+        }
+    }
+
+    @Test(expected = SimpleMoneyTransferException.class)
+    public void testCallAfterCloseFails() {
+        ShardedAccountService accountService = new ShardedAccountService(CurrencyScale.DEFAULT, 2, 16);
+        accountService.close();
+
+        accountService.getAccountByNumber(1L);
+    }
+
+    @Test
+    public void testCloseFailsWaitingCalls() throws Exception {
+        ShardedAccountService accountService = new ShardedAccountService(CurrencyScale.DEFAULT, 1, 16);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        CountDownLatch shardBusyLatch = new CountDownLatch(1);
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        try {
+            accountService.createAccount(new Account());
+            executorService.submit(() -> accountService.performAccountOperation(1L, (aNumber, aAccount) -> {
+                shardBusyLatch.countDown();
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return aAccount;
+            }));
+            assertTrue(shardBusyLatch.await(10, TimeUnit.SECONDS));
+            Future<Account> waitingCall = executorService.submit(() -> accountService.getAccountByNumber(1L));
+
+            accountService.close();
+
+            try {
+                waitingCall.get(10, TimeUnit.SECONDS);
+                fail("a call waiting for a closed shard must fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SimpleMoneyTransferException);
+            }
+        } finally {
+            releaseLatch.countDown();
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testAccountCountDoesNotWaitForBusyShards() throws Exception {
+        ShardedAccountService accountService = new ShardedAccountService(CurrencyScale.DEFAULT, 1, 16);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        CountDownLatch shardBusyLatch = new CountDownLatch(1);
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        try {
+            accountService.createAccount(new Account());
+            accountService.createAccount(new Account());
+            executorService.submit(() -> accountService.performAccountOperation(1L, (aNumber, aAccount) -> {
+                shardBusyLatch.countDown();
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+            assertTrue(shardBusyLatch.await(10, TimeUnit.SECONDS));
+
+            assertEquals(2, accountService.getAccountCount());
+        } finally {
+            releaseLatch.countDown();
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        // the removal is published before the call returns
+        assertEquals(1, accountService.getAccountCount());
+        accountService.close();
+    }
+}
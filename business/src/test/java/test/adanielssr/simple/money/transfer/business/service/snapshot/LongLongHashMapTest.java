@@ -0,0 +1,57 @@
+package test.adanielssr.simple.money.transfer.business.service.snapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongLongHashMapTest {
+
+    @Test
+    public void testPutGetAndAddTo() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        map.put(0L, 10L);
+        map.put(-5L, 20L);
+        map.put(7L, 30L);
+
+        assertEquals(3, map.size());
+        assertEquals(10L, map.get(0L, -1L));
+        assertEquals(20L, map.get(-5L, -1L));
+        assertEquals(-1L, map.get(8L, -1L));
+
+        assertTrue(map.addTo(7L, 5L));
+        assertTrue(map.addTo(0L, 1L));
+        assertFalse(map.addTo(8L, 1L));
+        assertEquals(35L, map.get(7L, -1L));
+        assertEquals(11L, map.get(0L, -1L));
+        assertFalse(map.containsKey(8L));
+    }
+
+    @Test
+    public void testMatchesHashMapUnderRandomOperations() {
+        LongLongHashMap map = new LongLongHashMap(16);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42L);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals((long) expected.getOrDefault(key, -1L), map.remove(key, -1L));
+                expected.remove(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, (long) i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,137 @@
+package test.adanielssr.simple.money.transfer.business.service.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import test.adanielssr.simple.money.transfer.business.service.AccountService;
+import test.adanielssr.simple.money.transfer.business.service.JournalRecovery;
+import test.adanielssr.simple.money.transfer.business.service.StripedLockAccountService;
+import test.adanielssr.simple.money.transfer.business.service.TransferService;
+import test.adanielssr.simple.money.transfer.business.service.journal.FsyncPolicy;
+import test.adanielssr.simple.money.transfer.business.service.journal.Journal;
+import test.adanielssr.simple.money.transfer.business.service.journal.JournaledAccountService;
+import test.adanielssr.simple.money.transfer.domain.model.Account;
+import test.adanielssr.simple.money.transfer.domain.model.Transfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSnapshotCompactsJournalAndIsRecovered() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        SnapshotStore snapshotStore = new SnapshotStore(directory);
+
+        try (Journal journal = open(directory); Snapshotter snapshotter = new Snapshotter(journal, snapshotStore,
+                0L)) {
+            AccountService accountService = new JournaledAccountService(new StripedLockAccountService(), journal);
+            TransferService transferService = new TransferService(accountService, journal);
+            for (int i = 0; i < 100; i++) {
+                accountService.createAccount(newAccount(10.0D));
+            }
+            transferService.createAndPerformTransfer(newTransfer(1L, 2L, 1.0D));
+            snapshotter.takeSnapshot();
+
+            transferService.createAndPerformTransfer(newTransfer(2L, 3L, 2.5D));
+            accountService.performAccountOperation(100L, (aAccountNumber, account) -> null);
+            snapshotter.takeSnapshot();
+
+            transferService.createAndPerformTransfer(newTransfer(3L, 4L, 0.5D));
+        }
+
+        assertEquals(1, list(directory, "snapshot-").size());
+        assertEquals(1, list(directory, "journal-").size());
+
+        try (Journal journal = open(directory)) {
+            AccountService accountService = new StripedLockAccountService();
+            TransferService transferService = new TransferService(accountService, journal);
+            new JournalRecovery(accountService, transferService).recover(snapshotStore, journal);
+
+            assertEquals(99, accountService.getAllAccounts().size());
+            assertEquals(900L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            assertEquals(850L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+            assertEquals(1200L, accountService.getAccountByNumber(3L).getBalanceInMinorUnits());
+            assertEquals(1050L, accountService.getAccountByNumber(4L).getBalanceInMinorUnits());
+
+            // numbering goes on after the transfers of the snapshot too
+            assertEquals(Long.valueOf(4L),
+                    transferService.createAndPerformTransfer(newTransfer(4L, 5L, 0.5D)).getTransferNumber());
+        }
+    }
+
+    @Test
+    public void testPendingDeltaIsKeptInSnapshot() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        SnapshotStore snapshotStore = new SnapshotStore(directory);
+
+        try (Journal journal = open(directory); Snapshotter snapshotter = new Snapshotter(journal, snapshotStore,
+                0L)) {
+            journal.appendAccountCreated(1L, 1000L);
+            journal.appendTransferPerformed(1L, 0L, 1L, 2L, 300L);
+            snapshotter.takeSnapshot();
+            journal.appendAccountCreated(2L, 50L);
+        }
+
+        try (Journal journal = open(directory)) {
+            AccountService accountService = new StripedLockAccountService();
+            new JournalRecovery(accountService, new TransferService(accountService)).recover(snapshotStore, journal);
+
+            assertEquals(700L, accountService.getAccountByNumber(1L).getBalanceInMinorUnits());
+            assertEquals(350L, accountService.getAccountByNumber(2L).getBalanceInMinorUnits());
+        }
+    }
+
+    @Test
+    public void testNothingToSnapshot() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        SnapshotStore snapshotStore = new SnapshotStore(directory);
+
+        try (Journal journal = open(directory); Snapshotter snapshotter = new Snapshotter(journal, snapshotStore,
+                0L)) {
+            journal.appendAccountCreated(1L, 1000L);
+            snapshotter.takeSnapshot();
+            List<Path> snapshots = list(directory, "snapshot-");
+            snapshotter.takeSnapshot();
+
+            assertEquals(snapshots, list(directory, "snapshot-"));
+            assertTrue(list(directory, "journal-").size() == 1);
+        }
+    }
+
+    private static Journal open(Path directory) {
+        return new Journal(directory, FsyncPolicy.PER_BATCH, 10L, 1024L * 1024);
+    }
+
+    private static List<Path> list(Path directory, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Account newAccount(double balance) {
+        Account account = new Account();
+        account.setBalance(balance);
+        return account;
+    }
+
+    private static Transfer newTransfer(Long from, Long to, double amount) {
+        Transfer transfer = new Transfer();
+        transfer.setAccountNumberFrom(from);
+        transfer.setAccountNumberTo(to);
+        transfer.setAmount(amount);
+        return transfer;
+    }
+}
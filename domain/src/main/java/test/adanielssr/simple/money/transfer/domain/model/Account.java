@@ -1,5 +1,7 @@
 package test.adanielssr.simple.money.transfer.domain.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -8,10 +10,50 @@ import lombok.EqualsAndHashCode;
  */
 
 @Data
-@EqualsAndHashCode
+@EqualsAndHashCode(exclude = "version")
 public class Account {
 
     private Long accountNumber;
 
-    private Double balance;
-}
\ No newline at end of file
+    /**
+     * Balance held as a count of minor units of {@link #currencyScale}.
+     * The decimal {@link #getBalance() balance} is only derived from it when the account is rendered.
+     */
+    @JsonIgnore
+    private long balanceInMinorUnits;
+
+    @JsonIgnore
+    private CurrencyScale currencyScale = CurrencyScale.DEFAULT;
+
+    /**
+     * Number of changes made to the stored account since it was created, increased by the account service with
+     * every balance change, so a representation of the account stays valid as long as its version is the same.
+     */
+    @JsonIgnore
+    private volatile long version;
+
+    public Double getBalance() {
+        return currencyScale.toMajorUnits(balanceInMinorUnits);
+    }
+
+    public void setBalance(Double balance) {
+        balanceInMinorUnits = balance == null ? 0L : currencyScale.toMinorUnits(balance);
+    }
+
+    /**
+     * Records a change of the account. Only to be called by the owner of the account, e.g. holding its lock.
+     */
+    public void incrementVersion() {
+        version++;
+    }
+
+    /**
+     * Changes the currency scale of this account, converting the current balance to the new scale.
+     *
+     * @param currencyScale the new currency scale
+     */
+    public void setCurrencyScale(CurrencyScale currencyScale) {
+        balanceInMinorUnits = currencyScale.convert(balanceInMinorUnits, this.currencyScale);
+        this.currencyScale = currencyScale;
+    }
+}
@@ -0,0 +1,87 @@
+package test.adanielssr.simple.money.transfer.domain.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Number of decimal places of a currency, used to hold amounts as a primitive count of minor units
+ * (e.g. cents) so balance arithmetic never goes through floating point or {@link java.math.BigDecimal}.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class CurrencyScale {
+
+    public static final int MAX_SCALE = 18;
+
+    public static final CurrencyScale DEFAULT = new CurrencyScale(2);
+
+    private final int scale;
+
+    private final long minorUnitsPerMajorUnit;
+
+    private CurrencyScale(int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("scale must be between 0 and " + MAX_SCALE);
+        }
+        long factor = 1L;
+        for (int i = 0; i < scale; i++) {
+            factor *= 10L;
+        }
+        this.scale = scale;
+        this.minorUnitsPerMajorUnit = factor;
+    }
+
+    public static CurrencyScale of(int scale) {
+        return scale == DEFAULT.scale ? DEFAULT : new CurrencyScale(scale);
+    }
+
+    /**
+     * Converts a decimal amount into minor units, rounding half up (away from zero).
+     *
+     * @param amount the amount in major units
+     * @return the amount in minor units
+     */
+    public long toMinorUnits(double amount) {
+        double scaled = amount * minorUnitsPerMajorUnit;
+        if (scaled >= Long.MAX_VALUE || scaled <= Long.MIN_VALUE || Double.isNaN(scaled)) {
+            throw new ArithmeticException("amount " + amount + " does not fit in minor units of scale " + scale);
+        }
+        return scaled < 0.0D ? -Math.round(-scaled) : Math.round(scaled);
+    }
+
+    /**
+     * Converts an amount in minor units back to major units.
+     *
+     * @param minorUnits the amount in minor units
+     * @return the amount in major units
+     */
+    public double toMajorUnits(long minorUnits) {
+        return (double) minorUnits / minorUnitsPerMajorUnit;
+    }
+
+    /**
+     * Converts an amount expressed in minor units of another scale into minor units of this scale,
+     * rounding half up when precision is lost.
+     *
+     * @param minorUnits the amount in minor units of {@code from}
+     * @param from       the scale the amount is currently expressed in
+     * @return the amount in minor units of this scale
+     */
+    public long convert(long minorUnits, CurrencyScale from) {
+        if (from.scale == scale) {
+            return minorUnits;
+        } else if (from.scale < scale) {
+            return Math.multiplyExact(minorUnits, minorUnitsPerMajorUnit / from.minorUnitsPerMajorUnit);
+        } else {
+            long divisor = from.minorUnitsPerMajorUnit / minorUnitsPerMajorUnit;
+            long quotient = minorUnits / divisor;
+            long remainder = Math.abs(minorUnits % divisor);
+            if (remainder * 2 >= divisor) {
+                quotient += minorUnits < 0 ? -1 : 1;
+            }
+            return quotient;
+        }
+    }
+}